@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures encoding the arguments of a typical search request.
+ */
+@State(Scope.Benchmark)
+public class ArgsBenchmarks {
+    private Args args;
+
+    @Setup
+    public void setUp() {
+        args = new Args();
+        args.put("search", "search index=_internal sourcetype=splunkd | stats count by host, component");
+        args.put("earliest_time", "-24h@h");
+        args.put("latest_time", "now");
+        args.put("output_mode", "json");
+        args.put("count", 0);
+        args.put("f", new String[] {"_time", "host", "source", "sourcetype", "_raw"});
+    }
+
+    @Benchmark
+    public String encode() {
+        return args.encode();
+    }
+
+    @Benchmark
+    public String encodeValue() {
+        return Args.encode("search index=main \"error\" | head 100");
+    }
+}
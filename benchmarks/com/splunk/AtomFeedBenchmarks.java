@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Measures parsing Atom responses of several sizes. {@code xmlParse} only
+ * builds the DOM, which for small responses is dominated by setting up the
+ * parser rather than by the document itself.
+ */
+@State(Scope.Benchmark)
+public class AtomFeedBenchmarks {
+    @Param({"atom_with_simple_entries.xml", "atom_with_several_entries.xml", "atom_with_feed.xml"})
+    public String fixture;
+
+    private byte[] document;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = Fixtures.read("data/atom/" + fixture);
+    }
+
+    @Benchmark
+    public AtomFeed parseStream() {
+        return AtomFeed.parseStream(new ByteArrayInputStream(document));
+    }
+
+    @Benchmark
+    public Document xmlParse() {
+        return Xml.parse(new ByteArrayInputStream(document));
+    }
+}
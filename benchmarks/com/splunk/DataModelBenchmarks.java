@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Measures loading a data model with 1,000 objects, about the size of the
+ * larger Common Information Model data models, from a canned response.
+ * {@code treeParse} only parses the description into DataModelObjects, as
+ * loading did before objects were parsed on demand, without the Atom response
+ * around it.
+ */
+@State(Scope.Benchmark)
+public class DataModelBenchmarks {
+    private static final String PATH = "/servicesNS/nobody/search/datamodel/model/large";
+
+    private String description;
+    private Service service;
+    private DataModel model;
+
+    @Setup
+    public void setUp() throws IOException {
+        JsonObject template = new JsonParser().parse(
+                new String(Fixtures.read("data/datamodels/model_with_multiple_types.json"), "UTF-8"))
+                .getAsJsonObject();
+        JsonArray objects = new JsonArray();
+        for (int i = 0; i < 250; i++) {
+            for (JsonElement element : template.getAsJsonArray("objects")) {
+                JsonObject object = new JsonParser().parse(element.toString()).getAsJsonObject();
+                object.add("objectName", new JsonPrimitive(object.get("objectName").getAsString() + i));
+                objects.add(object);
+            }
+        }
+        template.add("objects", objects);
+        description = template.toString();
+
+        final byte[] response = ("<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:s=\"http://dev.splunk.com/ns/rest\">" +
+                "<entry><title>large</title><link href=\"" + PATH + "\" rel=\"alternate\"/>" +
+                "<content type=\"text/xml\"><s:dict><s:key name=\"description\">" +
+                description.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;") +
+                "</s:key><s:key name=\"acceleration\">{\"enabled\": false}</s:key>" +
+                "</s:dict></content></entry></feed>").getBytes("UTF-8");
+        service = new Service("localhost", 8089) {
+            @Override
+            public ResponseMessage send(String path, RequestMessage request) {
+                return new ResponseMessage(200, new ByteArrayInputStream(response));
+            }
+        };
+        model = new DataModel(service, PATH);
+    }
+
+    @Benchmark
+    public DataModelObject loadAndGetObject() {
+        return new DataModel(service, PATH).getObject("search125");
+    }
+
+    @Benchmark
+    public int loadAndGetObjects() {
+        return new DataModel(service, PATH).getObjects().size();
+    }
+
+    @Benchmark
+    public int treeParse() {
+        int count = 0;
+        for (JsonElement object : new JsonParser().parse(description).getAsJsonObject().getAsJsonArray("objects")) {
+            DataModelObject.parse(model, object);
+            count++;
+        }
+        return count;
+    }
+}
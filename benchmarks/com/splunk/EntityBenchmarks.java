@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Measures the typed getters of an {@code Index} loaded from an Atom entry,
+ * and loading the entry into a new {@code Index}. Run with {@code -prof gc}
+ * to see the memory allocated per load.
+ */
+@State(Scope.Benchmark)
+public class EntityBenchmarks {
+    private static final String[][] FIELDS = {
+        {"assureUTF8", "0"}, {"blockSignSize", "0"}, {"coldPath", "$SPLUNK_DB/main/colddb"},
+        {"compressRawdata", "1"}, {"currentDBSizeMB", "1532"}, {"disabled", "0"},
+        {"enableOnlineBucketRepair", "1"}, {"enableRealtimeSearch", "1"},
+        {"frozenTimePeriodInSecs", "188697600"}, {"homePath", "$SPLUNK_DB/main/db"},
+        {"maxConcurrentOptimizes", "6"}, {"maxDataSize", "auto_high_volume"},
+        {"maxHotBuckets", "10"}, {"maxHotIdleSecs", "86400"}, {"maxHotSpanSecs", "7776000"},
+        {"maxMemMB", "5"}, {"maxMetaEntries", "1000000"}, {"maxRunningProcessGroups", "8"},
+        {"maxTime", "2014-03-12T19:13:07.000-07:00"}, {"maxTotalDataSizeMB", "500000"},
+        {"maxWarmDBCount", "300"}, {"minTime", "2012-11-06T09:00:01.000-08:00"},
+        {"quarantineFutureSecs", "2592000"}, {"quarantinePastSecs", "77760000"},
+        {"rawChunkSizeBytes", "131072"}, {"rotatePeriodInSecs", "60"},
+        {"serviceMetaPeriod", "25"}, {"sync", "0"}, {"throttleCheckPeriod", "15"},
+        {"totalEventCount", "18446744"}, {"thawedPath", "$SPLUNK_DB/main/thaweddb"},
+    };
+
+    private Service service;
+    private AtomEntry entry;
+    private Index index;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:s=\"http://dev.splunk.com/ns/rest\">");
+        xml.append("<title>indexes</title><entry><title>main</title><content type=\"text/xml\"><s:dict>");
+        for (String[] field : FIELDS) {
+            xml.append("<s:key name=\"").append(field[0]).append("\">").append(field[1]).append("</s:key>");
+        }
+        xml.append("</s:dict></content></entry></feed>");
+
+        service = new Service("localhost", 8089);
+        entry = AtomFeed.parseStream(new ByteArrayInputStream(xml.toString().getBytes("UTF-8"))).entries.get(0);
+        index = load();
+        getters();
+    }
+
+    @Benchmark
+    public Index load() {
+        Index loaded = new Index(service, "data/indexes/main");
+        loaded.load(entry);
+        return loaded;
+    }
+
+    // Ten typed getters, after the first calls have parsed their values.
+    @Benchmark
+    public long getters() {
+        long sum = 0;
+        sum += index.getCurrentDBSizeMB();
+        sum += index.getMaxTotalDataSizeMB();
+        sum += index.getTotalEventCount();
+        sum += index.getFrozenTimePeriodInSecs();
+        sum += index.getMaxHotBuckets();
+        sum += index.getMaxTime().getTime();
+        sum += index.getMinTime().getTime();
+        sum += index.isDisabled() ? 1 : 0;
+        sum += index.getEnableRealtimeSearch() ? 1 : 0;
+        sum += index.getRawChunkSizeBytes();
+        return sum;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures binning, grouping, and aggregating 100,000 events already in
+ * memory, on one thread and on four.
+ */
+@State(Scope.Benchmark)
+public class EventAggregationBenchmarks {
+    private static final int EVENTS = 100000;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private List<Event> events;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder csv = new StringBuilder("_time,host,sourcetype,bytes,clientip\n");
+        for (int i = 0; i < EVENTS; i++) {
+            csv.append("2014-03-13T").append(10 + i / 10000 % 14).append(':').append(10 + i % 50)
+               .append(":00.000-07:00,web-").append(i % 50).append(",access_").append(i % 7)
+               .append(',').append(i * 7919 % 100000).append(",10.0.").append(i % 13).append('.')
+               .append(i % 211).append('\n');
+        }
+        ResultsReaderCsv reader = new ResultsReaderCsv(
+                new ByteArrayInputStream(csv.toString().getBytes("UTF-8")));
+        events = new ArrayList<Event>(EVENTS);
+        for (Event event : reader) {
+            events.add(event);
+        }
+        reader.close();
+    }
+
+    @Benchmark
+    public List<Event> aggregate() {
+        return EventStream.of(events).parallel(threads)
+                .bin("_time", 1, TimeUnit.HOURS)
+                .groupBy("_time", "host", "sourcetype")
+                .count().sum("bytes").avg("bytes").max("bytes").dc("clientip")
+                .run();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads the test fixtures that the {@code benchmarks} target copies onto the
+ * benchmark classpath.
+ */
+public class Fixtures {
+    private Fixtures() {}
+
+    /**
+     * Returns the contents of a fixture, such as {@code results.xml} or
+     * {@code data/atom/atom_with_feed.xml}, relative to {@code tests/com/splunk}.
+     *
+     * @param path The path of the fixture.
+     * @return The bytes of the fixture.
+     * @throws IOException If the fixture cannot be read.
+     */
+    public static byte[] read(String path) throws IOException {
+        InputStream stream = Fixtures.class.getResourceAsStream(path);
+        if (stream == null) {
+            throw new IOException("No such fixture: " + path);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Measures reading a cached oneshot response, with and without parsing it.
+ */
+@State(Scope.Benchmark)
+public class ResultsCacheBenchmarks {
+    private File directory;
+    private ResultsCache cache;
+    private String key;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = File.createTempFile("results-cache", "");
+        directory.delete();
+        cache = new ResultsCache(directory, 1 << 24);
+
+        Service service = new Service("localhost", 8089);
+        service.setToken("Splunk 0123456789abcdef");
+        Args search = new Args();
+        search.put("search", "search index=_internal | head 100");
+        search.put("earliest_time", "1394668800");
+        search.put("latest_time", "1394755200");
+        key = cache.keyFor(service, JobCollection.REST_PATH, search);
+        read(cache.put(key, new ByteArrayInputStream(Fixtures.read("results.xml"))));
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.clear();
+        directory.delete();
+    }
+
+    private static long read(InputStream stream) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int n;
+        while ((n = stream.read(buffer)) != -1) {
+            total += n;
+        }
+        stream.close();
+        return total;
+    }
+
+    @Benchmark
+    public long get() throws IOException {
+        return read(cache.get(key));
+    }
+
+    @Benchmark
+    public void getEvents(Blackhole blackhole) throws IOException {
+        ResultsReaderXml reader = new ResultsReaderXml(cache.get(key));
+        Event event;
+        while ((event = reader.getNextEvent()) != null) {
+            blackhole.consume(event);
+        }
+        reader.close();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Measures reading every event of the same multivalued results with each of
+ * the results readers.
+ */
+@State(Scope.Benchmark)
+public class ResultsReaderBenchmarks {
+    private byte[] xml;
+    private byte[] json;
+    private byte[] csv;
+
+    @Setup
+    public void setUp() throws IOException {
+        xml = Fixtures.read("resultsMV.xml");
+        json = Fixtures.read("resultsMV5.json");
+        csv = Fixtures.read("resultsMV.csv");
+    }
+
+    private static int consume(ResultsReader reader, Blackhole blackhole) throws IOException {
+        int count = 0;
+        for (Event event : reader) {
+            blackhole.consume(event);
+            count++;
+        }
+        reader.close();
+        return count;
+    }
+
+    @Benchmark
+    public int xml(Blackhole blackhole) throws IOException {
+        return consume(new ResultsReaderXml(new ByteArrayInputStream(xml)), blackhole);
+    }
+
+    @Benchmark
+    public int json(Blackhole blackhole) throws IOException {
+        return consume(new ResultsReaderJson(new ByteArrayInputStream(json)), blackhole);
+    }
+
+    @Benchmark
+    public int csv(Blackhole blackhole) throws IOException {
+        return consume(new ResultsReaderCsv(new ByteArrayInputStream(csv)), blackhole);
+    }
+}
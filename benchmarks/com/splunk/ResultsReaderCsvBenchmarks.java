@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Measures {@code ResultsReaderCsv} on {@code results.csv} and on 10,000
+ * generated results with quoted fields and line breaks, with a new
+ * {@code Event} per result and with one reused {@code Event}.
+ * {@code ResultsReaderBenchmarks.csv} covers {@code resultsMV.csv}.
+ */
+@State(Scope.Benchmark)
+public class ResultsReaderCsvBenchmarks {
+    private byte[] results;
+    private byte[] generated;
+
+    @Setup
+    public void setUp() throws IOException {
+        results = Fixtures.read("results.csv");
+
+        StringBuilder csv = new StringBuilder(
+                "\"_cd\",\"_indextime\",\"_raw\",\"_si\",\"_time\",host,index,source,sourcetype\n");
+        for (int i = 0; i < 10000; i++) {
+            csv.append("\"115:").append(i).append("\",").append(1354063445 + i).append(",\"")
+               .append("10.0.0.").append(i % 256).append(" - admin [27/Nov/2012:16:44:22.581 -0800] ")
+               .append("\"\"GET /services/search/jobs/").append(i).append(" HTTP/1.1\"\" 200 1998 - - - 1ms")
+               .append("\",\"indexer-").append(i % 4).append("\n_internal\",")
+               .append("\"2012-11-27T16:44:22.581-08:00\",")
+               .append("\"web-").append(i % 20).append(".example.com\",")
+               .append("\"_internal\",\"/opt/splunk/var/log/splunk/splunkd_access.log\",")
+               .append("\"splunkd_access\"\n");
+        }
+        generated = csv.toString().getBytes("UTF-8");
+    }
+
+    private static void read(byte[] document, boolean reuseEvents, Blackhole blackhole) throws IOException {
+        ResultsReaderCsv reader = new ResultsReaderCsv(new ByteArrayInputStream(document));
+        reader.setReuseEvents(reuseEvents);
+        Event event;
+        while ((event = reader.getNextEvent()) != null) {
+            blackhole.consume(event);
+        }
+        reader.close();
+    }
+
+    @Benchmark
+    public void results(Blackhole blackhole) throws IOException {
+        read(results, false, blackhole);
+    }
+
+    @Benchmark
+    public void generated(Blackhole blackhole) throws IOException {
+        read(generated, false, blackhole);
+    }
+
+    @Benchmark
+    public void generatedReusingEvents(Blackhole blackhole) throws IOException {
+        read(generated, true, blackhole);
+    }
+}
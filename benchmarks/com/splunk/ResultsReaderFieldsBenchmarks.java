@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Measures reading 1,000 results with a 2 KB {@code _raw} each, with all
+ * fields and with only three fields.
+ */
+@State(Scope.Benchmark)
+public class ResultsReaderFieldsBenchmarks {
+    private static final int EVENTS = 1000;
+    private static final List<String> FIELDS = Arrays.asList("_time", "host", "status");
+
+    @Param({"xml", "json"})
+    public String format;
+
+    private byte[] document;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = format.equals("xml") ? xml() : json();
+    }
+
+    private static String raw(int i) {
+        StringBuilder raw = new StringBuilder();
+        while (raw.length() < 2000) {
+            raw.append("10.0.0.").append(i % 256).append(" - admin [27/Nov/2012:16:44:22.581 -0800] ")
+               .append("\"GET /services/messages?count=-1 HTTP/1.1\" 200 1998 - - - 1ms ");
+        }
+        return raw.toString();
+    }
+
+    private static byte[] xml() throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<results preview='0'>\n");
+        xml.append("<meta><fieldOrder><field>_raw</field><field>_time</field><field>host</field>")
+           .append("<field>source</field><field>status</field></fieldOrder></meta>\n");
+        for (int i = 0; i < EVENTS; i++) {
+            xml.append("<result offset='").append(i).append("'>")
+               .append("<field k='_raw'><v xml:space='preserve' trunc='0'>").append(raw(i)).append("</v></field>")
+               .append("<field k='_time'><value><text>2012-11-27T16:44:22.581-08:00</text></value></field>")
+               .append("<field k='host'><value><text>host").append(i % 10).append("</text></value></field>")
+               .append("<field k='source'><value><text>/var/log/splunk/splunkd_access.log</text></value></field>")
+               .append("<field k='status'><value><text>200</text></value></field>")
+               .append("</result>\n");
+        }
+        return xml.append("</results>\n").toString().getBytes("UTF-8");
+    }
+
+    private static byte[] json() throws IOException {
+        StringBuilder json = new StringBuilder("{\"preview\":false,\"init_offset\":0,\"results\":[");
+        for (int i = 0; i < EVENTS; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"_raw\":\"").append(raw(i).replace("\"", "\\\""))
+                .append("\",\"_time\":\"2012-11-27T16:44:22.581-08:00\",\"host\":\"host").append(i % 10)
+                .append("\",\"source\":\"/var/log/splunk/splunkd_access.log\",\"status\":\"200\"}");
+        }
+        return json.append("]}").toString().getBytes("UTF-8");
+    }
+
+    private void read(Collection<String> fields, Blackhole blackhole) throws IOException {
+        ByteArrayInputStream stream = new ByteArrayInputStream(document);
+        ResultsReader reader = format.equals("xml")
+                ? new ResultsReaderXml(stream, fields)
+                : new ResultsReaderJson(stream, fields);
+        Event event;
+        while ((event = reader.getNextEvent()) != null) {
+            blackhole.consume(event);
+        }
+        reader.close();
+    }
+
+    @Benchmark
+    public void allFields(Blackhole blackhole) throws IOException {
+        read(null, blackhole);
+    }
+
+    @Benchmark
+    public void threeFields(Blackhole blackhole) throws IOException {
+        read(FIELDS, blackhole);
+    }
+}
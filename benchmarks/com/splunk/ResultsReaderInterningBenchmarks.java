@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures buffering 10,000 JSON results with repeated values of
+ * {@code host}, {@code source}, {@code index}, and so on, without value
+ * interning (a limit of 0) and with it. The heap that the buffered events
+ * retain, which interning reduces, is not measured by JMH; compare it with a
+ * heap dump of the returned list.
+ */
+@State(Scope.Benchmark)
+public class ResultsReaderInterningBenchmarks {
+    private static final int EVENTS = 10000;
+
+    @Param({"0", "256"})
+    public int maxValuesPerField;
+
+    private byte[] document;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder json = new StringBuilder("{\"preview\":false,\"init_offset\":0,\"results\":[");
+        for (int i = 0; i < EVENTS; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"_time\":\"2014-03-13T00:").append(10 + i / 6000 % 50).append(':')
+                .append(10 + i / 100 % 50).append('.').append(100 + i % 100).append("-07:00\"")
+                .append(",\"host\":\"web-").append(i % 20).append(".example.com\"")
+                .append(",\"source\":\"/var/log/httpd/access_log.").append(i % 5).append('"')
+                .append(",\"sourcetype\":\"access_combined\"")
+                .append(",\"index\":\"").append(i % 3 == 0 ? "main" : "web").append('"')
+                .append(",\"splunk_server\":\"indexer-").append(i % 4).append('"')
+                .append(",\"bytes\":\"").append(i * 7919 % 100000).append("\"}");
+        }
+        document = json.append("]}").toString().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public List<Event> read() throws IOException {
+        ResultsReaderJson reader = new ResultsReaderJson(new ByteArrayInputStream(document));
+        reader.setValueInterning(maxValuesPerField);
+        List<Event> events = new ArrayList<Event>(EVENTS);
+        Event event;
+        while ((event = reader.getNextEvent()) != null) {
+            events.add(event);
+        }
+        reader.close();
+        return events;
+    }
+}
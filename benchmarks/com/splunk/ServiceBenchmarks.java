@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures building endpoint paths, which is done for every request. No
+ * connection to a server is made.
+ */
+@State(Scope.Benchmark)
+public class ServiceBenchmarks {
+    private Service service;
+    private Service defaultService;
+    private Args namespace;
+
+    @Setup
+    public void setUp() {
+        ServiceArgs serviceArgs = new ServiceArgs();
+        serviceArgs.setHost("localhost");
+        serviceArgs.setApp("search");
+        serviceArgs.setOwner("admin");
+        service = new Service(serviceArgs);
+        defaultService = new Service("localhost");
+
+        namespace = new Args();
+        namespace.put("app", "my app");
+        namespace.put("owner", "nobody");
+        namespace.put("sharing", "app");
+    }
+
+    @Benchmark
+    public String fullpathWithoutNamespace() {
+        return defaultService.fullpath("saved/searches", null);
+    }
+
+    @Benchmark
+    public String fullpath() {
+        return service.fullpath("saved/searches", null);
+    }
+
+    @Benchmark
+    public String fullpathWithNamespace() {
+        return service.fullpath("saved/searches", namespace);
+    }
+
+    // As when a collection creates its entities, each with its own namespace.
+    @Benchmark
+    public String fullpathWithNewNamespace() {
+        Args entityNamespace = new Args();
+        entityNamespace.put("app", "my app");
+        entityNamespace.put("owner", "nobody");
+        entityNamespace.put("sharing", "app");
+        return service.fullpath("saved/searches/my%20search", entityNamespace);
+    }
+}
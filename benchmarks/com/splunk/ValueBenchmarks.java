@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+
+/**
+ * Measures parsing the date formats that Splunk returns in entities.
+ */
+@State(Scope.Benchmark)
+public class ValueBenchmarks {
+    @Param({"2014-03-13T10:42:17.000-07:00", "Thu Mar 13 10:42:17 PDT 2014", "2014-03-13 10:42:17 -0700"})
+    public String date;
+
+    @Benchmark
+    public Date toDate() {
+        return Value.toDate(date);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk.modularinput;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.Writer;
+import java.util.Date;
+
+/**
+ * Measures writing events from a modular input, without the cost of the
+ * output stream itself.
+ */
+@State(Scope.Benchmark)
+public class EventWriterBenchmarks {
+    private static class NullWriter extends Writer {
+        @Override public void write(char[] buffer, int offset, int length) {}
+        @Override public void write(String string, int offset, int length) {}
+        @Override public void write(int c) {}
+        @Override public void flush() {}
+        @Override public void close() {}
+    }
+
+    private EventWriter writer;
+    private Event event;
+
+    @Setup
+    public void setUp() throws XMLStreamException {
+        writer = new EventWriter(new NullWriter(), new NullWriter());
+
+        event = new Event();
+        event.setStanza("random_numbers://bench");
+        event.setTime(new Date(1394732537000L));
+        event.setData("number=42 status=200 message=\"request served\" bytes=5120");
+        event.setHost("web-01");
+        event.setIndex("main");
+        event.setSource("random_numbers");
+        event.setSourceType("random_numbers");
+    }
+
+    @Benchmark
+    public void writeEvent() throws MalformedDataException {
+        writer.writeEvent(event);
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code AccelerationOrchestrator} class builds the local acceleration of
+ * several data model objects, as {@link DataModelObject#createLocalAccelerationJob}
+ * does for one, without running all their jobs at once.
+ * <p>
+ * At most {@link #setConcurrency} acceleration jobs run at a time; the others
+ * wait for one to finish. Each object can be given its own earliest time, so
+ * that objects whose pivots only look at recent events are not accelerated
+ * over the whole window of the others. Jobs are polled for their progress,
+ * and an object whose job fails, or cannot be created, is tried again up to
+ * {@link #setMaxAttempts} times in all. A poll that fails does not fail the
+ * job, unless {@link #setMaxPollErrors} polls in a row do; the job is then
+ * cancelled before it is tried again.
+ * <p>
+ * For example, to accelerate every object of a data model over the last week,
+ * two at a time, and use the results in pivots:
+ * <pre>
+ * AccelerationOrchestrator orchestrator = new AccelerationOrchestrator(model.getObjects());
+ * orchestrator.setConcurrency(2);
+ * orchestrator.setEarliestTime("-7d");
+ * for (AccelerationOrchestrator.Task task : orchestrator.run()) {
+ *     if (task.getState() == AccelerationOrchestrator.State.DONE) {
+ *         // task.getObject().createPivotSpecification().setAccelerationJob(task.getJob())
+ *     }
+ * }
+ * </pre>
+ * As with {@code createLocalAccelerationJob}, the caller owns the finished
+ * jobs, whose tsidx namespaces last as long as the jobs do.
+ */
+public class AccelerationOrchestrator {
+    /**
+     * The state of the acceleration of one data model object.
+     */
+    public enum State {
+        /** Waiting for a job to be started, either for the first time or again. */
+        PENDING,
+        /** Its job is running. */
+        RUNNING,
+        /** Its job has finished. */
+        DONE,
+        /** Every attempt failed. */
+        FAILED,
+        /** The orchestrator was cancelled before its job finished. */
+        CANCELLED
+    }
+
+    /**
+     * Receives progress from an {@code AccelerationOrchestrator}.
+     */
+    public interface Listener {
+        /**
+         * Called on the thread running the orchestrator each time a task's
+         * job has been polled or the task has changed state.
+         *
+         * @param task The task.
+         */
+        void onProgress(Task task);
+    }
+
+    /**
+     * The acceleration of one data model object.
+     */
+    public static class Task {
+        private final DataModelObject object;
+        private volatile State state = State.PENDING;
+        private volatile Job job = null;
+        private volatile int attempts = 0;
+        private volatile Exception lastError = null;
+        private volatile float doneProgress = 0;
+        private volatile int eventCount = 0;
+        private volatile float runDuration = 0;
+        private int pollErrors = 0;
+
+        Task(DataModelObject object) {
+            this.object = object;
+        }
+
+        /**
+         * @return the data model object being accelerated.
+         */
+        public DataModelObject getObject() {
+            return object;
+        }
+
+        /**
+         * @return the state of this task.
+         */
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return the current or last acceleration job, or {@code null} if none
+         * has been created yet.
+         */
+        public Job getJob() {
+            return job;
+        }
+
+        /**
+         * @return the number of jobs started, or attempted, for this object.
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * @return the error of the last failed attempt, or {@code null}.
+         */
+        public Exception getLastError() {
+            return lastError;
+        }
+
+        /**
+         * @return the progress of the current job, from 0 to 1.
+         */
+        public float getDoneProgress() {
+            return doneProgress;
+        }
+
+        /**
+         * @return the number of events the current job has summarized.
+         */
+        public int getEventCount() {
+            return eventCount;
+        }
+
+        /**
+         * @return how long the current job has run, in seconds.
+         */
+        public float getRunDuration() {
+            return runDuration;
+        }
+
+        /**
+         * @return the number of events the current job has summarized per
+         * second of its run time.
+         */
+        public double getEventsPerSecond() {
+            float duration = runDuration;
+            return duration > 0 ? eventCount / duration : 0;
+        }
+    }
+
+    private final List<Task> tasks = new ArrayList<Task>();
+    private int concurrency = 4;
+    private int maxAttempts = 3;
+    private int maxPollErrors = 5;
+    private long pollInterval = 1000;
+    private String earliestTime = null;
+    private final Map<String, String> earliestTimes = new HashMap<String, String>();
+    private Listener listener = null;
+
+    // A lock rather than a monitor, so that waiting between polls does not
+    // pin a virtual thread to its carrier thread.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition cancellation = lock.newCondition();
+    private boolean started = false;
+    private volatile boolean cancelled = false;
+    private volatile long startTime = 0;
+    private volatile long endTime = 0;
+
+    /**
+     * Creates an orchestrator for the given data model objects.
+     *
+     * @param objects The data model objects to accelerate.
+     */
+    public AccelerationOrchestrator(Collection<DataModelObject> objects) {
+        for (DataModelObject object : objects) {
+            tasks.add(new Task(object));
+        }
+    }
+
+    /**
+     * Sets the number of acceleration jobs that may run at once. The default
+     * is 4.
+     *
+     * @param concurrency The maximum number of concurrent jobs.
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets how many times in all a job is started for an object before the
+     * object is given up on. The default is 3.
+     *
+     * @param maxAttempts The maximum number of attempts per object.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1.");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Sets how many polls of a job in a row may fail, for example with a 503
+     * status or a timeout, before the job is cancelled and the attempt counts
+     * as failed. Until then, the job is assumed to still be running and is
+     * polled again. The default is 5.
+     *
+     * @param maxPollErrors The maximum number of consecutive poll errors.
+     */
+    public void setMaxPollErrors(int maxPollErrors) {
+        if (maxPollErrors < 1) {
+            throw new IllegalArgumentException("maxPollErrors must be at least 1.");
+        }
+        this.maxPollErrors = maxPollErrors;
+    }
+
+    /**
+     * Sets how long to wait between polls of the running jobs. An object whose
+     * attempt failed is retried after the next poll at the earliest. The
+     * default is 1 second.
+     *
+     * @param milliseconds The polling interval.
+     */
+    public void setPollInterval(long milliseconds) {
+        if (milliseconds < 0) {
+            throw new IllegalArgumentException("The poll interval must not be negative.");
+        }
+        this.pollInterval = milliseconds;
+    }
+
+    /**
+     * Sets the earliest time to accelerate from for objects that have no
+     * earliest time of their own. By default, there is none, and the
+     * acceleration job covers all time.
+     *
+     * @param earliestTime A time modifier, such as "-2w", or {@code null}.
+     */
+    public void setEarliestTime(String earliestTime) {
+        this.earliestTime = earliestTime;
+    }
+
+    /**
+     * Sets the earliest time to accelerate one object from.
+     *
+     * @param objectName The name of the data model object.
+     * @param earliestTime A time modifier, such as "-24h".
+     */
+    public void setEarliestTime(String objectName, String earliestTime) {
+        this.earliestTimes.put(objectName, earliestTime);
+    }
+
+    /**
+     * Sets a listener to receive the progress of each task.
+     *
+     * @param listener The listener, or {@code null}.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the tasks of this orchestrator, one per data model object, in the
+     * order the objects were given.
+     */
+    public List<Task> getTasks() {
+        return Collections.unmodifiableList(tasks);
+    }
+
+    /**
+     * @return the number of events summarized so far by the finished and
+     * running jobs.
+     */
+    public long getEventCount() {
+        long count = 0;
+        for (Task task : tasks) {
+            if (task.state == State.DONE || task.state == State.RUNNING) {
+                count += task.eventCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of events summarized per second since {@link #run}
+     * started, until it returned.
+     */
+    public double getEventsPerSecond() {
+        long start = startTime;
+        if (start == 0) {
+            return 0;
+        }
+        long end = endTime != 0 ? endTime : System.currentTimeMillis();
+        return end > start ? getEventCount() * 1000.0 / (end - start) : 0;
+    }
+
+    /**
+     * Runs the acceleration jobs, and returns when every task is done or
+     * failed, or the orchestrator is cancelled.
+     *
+     * @return The tasks, one per data model object.
+     * @throws InterruptedException If the calling thread is interrupted. The
+     * running jobs are cancelled.
+     */
+    public List<Task> run() throws InterruptedException {
+        lock.lock();
+        try {
+            if (started) {
+                throw new IllegalStateException("The orchestrator has already been run.");
+            }
+            started = true;
+        } finally {
+            lock.unlock();
+        }
+        startTime = System.currentTimeMillis();
+
+        LinkedList<Task> pending = new LinkedList<Task>(tasks);
+        List<Task> retries = new ArrayList<Task>();
+        List<Task> running = new ArrayList<Task>();
+        boolean finished = false;
+        try {
+            while (!cancelled && (!pending.isEmpty() || !retries.isEmpty() || !running.isEmpty())) {
+                while (running.size() < concurrency && !pending.isEmpty()) {
+                    Task task = pending.removeFirst();
+                    if (start(task)) {
+                        running.add(task);
+                    } else if (task.state == State.PENDING) {
+                        retries.add(task);
+                    }
+                }
+
+                lock.lock();
+                try {
+                    if (!cancelled) {
+                        cancellation.await(Math.max(pollInterval, 1), TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                for (Iterator<Task> it = running.iterator(); it.hasNext(); ) {
+                    Task task = it.next();
+                    if (poll(task)) {
+                        it.remove();
+                        if (task.state == State.PENDING) {
+                            retries.add(task);
+                        }
+                    }
+                }
+                pending.addAll(retries);
+                retries.clear();
+            }
+            finished = true;
+        } finally {
+            if (!finished || cancelled) {
+                for (Task task : tasks) {
+                    if (task.state == State.RUNNING) {
+                        cancelJob(task.job);
+                    }
+                    if (task.state == State.RUNNING || task.state == State.PENDING) {
+                        task.state = State.CANCELLED;
+                    }
+                }
+            }
+            endTime = System.currentTimeMillis();
+        }
+        return getTasks();
+    }
+
+    /**
+     * Stops {@link #run} from starting more jobs, cancels the running ones,
+     * and makes {@code run} return. May be called from any thread.
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            cancelled = true;
+            cancellation.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns whether a job was started.
+    private boolean start(Task task) {
+        task.attempts++;
+        String earliest = earliestTimes.containsKey(task.object.getName())
+                ? earliestTimes.get(task.object.getName())
+                : earliestTime;
+        try {
+            task.job = task.object.createLocalAccelerationJob(earliest);
+        } catch (RuntimeException e) {
+            fail(task, e);
+            return false;
+        }
+        task.state = State.RUNNING;
+        task.pollErrors = 0;
+        task.doneProgress = 0;
+        task.eventCount = 0;
+        task.runDuration = 0;
+        notifyListener(task);
+        return true;
+    }
+
+    // Returns whether the task's job is no longer running.
+    private boolean poll(Task task) {
+        Job job = task.job;
+        try {
+            job.refresh();
+        } catch (RuntimeException e) {
+            // The job may well still be running, so it is polled again rather
+            // than started a second time, unless polling keeps failing.
+            if (++task.pollErrors < maxPollErrors) {
+                return false;
+            }
+            cancelJob(job);
+            fail(task, e);
+            return true;
+        }
+        task.pollErrors = 0;
+        try {
+            if (!job.isReady()) {
+                notifyListener(task);
+                return false;
+            }
+            task.doneProgress = job.getDoneProgress();
+            task.eventCount = job.getEventCount();
+            task.runDuration = job.getRunDuration();
+            if (job.isFailed()) {
+                cancelJob(job);
+                fail(task, new RuntimeException("Acceleration job " + job.getSid() + " for " +
+                        task.object.getName() + " failed."));
+                return true;
+            }
+            if (job.isDone()) {
+                task.state = State.DONE;
+                notifyListener(task);
+                return true;
+            }
+        } catch (RuntimeException e) {
+            cancelJob(job);
+            fail(task, e);
+            return true;
+        }
+        notifyListener(task);
+        return false;
+    }
+
+    // Cancels a job that is given up on, before another is started in its place.
+    private static void cancelJob(Job job) {
+        try {
+            job.cancel();
+        } catch (RuntimeException e) {
+            // The job is abandoned either way.
+        }
+    }
+
+    private void fail(Task task, Exception e) {
+        task.lastError = e;
+        task.state = task.attempts < maxAttempts ? State.PENDING : State.FAILED;
+        notifyListener(task);
+    }
+
+    private void notifyListener(Task task) {
+        Listener l = listener;
+        if (l != null) {
+            l.onProgress(task);
+        }
+    }
+}
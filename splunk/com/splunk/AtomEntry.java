@@ -19,6 +19,7 @@ package com.splunk;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -33,6 +34,13 @@ public class AtomEntry extends AtomObject {
     /** The value of the Atom entry's {@code <content>} element. */
     public Record content;
 
+    // Content keys repeat across every entry of every feed, so all records
+    // share one String instance per key name. The table is bounded in case
+    // an endpoint returns an open-ended set of key names.
+    private static final int MAX_INTERNED_KEYS = 8192;
+    private static final ConcurrentHashMap<String, String> internedKeys =
+        new ConcurrentHashMap<String, String>();
+
     /**
      * Creates a new {@code AtomEntry} instance.
      *
@@ -125,6 +133,22 @@ public class AtomEntry extends AtomObject {
         return content;
     }
 
+    /**
+     * Returns the shared instance of a content key name.
+     *
+     * @param key The key name as parsed.
+     * @return An equal, shared {@code String}, or {@code key} itself if the
+     *         table of shared keys is full.
+     */
+    static String internKey(String key) {
+        if (key == null) return null;
+        String shared = internedKeys.get(key);
+        if (shared != null) return shared;
+        if (internedKeys.size() >= MAX_INTERNED_KEYS) return key;
+        shared = internedKeys.putIfAbsent(key, key);
+        return shared == null ? key : shared;
+    }
+
     /**
      * Parses a {@code <dict>} content element and returns a {@code Record}
      * object containing the parsed values.
@@ -139,7 +163,7 @@ public class AtomEntry extends AtomObject {
 
         scan(reader);
         while (isStartElement(reader, "key")) {
-            String key = reader.getAttributeValue(null, "name");
+            String key = internKey(reader.getAttributeValue(null, "name"));
             Object value = parseValue(reader);
             // Null values, the result of empty elements, are parsed as though
             // they don't exist, making it easier for the client framework to
@@ -52,11 +52,9 @@ public class AtomObject {
      *         first element of the document.
      */
     protected static XMLStreamReader createReader(InputStream input) {
-        XMLInputFactory factory = XMLInputFactory.newInstance();
-
-        // The Atom parser assumes that all adjacent text nodes are coalesced
-        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
-        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+        // The shared factory coalesces adjacent text nodes, which the Atom
+        // parser relies on.
+        XMLInputFactory factory = Xml.getInputFactory();
 
         XMLStreamReader reader;
         try {
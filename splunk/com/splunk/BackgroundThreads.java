@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The {@code BackgroundThreads} class creates the threads that the SDK runs
+ * its own background work on, such as concurrent input refreshes, pivots,
+ * result fetches, and bulk updates, real-time subscriptions, cluster health
+ * checks, and the stanzas and writer of a modular input.
+ * <p>
+ * By default, these are daemon platform threads. Set a thread factory to
+ * create them some other way. For example, on Java 21 and later, with the
+ * SDK built for that version (see {@code ant dist-jdk21}), the SDK's
+ * background work can be run on virtual threads with:
+ * <pre>
+ * BackgroundThreads.setThreadFactory(Thread.ofVirtual().factory());
+ * </pre>
+ * The factory only affects threads created after it is set.
+ */
+public final class BackgroundThreads {
+    private static volatile ThreadFactory threadFactory = null;
+
+    private BackgroundThreads() {}
+
+    /**
+     * Returns the factory that creates the SDK's background threads.
+     *
+     * @return The thread factory, or {@code null} if daemon platform threads
+     * are created.
+     */
+    public static ThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
+    /**
+     * Sets the factory that creates the SDK's background threads. The SDK
+     * names the threads it gets from the factory after their work.
+     *
+     * @param factory The thread factory, or {@code null} to create daemon
+     * platform threads.
+     */
+    public static void setThreadFactory(ThreadFactory factory) {
+        threadFactory = factory;
+    }
+
+    /**
+     * Creates an unstarted background thread.
+     *
+     * @param runnable The work of the thread.
+     * @param name The name of the thread.
+     * @return The thread.
+     */
+    public static Thread newThread(Runnable runnable, String name) {
+        ThreadFactory factory = threadFactory;
+        Thread thread;
+        if (factory == null) {
+            thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+        } else {
+            thread = factory.newThread(runnable);
+            thread.setName(name);
+        }
+        return thread;
+    }
+
+    /**
+     * Returns a factory, for the SDK's executors, of background threads with
+     * the given name.
+     */
+    static ThreadFactory named(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                return BackgroundThreads.newThread(runnable, name);
+            }
+        };
+    }
+}
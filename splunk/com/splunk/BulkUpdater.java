@@ -0,0 +1,403 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code BulkUpdater} class updates many entities, such as indexes, saved
+ * searches, or inputs, with several requests at a time instead of one
+ * {@link Entity#update} after another.
+ * <p>
+ * Updates are queued, and only sent when {@link #flush} is called. Repeated
+ * updates of the same entity, or of entities with the same path, are merged
+ * into one request, in which later arguments take precedence over earlier
+ * ones. At most {@link #setConcurrency} requests are sent at a time. After an
+ * entity has been updated, it is only refreshed if {@link #setRefresh} was
+ * called; otherwise it is marked out of date, as by {@code Entity.update},
+ * and is read again the next time one of its values is asked for.
+ * <p>
+ * For example, to change the retention of every index:
+ * <pre>
+ * BulkUpdater updater = new BulkUpdater();
+ * updater.setConcurrency(8);
+ * for (Index index : service.getIndexes().values()) {
+ *     index.setFrozenTimePeriodInSecs(7776000);
+ *     updater.update(index);
+ * }
+ * BulkUpdater.Summary summary = updater.flush();
+ * for (BulkUpdater.Result result : summary.getFailures()) {
+ *     System.out.println(result.getPath() + ": " + result.getError().getMessage());
+ * }
+ * </pre>
+ * An entity must not be used by other threads between being queued and the
+ * end of the {@code flush} that sends it, since it is updated on one of the
+ * updater's threads.
+ */
+public class BulkUpdater {
+    /**
+     * The outcome of updating one entity.
+     */
+    public static class Result {
+        private final Entity entity;
+        private final String path;
+        private final int updateCount;
+        private RuntimeException error = null;
+        private long latency = 0;
+
+        Result(Entity entity, String path, int updateCount) {
+            this.entity = entity;
+            this.path = path;
+            this.updateCount = updateCount;
+        }
+
+        /**
+         * @return the entity that was updated. If entities with the same path
+         * were queued, this is the first of them.
+         */
+        public Entity getEntity() {
+            return entity;
+        }
+
+        /**
+         * @return the path of the entity.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the number of queued updates that were merged into this
+         * request.
+         */
+        public int getUpdateCount() {
+            return updateCount;
+        }
+
+        /**
+         * @return whether the entity was updated and, if asked for, refreshed.
+         */
+        public boolean isSucceeded() {
+            return error == null;
+        }
+
+        /**
+         * @return the error that the update or the refresh failed with, or
+         * {@code null}.
+         */
+        public RuntimeException getError() {
+            return error;
+        }
+
+        /**
+         * @return how long the update, and the refresh if asked for, took, in
+         * milliseconds.
+         */
+        public long getLatency() {
+            return latency;
+        }
+    }
+
+    /**
+     * The outcome of a {@link #flush}.
+     */
+    public static class Summary {
+        private final List<Result> results;
+        private final long elapsedTime;
+        private final long[] latencies;
+
+        Summary(List<Result> results, long elapsedTime) {
+            this.results = Collections.unmodifiableList(results);
+            this.elapsedTime = elapsedTime;
+            this.latencies = new long[results.size()];
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = results.get(i).latency;
+            }
+            Arrays.sort(latencies);
+        }
+
+        /**
+         * @return the result of each request, in the order the entities were
+         * first queued.
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * @return the results of the requests that failed.
+         */
+        public List<Result> getFailures() {
+            List<Result> failures = new ArrayList<Result>();
+            for (Result result : results) {
+                if (!result.isSucceeded()) {
+                    failures.add(result);
+                }
+            }
+            return failures;
+        }
+
+        /**
+         * @return the number of entities that were updated.
+         */
+        public int getSucceededCount() {
+            return results.size() - getFailedCount();
+        }
+
+        /**
+         * @return the number of entities that failed to be updated.
+         */
+        public int getFailedCount() {
+            int count = 0;
+            for (Result result : results) {
+                if (!result.isSucceeded()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return the number of queued updates, which is more than the number
+         * of requests if some were merged.
+         */
+        public int getUpdateCount() {
+            int count = 0;
+            for (Result result : results) {
+                count += result.updateCount;
+            }
+            return count;
+        }
+
+        /**
+         * @return how long the flush took, in milliseconds.
+         */
+        public long getElapsedTime() {
+            return elapsedTime;
+        }
+
+        /**
+         * @return the mean latency of the requests, in milliseconds.
+         */
+        public long getMeanLatency() {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            long total = 0;
+            for (long latency : latencies) {
+                total += latency;
+            }
+            return total / latencies.length;
+        }
+
+        /**
+         * @return the highest latency of the requests, in milliseconds.
+         */
+        public long getMaxLatency() {
+            return latencies.length == 0 ? 0 : latencies[latencies.length - 1];
+        }
+
+        /**
+         * Returns a percentile of the latencies of the requests.
+         *
+         * @param percentile The percentile, from 0 to 100, such as 95.
+         * @return The latency, in milliseconds, that the given percentage of
+         * requests took at most.
+         */
+        public long getLatencyPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("The percentile must be between 0 and 100.");
+            }
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int rank = (int)Math.ceil(percentile / 100 * latencies.length);
+            return latencies[Math.max(rank, 1) - 1];
+        }
+    }
+
+    // The updates queued for one path. Each one's values are merged into
+    // one map in the order they were queued, so the latest value of each
+    // argument wins.
+    private static class Pending {
+        final Entity entity;
+        final Map<String, Object> values = new LinkedHashMap<String, Object>();
+        final List<Entity> others = new ArrayList<Entity>();
+        int updateCount = 0;
+
+        Pending(Entity entity) {
+            this.entity = entity;
+        }
+    }
+
+    private int concurrency = 4;
+    private boolean refresh = false;
+    // The queued updates by path, in the order the paths were first queued.
+    private Map<String, Pending> pending = new LinkedHashMap<String, Pending>();
+
+    /**
+     * Sets the maximum number of requests that are sent at a time. The
+     * default is 4.
+     *
+     * @param concurrency The number of requests.
+     */
+    public synchronized void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The concurrency must be at least 1.");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets whether each entity is refreshed after it has been updated, on the
+     * updater's threads, so that reading its values afterwards does not send
+     * a request. The default is {@code false}.
+     *
+     * @param refresh Whether to refresh the entities.
+     */
+    public synchronized void setRefresh(boolean refresh) {
+        this.refresh = refresh;
+    }
+
+    /**
+     * Queues an update of an entity with the values previously set using its
+     * setter methods.
+     *
+     * @param entity The entity.
+     */
+    @SuppressWarnings("unchecked")
+    public void update(Entity entity) {
+        update(entity, Collections.EMPTY_MAP);
+    }
+
+    /**
+     * Queues an update of an entity with the values previously set using its
+     * setter methods and the given arguments, which take precedence over
+     * them, as with {@link Entity#update(Map)}.
+     * <p>
+     * The values are taken from the entity when it is queued, and merged
+     * with those of the updates already queued for its path, so that values
+     * queued later take precedence over values queued earlier, whichever
+     * instance they were set on. The first instance queued for a path sends
+     * the request; any others are marked out of date once it is sent.
+     *
+     * @param entity The entity.
+     * @param args The arguments to update.
+     */
+    public synchronized void update(Entity entity, Map<String, Object> args) {
+        String path = entity.actionPath("edit");
+        Pending queued = pending.get(path);
+        if (queued == null) {
+            queued = new Pending(entity);
+            pending.put(path, queued);
+        } else if (queued.entity != entity && !queued.others.contains(entity)) {
+            queued.others.add(entity);
+        }
+        queued.values.putAll(entity.toUpdate);
+        entity.toUpdate.clear();
+        queued.values.putAll(args);
+        queued.updateCount++;
+    }
+
+    /**
+     * @return the number of requests that the next {@link #flush} will send.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Sends the queued updates and waits for them to finish. Updates queued
+     * while a flush is running are sent by the next one.
+     *
+     * @return The results of the requests.
+     */
+    public Summary flush() {
+        final List<Pending> batch;
+        final boolean refresh;
+        int threadCount;
+        synchronized (this) {
+            batch = new ArrayList<Pending>(pending.values());
+            pending = new LinkedHashMap<String, Pending>();
+            refresh = this.refresh;
+            threadCount = Math.min(concurrency, batch.size());
+        }
+
+        long start = System.currentTimeMillis();
+        List<Result> results = new ArrayList<Result>(batch.size());
+        if (batch.isEmpty()) {
+            return new Summary(results, 0);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount,
+                BackgroundThreads.named("splunk-bulk-update"));
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>(batch.size());
+            for (final Pending queued : batch) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    public Result call() {
+                        return send(queued, refresh);
+                    }
+                }));
+            }
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Summary(results, System.currentTimeMillis() - start);
+    }
+
+    private static Result send(Pending queued, boolean refresh) {
+        Entity entity = queued.entity;
+        Result result = new Result(entity, entity.actionPath("edit"), queued.updateCount);
+        long start = System.currentTimeMillis();
+        try {
+            // The merged values are sent as if they had all been set on the
+            // entity, so that Entity subclasses still add the arguments that
+            // their endpoints require in their own update methods.
+            entity.toUpdate.putAll(queued.values);
+            entity.update();
+            for (Entity other : queued.others) {
+                other.invalidate();
+            }
+            if (refresh) {
+                entity.refresh();
+            }
+        } catch (RuntimeException e) {
+            result.error = e;
+        }
+        result.latency = System.currentTimeMillis() - start;
+        return result;
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code ClusterBalancer} class spreads the requests of an
+ * {@link HttpService} over the members of a search head cluster, instead of
+ * sending them all to the service's own host and port.
+ * <p>
+ * Each request goes to the less busy of two members picked at random, counting
+ * the requests each member has outstanding ("power of two choices"). Requests
+ * about a search job, such as polling it or reading its results, go to the
+ * member that created the job, as long as it is healthy. A member is ejected
+ * after {@link #setEjectAfter} consecutive requests to it fail to connect or
+ * time out, and, while health checks are enabled, as soon as a periodic
+ * request to its {@code server/info} endpoint fails or returns a 5xx status.
+ * An ejected member is let back in when a health check succeeds. If every
+ * member has been ejected, requests go to all of them.
+ * <p>
+ * A request that cannot connect to a member is sent to another one, since it
+ * never reached the first.
+ * <p>
+ * For example:
+ * <pre>
+ * ClusterBalancer balancer = new ClusterBalancer();
+ * balancer.addMember("sh1.example.com", 8089);
+ * balancer.addMember("sh2.example.com", 8089);
+ * balancer.addMember("sh3.example.com", 8089);
+ * Service service = new Service("sh1.example.com", 8089);
+ * service.setClusterBalancer(balancer);
+ * service.login("admin", "changeme");
+ * </pre>
+ * Since each member issues its own session keys, a {@link Service} with a
+ * balancer logs in to each member the first time it sends it a request.
+ * Call {@link #close} to stop the health checks.
+ */
+public class ClusterBalancer {
+    /**
+     * A member of the cluster.
+     */
+    public static class Member {
+        private final ClusterBalancer balancer;
+        private final String host;
+        private final int port;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private int failures = 0; // Guarded by this
+
+        Member(ClusterBalancer balancer, String host, int port) {
+            this.balancer = balancer;
+            this.host = host;
+            this.port = port;
+        }
+
+        /**
+         * @return the host name of this member.
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return the port number of this member.
+         */
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * @return whether requests are sent to this member.
+         */
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        /**
+         * @return the number of requests sent to this member that have not
+         * been answered yet.
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        @Override public String toString() {
+            return host + ":" + port;
+        }
+
+        // Sends the requests about the job with the given sid to this member.
+        void bind(String sid) {
+            balancer.bind(sid, this);
+        }
+
+        void started() {
+            outstanding.incrementAndGet();
+        }
+
+        void finished(boolean unreachable) {
+            outstanding.decrementAndGet();
+            synchronized (this) {
+                if (!unreachable) {
+                    failures = 0;
+                    healthy = true;
+                } else if (++failures >= balancer.ejectAfter) {
+                    healthy = false;
+                }
+            }
+        }
+
+        void checked(boolean ok) {
+            synchronized (this) {
+                failures = 0;
+                healthy = ok;
+            }
+        }
+    }
+
+    private static final String HEALTH_CHECK_PATH = "/services/server/info";
+    private static final int MAX_AFFINITIES = 10000;
+
+    private final List<Member> members = new CopyOnWriteArrayList<Member>();
+    private final Random random = new Random();
+    private volatile int ejectAfter = 2;
+    private volatile long healthCheckInterval = 5000;
+    private volatile int healthCheckTimeout = 2000;
+    private ScheduledExecutorService healthChecks = null;
+
+    // The member that created each job, in access order.
+    private final Map<String, Member> affinities = new LinkedHashMap<String, Member>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Member> eldest) {
+            return size() > MAX_AFFINITIES;
+        }
+    };
+
+    /**
+     * Adds a member to the cluster.
+     *
+     * @param host The host name of the member.
+     * @param port The management port of the member.
+     * @return The new member.
+     */
+    public Member addMember(String host, int port) {
+        Member member = new Member(this, host, port);
+        members.add(member);
+        return member;
+    }
+
+    /**
+     * @return the members of the cluster, in the order they were added.
+     */
+    public List<Member> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    /**
+     * Sets how many consecutive requests to a member must fail to connect or
+     * time out before it is ejected. The default is 2.
+     *
+     * @param failures The number of failures.
+     */
+    public void setEjectAfter(int failures) {
+        if (failures < 1) {
+            throw new IllegalArgumentException("The number of failures must be at least 1.");
+        }
+        this.ejectAfter = failures;
+    }
+
+    /**
+     * Sets how often the members are checked. The default is every 5 seconds.
+     * A value of 0 disables health checks. Takes effect the next time the
+     * balancer is set on a service.
+     *
+     * @param milliseconds The health check interval.
+     */
+    public void setHealthCheckInterval(long milliseconds) {
+        if (milliseconds < 0) {
+            throw new IllegalArgumentException("The health check interval must not be negative.");
+        }
+        this.healthCheckInterval = milliseconds;
+    }
+
+    /**
+     * Sets how long a health check waits for a member to connect and to
+     * answer before the member is ejected. The default is 2 seconds.
+     *
+     * @param milliseconds The health check timeout.
+     */
+    public void setHealthCheckTimeout(int milliseconds) {
+        if (milliseconds < 1) {
+            throw new IllegalArgumentException("The health check timeout must be positive.");
+        }
+        this.healthCheckTimeout = milliseconds;
+    }
+
+    /**
+     * Returns the member that requests about a search job are sent to.
+     *
+     * @param sid The search ID of the job.
+     * @return The member that created the job, or {@code null} if it is not
+     * known.
+     */
+    public Member getJobMember(String sid) {
+        synchronized (affinities) {
+            return affinities.get(sid);
+        }
+    }
+
+    /**
+     * Stops the health checks.
+     */
+    public synchronized void close() {
+        if (healthChecks != null) {
+            healthChecks.shutdownNow();
+            healthChecks = null;
+        }
+    }
+
+    synchronized void startHealthChecks(final String scheme) {
+        if (healthChecks != null || healthCheckInterval == 0) {
+            return;
+        }
+        healthChecks = Executors.newSingleThreadScheduledExecutor(BackgroundThreads.named("splunk-health-check"));
+        healthChecks.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                checkHealth(scheme);
+            }
+        }, healthCheckInterval, healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    // Checks every member once.
+    void checkHealth(String scheme) {
+        for (Member member : members) {
+            HttpService probe = new HttpService(member.host, member.port, scheme);
+            probe.connectTimeout = healthCheckTimeout;
+            probe.readTimeout = healthCheckTimeout;
+            boolean ok;
+            try {
+                probe.get(HEALTH_CHECK_PATH).getContent().close();
+                ok = true;
+            } catch (HttpException e) {
+                // An unauthenticated request is still an answer.
+                ok = e.getStatus() < 500;
+            } catch (IOException e) {
+                ok = true;
+            } catch (RuntimeException e) {
+                ok = false;
+            }
+            member.checked(ok);
+        }
+    }
+
+    void bind(String sid, Member member) {
+        synchronized (affinities) {
+            affinities.put(sid, member);
+        }
+    }
+
+    /**
+     * Picks the member to send a request to.
+     *
+     * @param path The request path.
+     * @param exclude Members not to pick unless there are no others, or
+     * {@code null}.
+     */
+    Member select(String path, List<Member> exclude) {
+        if (members.isEmpty()) {
+            throw new IllegalStateException("The cluster balancer has no members.");
+        }
+
+        String sid = sidOf(path);
+        if (sid != null) {
+            Member owner = getJobMember(sid);
+            if (owner != null && owner.healthy && (exclude == null || !exclude.contains(owner))) {
+                return owner;
+            }
+        }
+
+        List<Member> candidates = new ArrayList<Member>(members.size());
+        for (Member member : members) {
+            if (member.healthy && (exclude == null || !exclude.contains(member))) {
+                candidates.add(member);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (Member member : members) {
+                if (exclude == null || !exclude.contains(member)) {
+                    candidates.add(member);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        int count = candidates.size();
+        if (count == 1) {
+            return candidates.get(0);
+        }
+        int first = random.nextInt(count);
+        int second = random.nextInt(count - 1);
+        if (second >= first) {
+            second++;
+        }
+        Member a = candidates.get(first);
+        Member b = candidates.get(second);
+        return b.getOutstanding() < a.getOutstanding() ? b : a;
+    }
+
+    /**
+     * Returns the search ID in a path under {@code search/jobs}, or
+     * {@code null}.
+     */
+    static String sidOf(String path) {
+        String jobs = "search/jobs/";
+        int start = path.indexOf(jobs);
+        if (start < 0) {
+            return null;
+        }
+        start += jobs.length();
+        int end = start;
+        while (end < path.length() && path.charAt(end) != '/' && path.charAt(end) != '?') {
+            end++;
+        }
+        String sid = path.substring(start, end);
+        return sid.length() == 0 || sid.equals("export") ? null : sid;
+    }
+}
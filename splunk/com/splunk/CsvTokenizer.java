@@ -0,0 +1,249 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a UTF-8 stream in Splunk's CSV dialect into records and fields.
+ * <p>
+ * Fields are separated by commas and records by {@code \n} or {@code \r\n}.
+ * A field may be quoted with {@code "}, in which case it may contain commas
+ * and line breaks, and a quote is written as {@code ""}. Backslashes have no
+ * special meaning.
+ * <p>
+ * The tokenizer scans bytes directly in its buffer, which is safe for UTF-8
+ * because the delimiters never occur inside a multi-byte character, and only
+ * decodes the fields that the caller asks for.
+ */
+class CsvTokenizer {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int END_OF_RECORD = -2;
+    private static final int END_OF_STREAM = -1;
+
+    private final InputStream stream;
+    private byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+    // The start of the bytes that must be kept when the buffer is refilled.
+    private int mark = 0;
+    private boolean endOfStream = false;
+
+    CsvTokenizer(InputStream stream) {
+        this(stream, 8192);
+    }
+
+    CsvTokenizer(InputStream stream, int bufferSize) {
+        this.stream = stream;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Reads the next record into {@code values}. Field {@code i} is stored
+     * in {@code values[i]} if {@code wanted} is {@code null} or
+     * {@code wanted[i]} is true; other fields, and fields past the end of
+     * {@code values}, are skipped without being decoded.
+     *
+     * @return The number of fields in the record, 0 for an empty line, or -1
+     * at the end of the stream.
+     */
+    int readRecord(String[] values, boolean[] wanted) throws IOException {
+        mark = position;
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        byte first = buffer[position];
+        if (first == '\n' || first == '\r') {
+            skipLineBreak();
+            return 0;
+        }
+
+        int field = 0;
+        while (true) {
+            boolean keep = field < values.length && (wanted == null || wanted[field]);
+            int terminator = readField(values, keep ? field : -1);
+            field++;
+            if (terminator != ',') {
+                return field;
+            }
+        }
+    }
+
+    /**
+     * Reads all the fields of the next record.
+     *
+     * @return The fields, an empty array for an empty line, or {@code null}
+     * at the end of the stream.
+     */
+    String[] readRecord() throws IOException {
+        mark = position;
+        if (position == limit && !fill()) {
+            return null;
+        }
+        byte first = buffer[position];
+        if (first == '\n' || first == '\r') {
+            skipLineBreak();
+            return new String[0];
+        }
+
+        List<String> fields = new ArrayList<String>();
+        String[] value = new String[1];
+        int terminator;
+        do {
+            terminator = readField(value, 0);
+            fields.add(value[0]);
+        } while (terminator == ',');
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    /*
+     * Reads one field, storing it in values[index] unless index is -1, and
+     * consumes its terminator. Returns ',' if another field follows in the
+     * same record, or END_OF_RECORD or END_OF_STREAM.
+     */
+    private int readField(String[] values, int index) throws IOException {
+        mark = position;
+        if (position == limit && !fill()) {
+            if (index >= 0) values[index] = "";
+            return END_OF_STREAM;
+        }
+
+        int end;
+        if (buffer[position] == '"') {
+            boolean escaped = false;
+            position++;
+            while (true) {
+                if (position == limit && !fill()) {
+                    // Unterminated quote: the field runs to the end.
+                    end = position;
+                    break;
+                }
+                if (buffer[position] != '"') {
+                    position++;
+                    continue;
+                }
+                if (position + 1 == limit && !fill()) {
+                    end = position++;
+                    break;
+                }
+                if (buffer[position + 1] == '"') {
+                    escaped = true;
+                    position += 2;
+                    continue;
+                }
+                end = position++;
+                break;
+            }
+            if (index >= 0) {
+                int start = mark + 1;
+                int length = escaped ? unescape(start, end) : end - start;
+                values[index] = new String(buffer, start, length, UTF8);
+            }
+            // Anything between the closing quote and the delimiter is ignored.
+            while (true) {
+                if (position == limit && !fill()) {
+                    return END_OF_STREAM;
+                }
+                byte b = buffer[position];
+                if (b == ',' || b == '\n' || b == '\r') {
+                    break;
+                }
+                position++;
+            }
+        } else {
+            while (true) {
+                if (position == limit && !fill()) {
+                    if (index >= 0) values[index] = new String(buffer, mark, position - mark, UTF8);
+                    return END_OF_STREAM;
+                }
+                byte b = buffer[position];
+                if (b == ',' || b == '\n' || b == '\r') {
+                    break;
+                }
+                position++;
+            }
+            if (index >= 0) {
+                values[index] = new String(buffer, mark, position - mark, UTF8);
+            }
+        }
+
+        if (buffer[position] == ',') {
+            position++;
+            return ',';
+        }
+        skipLineBreak();
+        return END_OF_RECORD;
+    }
+
+    /*
+     * Collapses each "" between start and end into " in place and returns
+     * the new length.
+     */
+    private int unescape(int start, int end) {
+        int to = start;
+        for (int from = start; from < end; from++) {
+            buffer[to++] = buffer[from];
+            if (buffer[from] == '"') {
+                from++;
+            }
+        }
+        return to - start;
+    }
+
+    /*
+     * Consumes a \n, \r\n, or lone \r at the current position.
+     */
+    private void skipLineBreak() throws IOException {
+        if (buffer[position++] == '\r') {
+            mark = position;
+            if ((position < limit || fill()) && buffer[position] == '\n') {
+                position++;
+            }
+        }
+    }
+
+    /*
+     * Reads more bytes into the buffer, keeping the bytes from mark on.
+     * Returns false at the end of the stream.
+     */
+    private boolean fill() throws IOException {
+        if (endOfStream) {
+            return false;
+        }
+        if (mark > 0) {
+            System.arraycopy(buffer, mark, buffer, 0, limit - mark);
+            position -= mark;
+            limit -= mark;
+            mark = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int count = stream.read(buffer, limit, buffer.length - limit);
+        if (count == -1) {
+            endOfStream = true;
+            return false;
+        }
+        limit += count;
+        return true;
+    }
+}
@@ -17,18 +17,31 @@
 package com.splunk;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * DataModel represents a data model on the server. Data models contain
  * data model objects, which specify structured views on Splunk data.
+ *
+ * Loading a data model only locates its objects in the JSON description
+ * returned by splunkd. Each DataModelObject is parsed the first time it is
+ * requested, which keeps loading large data models, such as those of the
+ * Common Information Model, fast.
  */
 public class DataModel extends Entity {
-    private final static JsonParser jsonParser = new JsonParser();
     private final static Gson gson = new Gson();
 
     private static final String ACCELERATION_LABEL = "acceleration";
@@ -40,10 +53,11 @@ public class DataModel extends Entity {
     // Human readable description, as opposed to the raw JSON, which is also called 'description'
     private String description;
 
-    private Map<String, DataModelObject> objects;
+    private volatile ObjectIndex objects;
     private boolean accelerationEnabled;
     private String earliestAcceleratedTime;
     private String accelerationCronSchedule;
+    private String updated;
 
     DataModel(Service service, String path) {
         super(service, path);
@@ -59,7 +73,7 @@ public class DataModel extends Entity {
      * @return true if there is an object with that name; false otherwise.
      */
     public boolean containsObject(String name) {
-        return this.objects.containsKey(name);
+        return this.objects.spans.containsKey(name);
     }
 
     /**
@@ -69,14 +83,41 @@ public class DataModel extends Entity {
      * @return a DataModelObject if there is such an object; null otherwise.
      */
     public DataModelObject getObject(String name) {
-        return this.objects.get(name);
+        return getObject(this.objects, name);
+    }
+
+    private DataModelObject getObject(ObjectIndex index, String name) {
+        if (name == null) {
+            return null;
+        }
+        DataModelObject object = index.parsed.get(name);
+        if (object != null) {
+            return object;
+        }
+        int[] span = index.spans.get(name);
+        if (span == null) {
+            return null;
+        }
+
+        JsonElement json = new JsonParser().parse(index.json.getText().substring(span[0], span[1]));
+        object = DataModelObject.parse(this, json);
+        DataModelObject existing = index.parsed.putIfAbsent(name, object);
+        return existing == null ? object : existing;
     }
 
     /**
      * @return a collection of all objects in this data model.
      */
     public Collection<DataModelObject> getObjects() {
-        return Collections.unmodifiableCollection(objects.values());
+        ObjectIndex index = this.objects;
+        List<DataModelObject> objects = new ArrayList<DataModelObject>(index.spans.size());
+        for (String name : index.spans.keySet()) {
+            DataModelObject object = getObject(index, name);
+            if (object != null) {
+                objects.add(object);
+            }
+        }
+        return Collections.unmodifiableCollection(objects);
     }
 
     /**
@@ -92,6 +133,14 @@ public class DataModel extends Entity {
         return getName();
     }
 
+    /**
+     * @return the time this data model was last updated on the server, as
+     * returned by splunkd when it was last refreshed.
+     */
+    String getUpdated() {
+        return this.updated;
+    }
+
     /**
      * @return whether global acceleration is enabled for this data model.
      */
@@ -123,6 +172,7 @@ public class DataModel extends Entity {
     @Override
     Entity load(AtomObject value) {
         Entity result = super.load(value);
+        this.updated = value == null ? null : value.updated;
         // After loading the Atom entity as we would for any other Splunk entity,
         // we have to parse the JSON description of the data model and its acceleration
         // status.
@@ -134,32 +184,54 @@ public class DataModel extends Entity {
     /**
      * Parse the JSON returned from splunkd describing this data model.
      *
-     * This method writes the results into fields of this object.
+     * This method writes the results into fields of this object. The objects
+     * of the data model are only located; they are parsed by getObject.
      *
      * @param input a String containing JSON.
      */
     private void parseDescription(String input) {
-        objects = new HashMap<String, DataModelObject>();
-
-        JsonElement rootElement = jsonParser.parse(input);
-
-        for (Entry<String, JsonElement> entry : rootElement.getAsJsonObject().entrySet()) {
-            if (entry.getKey().equals(MODEL_NAME_LABEL)) {
-                content.put(MODEL_NAME_LABEL, entry.getValue().getAsString());
-            } else if (entry.getKey().equals(DISPLAY_NAME_LABEL)) {
-                content.put(DISPLAY_NAME_LABEL, entry.getValue().getAsString());
-            } else if (entry.getKey().equals(DESCRIPTION_LABEL)) {
-                description = entry.getValue().getAsString();
-            } else if (entry.getKey().equals("objects")) {
-                JsonArray objectArray = entry.getValue().getAsJsonArray();
-                for (JsonElement object : objectArray) {
-                    DataModelObject dmo = DataModelObject.parse(this, object);
-                    objects.put(dmo.getName(), dmo);
+        JsonScanner json = new JsonScanner(input);
+        ObjectIndex index = new ObjectIndex(json);
+
+        String[] key = new String[1];
+        int position = json.enter('{', 0);
+        while ((position = json.nextMember(position, key)) != -1) {
+            if (key[0].equals(MODEL_NAME_LABEL)) {
+                content.put(MODEL_NAME_LABEL, json.readString(position));
+                position = json.skipValue(position);
+            } else if (key[0].equals(DISPLAY_NAME_LABEL)) {
+                content.put(DISPLAY_NAME_LABEL, json.readString(position));
+                position = json.skipValue(position);
+            } else if (key[0].equals(DESCRIPTION_LABEL)) {
+                description = json.readString(position);
+                position = json.skipValue(position);
+            } else if (key[0].equals("objects")) {
+                int element = json.enter('[', position);
+                int start;
+                while ((start = json.nextElement(element)) != -1) {
+                    element = json.skipValue(start);
+                    index.spans.put(objectName(json, start), new int[] {start, element});
                 }
+                position = json.enter(']', element);
             } else {
                 // Allow new keys without complaining
+                position = json.skipValue(position);
             }
         }
+
+        this.objects = index;
+    }
+
+    private static String objectName(JsonScanner json, int start) {
+        String[] key = new String[1];
+        int position = json.enter('{', start);
+        while ((position = json.nextMember(position, key)) != -1) {
+            if (key[0].equals("objectName")) {
+                return json.readString(position);
+            }
+            position = json.skipValue(position);
+        }
+        return null;
     }
 
     /**
@@ -170,26 +242,35 @@ public class DataModel extends Entity {
      * @param input a string containing JSON.
      */
     private void parseAcceleration(String input) {
-        JsonElement rootElement = jsonParser.parse(input);
-
-        for (Entry<String, JsonElement> entry : rootElement. getAsJsonObject().entrySet()) {
-            if (entry.getKey().equals("enabled")) {
-                // API is broken in 6.1. It returns 1 instead of true (but does return false).
-                if (((JsonPrimitive)entry.getValue()).isBoolean()) {
-                    accelerationEnabled = entry.getValue().getAsBoolean();
-                } else if (((JsonPrimitive)entry.getValue()).isNumber()) {
-                    accelerationEnabled = entry.getValue().getAsInt() != 0;
+        JsonReader reader = new JsonReader(new StringReader(input));
+        reader.setLenient(true);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (key.equals("enabled")) {
+                    // API is broken in 6.1. It returns 1 instead of true (but does return false).
+                    JsonToken token = reader.peek();
+                    if (token == JsonToken.BOOLEAN) {
+                        accelerationEnabled = reader.nextBoolean();
+                    } else if (token == JsonToken.NUMBER) {
+                        accelerationEnabled = reader.nextInt() != 0;
+                    } else {
+                        throw new RuntimeException("splunkd returned an unknown value of type " + token +
+                                " for whether acceleration is enabled.");
+                    }
+                } else if (key.equals("earliest_time")) {
+                    earliestAcceleratedTime = reader.nextString();
+                } else if (key.equals("cron_schedule")) {
+                    accelerationCronSchedule = reader.nextString();
                 } else {
-                    throw new RuntimeException("splunkd returned an unknown value " + entry.getValue().toString() +
-                            " for whether acceleration is enabled.");
+                    // Allow new keys without complaining
+                    reader.skipValue();
                 }
-            } else if (entry.getKey().equals("earliest_time")) {
-                earliestAcceleratedTime = entry.getValue().getAsString();
-            } else if (entry.getKey().equals("cron_schedule")) {
-                accelerationCronSchedule = entry.getValue().getAsString();
-            } else {
-                // Allow new keys without complaining
             }
+            reader.endObject();
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
         }
     }
 
@@ -269,4 +350,20 @@ public class DataModel extends Entity {
         // Now update like we would any other entity.
         super.update();
     }
+
+    /**
+     * The objects of a data model, located in its JSON description, and those
+     * of them parsed so far. A new index replaces the old one whenever the
+     * data model is loaded.
+     */
+    private static class ObjectIndex {
+        final JsonScanner json;
+        // Start and end offsets of each object in the description, in order.
+        final Map<String, int[]> spans = new LinkedHashMap<String, int[]>();
+        final ConcurrentMap<String, DataModelObject> parsed = new ConcurrentHashMap<String, DataModelObject>();
+
+        ObjectIndex(JsonScanner json) {
+            this.json = json;
+        }
+    }
 }
@@ -16,6 +16,7 @@
 
 package com.splunk;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -67,8 +68,78 @@ public class Event extends HashMap<String, String> {
     void putArray(String key, String[] values) {
         arrayValues.put(key, values);
         
-        // For backward compatibility with the Map interface
-        super.put(key, Util.join(",", values));
+        // For backward compatibility with the Map interface. A single value
+        // is stored as is, so that it stays shared when it was interned.
+        super.put(key, values.length == 1 ? values[0] : Util.join(",", values));
+    }
+
+    /**
+     * Sets the values for the specified field name, along with the single
+     * value or delimited set of values returned by {@link #get(String)}.
+     *
+     * @param key The field name.
+     * @param values The values.
+     * @param valueOrDelimitedValues The values as one string.
+     */
+    void putArray(String key, String[] values, String valueOrDelimitedValues) {
+        arrayValues.put(key, values);
+        super.put(key, valueOrDelimitedValues);
+    }
+
+    /**
+     * Returns a new event with only the given fields of this one.
+     *
+     * @param fields The fields to keep.
+     * @return The new event.
+     */
+    Event project(Collection<String> fields) {
+        Event projected = new Event();
+        for (String field : fields) {
+            String value = super.get(field);
+            if (value == null) {
+                continue;
+            }
+            String[] values = arrayValues.get(field);
+            if (values != null) {
+                projected.arrayValues.put(field, values);
+            }
+            projected.putSingleOrDelimited(field, value);
+        }
+        return projected;
+    }
+
+    /**
+     * Returns a new event with the same values as this one, except that the
+     * given field has a single value.
+     *
+     * @param key The field name.
+     * @param value The new value.
+     * @return The new event.
+     */
+    Event with(String key, String value) {
+        Event copy = new Event();
+        copy.putAllValues(this);
+        copy.segmentedRaw = segmentedRaw;
+        copy.arrayValues.remove(key);
+        copy.putSingleOrDelimited(key, value);
+        return copy;
+    }
+
+    private void putAllValues(Event other) {
+        // HashMap.putAll may call the overridden, read-only put.
+        for (Map.Entry<String, String> entry : other.entrySet()) {
+            super.put(entry.getKey(), entry.getValue());
+        }
+        arrayValues.putAll(other.arrayValues);
+    }
+
+    /**
+     * Removes all the values, so that a reader can fill this event again.
+     */
+    void reset() {
+        super.clear();
+        arrayValues.clear();
+        segmentedRaw = null;
     }
 
     /**
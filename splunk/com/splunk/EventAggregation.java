@@ -0,0 +1,507 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code EventAggregation} class computes aggregate functions over groups
+ * of events, like the {@code stats} search command. Get one from
+ * {@link EventStream#groupBy}, add functions, and call {@link #run}.
+ * <p>
+ * Each result is an {@code Event} with the group-by fields and one field per
+ * function, named like the {@code stats} output: {@code count},
+ * {@code sum(bytes)}, {@code avg(bytes)}, {@code min(bytes)},
+ * {@code max(bytes)}, and {@code dc(clientip)}. Numeric functions ignore
+ * values that are not numbers, and empty values, which is how CSV results
+ * show a missing field, count as missing. Results are sorted by the
+ * group-by fields.
+ */
+public class EventAggregation {
+    private enum Function { COUNT, SUM, AVG, MIN, MAX, DC }
+
+    private static final int BATCH_SIZE = 1024;
+    // Marks the end of the events for the worker threads.
+    private static final List<Event> END = Collections.emptyList();
+
+    private final EventStream stream;
+    private final String[] byFields;
+    private final List<Function> functions = new ArrayList<Function>();
+    private final List<String> functionFields = new ArrayList<String>();
+    // The distinct fields of the numeric functions, and of the dc functions.
+    private final List<String> numericFields = new ArrayList<String>();
+    private final List<String> distinctFields = new ArrayList<String>();
+
+    EventAggregation(EventStream stream, String[] byFields) {
+        this.stream = stream;
+        this.byFields = byFields;
+    }
+
+    private EventAggregation add(Function function, String field) {
+        functions.add(function);
+        functionFields.add(field);
+        if (function == Function.DC) {
+            if (!distinctFields.contains(field)) distinctFields.add(field);
+        } else if (function != Function.COUNT) {
+            if (!numericFields.contains(field)) numericFields.add(field);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the number of events in each group, as {@code count}.
+     *
+     * @return This aggregation.
+     */
+    public EventAggregation count() {
+        return add(Function.COUNT, null);
+    }
+
+    /**
+     * Adds the sum of a field's numeric values, as {@code sum(field)}.
+     *
+     * @param field The field.
+     * @return This aggregation.
+     */
+    public EventAggregation sum(String field) {
+        return add(Function.SUM, field);
+    }
+
+    /**
+     * Adds the average of a field's numeric values, as {@code avg(field)}.
+     *
+     * @param field The field.
+     * @return This aggregation.
+     */
+    public EventAggregation avg(String field) {
+        return add(Function.AVG, field);
+    }
+
+    /**
+     * Adds the smallest of a field's numeric values, as {@code min(field)}.
+     *
+     * @param field The field.
+     * @return This aggregation.
+     */
+    public EventAggregation min(String field) {
+        return add(Function.MIN, field);
+    }
+
+    /**
+     * Adds the largest of a field's numeric values, as {@code max(field)}.
+     *
+     * @param field The field.
+     * @return This aggregation.
+     */
+    public EventAggregation max(String field) {
+        return add(Function.MAX, field);
+    }
+
+    /**
+     * Adds the number of distinct values of a field, as {@code dc(field)}.
+     *
+     * @param field The field.
+     * @return This aggregation.
+     */
+    public EventAggregation dc(String field) {
+        return add(Function.DC, field);
+    }
+
+    /**
+     * Reads the events and returns one result per group.
+     *
+     * @return The results, sorted by the group-by fields.
+     */
+    public List<Event> run() {
+        Partial partial = aggregate();
+        List<Event> results = new ArrayList<Event>(partial.size);
+        for (int group : partial.sortedGroups()) {
+            results.add(partial.toEvent(group));
+        }
+        return results;
+    }
+
+    /*
+     * Returns the groups with the highest counts, with their count and
+     * percentage of all counted events, highest first.
+     */
+    List<Event> top(int limit) {
+        final Partial partial = aggregate();
+        long total = 0;
+        for (int group = 0; group < partial.size; group++) {
+            total += partial.counts[group];
+        }
+
+        // Keeps the best groups seen so far, with the worst at the head.
+        Comparator<Integer> byCount = new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long difference = partial.counts[a] - partial.counts[b];
+                if (difference != 0) {
+                    return difference < 0 ? -1 : 1;
+                }
+                return partial.compareKeys(b, a);
+            }
+        };
+        PriorityQueue<Integer> best = new PriorityQueue<Integer>(Math.max(1, limit), byCount);
+        for (int group = 0; group < partial.size && limit > 0; group++) {
+            if (best.size() < limit) {
+                best.add(group);
+            } else if (byCount.compare(group, best.peek()) > 0) {
+                best.poll();
+                best.add(group);
+            }
+        }
+
+        Event[] results = new Event[best.size()];
+        for (int i = results.length - 1; i >= 0; i--) {
+            int group = best.poll();
+            Event result = partial.toEvent(group);
+            result.putSingleOrDelimited("percent", String.format(Locale.ROOT, "%.6f",
+                    total == 0 ? 0.0 : partial.counts[group] * 100.0 / total));
+            results[i] = result;
+        }
+        return Arrays.asList(results);
+    }
+
+    private Partial aggregate() {
+        int threads = stream.getParallelism();
+        if (threads == 1) {
+            Partial partial = new Partial();
+            for (Event event : stream.getSource()) {
+                event = stream.apply(event);
+                if (event != null) partial.add(event);
+            }
+            return partial;
+        }
+        return aggregateInParallel(threads);
+    }
+
+    /*
+     * Reads the events on this thread and hands them in batches to worker
+     * threads, each of which aggregates its batches into its own partial
+     * result. The partial results are merged when all events are read.
+     */
+    private Partial aggregateInParallel(int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, BackgroundThreads.named("splunk-event-aggregation"));
+        final BlockingQueue<List<Event>> batches = new ArrayBlockingQueue<List<Event>>(threads * 2);
+        List<Future<Partial>> workers = new ArrayList<Future<Partial>>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(new Callable<Partial>() {
+                    public Partial call() throws InterruptedException {
+                        Partial partial = new Partial();
+                        RuntimeException failure = null;
+                        List<Event> batch;
+                        while ((batch = batches.take()) != END) {
+                            // After a failure, keep taking batches so that
+                            // the reading thread is never blocked.
+                            for (int j = 0; j < batch.size() && failure == null; j++) {
+                                try {
+                                    Event event = stream.apply(batch.get(j));
+                                    if (event != null) partial.add(event);
+                                } catch (RuntimeException e) {
+                                    failure = e;
+                                }
+                            }
+                        }
+                        if (failure != null) throw failure;
+                        return partial;
+                    }
+                }));
+            }
+
+            try {
+                List<Event> batch = new ArrayList<Event>(BATCH_SIZE);
+                for (Event event : stream.getSource()) {
+                    batch.add(event);
+                    if (batch.size() == BATCH_SIZE) {
+                        batches.put(batch);
+                        batch = new ArrayList<Event>(BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches.put(batch);
+                }
+            } finally {
+                for (int i = 0; i < threads; i++) {
+                    batches.put(END);
+                }
+            }
+
+            Partial result = null;
+            for (Future<Partial> worker : workers) {
+                Partial partial = worker.get();
+                if (result == null) {
+                    result = partial;
+                } else {
+                    result.merge(partial);
+                }
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while aggregating events.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static double parseNumber(String value) {
+        int length = value.length();
+        if (length == 0) {
+            return Double.NaN;
+        }
+        char first = value.charAt(0);
+        if (!(first >= '0' && first <= '9') && first != '-' && first != '+' && first != '.') {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long)value);
+        }
+        return Double.toString(value);
+    }
+
+    /*
+     * The aggregates of the events seen by one thread. Groups are numbered in
+     * order of appearance, and each aggregate is a primitive array indexed by
+     * group number.
+     */
+    private class Partial {
+        private final StringIntMap groupNumbers = new StringIntMap();
+        private String[][] keys = new String[16][];
+        private long[] counts = new long[16];
+        // Indexed by numeric field, then group.
+        private final double[][] sums = new double[numericFields.size()][16];
+        private final long[][] numericCounts = new long[numericFields.size()][16];
+        private final double[][] mins = new double[numericFields.size()][16];
+        private final double[][] maxs = new double[numericFields.size()][16];
+        // Indexed by distinct-count field, then group.
+        private final Object[][] distinctValues = new Object[distinctFields.size()][16];
+        private int size = 0;
+
+        private final String[] key = new String[byFields.length];
+
+        void add(Event event) {
+            String[][] values = new String[byFields.length][];
+            for (int i = 0; i < byFields.length; i++) {
+                values[i] = event.getArray(byFields[i]);
+                if (values[i] == null || (values[i].length == 1 && values[i][0].length() == 0)) {
+                    return;
+                }
+            }
+            addCombinations(event, values, 0);
+        }
+
+        // Counts the event in each combination of the group-by values.
+        private void addCombinations(Event event, String[][] values, int field) {
+            if (field == byFields.length) {
+                addToGroup(group(key), event);
+                return;
+            }
+            for (String value : values[field]) {
+                key[field] = value;
+                addCombinations(event, values, field + 1);
+            }
+        }
+
+        private int group(String[] groupKey) {
+            String joined;
+            if (groupKey.length == 1) {
+                joined = groupKey[0];
+            } else {
+                StringBuilder builder = new StringBuilder();
+                for (String value : groupKey) {
+                    builder.append(value).append('\0');
+                }
+                joined = builder.toString();
+            }
+            int group = groupNumbers.putIfAbsent(joined, size);
+            if (group >= 0) {
+                return group;
+            }
+            if (size == counts.length) {
+                grow();
+            }
+            group = size++;
+            keys[group] = groupKey.clone();
+            for (int i = 0; i < numericFields.size(); i++) {
+                mins[i][group] = Double.POSITIVE_INFINITY;
+                maxs[i][group] = Double.NEGATIVE_INFINITY;
+            }
+            return group;
+        }
+
+        private void grow() {
+            int capacity = counts.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            for (int i = 0; i < numericFields.size(); i++) {
+                sums[i] = Arrays.copyOf(sums[i], capacity);
+                numericCounts[i] = Arrays.copyOf(numericCounts[i], capacity);
+                mins[i] = Arrays.copyOf(mins[i], capacity);
+                maxs[i] = Arrays.copyOf(maxs[i], capacity);
+            }
+            for (int i = 0; i < distinctFields.size(); i++) {
+                distinctValues[i] = Arrays.copyOf(distinctValues[i], capacity);
+            }
+        }
+
+        private void addToGroup(int group, Event event) {
+            counts[group]++;
+            for (int i = 0; i < numericFields.size(); i++) {
+                String[] values = event.getArray(numericFields.get(i));
+                if (values == null) continue;
+                for (String value : values) {
+                    double number = parseNumber(value);
+                    if (Double.isNaN(number)) continue;
+                    sums[i][group] += number;
+                    numericCounts[i][group]++;
+                    if (number < mins[i][group]) mins[i][group] = number;
+                    if (number > maxs[i][group]) maxs[i][group] = number;
+                }
+            }
+            for (int i = 0; i < distinctFields.size(); i++) {
+                String[] values = event.getArray(distinctFields.get(i));
+                if (values == null) continue;
+                for (String value : values) {
+                    if (value.length() > 0) distinct(i, group).add(value);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Set<String> distinct(int field, int group) {
+            Set<String> values = (Set<String>)distinctValues[field][group];
+            if (values == null) {
+                values = new HashSet<String>();
+                distinctValues[field][group] = values;
+            }
+            return values;
+        }
+
+        void merge(Partial other) {
+            for (int from = 0; from < other.size; from++) {
+                int group = group(other.keys[from]);
+                counts[group] += other.counts[from];
+                for (int i = 0; i < numericFields.size(); i++) {
+                    sums[i][group] += other.sums[i][from];
+                    numericCounts[i][group] += other.numericCounts[i][from];
+                    mins[i][group] = Math.min(mins[i][group], other.mins[i][from]);
+                    maxs[i][group] = Math.max(maxs[i][group], other.maxs[i][from]);
+                }
+                for (int i = 0; i < distinctFields.size(); i++) {
+                    if (other.distinctValues[i][from] != null) {
+                        distinct(i, group).addAll(other.distinct(i, from));
+                    }
+                }
+            }
+        }
+
+        int compareKeys(int a, int b) {
+            for (int i = 0; i < byFields.length; i++) {
+                int difference = keys[a][i].compareTo(keys[b][i]);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return 0;
+        }
+
+        Integer[] sortedGroups() {
+            Integer[] groups = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                groups[i] = i;
+            }
+            Arrays.sort(groups, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return compareKeys(a, b);
+                }
+            });
+            return groups;
+        }
+
+        Event toEvent(int group) {
+            Event result = new Event();
+            for (int i = 0; i < byFields.length; i++) {
+                result.putSingleOrDelimited(byFields[i], keys[group][i]);
+            }
+            for (int i = 0; i < functions.size(); i++) {
+                Function function = functions.get(i);
+                String field = functionFields.get(i);
+                if (function == Function.COUNT) {
+                    result.putSingleOrDelimited("count", Long.toString(counts[group]));
+                    continue;
+                }
+                String name = function.name().toLowerCase(Locale.ROOT) + "(" + field + ")";
+                if (function == Function.DC) {
+                    Object values = distinctValues[distinctFields.indexOf(field)][group];
+                    int count = values == null ? 0 : ((Set<?>)values).size();
+                    result.putSingleOrDelimited(name, Integer.toString(count));
+                    continue;
+                }
+                int column = numericFields.indexOf(field);
+                long numbers = numericCounts[column][group];
+                if (numbers == 0) {
+                    continue;
+                }
+                double value;
+                if (function == Function.SUM) {
+                    value = sums[column][group];
+                } else if (function == Function.AVG) {
+                    value = sums[column][group] / numbers;
+                } else if (function == Function.MIN) {
+                    value = mins[column][group];
+                } else {
+                    value = maxs[column][group];
+                }
+                result.putSingleOrDelimited(name, formatNumber(value));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code EventStream} class post-processes the events of a
+ * {@link ResultsReader}, or any other source of events, on the client, in the
+ * manner of the {@code where}, {@code fields}, {@code bin}, {@code stats},
+ * and {@code top} search commands.
+ * <p>
+ * Operations such as {@link #filter} return a new stream and are applied as
+ * events are read. {@link #groupBy} and {@link #top} read the whole source
+ * once and return their results. For example, to count events and sum bytes
+ * by host over hourly buckets:
+ * <pre>
+ * List&lt;Event&gt; rows = EventStream.of(reader)
+ *     .filter(EventStream.fieldEquals("status", "200"))
+ *     .bin("_time", 1, TimeUnit.HOURS)
+ *     .parallel(4)
+ *     .groupBy("_time", "host")
+ *     .count().sum("bytes")
+ *     .run();
+ * </pre>
+ * With {@link #parallel}, filters, projections, bins, and aggregation run on
+ * several threads, each aggregating part of the events, and the partial
+ * results are merged at the end. The source itself is always read by the
+ * calling thread.
+ */
+public class EventStream implements Iterable<Event> {
+    /**
+     * Decides whether an event is kept by {@link EventStream#filter}.
+     * Predicates may be called on several threads at once when the stream is
+     * parallel.
+     */
+    public interface Predicate {
+        /**
+         * @param event The event.
+         * @return {@code true} to keep the event.
+         */
+        boolean test(Event event);
+    }
+
+    /*
+     * Transforms an event, or returns null to drop it.
+     */
+    interface Operator {
+        Event apply(Event event);
+    }
+
+    private final Iterable<Event> source;
+    private final List<Operator> operators;
+    private final int parallelism;
+
+    private EventStream(Iterable<Event> source, List<Operator> operators, int parallelism) {
+        this.source = source;
+        this.operators = operators;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns a stream of the given events, such as a {@link ResultsReader}
+     * or {@link SearchResults}. The events are read once.
+     *
+     * @param events The events.
+     * @return The stream.
+     */
+    public static EventStream of(Iterable<Event> events) {
+        return new EventStream(events, Collections.<Operator>emptyList(), 1);
+    }
+
+    /**
+     * Returns a predicate that keeps events whose field has the given value,
+     * or one value equal to it if the field has several.
+     *
+     * @param field The field name.
+     * @param value The value.
+     * @return The predicate.
+     */
+    public static Predicate fieldEquals(final String field, final String value) {
+        return new Predicate() {
+            public boolean test(Event event) {
+                String[] values = event.getArray(field);
+                if (values == null) {
+                    return false;
+                }
+                for (String candidate : values) {
+                    if (value.equals(candidate)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    private EventStream then(Operator operator) {
+        List<Operator> next = new ArrayList<Operator>(operators);
+        next.add(operator);
+        return new EventStream(source, next, parallelism);
+    }
+
+    /**
+     * Returns a stream of the events that the predicate keeps.
+     *
+     * @param predicate The predicate.
+     * @return The new stream.
+     */
+    public EventStream filter(final Predicate predicate) {
+        return then(new Operator() {
+            public Event apply(Event event) {
+                return predicate.test(event) ? event : null;
+            }
+        });
+    }
+
+    /**
+     * Returns a stream of events that have only the given fields.
+     *
+     * @param fields The fields to keep.
+     * @return The new stream.
+     */
+    public EventStream project(String... fields) {
+        final List<String> kept = Arrays.asList(fields.clone());
+        return then(new Operator() {
+            public Event apply(Event event) {
+                return event.project(kept);
+            }
+        });
+    }
+
+    /**
+     * Returns a stream in which a time field is rounded down to the start of
+     * its time bucket, like the {@code bin} search command. Times in the ISO
+     * 8601 format of search results are bucketed in their own UTC offset and
+     * keep that format; times in epoch seconds stay in epoch seconds.
+     * Events whose field is missing or not a time are left unchanged.
+     *
+     * @param field The time field, usually {@code _time}.
+     * @param span The size of each bucket.
+     * @param unit The unit of {@code span}.
+     * @return The new stream.
+     */
+    public EventStream bin(final String field, long span, TimeUnit unit) {
+        final long spanMillis = unit.toMillis(span);
+        if (spanMillis <= 0) {
+            throw new IllegalArgumentException("The span must be at least one millisecond.");
+        }
+        return then(new Operator() {
+            public Event apply(Event event) {
+                String value = event.get(field);
+                if (value == null) {
+                    return event;
+                }
+                String binned = TimeBins.bin(value, spanMillis);
+                return binned == null ? event : event.with(field, binned);
+            }
+        });
+    }
+
+    /**
+     * Returns a stream whose aggregations use the given number of threads.
+     *
+     * @param threads The number of threads, at least 1. The default is 1,
+     * which does all the work on the calling thread.
+     * @return The new stream.
+     */
+    public EventStream parallel(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1.");
+        }
+        return new EventStream(source, operators, threads);
+    }
+
+    /**
+     * Returns an aggregation of the events grouped by the given fields, like
+     * the {@code stats} search command. Add aggregate functions to it and
+     * call {@link EventAggregation#run}. Events that lack any of the fields,
+     * or have an empty value for one, are not counted.
+     *
+     * @param fields The fields to group by. With none, all events form one
+     * group.
+     * @return The aggregation.
+     */
+    public EventAggregation groupBy(String... fields) {
+        return new EventAggregation(this, fields.clone());
+    }
+
+    /**
+     * Returns the most common values of the given fields, like the
+     * {@code top} search command. Each result has the fields, a
+     * {@code count}, and a {@code percent} of all events that have the
+     * fields, most common first.
+     *
+     * @param limit The number of results.
+     * @param fields The fields.
+     * @return The results.
+     */
+    public List<Event> top(int limit, String... fields) {
+        return new EventAggregation(this, fields.clone()).count().top(limit);
+    }
+
+    /**
+     * Returns the events of the stream, read from the source and transformed
+     * on the calling thread.
+     *
+     * @return The iterator.
+     */
+    public Iterator<Event> iterator() {
+        final Iterator<Event> events = source.iterator();
+        return new Iterator<Event>() {
+            private Event next = null;
+
+            public boolean hasNext() {
+                while (next == null && events.hasNext()) {
+                    next = apply(events.next());
+                }
+                return next != null;
+            }
+
+            public Event next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Event event = next;
+                next = null;
+                return event;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    Iterable<Event> getSource() {
+        return source;
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /*
+     * Applies the operators to an event read from the source. Returns null
+     * if the event is dropped.
+     */
+    Event apply(Event event) {
+        for (int i = 0; i < operators.size() && event != null; i++) {
+            event = operators.get(i).apply(event);
+        }
+        return event;
+    }
+
+    /*
+     * Rounds times down to the start of their bucket.
+     */
+    static class TimeBins {
+        private static final long MILLIS_PER_DAY = 86400000L;
+
+        /**
+         * Returns the start of the bucket of an ISO 8601 time or epoch
+         * seconds, in the same form, or null if the value is neither.
+         */
+        static String bin(String value, long spanMillis) {
+            if (value.length() >= 19 && value.charAt(4) == '-' && value.charAt(10) == 'T') {
+                return binIso(value, spanMillis);
+            }
+            try {
+                double seconds = Double.parseDouble(value);
+                long millis = (long)Math.floor(seconds * 1000);
+                long bucket = floor(millis, spanMillis);
+                return bucket % 1000 == 0
+                        ? Long.toString(bucket / 1000)
+                        : Double.toString(bucket / 1000.0);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        // yyyy-MM-ddTHH:mm:ss[.SSS...][Z|+hh:mm|-hh:mm]
+        private static String binIso(String value, long spanMillis) {
+            try {
+                int year = Integer.parseInt(value.substring(0, 4));
+                int month = Integer.parseInt(value.substring(5, 7));
+                int day = Integer.parseInt(value.substring(8, 10));
+                int hour = Integer.parseInt(value.substring(11, 13));
+                int minute = Integer.parseInt(value.substring(14, 16));
+                int second = Integer.parseInt(value.substring(17, 19));
+                int position = 19;
+                int millis = 0;
+                boolean hasFraction = position < value.length() && value.charAt(position) == '.';
+                if (hasFraction) {
+                    int scale = 100;
+                    position++;
+                    while (position < value.length() && Character.isDigit(value.charAt(position))) {
+                        millis += (value.charAt(position) - '0') * scale;
+                        scale /= 10;
+                        position++;
+                    }
+                }
+                String offset = value.substring(position);
+
+                // Bucket in local time, so that daily buckets start at
+                // midnight in the time's own offset.
+                long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY +
+                        ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+                long bucket = floor(local, spanMillis);
+                return format(bucket, hasFraction) + offset;
+            } catch (NumberFormatException e) {
+                return null;
+            } catch (IndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+
+        private static long floor(long value, long span) {
+            long quotient = value / span;
+            if (value % span != 0 && value < 0) {
+                quotient--;
+            }
+            return quotient * span;
+        }
+
+        private static String format(long local, boolean withMillis) {
+            long days = floor(local, MILLIS_PER_DAY) / MILLIS_PER_DAY;
+            long rest = local - days * MILLIS_PER_DAY;
+
+            // Civil date from days since 1970-01-01 (H. Hinnant's algorithm).
+            long z = days + 719468;
+            long era = (z >= 0 ? z : z - 146096) / 146097;
+            long dayOfEra = z - era * 146097;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long mp = (5 * dayOfYear + 2) / 153;
+            long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+            long month = mp < 10 ? mp + 3 : mp - 9;
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+            StringBuilder time = new StringBuilder(29);
+            pad(time, year, 4).append('-');
+            pad(time, month, 2).append('-');
+            pad(time, day, 2).append('T');
+            pad(time, rest / 3600000, 2).append(':');
+            pad(time, rest / 60000 % 60, 2).append(':');
+            pad(time, rest / 1000 % 60, 2);
+            if (withMillis) {
+                pad(time.append('.'), rest % 1000, 3);
+            }
+            return time.toString();
+        }
+
+        private static StringBuilder pad(StringBuilder builder, long value, int width) {
+            String digits = Long.toString(value);
+            for (int i = digits.length(); i < width; i++) {
+                builder.append('0');
+            }
+            return builder.append(digits);
+        }
+
+        // Days since 1970-01-01 of a civil date (H. Hinnant's algorithm).
+        private static long daysFromCivil(long year, int month, int day) {
+            year -= month <= 2 ? 1 : 0;
+            long era = (year >= 0 ? year : year - 399) / 400;
+            long yearOfEra = year - era * 400;
+            long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+            long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097 + dayOfEra - 719468;
+        }
+    }
+}
@@ -23,7 +23,9 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.*;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -51,6 +53,8 @@ public class HttpService {
      */
     protected URLStreamHandler httpsHandler = null;
 
+    private SSLConfiguration sslConfiguration = null;
+
     /**
      * The scheme used to access the service.
      */
@@ -68,6 +72,16 @@ public class HttpService {
 
     private String prefix = null;
 
+    private RequestLimiter requestLimiter = null;
+
+    private ClusterBalancer clusterBalancer = null;
+
+    private RequestCoalescer requestCoalescer = null;
+
+    // Connection and read timeouts, in milliseconds; 0 waits forever.
+    int connectTimeout = 0;
+    int readTimeout = 0;
+
     static Map<String, String> defaultHeader = new HashMap<String, String>() {{
         put("User-Agent", "splunk-sdk-java/1.4.0");
         put("Accept", "*/*");
@@ -201,6 +215,27 @@ public class HttpService {
         }
     }
 
+    /**
+     * Returns the SSL configuration of this service.
+     *
+     * @return The SSL configuration, or {@code null} if this service uses
+     * the shared SSL socket factory.
+     */
+    public SSLConfiguration getSSLConfiguration() {
+        return this.sslConfiguration;
+    }
+
+    /**
+     * Sets the SSL configuration of this service, which takes precedence over
+     * the SSL security protocol and socket factory shared by all services.
+     *
+     * @param sslConfiguration The SSL configuration, or {@code null} to use
+     * the shared SSL socket factory.
+     */
+    public void setSSLConfiguration(SSLConfiguration sslConfiguration) {
+        this.sslConfiguration = sslConfiguration;
+    }
+
     /**
      * Returns the URL prefix of this service, consisting of
      * {@code scheme://host[:port]}.
@@ -223,6 +258,84 @@ public class HttpService {
         return this.scheme;
     }
 
+    /**
+     * Returns the limiter of the requests of this service.
+     *
+     * @return The request limiter, or {@code null} if requests are not
+     * limited.
+     */
+    public RequestLimiter getRequestLimiter() {
+        return this.requestLimiter;
+    }
+
+    /**
+     * Sets a limiter to adapt the number of requests this service has in
+     * flight to the load splunkd can take. By default, requests are not
+     * limited.
+     *
+     * @param limiter The request limiter, or {@code null} to stop limiting
+     * requests.
+     */
+    public void setRequestLimiter(RequestLimiter limiter) {
+        this.requestLimiter = limiter;
+    }
+
+    /**
+     * Returns whether concurrent identical GET requests share one request.
+     *
+     * @return {@code true} if GET requests are coalesced.
+     */
+    public boolean isRequestCoalescing() {
+        return this.requestCoalescer != null;
+    }
+
+    /**
+     * Sets whether a GET request that is identical to one already in flight,
+     * with the same path, query arguments and credentials, waits for that
+     * request's response instead of sending its own. Each caller gets its
+     * own copy of the response, so a burst of threads refreshing the same
+     * entity or collection makes one request. Requests for search results
+     * and events, which may be large, are never coalesced. By default,
+     * requests are not coalesced.
+     * <p>
+     * A coalesced response may have been requested shortly before the call
+     * that receives it.
+     *
+     * @param coalescing {@code true} to coalesce GET requests.
+     */
+    public void setRequestCoalescing(boolean coalescing) {
+        if (coalescing && this.requestCoalescer == null) {
+            this.requestCoalescer = new RequestCoalescer();
+        } else if (!coalescing) {
+            this.requestCoalescer = null;
+        }
+    }
+
+    /**
+     * Returns the balancer that spreads the requests of this service over
+     * the members of a cluster.
+     *
+     * @return The cluster balancer, or {@code null} if requests go to this
+     * service's host and port.
+     */
+    public ClusterBalancer getClusterBalancer() {
+        return this.clusterBalancer;
+    }
+
+    /**
+     * Sends the requests of this service to the members of a cluster instead
+     * of its own host and port, and starts the balancer's health checks.
+     *
+     * @param balancer The cluster balancer, or {@code null} to send requests
+     * to this service's host and port again.
+     */
+    public void setClusterBalancer(ClusterBalancer balancer) {
+        this.clusterBalancer = balancer;
+        if (balancer != null) {
+            balancer.startHealthChecks(this.scheme);
+        }
+    }
+
     /**
      * Constructs a fully-qualified URL for this service using a given path.
      *
@@ -230,15 +343,19 @@ public class HttpService {
      * @return The fully-qualified URL for the service.
      */
     public URL getUrl(String path) {
+        return getUrl(getHost(), getPort(), path);
+    }
+
+    private URL getUrl(String host, int port, String path) {
         try {
             if (HTTPS_SCHEME.equals(getScheme()) && httpsHandler != null) {
                 // This branch is not currently covered by unit tests as I
                 // could not figure out a generic way to get the default
                 // HTTPS handler.
-                return new URL(getScheme(), getHost(), getPort(), path,
+                return new URL(getScheme(), host, port, path,
                         httpsHandler);
             } else {
-                return new URL(getScheme(), getHost(), getPort(), path);
+                return new URL(getScheme(), host, port, path);
             }
         } catch (MalformedURLException e) {
             throw new RuntimeException(e.getMessage(), e);
@@ -306,7 +423,7 @@ public class HttpService {
      */
     Socket open() throws IOException {
         if (this.scheme.equals("https")) {
-            return sslSocketFactory.createSocket(this.host, this.port);
+            return getSocketFactory().createSocket(this.host, this.port);
         }
         return new Socket(this.host, this.port);
     }
@@ -320,8 +437,96 @@ public class HttpService {
      * @return The HTTP response.
      */
     public ResponseMessage send(String path, RequestMessage request) {
-        // Construct a full URL to the resource
-        URL url = getUrl(path);
+        RequestCoalescer coalescer = this.requestCoalescer;
+        if (coalescer != null && RequestCoalescer.accepts(path, request)) {
+            return coalescer.send(this, path, request);
+        }
+        return limit(path, request);
+    }
+
+    // Sends a request once the request limiter, if any, lets it through.
+    ResponseMessage limit(String path, RequestMessage request) {
+        RequestLimiter limiter = this.requestLimiter;
+        if (limiter == null) {
+            return route(path, request);
+        }
+
+        RequestLimiter.Permit permit = limiter.acquire(path, request.getMethod());
+        boolean overloaded = false;
+        try {
+            return route(path, request);
+        } catch (RuntimeException e) {
+            overloaded = RequestLimiter.isOverload(e);
+            throw e;
+        } finally {
+            limiter.release(permit, overloaded);
+        }
+    }
+
+    // Sends a request to this service's host, or to a member of its cluster.
+    private ResponseMessage route(String path, RequestMessage request) {
+        ClusterBalancer balancer = this.clusterBalancer;
+        if (balancer == null) {
+            return transmit(getUrl(path), request);
+        }
+
+        List<ClusterBalancer.Member> tried = null;
+        while (true) {
+            ClusterBalancer.Member member = balancer.select(path, tried);
+            authorize(member, request);
+            try {
+                return sendTo(member, path, request);
+            } catch (RuntimeException e) {
+                // A request that could not connect never reached the member,
+                // so it is safe to send it to another one.
+                if (!(e.getCause() instanceof ConnectException)) {
+                    throw e;
+                }
+                if (tried == null) {
+                    tried = new ArrayList<ClusterBalancer.Member>();
+                }
+                tried.add(member);
+                if (tried.size() >= balancer.getMembers().size()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the headers that authenticate a request to a member of this
+     * service's cluster. Does nothing by default.
+     *
+     * @param member The member the request is about to be sent to.
+     * @param request The request.
+     */
+    void authorize(ClusterBalancer.Member member, RequestMessage request) {
+    }
+
+    /**
+     * Sends a request to a member of this service's cluster.
+     *
+     * @param member The member.
+     * @param path The request path.
+     * @param request The request message.
+     * @return The HTTP response.
+     */
+    ResponseMessage sendTo(ClusterBalancer.Member member, String path, RequestMessage request) {
+        boolean unreachable = false;
+        member.started();
+        try {
+            ResponseMessage response = transmit(getUrl(member.getHost(), member.getPort(), path), request);
+            response.member = member;
+            return response;
+        } catch (RuntimeException e) {
+            unreachable = !(e instanceof HttpException) && e.getCause() instanceof IOException;
+            throw e;
+        } finally {
+            member.finished(unreachable);
+        }
+    }
+
+    private ResponseMessage transmit(URL url, RequestMessage request) {
 
         // Create and initialize the connection object
         HttpURLConnection cn;
@@ -331,11 +536,18 @@ public class HttpService {
             throw new RuntimeException(e.getMessage(), e);
         }
         if (cn instanceof HttpsURLConnection) {
-            ((HttpsURLConnection) cn).setSSLSocketFactory(sslSocketFactory);
-            ((HttpsURLConnection) cn).setHostnameVerifier(HOSTNAME_VERIFIER);
+            ((HttpsURLConnection) cn).setSSLSocketFactory(getSocketFactory());
+            // A configuration that checks certificates also checks that they
+            // name the host, so the default verifier is left in place.
+            SSLConfiguration configuration = this.sslConfiguration;
+            if (configuration == null || !configuration.isHostnameVerified()) {
+                ((HttpsURLConnection) cn).setHostnameVerifier(HOSTNAME_VERIFIER);
+            }
         }
         cn.setUseCaches(false);
         cn.setAllowUserInteraction(false);
+        cn.setConnectTimeout(connectTimeout);
+        cn.setReadTimeout(readTimeout);
 
         // Set the request method
         String method = request.getMethod();
@@ -413,6 +625,11 @@ public class HttpService {
         return response;
     }
 
+    private SSLSocketFactory getSocketFactory() {
+        SSLConfiguration configuration = this.sslConfiguration;
+        return configuration != null ? configuration.getSocketFactory() : sslSocketFactory;
+    }
+
     public static void setSSLSocketFactory(SSLSocketFactory sslSocketFactory) {
         if (sslSocketFactory == null)
             throw new IllegalArgumentException("The sslSocketFactory cannot be null.");
@@ -440,6 +657,7 @@ public class HttpService {
         try {
             SSLContext context;
             switch (HttpService.sslSecurityProtocol) {
+                case TLSv1_3:
                 case TLSv1_2:
                 case TLSv1_1:
                 case TLSv1:
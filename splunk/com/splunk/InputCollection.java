@@ -17,6 +17,14 @@
 package com.splunk;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The {@code InputCollection} class represents a collection of inputs. The 
@@ -230,104 +238,209 @@ public class InputCollection extends EntityCollection<Input> {
 
 
     /**
-     * Assembles a set of all the input kinds that are available on this Splunk
-     * instance. To list all inputs, pass an empty list to {@code subPath}. Or, 
-     * specify a component of the path such as "tcp" to list all TCP inputs. 
+     * Lists the entries under data/inputs/{@code subPath}, sorting them into
+     * input kinds (entries with a "create" link) and deeper paths that still
+     * have to be listed.
      *
      * @param subPath A list of strings containing the components of the
      * endpoint path that follow data/inputs/.
-     * @return A set of available {@code InputKind}s.
+     * @return A {@code Callable} that issues the request.
      */
-    private Set<InputKind> assembleInputKindSet(List<String> subPath) {
-        Set<InputKind> kinds = new HashSet<InputKind>();
-        ResponseMessage response = service.get(this.path + "/" + Util.join("/", subPath));
-        AtomFeed feed = AtomFeed.parseStream(response.getContent());
-        for (AtomEntry entry : feed.entries) {
-            String itemKeyName = itemKey(entry);
-
-            boolean hasCreateLink = false;
-            for (String linkName : entry.links.keySet()) {
-                if (linkName.equals("create")) {
-                    hasCreateLink = true;
+    private Callable<InputKindNode> listInputKinds(final List<String> subPath) {
+        return new Callable<InputKindNode>() {
+            public InputKindNode call() {
+                InputKindNode node = new InputKindNode();
+                ResponseMessage response = service.get(path + "/" + Util.join("/", subPath));
+                AtomFeed feed = AtomFeed.parseStream(response.getContent());
+                for (AtomEntry entry : feed.entries) {
+                    String itemKeyName = itemKey(entry);
+
+                    boolean hasCreateLink = false;
+                    for (String linkName : entry.links.keySet()) {
+                        if (linkName.equals("create")) {
+                            hasCreateLink = true;
+                        }
+                    }
+
+                    List<String> thisSubPath = new ArrayList<String>(subPath);
+                    thisSubPath.add(itemKeyName);
+
+                    String relpath = Util.join("/", thisSubPath);
+
+                    if (relpath.equals("all") || relpath.equals("tcp/ssl")) {
+                        // Skip these input types
+                        continue;
+                    } else if (hasCreateLink) {
+                        // Found an InputKind leaf
+                        node.kinds.add(InputKind.create(relpath));
+                    } else {
+                        node.subPaths.add(thisSubPath);
+                    }
                 }
+                return node;
             }
+        };
+    }
 
-            List<String> thisSubPath = new ArrayList<String>(subPath);
-            thisSubPath.add(itemKeyName);
-            
-            String relpath = Util.join("/", thisSubPath);
-
-            if (relpath.equals("all") || relpath.equals("tcp/ssl")) {
-                // Skip these input types
-                continue;
-            } else if (hasCreateLink) {
-                // Found an InputKind leaf
-                InputKind newKind = InputKind.create(relpath);
-                kinds.add(newKind);
-            } else {
-                Set<InputKind> subKinds = assembleInputKindSet(thisSubPath);
-                kinds.addAll(subKinds);
+    /**
+     * Fetches all the inputs of one kind.
+     *
+     * @param kind A member of {@code InputKind}, indicating the type of input.
+     * @return A {@code Callable} that issues the request and returns the
+     * parsed feed, or {@code null} if there is nothing to load for this kind.
+     */
+    private Callable<AtomFeed> fetchInputs(final InputKind kind) {
+        return new Callable<AtomFeed>() {
+            public AtomFeed call() {
+                if (service.versionIsAtLeast("6.0.0")) {
+                    // In Splunk 6 and later, the registry endpoint has been deprecated in favor of the new
+                    // WinRegMon modular input, but both now point to the same place. To avoid duplicates, we have
+                    // to read only one of them.
+                    if (kind.getKind().equals("registry")) {
+                        return null;
+                    }
+                }
+                String relpath = kind.getRelativePath();
+                String inputs = String.format("%s/%s?count=-1", path, relpath);
+                ResponseMessage response;
+                try {
+                    response = service.get(inputs);
+                }
+                catch (HttpException e) {
+                    // On some platforms certain input endpoints don't exist, for
+                    // example the Windows inputs endpoints don't exist on non-
+                    // Windows platforms.
+                    if (e.getStatus() == 404) return null;
+                    throw e;
+                }
+                try {
+                    return AtomFeed.parseStream(response.getContent());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
             }
-        }
-        return kinds;
+        };
     }
 
     /**
-     * Refreshes the {@code inputKinds} field on this object.
+     * Discovers all the input kinds that are available on this Splunk
+     * instance by walking the data/inputs tree. Each node is listed as soon as
+     * its parent has been read, and the inputs of each kind are requested as
+     * soon as the kind is found, so the walk takes about as long as the
+     * deepest path in the tree.
+     *
+     * @param executor The executor to issue requests on, or {@code null} to
+     * issue them on the calling thread.
+     * @param feeds The list to add the pending input requests to.
+     * @return The set of available {@code InputKind}s.
      */
-    private void refreshInputKinds() {
-        Set<InputKind> kinds = assembleInputKindSet(new ArrayList<String>());
-        
-        this.inputKinds.clear();
-        this.inputKinds.addAll(kinds);
+    private Set<InputKind> discoverInputKinds(ExecutorService executor, List<Future<AtomFeed>> feeds) {
+        Set<InputKind> kinds = new LinkedHashSet<InputKind>();
+        List<Future<InputKindNode>> pending = new ArrayList<Future<InputKindNode>>();
+        pending.add(submit(executor, listInputKinds(new ArrayList<String>())));
+        while (!pending.isEmpty()) {
+            InputKindNode node = await(pending.remove(0));
+            for (InputKind kind : node.kinds) {
+                if (kinds.add(kind)) {
+                    feeds.add(submit(executor, fetchInputs(kind)));
+                }
+            }
+            for (List<String> subPath : node.subPaths) {
+                pending.add(submit(executor, listInputKinds(subPath)));
+            }
+        }
+        return kinds;
     }
 
     /**
      * Refreshes this input collection.
+     * <p>
+     * The input kinds are discovered, and the inputs of each kind are fetched,
+     * with up to {@link Service#getInputRefreshConcurrency} requests in
+     * flight at once. The discovered input kinds are reused by later refreshes
+     * for {@link Service#getInputKindCacheTtl} milliseconds.
      *
      * @return The refreshed {@code InputCollection}.
      */
     @Override public InputCollection refresh() {
-        // Populate this.inputKinds
-        refreshInputKinds();
-
-        items.clear();
-
-        // Iterate over all input kinds and collect all instances.
-        for (InputKind kind : this.inputKinds) {
-            if (service.versionIsAtLeast("6.0.0")) {
-                // In Splunk 6 and later, the registry endpoint has been deprecated in favor of the new
-                // WinRegMon modular input, but both now point to the same place. To avoid duplicates, we have
-                // to read only one of them.
-                if (kind.getKind().equals("registry")) {
-                    continue;
+        int concurrency = service.getInputRefreshConcurrency();
+        ExecutorService executor = concurrency > 1 ? newExecutor(concurrency) : null;
+        try {
+            List<Future<AtomFeed>> feeds = new ArrayList<Future<AtomFeed>>();
+            Set<InputKind> kinds = service.getCachedInputKinds();
+            if (kinds == null) {
+                kinds = discoverInputKinds(executor, feeds);
+                service.cacheInputKinds(kinds);
+            } else {
+                for (InputKind kind : kinds) {
+                    feeds.add(submit(executor, fetchInputs(kind)));
                 }
             }
-            String relpath = kind.getRelativePath();
-            String inputs = String.format("%s/%s?count=-1", path, relpath);
-            ResponseMessage response;
-            try {
-                response = service.get(inputs);
-            }
-            catch (HttpException e) {
-                // On some platforms certain input endpoints don't exist, for
-                // example the Windows inputs endpoints don't exist on non-
-                // Windows platforms.
-                if (e.getStatus() == 404) continue;
-                throw e;
+
+            // Populate this.inputKinds before loading, since createItem uses it.
+            this.inputKinds.clear();
+            this.inputKinds.addAll(kinds);
+
+            items.clear();
+            for (Future<AtomFeed> future : feeds) {
+                AtomFeed feed = await(future);
+                if (feed != null) {
+                    load(feed);
+                }
             }
-            AtomFeed feed;
-            try {
-                feed = AtomFeed.parseStream(response.getContent());
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
-            load(feed);
         }
 
         return this;
     }
 
+    private static ExecutorService newExecutor(int concurrency) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                concurrency, concurrency, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                BackgroundThreads.named("splunk-input-refresh"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static <T> Future<T> submit(ExecutorService executor, Callable<T> callable) {
+        FutureTask<T> task = new FutureTask<T>(callable);
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * The result of listing one node of the data/inputs tree.
+     */
+    private static class InputKindNode {
+        final List<InputKind> kinds = new ArrayList<InputKind>();
+        final List<List<String>> subPaths = new ArrayList<List<String>>();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -569,6 +569,47 @@ public class Job extends Entity {
         return getResultsPreview((Map<String, Object>) args);
     }
 
+    /**
+     * Starts delivering this job's preview results to a listener as they
+     * change. Only rows that are new or changed since the previous preview are
+     * delivered. See {@link RealtimeSubscription}.
+     *
+     * @param listener The listener to deliver rows to.
+     * @return The started subscription. Close it to stop polling.
+     */
+    public RealtimeSubscription subscribe(RealtimeSubscription.Listener listener) {
+        return subscribe(null, listener);
+    }
+
+    /**
+     * Starts delivering this job's preview results to a listener as they
+     * change. Only rows that are new or changed since the previous preview are
+     * delivered. See {@link RealtimeSubscription}.
+     *
+     * @param args Optional arguments for the results_preview endpoint (see
+     * {@link JobResultsPreviewArgs}).
+     * @param listener The listener to deliver rows to.
+     * @return The started subscription. Close it to stop polling.
+     */
+    public RealtimeSubscription subscribe(Map<String, Object> args,
+            RealtimeSubscription.Listener listener) {
+        checkReady();
+        return new RealtimeSubscription(this, args, listener).start();
+    }
+
+    /**
+     * Returns a publisher of this job's results, which reads them only as
+     * subscribers request them. See {@link ResultsPublisher}.
+     *
+     * @param args Optional arguments for the results endpoint (see
+     * {@link JobResultsArgs}). The {@code output_mode} argument may be "json"
+     * (the default), "xml", or "csv".
+     * @return The publisher. Each subscriber reads the results separately.
+     */
+    public ResultsPublisher getResultsPublisher(Map args) {
+        return ResultsPublisher.forJobResults(this, args);
+    }
+
     /**
      * Returns the time that the search job took to complete.
      *
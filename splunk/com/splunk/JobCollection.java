@@ -85,6 +85,10 @@ public class JobCollection extends EntityCollection<Job> {
             .getElementsByTagName("sid")
             .item(0)
             .getTextContent();
+        if (response.member != null) {
+            // Poll the job on the cluster member that runs it.
+            response.member.bind(sid);
+        }
 
         Job job = new Job(service, REST_PATH + "/" + sid);
         job.refresh();
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Walks a JSON document by character offsets, so that parts of it can be
+ * located and skipped without building a tree of the whole document. Only
+ * strings are decoded; other values are skipped over.
+ * <p>
+ * A scanner keeps no state besides its text, so it may be used from several
+ * threads.
+ */
+class JsonScanner {
+    private final String text;
+
+    JsonScanner(String text) {
+        this.text = text;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the offset of the first character at or after {@code position}
+     * that is not whitespace.
+     */
+    int skipWhitespace(int position) {
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the offset just after the value that starts at
+     * {@code position}.
+     */
+    int skipValue(int position) {
+        position = skipWhitespace(position);
+        char c = charAt(position);
+        if (c == '"') {
+            return skipString(position);
+        } else if (c == '{' || c == '[') {
+            // Count nesting, stepping over strings, which may contain brackets.
+            int depth = 0;
+            while (true) {
+                c = charAt(position);
+                if (c == '"') {
+                    position = skipString(position);
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return position + 1;
+                    }
+                }
+                position++;
+            }
+        } else {
+            // A number, true, false, or null.
+            int start = position;
+            while (position < text.length()) {
+                c = text.charAt(position);
+                if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                    break;
+                }
+                position++;
+            }
+            if (position == start) {
+                throw error("Expected a value", start);
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Returns the offset just after the string that starts at
+     * {@code position}.
+     */
+    int skipString(int position) {
+        expect('"', position);
+        position++;
+        while (true) {
+            char c = charAt(position);
+            if (c == '\\') {
+                position += 2;
+            } else if (c == '"') {
+                return position + 1;
+            } else {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Decodes the string that starts at {@code position}.
+     */
+    String readString(int position) {
+        expect('"', position);
+        int start = position + 1;
+        int end = skipString(position) - 1;
+        int escape = start;
+        while (escape < end && text.charAt(escape) != '\\') {
+            escape++;
+        }
+        if (escape == end) {
+            return text.substring(start, end);
+        }
+
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            c = text.charAt(++i);
+            switch (c) {
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'n': builder.append('\n'); break;
+                case 'r': builder.append('\r'); break;
+                case 't': builder.append('\t'); break;
+                case 'u':
+                    if (i + 4 >= end) {
+                        throw error("Truncated escape sequence", i);
+                    }
+                    try {
+                        builder.append((char)Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Malformed escape sequence", i);
+                    }
+                    i += 4;
+                    break;
+                default: builder.append(c); break;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the offset of the value of the next member of the object that
+     * contains {@code position}, with the member's name in {@code name[0]},
+     * or -1 at the end of the object. {@code position} is either just after
+     * the object's opening brace or just after the previous member's value.
+     */
+    int nextMember(int position, String[] name) {
+        position = skipWhitespace(position);
+        char c = charAt(position);
+        if (c == '}') {
+            return -1;
+        }
+        if (c == ',') {
+            position = skipWhitespace(position + 1);
+        }
+        name[0] = readString(position);
+        position = skipWhitespace(skipString(position));
+        expect(':', position);
+        return skipWhitespace(position + 1);
+    }
+
+    /**
+     * Returns the offset of the next element of the array that contains
+     * {@code position}, or -1 at the end of the array. {@code position} is
+     * either just after the array's opening bracket or just after the
+     * previous element.
+     */
+    int nextElement(int position) {
+        position = skipWhitespace(position);
+        char c = charAt(position);
+        if (c == ']') {
+            return -1;
+        }
+        if (c == ',') {
+            position = skipWhitespace(position + 1);
+        }
+        return position;
+    }
+
+    /**
+     * Checks that the character at {@code position}, after any whitespace,
+     * is {@code expected}, and returns the offset just after it.
+     */
+    int enter(char expected, int position) {
+        position = skipWhitespace(position);
+        expect(expected, position);
+        return position + 1;
+    }
+
+    private void expect(char expected, int position) {
+        if (charAt(position) != expected) {
+            throw error("Expected '" + expected + "'", position);
+        }
+    }
+
+    private char charAt(int position) {
+        if (position >= text.length()) {
+            throw error("Unexpected end of document", position);
+        }
+        return text.charAt(position);
+    }
+
+    private JsonSyntaxException error(String message, int position) {
+        return new JsonSyntaxException(message + " at offset " + position);
+    }
+}
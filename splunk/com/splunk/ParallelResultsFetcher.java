@@ -0,0 +1,317 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code ParallelResultsFetcher} class reads the results of a finished
+ * search job by splitting them into pages of consecutive offsets and fetching
+ * several pages at once, each over its own connection and with its own
+ * {@link ResultsReader}.
+ * <p>
+ * Pages are fetched ahead of the page being read, up to a window of pages, so
+ * at most about {@code (window + 1) * pageSize} events are held in memory.
+ * Events are returned in offset order by default. Call
+ * {@code setOrdered(false)} to return each page as soon as it arrives instead.
+ * <p>
+ * For example:
+ * <pre>
+ * ParallelResultsFetcher fetcher = new ParallelResultsFetcher(job, 10000);
+ * fetcher.setConcurrency(4);
+ * try {
+ *     for (Event event : fetcher) {
+ *         ...
+ *     }
+ * } finally {
+ *     fetcher.close();
+ * }
+ * </pre>
+ */
+public class ParallelResultsFetcher extends StreamIterableBase<Event>
+        implements Closeable {
+    /**
+     * Specifies which of a job's endpoints to read.
+     */
+    public static enum Source {
+        /** The job's results, counted by {@link Job#getResultCount}. */
+        RESULTS,
+        /** The job's events, counted by {@link Job#getEventCount}. */
+        EVENTS
+    }
+
+    private final Job job;
+    private final int pageSize;
+    private Source source = Source.RESULTS;
+    private Map<String, Object> args = null;
+    private int concurrency = 4;
+    private int window = 8;
+    private boolean ordered = true;
+
+    // Iteration state, set up by the first call to getNextEvent.
+    private boolean started = false;
+    private boolean closed = false;
+    private ThreadPoolExecutor executor;
+    private CompletionService<List<Event>> completionService;
+    private final LinkedList<Future<List<Event>>> pending =
+            new LinkedList<Future<List<Event>>>();
+    private int total;
+    private int pageCount;
+    private int nextPage = 0;
+    private int pagesTaken = 0;
+    private Iterator<Event> page = null;
+
+    /**
+     * Class constructor.
+     *
+     * @param job The finished search job to read.
+     * @param pageSize The number of events to request at a time. This should
+     * not exceed the server's {@code maxresultrows} setting in limits.conf,
+     * which is 50000 by default.
+     */
+    public ParallelResultsFetcher(Job job, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1.");
+        }
+        this.job = job;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Sets which of the job's endpoints to read. The default is
+     * {@code Source.RESULTS}.
+     *
+     * @param source The endpoint to read.
+     */
+    public void setSource(Source source) {
+        checkNotStarted();
+        this.source = source;
+    }
+
+    /**
+     * Sets additional arguments to send with each page request, such as a
+     * {@link JobResultsArgs} or {@link JobEventsArgs} with a field list.
+     * The {@code offset} and {@code count} arguments are set for each page.
+     * The {@code output_mode} argument may be "json" (the default), "xml", or
+     * "csv".
+     *
+     * @param args The arguments to send with each request.
+     */
+    public void setArgs(Map<String, Object> args) {
+        checkNotStarted();
+        this.args = args;
+    }
+
+    /**
+     * Sets the number of pages to fetch at once. The default is 4.
+     *
+     * @param concurrency The maximum number of concurrent requests.
+     */
+    public void setConcurrency(int concurrency) {
+        checkNotStarted();
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets the number of pages that may be fetched, or waiting to be read,
+     * ahead of the page being read. The default is 8.
+     *
+     * @param window The maximum number of pages ahead of the reader.
+     */
+    public void setWindow(int window) {
+        checkNotStarted();
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be at least 1.");
+        }
+        this.window = window;
+    }
+
+    /**
+     * Sets whether events are returned in offset order. If not, pages are
+     * returned in the order they arrive, although the events within each page
+     * are still in order. The default is {@code true}.
+     *
+     * @param ordered Whether to return events in offset order.
+     */
+    public void setOrdered(boolean ordered) {
+        checkNotStarted();
+        this.ordered = ordered;
+    }
+
+    /**
+     * Returns the next event.
+     *
+     * @return The next event, or {@code null} if all the events have been
+     * returned.
+     * @throws IOException If a page could not be fetched or parsed.
+     */
+    public Event getNextEvent() throws IOException {
+        return getNextElement();
+    }
+
+    /**
+     * Stops fetching pages and releases the threads used to fetch them.
+     */
+    public void close() {
+        closed = true;
+        page = null;
+        pending.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override Event getNextElement() throws IOException {
+        if (!started) {
+            start();
+        }
+        while (page == null || !page.hasNext()) {
+            if (closed || pagesTaken == pageCount) {
+                close();
+                return null;
+            }
+            page = takePage().iterator();
+            pagesTaken++;
+            submitNextPage();
+        }
+        return page.next();
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException(
+                    "Cannot configure a fetcher that has started reading.");
+        }
+    }
+
+    private void start() {
+        started = true;
+        if (closed) {
+            return;
+        }
+        if (!job.isDone()) {
+            throw new IllegalStateException(
+                    "Job is not done; use Job.getResultsPreview instead.");
+        }
+        total = source == Source.EVENTS ? job.getEventCount() : job.getResultCount();
+        pageCount = (int)(((long)total + pageSize - 1) / pageSize);
+        if (pageCount == 0) {
+            return;
+        }
+
+        // The threads exit once the last page has been fetched, or after
+        // idling if a reader is abandoned without being closed.
+        int threads = Math.min(concurrency, pageCount);
+        executor = new ThreadPoolExecutor(
+                threads, threads, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                BackgroundThreads.named("splunk-results-fetcher"));
+        executor.allowCoreThreadTimeOut(true);
+        completionService = new ExecutorCompletionService<List<Event>>(executor);
+        for (int i = 0; i < window; i++) {
+            submitNextPage();
+        }
+    }
+
+    private void submitNextPage() {
+        if (nextPage < pageCount) {
+            pending.add(completionService.submit(fetchPage(nextPage)));
+            nextPage++;
+            if (nextPage == pageCount) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private List<Event> takePage() throws IOException {
+        Future<List<Event>> future;
+        try {
+            if (ordered) {
+                future = pending.removeFirst();
+            } else {
+                future = completionService.take();
+                pending.remove(future);
+            }
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IOException("Interrupted while waiting for results.");
+        } catch (ExecutionException e) {
+            close();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private Callable<List<Event>> fetchPage(final int index) {
+        return new Callable<List<Event>>() {
+            public List<Event> call() throws IOException {
+                int offset = index * pageSize;
+                int count = Math.min(pageSize, total - offset);
+
+                Args pageArgs = Args.create(args);
+                pageArgs.put("offset", offset);
+                pageArgs.put("count", count);
+                if (!pageArgs.containsKey("output_mode")) {
+                    pageArgs.put("output_mode", "json");
+                }
+                String outputMode = pageArgs.get("output_mode").toString();
+
+                InputStream stream = source == Source.EVENTS
+                        ? job.getEvents(pageArgs)
+                        : job.getResults(pageArgs);
+                ResultsReader reader = ResultsReader.create(outputMode, stream);
+                try {
+                    List<Event> events = new ArrayList<Event>(count);
+                    Event event;
+                    while ((event = reader.getNextEvent()) != null) {
+                        events.add(event);
+                    }
+                    return events;
+                } finally {
+                    reader.close();
+                }
+            }
+        };
+    }
+}
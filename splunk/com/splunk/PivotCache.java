@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The {@code PivotCache} class keeps the queries that splunkd compiled for
+ * pivots, so that calling {@link PivotSpecification#pivot} again on an
+ * equivalent specification returns the earlier {@link Pivot} without a
+ * request to the server.
+ * <p>
+ * Set a cache on a {@code Service} with {@link Service#setPivotCache}. A
+ * pivot is identified by its specification, its acceleration namespace, the
+ * data model's path, and the time the data model was last updated, so pivots
+ * compiled before the data model changed are not reused once the data model
+ * has been refreshed. Each {@code Service} should have its own cache, since a
+ * cached {@code Pivot} runs its searches through the {@code Service} that
+ * compiled it. When the cache holds more than its
+ * maximum number of pivots, the least recently used ones are dropped.
+ */
+public class PivotCache {
+    private final int maximumEntries;
+
+    // Pivots by key, least recently used first.
+    private final LinkedHashMap<String, Pivot> entries;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maximumEntries The maximum number of pivots to keep.
+     */
+    public PivotCache(final int maximumEntries) {
+        if (maximumEntries < 1) {
+            throw new IllegalArgumentException("maximumEntries must be at least 1.");
+        }
+        this.maximumEntries = maximumEntries;
+        this.entries = new LinkedHashMap<String, Pivot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pivot> eldest) {
+                return size() > maximumEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the maximum number of pivots this cache keeps.
+     *
+     * @return The maximum number of pivots.
+     */
+    public int getMaximumEntries() {
+        return maximumEntries;
+    }
+
+    /**
+     * Returns the number of pivots in this cache.
+     *
+     * @return The number of pivots.
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all pivots from this cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the pivot stored under a key, or null if there is none.
+     */
+    synchronized Pivot get(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(String key, Pivot pivot) {
+        entries.put(key, pivot);
+    }
+
+    /**
+     * Returns the key that identifies the pivot of a specification: a hash of
+     * its JSON with the members of each object sorted by name, together with
+     * everything else the compiled queries depend on.
+     */
+    static String keyFor(PivotSpecification specification) {
+        DataModel dataModel = specification.getDataModelObject().getDataModel();
+
+        StringBuilder key = new StringBuilder();
+        appendCanonical(key, specification.toJson());
+        key.append('\n').append(specification.getAccelerationNamespace());
+        key.append('\n').append(dataModel.getPath());
+        key.append('\n').append(dataModel.getUpdated());
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void appendCanonical(StringBuilder builder, JsonElement element) {
+        if (element.isJsonObject()) {
+            Map<String, JsonElement> members = new TreeMap<String, JsonElement>();
+            for (Map.Entry<String, JsonElement> member : ((JsonObject)element).entrySet()) {
+                members.put(member.getKey(), member.getValue());
+            }
+            builder.append('{');
+            boolean first = true;
+            for (Map.Entry<String, JsonElement> member : members.entrySet()) {
+                if (!first) builder.append(',');
+                builder.append(new JsonPrimitive(member.getKey())).append(':');
+                appendCanonical(builder, member.getValue());
+                first = false;
+            }
+            builder.append('}');
+        } else if (element.isJsonArray()) {
+            builder.append('[');
+            boolean first = true;
+            for (JsonElement item : (JsonArray)element) {
+                if (!first) builder.append(',');
+                appendCanonical(builder, item);
+                first = false;
+            }
+            builder.append(']');
+        } else {
+            builder.append(element.toString());
+        }
+    }
+}
@@ -18,6 +18,12 @@ package com.splunk;
 import com.google.gson.*;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * PivotSpecification represents a pivot to be done on a particular data model object. The user creates a
@@ -458,12 +464,118 @@ public class PivotSpecification {
         return Collections.unmodifiableCollection(this.cells);
     }
 
+    DataModelObject getDataModelObject() {
+        return this.dataModelObject;
+    }
+
     /**
-     * Query Splunk for SPL queries corresponding to this pivot.
+     * Query Splunk for SPL queries corresponding to this pivot. If the service has a {@link PivotCache}, a pivot
+     * compiled earlier for an equivalent specification is returned instead.
      *
      * @return a Pivot object encapsulating the returned queries.
      */
     public Pivot pivot() {
+        PivotCache cache = this.dataModelObject.getDataModel().getService().getPivotCache();
+        if (cache == null) {
+            return compile();
+        }
+
+        String key = PivotCache.keyFor(this);
+        Pivot pivot = cache.get(key);
+        if (pivot == null) {
+            pivot = compile();
+            cache.put(key, pivot);
+        }
+        return pivot;
+    }
+
+    /**
+     * Query Splunk for SPL queries corresponding to several pivots, with up to the given number of requests in
+     * flight at once. Pivots found in the service's {@link PivotCache} are not requested again, and equivalent
+     * specifications are only requested once.
+     *
+     * @param service the service the pivots are compiled by.
+     * @param specifications the pivots to compile.
+     * @param concurrency the maximum number of concurrent requests.
+     * @return the pivots, in the order of the specifications.
+     */
+    static List<Pivot> pivotAll(Service service, Collection<PivotSpecification> specifications, int concurrency) {
+        PivotCache cache = service.getPivotCache();
+
+        List<String> keys = new ArrayList<String>(specifications.size());
+        Map<String, Pivot> pivots = new HashMap<String, Pivot>();
+        Map<String, PivotSpecification> misses = new LinkedHashMap<String, PivotSpecification>();
+        for (PivotSpecification specification : specifications) {
+            String key = PivotCache.keyFor(specification);
+            keys.add(key);
+            Pivot pivot = cache == null ? null : cache.get(key);
+            if (pivot != null) {
+                pivots.put(key, pivot);
+            } else if (!misses.containsKey(key)) {
+                misses.put(key, specification);
+            }
+        }
+
+        int threads = Math.min(concurrency, misses.size());
+        ExecutorService executor = threads > 1 ? newExecutor(threads) : null;
+        try {
+            Map<String, Future<Pivot>> compiled = new LinkedHashMap<String, Future<Pivot>>();
+            for (Map.Entry<String, PivotSpecification> miss : misses.entrySet()) {
+                final PivotSpecification specification = miss.getValue();
+                FutureTask<Pivot> task = new FutureTask<Pivot>(new Callable<Pivot>() {
+                    public Pivot call() {
+                        return specification.compile();
+                    }
+                });
+                if (executor == null) {
+                    task.run();
+                } else {
+                    executor.execute(task);
+                }
+                compiled.put(miss.getKey(), task);
+            }
+            for (Map.Entry<String, Future<Pivot>> entry : compiled.entrySet()) {
+                Pivot pivot = await(entry.getValue());
+                pivots.put(entry.getKey(), pivot);
+                if (cache != null) {
+                    cache.put(entry.getKey(), pivot);
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        List<Pivot> result = new ArrayList<Pivot>(keys.size());
+        for (String key : keys) {
+            result.add(pivots.get(key));
+        }
+        return result;
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, BackgroundThreads.named("splunk-pivot"));
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private Pivot compile() {
         Service service = this.dataModelObject.getDataModel().getService();
 
         Args args = new Args();
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code RealtimeSubscription} class delivers the rows of a real-time (or
+ * still running) search to a {@link Listener} as they appear, instead of
+ * leaving callers to poll the full preview and work out what changed.
+ * <p>
+ * A subscription works in one of two ways:
+ * <ul>
+ * <li>Created from a {@link Job}, it polls the job's preview results. Each
+ * preview is compared with the previous one, and only rows that are new or
+ * changed are delivered. The polling interval grows while the preview stays
+ * the same and drops back as soon as it changes. The subscription finishes
+ * when the job returns final, rather than preview, results.</li>
+ * <li>Created from a search string, it runs the search on the streaming
+ * export endpoint, so new rows arrive as the server produces them and are
+ * delivered without polling. Repeated preview sets, such as those of a
+ * real-time reporting search, are compared in the same way.</li>
+ * </ul>
+ * Rows are compared by their field values, ignoring {@code _serial}, which
+ * only reflects a row's position in the preview. A row that occurs more times
+ * than in the previous set, such as a repeated event, is delivered once for
+ * each extra occurrence. Final (not preview) rows are only compared with the
+ * preview before them, if any, and are otherwise delivered as they are read,
+ * so streaming the events of a real-time search keeps no state per event.
+ * Listeners are called on the subscription's own thread.
+ */
+public class RealtimeSubscription implements Closeable {
+    /**
+     * Receives the rows delivered by a {@code RealtimeSubscription}.
+     */
+    public interface Listener {
+        /**
+         * Called with rows that are new or changed since the last call.
+         *
+         * @param events The new or changed rows.
+         */
+        void onEvents(List<Event> events);
+
+        /**
+         * Called once when the search has finished and all its rows have been
+         * delivered. Not called if the subscription is closed first.
+         */
+        void onFinished();
+
+        /**
+         * Called once if the subscription stops because of an error.
+         *
+         * @param e The error.
+         */
+        void onError(Exception e);
+    }
+
+    private final Job job;
+    private final Service service;
+    private final String search;
+    private final Map<String, Object> args;
+    private final Listener listener;
+
+    private long minimumInterval = 500;
+    private long maximumInterval = 10000;
+
+    private Thread thread = null;
+    private volatile boolean stopped = false;
+    private volatile InputStream exportStream = null;
+
+    // How many times each row fingerprint occurs in the previous preview set,
+    // and in the preview set being read.
+    private Map<Long, Integer> previousRows = new HashMap<Long, Integer>();
+    private Map<Long, Integer> currentRows = new HashMap<Long, Integer>();
+
+    /**
+     * Creates a subscription that polls the preview results of a job. Call
+     * {@link #start} to begin delivering rows.
+     *
+     * @param job The job to poll.
+     * @param args Optional arguments for the job's results_preview endpoint,
+     * such as {@code count} or {@code search}. May be {@code null}.
+     * @param listener The listener to deliver rows to.
+     */
+    public RealtimeSubscription(Job job, Map<String, Object> args, Listener listener) {
+        this.job = job;
+        this.service = null;
+        this.search = null;
+        this.args = args;
+        this.listener = listener;
+    }
+
+    /**
+     * Creates a subscription that runs a search on the export endpoint. Call
+     * {@link #start} to begin delivering rows.
+     *
+     * @param service The {@code Service} to run the search on.
+     * @param search The search query. For a real-time search, either set
+     * {@code earliest_time} and {@code latest_time} to real-time modifiers in
+     * {@code args}, or leave them unset to use "rt" for both.
+     * @param args Optional search arguments (see {@link JobExportArgs}). May
+     * be {@code null}.
+     * @param listener The listener to deliver rows to.
+     */
+    public RealtimeSubscription(Service service, String search, Map<String, Object> args,
+            Listener listener) {
+        this.job = null;
+        this.service = service;
+        this.search = search;
+        this.args = args;
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the shortest time to wait between polls of a job's preview, which
+     * is used after a poll finds new rows. The default is 500 milliseconds.
+     *
+     * @param milliseconds The shortest polling interval.
+     */
+    public void setMinimumInterval(long milliseconds) {
+        this.minimumInterval = milliseconds;
+    }
+
+    /**
+     * Sets the longest time to wait between polls of a job's preview. While
+     * the preview stays the same, the interval doubles up to this value. The
+     * default is 10 seconds.
+     *
+     * @param milliseconds The longest polling interval.
+     */
+    public void setMaximumInterval(long milliseconds) {
+        this.maximumInterval = milliseconds;
+    }
+
+    /**
+     * Starts delivering rows on a background thread.
+     *
+     * @return This subscription.
+     */
+    public synchronized RealtimeSubscription start() {
+        if (thread != null) {
+            throw new IllegalStateException("Subscription already started.");
+        }
+        thread = BackgroundThreads.newThread(new Runnable() {
+            public void run() {
+                runSubscription();
+            }
+        }, "splunk-realtime-subscription");
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Stops delivering rows. The job, if any, is left running.
+     */
+    public void close() {
+        stopped = true;
+        InputStream stream = exportStream;
+        if (stream != null) {
+            try {
+                // Unblocks the subscription thread if it is waiting for rows.
+                stream.close();
+            } catch (IOException e) {
+                // Nothing more to deliver either way.
+            }
+        }
+        Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t != null && t != Thread.currentThread()) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Waits for the subscription to finish, fail, or be closed.
+     *
+     * @param milliseconds How long to wait, or 0 to wait indefinitely.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public void join(long milliseconds) throws InterruptedException {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t != null) {
+            t.join(milliseconds);
+        }
+    }
+
+    private void runSubscription() {
+        try {
+            if (job != null) {
+                pollPreview();
+            } else {
+                readExport();
+            }
+            if (!stopped) {
+                listener.onFinished();
+            }
+        } catch (InterruptedException e) {
+            // Closed while waiting to poll.
+        } catch (Exception e) {
+            if (!stopped) {
+                listener.onError(e);
+            }
+        }
+    }
+
+    private void pollPreview() throws IOException, InterruptedException {
+        PreviewBuffer buffer = new PreviewBuffer();
+        long interval = minimumInterval;
+        while (!stopped) {
+            Args previewArgs = Args.create(args);
+            previewArgs.put("output_mode", "json");
+
+            buffer.reset();
+            InputStream stream = job.getResultsPreview(previewArgs);
+            try {
+                buffer.readFrom(stream);
+            } finally {
+                stream.close();
+            }
+
+            boolean changed = false;
+            boolean finished = false;
+            if (buffer.size() > 0) {
+                ResultsReaderJson reader = new ResultsReaderJson(buffer.toInputStream());
+                try {
+                    finished = !isPreview(reader);
+                    changed = deliverSet(reader, !finished, null);
+                } finally {
+                    reader.close();
+                }
+            }
+            if (finished) {
+                return;
+            }
+
+            interval = changed ? minimumInterval : Math.min(interval * 2, maximumInterval);
+            Thread.sleep(interval);
+        }
+    }
+
+    private void readExport() throws IOException {
+        Args exportArgs = Args.create(args);
+        exportArgs.put("output_mode", "json");
+        if (!exportArgs.containsKey("earliest_time") && !exportArgs.containsKey("latest_time")) {
+            exportArgs.put("earliest_time", "rt");
+            exportArgs.put("latest_time", "rt");
+            exportArgs.put("search_mode", "realtime");
+        }
+
+        InputStream stream = service.export(search, exportArgs);
+        exportStream = stream;
+        if (stopped) {
+            stream.close();
+            return;
+        }
+        MultiResultsReaderJson reader = new MultiResultsReaderJson(stream);
+        try {
+            for (SearchResults set : reader) {
+                if (stopped) {
+                    return;
+                }
+                deliverSet(set, isPreview(set), stream);
+            }
+        } catch (RuntimeException e) {
+            // The readers' iterators wrap IOExceptions.
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw e;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Delivers the rows of one result set that were not in the previous
+     * preview set, or that occur more times than they did in it. Only the rows
+     * of a preview set are counted for the next set to be compared with.
+     * When {@code source} is given, rows are delivered as soon as no more
+     * input is immediately available, rather than at the end of the set.
+     *
+     * @return {@code true} if any rows were delivered.
+     */
+    private boolean deliverSet(Iterable<Event> rows, boolean preview, InputStream source) throws IOException {
+        boolean delivered = false;
+        List<Event> batch = new ArrayList<Event>();
+        for (Event row : rows) {
+            if (stopped) {
+                return delivered;
+            }
+            if (preview) {
+                Long fingerprint = fingerprint(row);
+                int count = count(currentRows, fingerprint) + 1;
+                currentRows.put(fingerprint, count);
+                if (count > count(previousRows, fingerprint)) {
+                    batch.add(row);
+                }
+            } else if (previousRows.isEmpty()) {
+                batch.add(row);
+            } else {
+                // Each row of the preview accounts for one equal final row.
+                Long fingerprint = fingerprint(row);
+                int count = count(previousRows, fingerprint);
+                if (count == 0) {
+                    batch.add(row);
+                } else if (count == 1) {
+                    previousRows.remove(fingerprint);
+                } else {
+                    previousRows.put(fingerprint, count - 1);
+                }
+            }
+            if (source != null && !batch.isEmpty() && source.available() == 0) {
+                listener.onEvents(batch);
+                batch = new ArrayList<Event>();
+                delivered = true;
+            }
+        }
+        if (!batch.isEmpty() && !stopped) {
+            listener.onEvents(batch);
+            delivered = true;
+        }
+
+        if (preview) {
+            Map<Long, Integer> swap = previousRows;
+            previousRows = currentRows;
+            currentRows = swap;
+        } else {
+            previousRows.clear();
+        }
+        currentRows.clear();
+        return delivered;
+    }
+
+    /**
+     * Returns the number of row fingerprints kept for comparing sets.
+     */
+    int getTrackedRowCount() {
+        return previousRows.size() + currentRows.size();
+    }
+
+    private static int count(Map<Long, Integer> rows, Long fingerprint) {
+        Integer count = rows.get(fingerprint);
+        return count == null ? 0 : count;
+    }
+
+    private static boolean isPreview(SearchResults results) {
+        try {
+            return results.isPreview();
+        } catch (UnsupportedOperationException e) {
+            // Splunk 4.x does not say; keep polling until closed.
+            return true;
+        }
+    }
+
+    /**
+     * Returns a 64-bit hash of a row's fields that does not depend on their
+     * order, so that equal rows have equal fingerprints.
+     */
+    static long fingerprint(Map<String, String> row) {
+        long fingerprint = 0;
+        for (Map.Entry<String, String> field : row.entrySet()) {
+            if (field.getKey().equals("_serial")) {
+                continue;
+            }
+            long hash = 0xcbf29ce484222325L;
+            hash = hash(hash, field.getKey());
+            hash = (hash ^ 0xff) * 0x100000001b3L;
+            hash = hash(hash, field.getValue());
+            fingerprint += hash;
+        }
+        return fingerprint;
+    }
+
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return hash;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * A response buffer that is reused across polls, so each poll reads the
+     * preview into memory that is already allocated.
+     */
+    private static class PreviewBuffer extends ByteArrayOutputStream {
+        private final byte[] chunk = new byte[8192];
+
+        PreviewBuffer() {
+            super(8192);
+        }
+
+        void readFrom(InputStream stream) throws IOException {
+            int n;
+            while ((n = stream.read(chunk)) != -1) {
+                write(chunk, 0, n);
+            }
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -19,12 +19,88 @@ package com.splunk;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The {@code Record} class represents an extension of {@code HashMap} that 
  * contains a variety of value-converting access methods.
+ *
+ * The value-converting methods remember what they parsed, so reading the
+ * same typed value again costs a lookup rather than a parse. A remembered
+ * value is only used while the key still maps to the exact object it was
+ * parsed from, so modifying the map never yields a stale value.
  */
 public class Record extends HashMap<String, Object> {
+    private static final int BOOLEAN = 0;
+    private static final int BYTE_COUNT = 1;
+    private static final int DATE = 2;
+    private static final int FLOAT = 3;
+    private static final int INTEGER = 4;
+    private static final int LONG = 5;
+
+    // Typed values parsed so far, created on first use. Typed getters may be
+    // called from several threads at once, as plain reads always could.
+    private transient volatile ConcurrentHashMap<String, ParsedValue> parsed;
+
+    private static final class ParsedValue {
+        final int kind;
+        final Object source;
+        final Object value;
+
+        ParsedValue(int kind, Object source, Object value) {
+            this.kind = kind;
+            this.source = source;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Returns the value associated with the given key converted to the given
+     * kind, parsing it only if it has not been parsed as that kind before.
+     *
+     * @param key The key of the value being retrieved.
+     * @param kind The kind of value to convert to.
+     * @return The converted value.
+     */
+    private Object getParsed(String key, int kind) {
+        Object source = get(key);
+        ConcurrentHashMap<String, ParsedValue> cache = parsed;
+        if (cache != null) {
+            ParsedValue cached = cache.get(key);
+            if (cached != null && cached.kind == kind && cached.source == source) {
+                return cached.value;
+            }
+        }
+
+        String text = source.toString();
+        Object value;
+        switch (kind) {
+            case BOOLEAN: value = Value.toBoolean(text); break;
+            case BYTE_COUNT: value = Value.toByteCount(text); break;
+            case DATE: value = Value.toDate(text); break;
+            case FLOAT: value = Value.toFloat(text); break;
+            case INTEGER: value = Value.toInteger(text); break;
+            default: value = Value.toLong(text); break;
+        }
+
+        if (cache == null) {
+            synchronized (this) {
+                if (parsed == null) {
+                    parsed = new ConcurrentHashMap<String, ParsedValue>(16, 0.75f, 1);
+                }
+                cache = parsed;
+            }
+        }
+        cache.put(key, new ParsedValue(kind, source, value));
+        return value;
+    }
+
+    /** {@inheritDoc} */
+    @Override public Object clone() {
+        Record result = (Record)super.clone();
+        result.parsed = null;
+        return result;
+    }
 
     /**
      * Returns the {@code Boolean} value associated with the given key.
@@ -34,7 +110,7 @@ public class Record extends HashMap<String, Object> {
      *         key does not exist.
      */
     boolean getBoolean(String key) {
-        return Value.toBoolean(getString(key));
+        return (Boolean)getParsed(key, BOOLEAN);
     }
 
     /**
@@ -48,7 +124,7 @@ public class Record extends HashMap<String, Object> {
      */
     boolean getBoolean(String key, boolean defaultValue) {
         if (!containsKey(key)) return defaultValue;
-        return Value.toBoolean(getString(key));
+        return getBoolean(key);
     }
 
     /**
@@ -59,7 +135,7 @@ public class Record extends HashMap<String, Object> {
      *         key does not exist.
      */
     long getByteCount(String key) {
-        return Value.toByteCount(getString(key));
+        return (Long)getParsed(key, BYTE_COUNT);
     }
 
     /**
@@ -73,7 +149,7 @@ public class Record extends HashMap<String, Object> {
      */
     long getByteCount(String key, long defaultValue) {
         if (!containsKey(key)) return defaultValue;
-        return Value.toByteCount(getString(key));
+        return getByteCount(key);
     }
 
     /**
@@ -84,7 +160,8 @@ public class Record extends HashMap<String, Object> {
      *         key does not exist.
      */
     Date getDate(String key) {
-        return Value.toDate(getString(key));
+        // Dates are mutable, so callers get their own copy.
+        return (Date)((Date)getParsed(key, DATE)).clone();
     }
 
     /**
@@ -98,7 +175,7 @@ public class Record extends HashMap<String, Object> {
      */
     Date getDate(String key, Date defaultValue) {
         if (!containsKey(key)) return defaultValue;
-        return Value.toDate(getString(key));
+        return getDate(key);
     }
 
     /**
@@ -108,7 +185,7 @@ public class Record extends HashMap<String, Object> {
      * @return The value associated with the given key.
      */
     float getFloat(String key) {
-        return Value.toFloat(getString(key));
+        return (Float)getParsed(key, FLOAT);
     }
 
     /**
@@ -118,7 +195,7 @@ public class Record extends HashMap<String, Object> {
      * @return The value associated with the given key.
      */
     int getInteger(String key) {
-        return Value.toInteger(getString(key));
+        return (Integer)getParsed(key, INTEGER);
     }
 
     /**
@@ -132,7 +209,7 @@ public class Record extends HashMap<String, Object> {
      */
     int getInteger(String key, int defaultValue) {
         if (!containsKey(key)) return defaultValue;
-        return Value.toInteger(getString(key));
+        return getInteger(key);
     }
 
     /**
@@ -142,7 +219,7 @@ public class Record extends HashMap<String, Object> {
      * @return The value associated with the given key.
      */
     long getLong(String key) {
-        return Value.toLong(getString(key));
+        return (Long)getParsed(key, LONG);
     }
 
     /**
@@ -156,7 +233,7 @@ public class Record extends HashMap<String, Object> {
      */
     long getLong(String key, int defaultValue) {
         if (!containsKey(key)) return defaultValue;
-        return Value.toLong(getString(key));
+        return getLong(key);
     }
 
     /**
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares one in-flight GET request among the callers that make identical
+ * requests at the same time. The first caller sends the request and buffers
+ * its response; the others wait for it and each get a response that reads
+ * from the buffer. See {@link HttpService#setRequestCoalescing}.
+ */
+class RequestCoalescer {
+    // One request in flight, and its outcome once done is counted down.
+    private static class Call {
+        final CountDownLatch done = new CountDownLatch(1);
+        int status;
+        byte[] body;
+        RuntimeException error;
+
+        ResponseMessage response() {
+            if (error instanceof HttpException) {
+                // A fresh exception for each caller, with the caller's stack.
+                HttpException e = (HttpException)error;
+                throw new HttpException(e.getStatus(), e.getMessage(), e.getDetail());
+            } else if (error != null) {
+                throw error;
+            }
+            return new ResponseMessage(status, new ByteArrayInputStream(body));
+        }
+    }
+
+    private final ConcurrentHashMap<String, Call> calls = new ConcurrentHashMap<String, Call>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Returns whether a request may be coalesced: only GET requests, other
+     * than for search results and events, which are streamed.
+     */
+    static boolean accepts(String path, RequestMessage request) {
+        return request.getMethod().equals("GET")
+                && RequestLimiter.classify(path, "GET") != RequestLimiter.Pool.RESULTS;
+    }
+
+    /**
+     * Returns the number of requests that were answered by another caller's
+     * request.
+     */
+    long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    ResponseMessage send(HttpService service, String path, RequestMessage request) {
+        String authorization = request.getHeader().get("Authorization");
+        String key = request.getMethod() + " " + path + " " + (authorization == null ? "" : authorization);
+
+        Call call = new Call();
+        Call inFlight = calls.putIfAbsent(key, call);
+        if (inFlight != null) {
+            try {
+                inFlight.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            coalesced.incrementAndGet();
+            return inFlight.response();
+        }
+
+        try {
+            ResponseMessage response = service.limit(path, request);
+            call.status = response.getStatus();
+            call.body = readAll(response.getContent());
+        } catch (RuntimeException e) {
+            call.error = e;
+        } finally {
+            // Later requests are sent again rather than given this response.
+            calls.remove(key, call);
+            call.done.countDown();
+        }
+        return call.response();
+    }
+
+    private static byte[] readAll(InputStream input) {
+        if (input == null) {
+            return new byte[0];
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try {
+            try {
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, count);
+                }
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        return output.toByteArray();
+    }
+}
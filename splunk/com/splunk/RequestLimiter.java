@@ -0,0 +1,400 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code RequestLimiter} class limits how many requests an
+ * {@link HttpService} has in flight at once, so that a burst of work on the
+ * client backs off instead of overloading splunkd with requests it answers
+ * with 503 errors and timeouts.
+ * <p>
+ * Requests are divided into three pools, each with its own limit: search
+ * dispatch, results and events, and all other management calls. Each limit
+ * adapts to the service: it grows by one request per limit's worth of
+ * successful requests (additive increase) and shrinks by a fixed ratio
+ * (multiplicative decrease) when a request fails with a 429, 503 or 504
+ * status, fails to connect or times out, or when the recent round trip times
+ * of the pool's requests rise to more than {@link #setLatencyTolerance} times
+ * their long-term average, a sign that splunkd is queueing requests. A
+ * request is in flight from the time it is sent until its response status is
+ * received; reading the response content is not limited.
+ * <p>
+ * Requests beyond a pool's limit wait, oldest first, for up to
+ * {@link #setQueueTimeout} milliseconds. A request that cannot be sent in
+ * time, or that finds {@link #setMaxQueueLength} requests already waiting,
+ * fails with an {@link HttpException} with status 503, as if splunkd had
+ * refused it, so that callers handle both the same way.
+ * <p>
+ * For example:
+ * <pre>
+ * RequestLimiter limiter = new RequestLimiter();
+ * limiter.setLimits(RequestLimiter.Pool.SEARCH, 2, 1, 8);
+ * service.setRequestLimiter(limiter);
+ * </pre>
+ * A limiter may be shared by several services that talk to the same splunkd.
+ */
+public class RequestLimiter {
+    /**
+     * The kinds of request that are limited separately.
+     */
+    public enum Pool {
+        /** Requests that create search jobs. */
+        SEARCH,
+        /** Requests for the results or events of searches, including exports. */
+        RESULTS,
+        /** All other requests. */
+        MANAGEMENT
+    }
+
+    private final Map<Pool, Limit> limits = new EnumMap<Pool, Limit>(Pool.class);
+    private volatile long queueTimeout = 30000;
+    private volatile int maxQueueLength = 1000;
+    private volatile double latencyTolerance = 2.0;
+    private volatile double backoffRatio = 0.9;
+
+    /**
+     * Creates a limiter with the default limits. Each pool starts at its
+     * initial limit, and stays between its minimum and maximum limits:
+     * <ul>
+     * <li>{@code SEARCH}: 4, between 1 and 32.</li>
+     * <li>{@code RESULTS}: 8, between 1 and 64.</li>
+     * <li>{@code MANAGEMENT}: 16, between 2 and 128.</li>
+     * </ul>
+     */
+    public RequestLimiter() {
+        limits.put(Pool.SEARCH, new Limit(4, 1, 32));
+        limits.put(Pool.RESULTS, new Limit(8, 1, 64));
+        limits.put(Pool.MANAGEMENT, new Limit(16, 2, 128));
+    }
+
+    /**
+     * Sets the limits of a pool, and resets its current limit to the initial
+     * one.
+     *
+     * @param pool The pool.
+     * @param initial The limit to start from.
+     * @param minimum The lowest the limit may shrink to.
+     * @param maximum The highest the limit may grow to.
+     */
+    public void setLimits(Pool pool, int initial, int minimum, int maximum) {
+        if (minimum < 1 || initial < minimum || maximum < initial) {
+            throw new IllegalArgumentException(
+                    "Limits must satisfy 1 <= minimum <= initial <= maximum.");
+        }
+        limits.get(pool).set(initial, minimum, maximum);
+    }
+
+    /**
+     * Returns the current limit of a pool.
+     *
+     * @param pool The pool.
+     * @return The number of requests of the pool that may be in flight.
+     */
+    public int getLimit(Pool pool) {
+        return limits.get(pool).getLimit();
+    }
+
+    /**
+     * Returns the number of requests of a pool in flight.
+     *
+     * @param pool The pool.
+     * @return The number of requests in flight.
+     */
+    public int getInFlight(Pool pool) {
+        return limits.get(pool).getInFlight();
+    }
+
+    /**
+     * Returns the number of requests of a pool waiting to be sent.
+     *
+     * @param pool The pool.
+     * @return The number of requests waiting.
+     */
+    public int getQueueLength(Pool pool) {
+        return limits.get(pool).getQueueLength();
+    }
+
+    /**
+     * Sets how long a request waits to be sent before it fails. The default
+     * is 30 seconds.
+     *
+     * @param milliseconds The queue timeout.
+     */
+    public void setQueueTimeout(long milliseconds) {
+        if (milliseconds < 0) {
+            throw new IllegalArgumentException("The queue timeout must not be negative.");
+        }
+        this.queueTimeout = milliseconds;
+    }
+
+    /**
+     * Sets how many requests of one pool may wait to be sent. Requests beyond
+     * it fail at once. The default is 1000.
+     *
+     * @param maxQueueLength The maximum number of waiting requests per pool.
+     */
+    public void setMaxQueueLength(int maxQueueLength) {
+        if (maxQueueLength < 0) {
+            throw new IllegalArgumentException("The maximum queue length must not be negative.");
+        }
+        this.maxQueueLength = maxQueueLength;
+    }
+
+    /**
+     * Sets how many times their long-term average the recent round trip times
+     * of a pool may rise to before the pool's limit is lowered. The default
+     * is 2.
+     *
+     * @param tolerance The latency tolerance, greater than 1.
+     */
+    public void setLatencyTolerance(double tolerance) {
+        if (tolerance <= 1) {
+            throw new IllegalArgumentException("The latency tolerance must be greater than 1.");
+        }
+        this.latencyTolerance = tolerance;
+    }
+
+    /**
+     * Sets the ratio a pool's limit is multiplied by when the service is
+     * overloaded. The default is 0.9.
+     *
+     * @param ratio The backoff ratio, between 0 and 1.
+     */
+    public void setBackoffRatio(double ratio) {
+        if (ratio <= 0 || ratio >= 1) {
+            throw new IllegalArgumentException("The backoff ratio must be between 0 and 1.");
+        }
+        this.backoffRatio = ratio;
+    }
+
+    /**
+     * Returns the pool of a request.
+     *
+     * @param path The request path, which may include a query string.
+     * @param method The request method.
+     * @return The pool.
+     */
+    static Pool classify(String path, String method) {
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (path.contains("search/jobs/export") || path.endsWith("/results")
+                || path.endsWith("/results_preview") || path.endsWith("/events")) {
+            return Pool.RESULTS;
+        }
+        if (method.equals("POST") && path.endsWith("search/jobs")) {
+            return Pool.SEARCH;
+        }
+        return Pool.MANAGEMENT;
+    }
+
+    /**
+     * Waits until a request may be sent.
+     *
+     * @return The permit to pass to {@link #release} once the request's
+     * response status has been received or the request has failed.
+     * @throws HttpException With status 503, if the request cannot be sent in
+     * time.
+     */
+    Permit acquire(String path, String method) {
+        Pool pool = classify(path, method);
+        Limit limit = limits.get(pool);
+        return new Permit(limit, limit.acquire(pool, queueTimeout, maxQueueLength));
+    }
+
+    /**
+     * Ends a request.
+     *
+     * @param permit The request's permit.
+     * @param overloaded Whether the request failed in a way that shows that
+     * the service is overloaded.
+     */
+    void release(Permit permit, boolean overloaded) {
+        long rtt = System.nanoTime() - permit.start;
+        permit.limit.release(permit.start, rtt, overloaded, latencyTolerance, backoffRatio);
+    }
+
+    /**
+     * Returns whether a failed request shows that the service is overloaded.
+     */
+    static boolean isOverload(RuntimeException e) {
+        if (e instanceof HttpException) {
+            int status = ((HttpException)e).getStatus();
+            return status == 429 || status == 503 || status == 504;
+        }
+        // HttpService wraps connection failures and timeouts.
+        return e.getCause() instanceof java.io.IOException;
+    }
+
+    static class Permit {
+        private final Limit limit;
+        private final long start;
+
+        private Permit(Limit limit, long start) {
+            this.limit = limit;
+            this.start = start;
+        }
+    }
+
+    /*
+     * The adaptive limit of one pool. Waiting requests are woken in the order
+     * they arrived, since both the lock and its condition are fair.
+     */
+    private static class Limit {
+        // How much of the recent and long-term average round trip times each
+        // new sample makes up.
+        private static final double SHORT_SMOOTHING = 0.2;
+        private static final double LONG_SMOOTHING = 0.02;
+
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private final Condition available = lock.newCondition();
+        private int minimum;
+        private int maximum;
+        private double limit;
+        private int inFlight = 0;
+        private int queueLength = 0;
+        private double shortRtt = 0;
+        private double longRtt = 0;
+        private long lastDecrease;
+        private int samplesSinceDecrease = 0;
+
+        Limit(int initial, int minimum, int maximum) {
+            set(initial, minimum, maximum);
+            this.lastDecrease = System.nanoTime();
+        }
+
+        void set(int initial, int minimum, int maximum) {
+            lock.lock();
+            try {
+                this.limit = initial;
+                this.minimum = minimum;
+                this.maximum = maximum;
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int getLimit() {
+            lock.lock();
+            try {
+                return (int)limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int getInFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int getQueueLength() {
+            lock.lock();
+            try {
+                return queueLength;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Returns the time at which the request was let through.
+        long acquire(Pool pool, long timeout, int maxQueueLength) {
+            lock.lock();
+            try {
+                if (inFlight < (int)limit && queueLength == 0) {
+                    inFlight++;
+                    return System.nanoTime();
+                }
+                if (queueLength >= maxQueueLength) {
+                    throw rejected(pool, "too many requests are waiting");
+                }
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+                queueLength++;
+                try {
+                    while (inFlight >= (int)limit) {
+                        if (remaining <= 0) {
+                            throw rejected(pool, "timed out waiting to be sent");
+                        }
+                        remaining = available.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e.getMessage(), e);
+                } finally {
+                    queueLength--;
+                }
+                inFlight++;
+                // Let the next request check for room too.
+                available.signal();
+                return System.nanoTime();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release(long start, long rtt, boolean overloaded, double tolerance, double backoffRatio) {
+            lock.lock();
+            try {
+                if (!overloaded) {
+                    shortRtt = longRtt == 0 ? rtt : shortRtt + (rtt - shortRtt) * SHORT_SMOOTHING;
+                    longRtt = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) * LONG_SMOOTHING;
+                }
+                samplesSinceDecrease++;
+                // Round trip times are noisy, so only act on them once a
+                // limit's worth of requests has come back at the current limit.
+                boolean slow = shortRtt > longRtt * tolerance && samplesSinceDecrease >= limit;
+                if (overloaded || slow) {
+                    // Back off once per episode of overload: requests sent
+                    // before the last decrease saw the old limit.
+                    if (start - lastDecrease > 0) {
+                        limit = Math.max(minimum, limit * backoffRatio);
+                        lastDecrease = System.nanoTime();
+                        samplesSinceDecrease = 0;
+                    }
+                } else if (inFlight >= limit / 2) {
+                    // Only grow a limit that is being used.
+                    limit = Math.min(maximum, limit + 1 / limit);
+                }
+                inFlight--;
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private HttpException rejected(Pool pool, String reason) {
+            String detail = String.format("Client-side limit of %s requests reached: %s.",
+                    pool.name().toLowerCase(), reason);
+            return new HttpException(503, "HTTP 503 -- " + detail, detail);
+        }
+    }
+}
@@ -28,6 +28,7 @@ public class ResponseMessage {
     int status;
     Map<String, String> header = null;
     InputStream content;
+    ClusterBalancer.Member member = null; // The cluster member that answered
 
     /**
      * Default class constructor.
@@ -0,0 +1,585 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code ResultsCache} class keeps the results of searches over fixed,
+ * historical time ranges on local disk, so that running the same search again
+ * reads the earlier response instead of dispatching a new search.
+ * <p>
+ * Set a cache on a {@code Service} with {@link Service#setResultsCache}. The
+ * {@code oneshotSearch} and {@code export} methods then look up each search
+ * whose {@code earliest_time} and {@code latest_time} arguments are both
+ * absolute times (epoch seconds or a formatted date), and whose query does
+ * not set its own time range. A search is identified by its normalized
+ * query, all its other arguments, the server, the user and session token, and
+ * the namespace. Searches of a service without a token, because it is not
+ * logged in or has logged out, are not cached, even if it has a username.
+ * <p>
+ * Each response is stored exactly as the server returned it, in whatever
+ * output mode was requested, so a cached response can be read with the same
+ * {@code ResultsReader} as a live one. Cached responses are read through a
+ * memory-mapped file. A response is only stored once it has been read to the
+ * end; closing it before then, as the readers do after the last result, reads
+ * the rest of it, unless it is larger than the cache. When the cache grows past its maximum size, the least recently used
+ * responses are deleted.
+ * <p>
+ * Any error reading or writing the cache is treated as a cache miss; the
+ * search then runs as usual.
+ */
+public class ResultsCache {
+    private static final int MAGIC = 0x53524331; // "SRC1"
+    private static final String SUFFIX = ".results";
+    private static final long TOUCH_INTERVAL = 60 * 1000;
+
+    // A time argument that depends on when the search runs.
+    private static final Pattern TIME_IN_QUERY = Pattern.compile(
+            "(?i)\\b(earliest|latest|starttime|endtime|starttimeu|endtimeu|starthoursago|" +
+            "endhoursago|startdaysago|enddaysago|startminutesago|endminutesago|" +
+            "startmonthsago|endmonthsago|minutesago|hoursago|daysago)\\s*=");
+    private static final Pattern EPOCH = Pattern.compile("\\d+(\\.\\d+)?");
+
+    private final File directory;
+    private final long maximumSize;
+
+    // Entries by file name, least recently used first.
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long size = 0;
+
+    /**
+     * Opens a cache in the given directory, creating the directory if
+     * necessary. Responses already in the directory are kept.
+     *
+     * @param directory The directory to store responses in.
+     * @param maximumSize The maximum total size of the stored responses, in
+     * bytes.
+     * @throws IOException If the directory could not be created.
+     */
+    public ResultsCache(File directory, long maximumSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create cache directory " + directory);
+        }
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+
+        File[] files = directory.listFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long x = a.lastModified();
+                long y = b.lastModified();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                entries.put(file.getName(), new Entry(file.length(), file.lastModified()));
+                size += file.length();
+            } else if (file.getName().contains(SUFFIX + ".tmp")) {
+                // Left behind by a process that stopped while storing a response.
+                file.delete();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Returns the directory that responses are stored in.
+     *
+     * @return The cache directory.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the maximum total size of the stored responses.
+     *
+     * @return The maximum size, in bytes.
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the total size of the stored responses.
+     *
+     * @return The size, in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of stored responses.
+     *
+     * @return The number of responses.
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Deletes all stored responses.
+     */
+    public synchronized void clear() {
+        for (String name : entries.keySet()) {
+            new File(directory, name).delete();
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the key that identifies a search in this cache, or {@code null}
+     * if the search's results may change over time and must not be cached.
+     *
+     * @param service The {@code Service} the search runs on.
+     * @param path The endpoint path of the search.
+     * @param args All the arguments of the search, including the query.
+     * @return The key, or {@code null}.
+     */
+    String keyFor(Service service, String path, Map<String, Object> args) {
+        Object query = args.get("search");
+        if (query == null || TIME_IN_QUERY.matcher(query.toString()).find()) {
+            return null;
+        }
+        if (!isAbsoluteTime(args.get("earliest_time")) || !isAbsoluteTime(args.get("latest_time"))) {
+            return null;
+        }
+
+        // One cache may be shared by services that authenticate as different
+        // users, so only the searches of an authenticated service are cached.
+        // A username alone is not proof of that, since it is also set before
+        // logging in and kept after logging out. A token is only stored as a
+        // digest, since keys are written to disk.
+        if (service.token == null || service.token.length() == 0) {
+            return null;
+        }
+        String identity = "token " + digest("SHA-256", service.token);
+        if (service.username != null && service.username.length() > 0) {
+            identity = "user " + service.username + " " + identity;
+        }
+
+        StringBuilder key = new StringBuilder();
+        key.append(service.getScheme()).append("://").append(service.getHost())
+                .append(':').append(service.getPort()).append('\n');
+        key.append(identity).append('\n');
+        key.append(service.fullpath(path)).append('\n');
+        for (Map.Entry<String, Object> arg : new TreeMap<String, Object>(args).entrySet()) {
+            Object value = arg.getValue();
+            String text;
+            if (arg.getKey().equals("search")) {
+                text = normalizeQuery(value.toString());
+            } else if (value instanceof Object[]) {
+                text = Arrays.toString((Object[])value);
+            } else {
+                text = String.valueOf(value);
+            }
+            key.append(arg.getKey()).append('=').append(text).append('\n');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the stored response for a key, or {@code null} if there is none.
+     *
+     * @param key A key returned by {@code keyFor}.
+     * @return An {@code InputStream} over the stored response, or {@code null}.
+     */
+    InputStream get(String key) {
+        String name = fileName(key);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(name);
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        File file = new File(directory, name);
+        ByteBuffer body;
+        entry.lock.lock();
+        try {
+            if (entry.body == null) {
+                try {
+                    entry.body = map(file, key);
+                } catch (IOException e) {
+                    // Treat an unreadable entry as a miss.
+                }
+                if (entry.body == null) {
+                    remove(name);
+                    return null;
+                }
+            }
+            body = entry.body.duplicate();
+
+            // Keep the order of use across restarts, without touching the
+            // file on every hit.
+            long now = System.currentTimeMillis();
+            if (now - entry.touched > TOUCH_INTERVAL) {
+                entry.touched = now;
+                file.setLastModified(now);
+            }
+        } finally {
+            entry.lock.unlock();
+        }
+        return new ByteBufferInputStream(body);
+    }
+
+    /**
+     * Returns a stream that reads {@code response} and stores what it reads
+     * under {@code key} once the end of the response is reached.
+     *
+     * @param key A key returned by {@code keyFor}.
+     * @param response The response from the server.
+     * @return A stream to read the response through.
+     */
+    InputStream put(String key, InputStream response) {
+        try {
+            return new StoringInputStream(response, key, fileName(key));
+        } catch (IOException e) {
+            return response;
+        }
+    }
+
+    private static boolean isAbsoluteTime(Object value) {
+        if (value == null) {
+            return false;
+        }
+        String time = value.toString().trim();
+        if (EPOCH.matcher(time).matches()) {
+            return true;
+        }
+        // Relative times start with "now", "rt", "+", "-" or "@", or snap to
+        // a unit with "@".
+        return time.length() > 0 && Character.isDigit(time.charAt(0)) &&
+                time.indexOf('@') < 0 && !time.contains("now");
+    }
+
+    /**
+     * Collapses runs of whitespace outside quoted strings.
+     */
+    static String normalizeQuery(String query) {
+        StringBuilder normalized = new StringBuilder(query.length());
+        boolean quoted = false;
+        boolean space = false;
+        String trimmed = query.trim();
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (!quoted && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                normalized.append(' ');
+                space = false;
+            }
+            if (c == '"' && (i == 0 || trimmed.charAt(i - 1) != '\\')) {
+                quoted = !quoted;
+            }
+            normalized.append(c);
+        }
+        return normalized.toString();
+    }
+
+    private static String fileName(String key) {
+        return digest("SHA-1", key) + SUFFIX;
+    }
+
+    // Returns the hex digest of a string.
+    private static String digest(String algorithm, String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance(algorithm).digest(text.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] header(String key) throws IOException {
+        byte[] keyBytes = key.getBytes("UTF-8");
+        ByteBuffer header = ByteBuffer.allocate(4 + 4 + keyBytes.length + 8);
+        header.putInt(MAGIC);
+        header.putInt(keyBytes.length);
+        header.put(keyBytes);
+        header.putLong(0);
+        return header.array();
+    }
+
+    /**
+     * Maps a stored response and returns its body, or {@code null} if the file
+     * is not a complete response for {@code key}.
+     */
+    private static ByteBuffer map(File file, String key) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] keyBytes = key.getBytes("UTF-8");
+            if (buffer.remaining() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != keyBytes.length ||
+                    buffer.remaining() < keyBytes.length + 8) {
+                return null;
+            }
+            byte[] storedKey = new byte[keyBytes.length];
+            buffer.get(storedKey);
+            if (!Arrays.equals(storedKey, keyBytes)) {
+                return null;
+            }
+            long bodyLength = buffer.getLong();
+            if (bodyLength != buffer.remaining()) {
+                return null;
+            }
+            return buffer.slice();
+        } finally {
+            // The mapping stays valid after the file is closed.
+            raf.close();
+        }
+    }
+
+    private synchronized void commit(String name, File temporary) {
+        File file = new File(directory, name);
+        file.delete();
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            return;
+        }
+        Entry previous = entries.put(name, new Entry(file.length(), System.currentTimeMillis()));
+        if (previous != null) {
+            size -= previous.length;
+        }
+        size += file.length();
+        evict();
+    }
+
+    private synchronized void remove(String name) {
+        Entry entry = entries.remove(name);
+        if (entry != null) {
+            size -= entry.length;
+            new File(directory, name).delete();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > maximumSize && iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            new File(directory, entry.getKey()).delete();
+            size -= entry.getValue().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * A stored response. Its file is mapped on first use, and the mapping is
+     * shared by all later reads until the entry is evicted.
+     */
+    private static class Entry {
+        // Held while the file is mapped; not a monitor, so that a virtual
+        // thread doing so does not pin its carrier thread.
+        final ReentrantLock lock = new ReentrantLock();
+        final long length;
+        long touched;
+        ByteBuffer body = null;
+
+        Entry(long length, long touched) {
+            this.length = length;
+            this.touched = touched;
+        }
+    }
+
+    /**
+     * Passes a response through to the caller while copying it to a temporary
+     * file, which becomes a cache entry if the whole response is read.
+     */
+    private class StoringInputStream extends FilterInputStream {
+        private final String name;
+        private final File temporary;
+        private final int headerLength;
+        private DataOutputStream out;
+        private long bodyLength = 0;
+
+        StoringInputStream(InputStream response, String key, String name) throws IOException {
+            super(response);
+            this.name = name;
+            this.temporary = File.createTempFile(name + ".tmp", "", directory);
+            byte[] header = header(key);
+            this.headerLength = header.length;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 65536));
+            this.out.write(header);
+        }
+
+        @Override public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                finish();
+            } else if (out != null) {
+                store(new byte[] { (byte)b }, 0, 1);
+            }
+            return b;
+        }
+
+        @Override public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n == -1) {
+                finish();
+            } else if (n > 0 && out != null) {
+                store(buffer, offset, n);
+            }
+            return n;
+        }
+
+        @Override public long skip(long n) throws IOException {
+            // Skipped bytes would be missing from the entry.
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override public boolean markSupported() {
+            return false;
+        }
+
+        @Override public void close() throws IOException {
+            // The readers close the response once they have read its last
+            // result, which may be before its end, so the rest is read here to
+            // complete the entry. Reading stops once the entry is too large.
+            try {
+                byte[] buffer = new byte[8192];
+                while (out != null && read(buffer, 0, buffer.length) != -1) {
+                    // Stored by read.
+                }
+            } catch (IOException e) {
+                // The response is incomplete; it is not stored.
+            } finally {
+                abandon();
+                super.close();
+            }
+        }
+
+        private void store(byte[] buffer, int offset, int length) {
+            try {
+                bodyLength += length;
+                if (headerLength + bodyLength > maximumSize) {
+                    abandon();
+                    return;
+                }
+                out.write(buffer, offset, length);
+            } catch (IOException e) {
+                abandon();
+            }
+        }
+
+        private void finish() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+                out = null;
+                RandomAccessFile raf = new RandomAccessFile(temporary, "rw");
+                try {
+                    raf.seek(headerLength - 8);
+                    raf.writeLong(bodyLength);
+                } finally {
+                    raf.close();
+                }
+                commit(name, temporary);
+            } catch (IOException e) {
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Deleting it anyway.
+                }
+                out = null;
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads a stored response from its memory mapping.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override public long skip(long n) {
+            int skipped = (int)Math.min(Math.max(n, 0), buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The {@code ResultsPublisher} class publishes the events of a results
+ * stream to subscribers, in the style of Reactive Streams, so that results
+ * can feed a reactive pipeline without a thread blocked on each stream.
+ * <p>
+ * Events are read from the stream only as a subscriber requests them. While
+ * a subscriber has no outstanding demand, nothing is read, so the server is
+ * held back by the connection's flow control, and no thread is used. Reading
+ * and delivery happen in tasks on an {@code Executor}, at most one at a time
+ * per subscription, and a task yields its thread after a batch of events, so
+ * many subscriptions can share a small pool. Cancelling a subscription
+ * closes its stream.
+ * <p>
+ * The publisher is cold: each subscriber gets its own request to the server,
+ * made when it first requests events.
+ * <p>
+ * The {@link Subscriber} and {@link Subscription} interfaces have the same
+ * methods as those of Reactive Streams and {@code java.util.concurrent.Flow},
+ * so adapting to either takes only a thin wrapper.
+ */
+public class ResultsPublisher {
+    /**
+     * Receives the events of a {@code ResultsPublisher}.
+     *
+     * @param <T> The type of the items.
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called once, before any other method, with the subscription that
+         * requests items and cancels.
+         *
+         * @param subscription The subscription.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with each item, never more times than requested.
+         *
+         * @param item The item.
+         */
+        void onNext(T item);
+
+        /**
+         * Called once if the stream fails. No other method is called
+         * afterwards.
+         *
+         * @param error The error.
+         */
+        void onError(Throwable error);
+
+        /**
+         * Called once after the last item. No other method is called
+         * afterwards.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Links a {@link Subscriber} to a {@code ResultsPublisher}.
+     */
+    public interface Subscription {
+        /**
+         * Requests up to {@code n} more items. Demand adds up across calls
+         * and may be {@code Long.MAX_VALUE} for an unbounded stream.
+         *
+         * @param n The number of items, which must be positive.
+         */
+        void request(long n);
+
+        /**
+         * Stops delivering items and closes the stream. Items already being
+         * delivered may still arrive.
+         */
+        void cancel();
+    }
+
+    /*
+     * Opens the stream to publish. Called once per subscriber.
+     */
+    interface StreamSource {
+        InputStream open() throws IOException;
+    }
+
+    private static final int BATCH_SIZE = 256;
+
+    private static ExecutorService defaultExecutor = null;
+
+    private final StreamSource source;
+    private final String outputMode;
+    private Executor executor = null;
+
+    /*
+     * Creates a publisher of the events read from the given source in the
+     * given output mode.
+     */
+    ResultsPublisher(StreamSource source, String outputMode) {
+        this.source = source;
+        this.outputMode = outputMode;
+    }
+
+    /**
+     * Creates a publisher of a finished job's results (see
+     * {@link Job#getResultsPublisher(Map)}).
+     *
+     * @param job The job.
+     * @param args Optional arguments for the results endpoint (see
+     * {@link JobResultsArgs}). The {@code output_mode} argument may be "json"
+     * (the default), "xml", or "csv". May be {@code null}.
+     * @return The publisher.
+     */
+    static ResultsPublisher forJobResults(final Job job, Map args) {
+        final Args resultsArgs = withOutputMode(args);
+        return new ResultsPublisher(new StreamSource() {
+            public InputStream open() {
+                return job.getResults(resultsArgs);
+            }
+        }, resultsArgs.get("output_mode").toString());
+    }
+
+    /**
+     * Creates a publisher of the results of an export search (see
+     * {@link Service#getExportPublisher(String, Map)}).
+     *
+     * @param service The service.
+     * @param search The search query.
+     * @param args Optional search arguments (see {@link JobExportArgs}). The
+     * {@code output_mode} argument may be "json" (the default) or "xml". May
+     * be {@code null}.
+     * @return The publisher.
+     */
+    static ResultsPublisher forExport(final Service service, final String search, Map args) {
+        final Args exportArgs = withOutputMode(args);
+        return new ResultsPublisher(new StreamSource() {
+            public InputStream open() {
+                return service.export(search, exportArgs);
+            }
+        }, exportArgs.get("output_mode").toString());
+    }
+
+    private static Args withOutputMode(Map args) {
+        Args result = Args.create(args);
+        if (!result.containsKey("output_mode")) {
+            result.put("output_mode", "json");
+        }
+        return result;
+    }
+
+    /*
+     * Returns the executor shared by publishers that were not given one,
+     * which starts daemon threads as needed and stops them when idle.
+     */
+    private static synchronized Executor getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newCachedThreadPool(BackgroundThreads.named("splunk-results-publisher"));
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Sets the executor that reads events and calls subscribers. Set this to
+     * an application's event loop or a small shared pool to multiplex many
+     * streams over few threads. By default, a shared pool of daemon threads
+     * is used.
+     *
+     * @param executor The executor, or {@code null} for the default.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the executor that reads events and calls subscribers.
+     *
+     * @return The executor, or {@code null} if the default is used.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Subscribes to the events of a new request for the results. The
+     * subscriber's {@code onSubscribe} method is called before this method
+     * returns; no events are read until it requests some.
+     *
+     * @param subscriber The subscriber.
+     */
+    public void subscribe(Subscriber<? super Event> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber must not be null.");
+        }
+        Executor runner = executor == null ? getDefaultExecutor() : executor;
+        new EventSubscription(subscriber, runner).start();
+    }
+
+    /*
+     * Reads and delivers events for one subscriber. Every signal is sent from
+     * run(), and the work counter ensures that only one run() is active at a
+     * time, so signals are serialized and request() from within onNext only
+     * adds demand instead of recursing.
+     */
+    private class EventSubscription implements Subscription, Runnable {
+        private final Subscriber<? super Event> subscriber;
+        private final Executor runner;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger(1);
+        private volatile boolean cancelled = false;
+        private volatile boolean invalidRequest = false;
+        private volatile ResultsReader reader = null;
+        private boolean terminated = false;
+        // The thread in run(), used to tell when the executor runs a
+        // yielded task inline.
+        private final AtomicReference<Thread> drainingThread = new AtomicReference<Thread>();
+        private boolean rerun = false;
+
+        EventSubscription(Subscriber<? super Event> subscriber, Executor runner) {
+            this.subscriber = subscriber;
+            this.runner = runner;
+        }
+
+        void start() {
+            // The work counter starts at 1, so requests made in onSubscribe
+            // are only recorded, and are served once it has returned.
+            try {
+                subscriber.onSubscribe(this);
+            } catch (RuntimeException e) {
+                cancel();
+                throw e;
+            }
+            if (work.decrementAndGet() != 0) {
+                runner.execute(this);
+            }
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = true;
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            // Closing the stream also ends a read blocked in run().
+            closeReader();
+            schedule();
+        }
+
+        private void schedule() {
+            if (work.getAndIncrement() == 0) {
+                runner.execute(this);
+            }
+        }
+
+        public void run() {
+            Thread current = Thread.currentThread();
+            if (drainingThread.get() == current) {
+                // Run inline by an executor from the yield below.
+                rerun = true;
+                return;
+            }
+            drainingThread.set(current);
+            int missed = 1;
+            int delivered = 0;
+            while (true) {
+                while (!terminated) {
+                    if (cancelled) {
+                        terminated = true;
+                        closeReader();
+                        break;
+                    }
+                    if (invalidRequest) {
+                        fail(new IllegalArgumentException(
+                                "The number of requested events must be positive."));
+                        break;
+                    }
+                    if (requested.get() == 0) {
+                        break;
+                    }
+                    if (delivered == BATCH_SIZE) {
+                        // Let other subscriptions use this thread.
+                        rerun = false;
+                        runner.execute(this);
+                        if (!rerun) {
+                            // Another thread has taken over, or will.
+                            drainingThread.compareAndSet(current, null);
+                            return;
+                        }
+                        delivered = 0;
+                    }
+
+                    Event event;
+                    try {
+                        if (reader == null) {
+                            reader = ResultsReader.create(outputMode, source.open());
+                            if (cancelled) {
+                                closeReader();
+                            }
+                        }
+                        event = reader.getNextEvent();
+                    } catch (Exception e) {
+                        if (cancelled) {
+                            continue;
+                        }
+                        fail(e);
+                        break;
+                    }
+                    if (event == null) {
+                        terminated = true;
+                        closeReader();
+                        subscriber.onComplete();
+                        break;
+                    }
+
+                    if (requested.get() != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                    delivered++;
+                    try {
+                        subscriber.onNext(event);
+                    } catch (RuntimeException e) {
+                        fail(e);
+                        break;
+                    }
+                }
+                drainingThread.set(null);
+                missed = work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+                drainingThread.set(current);
+            }
+        }
+
+        private void fail(Throwable error) {
+            terminated = true;
+            cancelled = true;
+            closeReader();
+            subscriber.onError(error);
+        }
+
+        private void closeReader() {
+            ResultsReader current = reader;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    // Nothing more can be done with a stream that is going away.
+                } catch (RuntimeException e) {
+                    // Same as above; some readers fail when closed twice.
+                }
+            }
+        }
+    }
+}
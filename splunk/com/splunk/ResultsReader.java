@@ -19,7 +19,10 @@ package com.splunk;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 /**
  * The {@code ResultsReader} class is a base class for the streaming readers
@@ -34,6 +37,10 @@ public abstract class ResultsReader
     boolean isPreview;
     boolean isExportStream;
     private boolean isInMultiReader;
+    // The fields to read, or null to read all of them.
+    private Set<String> fieldFilter = null;
+    // Shares repeated field values between events, or null.
+    private ValueInterner interner = null;
 
     ResultsReader(InputStream inputStream, boolean isInMultiReader)
             throws IOException {
@@ -42,6 +49,69 @@ public abstract class ResultsReader
         this.isInMultiReader = isInMultiReader;
     }
 
+    /*
+     * Creates the reader for a stream in the given output mode: "json",
+     * "xml", or "csv". Closes the stream if the mode is not supported.
+     */
+    static ResultsReader create(String outputMode, InputStream stream)
+            throws IOException {
+        if (outputMode.equals("json")) {
+            return new ResultsReaderJson(stream);
+        } else if (outputMode.equals("xml")) {
+            return new ResultsReaderXml(stream);
+        } else if (outputMode.equals("csv")) {
+            return new ResultsReaderCsv(stream);
+        }
+        stream.close();
+        throw new IllegalArgumentException(
+                "Unsupported output mode for a results reader: " + outputMode);
+    }
+
+    /*
+     * Restricts the fields put into each event. Subclasses skip the values of
+     * other fields while parsing.
+     */
+    final void setFieldFilter(Collection<String> fields) {
+        this.fieldFilter = fields == null ? null : new HashSet<String>(fields);
+    }
+
+    /*
+     * Returns whether values of the given field should be put into events.
+     */
+    final boolean isFieldIncluded(String field) {
+        return fieldFilter == null || fieldFilter.contains(field);
+    }
+
+    /*
+     * Returns the value to put into an event for the given field, which is an
+     * equal value from an earlier event when interning is enabled.
+     */
+    final String internValue(String field, String value) {
+        return interner == null ? value : interner.intern(field, value);
+    }
+
+    /**
+     * Enables or disables interning of field values.
+     * <p>
+     * When enabled, events read afterwards share one {@code String} per
+     * distinct value of each field, which greatly reduces the heap retained
+     * by buffered events whose fields repeat a few values, such as
+     * {@code host}, {@code source}, {@code sourcetype}, {@code index}, and
+     * {@code splunk_server}. A field with more than
+     * {@code maxValuesPerField} distinct values is detected as
+     * high-cardinality and is no longer interned, so the dictionary stays
+     * bounded.
+     *
+     * @param maxValuesPerField The number of distinct values kept per field,
+     * or 0 to disable interning. Interning is disabled by default.
+     */
+    public final void setValueInterning(int maxValuesPerField) {
+        if (maxValuesPerField < 0) {
+            throw new IllegalArgumentException("maxValuesPerField must not be negative.");
+        }
+        this.interner = maxValuesPerField == 0 ? null : new ValueInterner(maxValuesPerField);
+    }
+
     /**
      * Closes the reader and returns resources.
      *
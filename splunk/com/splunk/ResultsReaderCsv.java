@@ -16,24 +16,40 @@
 
 package com.splunk;
 
-import au.com.bytecode.opencsv.CSVReader;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * The {@code ResultsReaderCsv} class represents a streaming CSV reader for
- * Splunk search results. This class requires the opencsv-2.3.jar file in your 
- * build path.
+ * Splunk search results.
+ * <p>
+ * Multivalue fields that come with a {@code __mv_<field>} column, such as
+ * {@code __mv_host} for {@code host}, are read from that column. The
+ * {@code __mv_} columns themselves are still returned as fields, with their
+ * encoded values.
  */
 public class ResultsReaderCsv extends ResultsReader {
+    private static final String MULTIVALUE_PREFIX = "__mv_";
 
-    private CSVReader csvReader = null;
+    private CsvTokenizer tokenizer = null;
     private List<String> keys;
+    // The name of each column.
+    private String[] names;
+    // The fields of the current line, reused for every line.
+    private String[] line;
+    // Whether each column is decoded.
+    private boolean[] wanted;
+    // The positions of the included fields in each line.
+    private int[] columns;
+    // The positions of the __mv_ columns of the included fields, or -1.
+    private int[] multivalueColumns;
+    private Event reusedEvent = null;
+    private boolean reuseEvents = false;
 
     /**
      * Class constructor.
@@ -46,29 +62,83 @@ public class ResultsReaderCsv extends ResultsReader {
      * @throws IOException
      */
     public ResultsReaderCsv(InputStream inputStream) throws IOException {
+        this(inputStream, null);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * Constructs a streaming CSV reader for the event stream that only puts
+     * the given fields into each event.
+     *
+     * @param inputStream The CSV stream to parse.
+     * @param fields The names of the fields to read, or {@code null} to read
+     * all fields.
+     * @throws IOException
+     */
+    public ResultsReaderCsv(InputStream inputStream, Collection<String> fields)
+            throws IOException {
         super(inputStream, false);
+        setFieldFilter(fields);
         if (isExportStream)
             throw new UnsupportedOperationException(
                 "A stream from an export endpoint is not supported " +
                 "by a CSV result reader. Use XML or JSON search output "+
                 "format and matching reader instead."
             );
-        csvReader = new CSVReader(new InputStreamReader(inputStream, "UTF-8"));
+        tokenizer = new CsvTokenizer(inputStream);
         // initial line contains the keyArray, except for oneshot -- which 
         // contains a blank line, and then the key list.
-        String[] keyArray = csvReader.readNext();
-        if (keyArray.length == 1 && keyArray[0].trim().equals("")) {
-            keyArray = csvReader.readNext();
+        String[] keyArray = tokenizer.readRecord();
+        if (keyArray != null && (keyArray.length == 0 ||
+                (keyArray.length == 1 && keyArray[0].trim().equals("")))) {
+            keyArray = tokenizer.readRecord();
+        }
+        if (keyArray == null) {
+            keyArray = new String[0];
+        }
+
+        names = keyArray;
+        List<String> allKeys = Arrays.asList(keyArray);
+        List<Integer> included = new ArrayList<Integer>();
+        line = new String[keyArray.length];
+        wanted = new boolean[keyArray.length];
+        for (int i = 0; i < keyArray.length; i++) {
+            if (isFieldIncluded(keyArray[i])) {
+                included.add(i);
+                wanted[i] = true;
+            }
+        }
+        keys = Collections.unmodifiableList(allKeys);
+
+        columns = new int[included.size()];
+        multivalueColumns = new int[included.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = included.get(i);
+            multivalueColumns[i] = allKeys.indexOf(MULTIVALUE_PREFIX + keyArray[columns[i]]);
+            if (multivalueColumns[i] >= 0) {
+                wanted[multivalueColumns[i]] = true;
+            }
         }
-        keys = Arrays.asList(keyArray);
     }
 
     /** {@inheritDoc} */
     @Override public void close() throws IOException {
         super.close();
-        if (csvReader != null)
-            csvReader.close();
-        csvReader = null;
+        tokenizer = null;
+    }
+
+    /**
+     * Sets whether {@link #getNextEvent} returns the same {@code Event}
+     * object for every result, refilled with the values of the next result.
+     * This saves allocating a map per result when each event is processed
+     * before the next one is read, but an event must not be kept or used
+     * after the next call. By default, each result is a new {@code Event}.
+     *
+     * @param reuseEvents {@code true} to reuse one {@code Event}.
+     */
+    public void setReuseEvents(boolean reuseEvents) {
+        this.reuseEvents = reuseEvents;
     }
 
     /**
@@ -92,25 +162,76 @@ public class ResultsReaderCsv extends ResultsReader {
      * an /export endpoint. The constructor will throw an error in that case.
      */
     @Override Event getNextEventInCurrentSet() throws IOException {
-        Event returnData = null;
-        String[] line;
-
-        if ((line = csvReader.readNext()) != null) {
-            if (line.length == 1 && line[0].equals("")) {
-                line = csvReader.readNext();
-                if (line == null) {
-                    return returnData;
-                }
-            }
-            
+        if (tokenizer == null)
+            return null;
+
+        int fieldCount;
+        do {
+            fieldCount = tokenizer.readRecord(line, wanted);
+        } while (fieldCount == 0);
+        if (fieldCount == -1)
+            return null;
+
+        Event returnData;
+        if (reuseEvents && reusedEvent != null) {
+            returnData = reusedEvent;
+            returnData.reset();
+        } else {
             returnData = new Event();
-            int count = 0;
-            for (String key : keys) {
-                String delimitedValues = line[count++];
-                returnData.putSingleOrDelimited(key, delimitedValues);
-            }
+            if (reuseEvents)
+                reusedEvent = returnData;
         }
 
+        for (int i = 0; i < columns.length; i++) {
+            int column = columns[i];
+            if (column >= fieldCount)
+                break;
+            String key = names[column];
+            String delimitedValues = internValue(key, line[column]);
+            int multivalueColumn = multivalueColumns[i];
+            if (multivalueColumn >= 0 && multivalueColumn < fieldCount &&
+                    line[multivalueColumn].length() > 0) {
+                String[] values = parseMultivalue(key, line[multivalueColumn]);
+                if (values != null) {
+                    returnData.putArray(key, values, delimitedValues);
+                    continue;
+                }
+            }
+            returnData.putSingleOrDelimited(key, delimitedValues);
+        }
         return returnData;
     }
+
+    /*
+     * Splits a __mv_ value such as "$a$;$b$", where a $ in a value is written
+     * as $$, into its values. Returns null if the value is not in that form.
+     */
+    private String[] parseMultivalue(String key, String encoded) {
+        List<String> values = new ArrayList<String>();
+        StringBuilder value = new StringBuilder();
+        int i = 0;
+        int length = encoded.length();
+        while (i < length) {
+            if (encoded.charAt(i++) != '$')
+                return null;
+            value.setLength(0);
+            while (true) {
+                if (i == length)
+                    return null;
+                char c = encoded.charAt(i++);
+                if (c != '$') {
+                    value.append(c);
+                } else if (i < length && encoded.charAt(i) == '$') {
+                    value.append('$');
+                    i++;
+                } else {
+                    break;
+                }
+            }
+            values.add(internValue(key, value.toString()));
+            if (i < length && encoded.charAt(i++) != ';')
+                return null;
+        }
+        return values.toArray(new String[values.size()]);
+    }
 }
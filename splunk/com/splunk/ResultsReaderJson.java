@@ -55,9 +55,32 @@ public class ResultsReaderJson extends ResultsReader {
         this(inputStream, false);
     }
 
+    /**
+     * Class constructor.
+     *
+     * Constructs a streaming JSON reader for the event stream that only reads
+     * the given fields. The values of other fields are skipped in the stream
+     * without being decoded.
+     *
+     * @param inputStream The JSON stream to parse.
+     * @param fields The names of the fields to read, or {@code null} to read
+     * all fields.
+     * @throws IOException
+     */
+    public ResultsReaderJson(InputStream inputStream, Collection<String> fields)
+            throws IOException {
+        this(inputStream, false, fields);
+    }
+
     ResultsReaderJson(InputStream inputStream, boolean isInMultiReader)
             throws IOException {
+        this(inputStream, isInMultiReader, null);
+    }
+
+    ResultsReaderJson(InputStream inputStream, boolean isInMultiReader,
+            Collection<String> fields) throws IOException {
         super(inputStream, isInMultiReader);
+        setFieldFilter(fields);
         jsonReader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
         // if stream is empty, return a null reader.
         jsonReader.setLenient(true);
@@ -273,7 +296,7 @@ public class ResultsReaderJson extends ResultsReader {
                 while (jsonReader.hasNext()) {
                     JsonToken jsonToken2 = jsonReader.peek();
                     if (jsonToken2 == JsonToken.STRING) {
-                        values.add(jsonReader.nextString());
+                        values.add(internValue(name, jsonReader.nextString()));
                     }
                 }
                 jsonReader.endArray();
@@ -286,9 +309,13 @@ public class ResultsReaderJson extends ResultsReader {
             }
             if (jsonReader.peek() == JsonToken.NAME) {
                 name = jsonReader.nextName();
+                if (!isFieldIncluded(name)) {
+                    // Skips strings without decoding them.
+                    jsonReader.skipValue();
+                }
             }
             if (jsonReader.peek() == JsonToken.STRING) {
-                String delimitedValues = jsonReader.nextString();
+                String delimitedValues = internValue(name, jsonReader.nextString());
                 returnData.putSingleOrDelimited(name, delimitedValues);
             }
             if (jsonReader.peek() == JsonToken.END_OBJECT) {
@@ -59,17 +59,41 @@ public class ResultsReaderXml
         this(inputStream, false);
     }
 
+    /**
+     * Class constructor.
+     *
+     * Constructs a streaming XML reader for the event stream that only reads
+     * the given fields. The values of other fields, including the segmented
+     * form of {@code _raw}, are skipped without being collected.
+     *
+     * @param inputStream The XML stream to parse.
+     * @param fields The names of the fields to read, or {@code null} to read
+     * all fields.
+     * @throws IOException
+     */
+    public ResultsReaderXml(InputStream inputStream, Collection<String> fields)
+            throws IOException {
+        this(inputStream, false, fields);
+    }
+
     ResultsReaderXml(
             InputStream inputStream,
             boolean isInMultiReader)
             throws IOException {
+        this(inputStream, isInMultiReader, null);
+    }
+
+    ResultsReaderXml(
+            InputStream inputStream,
+            boolean isInMultiReader,
+            Collection<String> fields)
+            throws IOException {
         super(inputStream, isInMultiReader);
+        setFieldFilter(fields);
 
         // We need to do read-ahead, so we have to use a PushbackInputStream for everything
         // in this class.
         this.pushbackInputStream = new PushbackInputStream(inputStream);
-        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-
         int ch = this.pushbackInputStream.read();
         if (ch == -1) {
             return; // Stream is empty.
@@ -77,10 +101,10 @@ public class ResultsReaderXml
             ((PushbackInputStream)this.pushbackInputStream).unread(ch);
         }
 
-        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
         try {
             InputStream filteredStream = new InsertRootElementFilterInputStream(this.pushbackInputStream);
-            xmlReader = inputFactory.createXMLEventReader(filteredStream);
+            // The shared factory coalesces adjacent text nodes.
+            xmlReader = Xml.getInputFactory().createXMLEventReader(filteredStream);
             finishInitialization();
         } catch (XMLStreamException e) {
             throw new RuntimeException(e);
@@ -314,6 +338,11 @@ public class ResultsReaderXml
                     if (level == 0) {
                         if (attrIttr.hasNext())
                             key =  attrIttr.next().getValue();
+                        if (key != null && !isFieldIncluded(key)) {
+                            skipElement();
+                            key = null;
+                            break;
+                        }
                     } else if (level == 1 &&
                             key.equals("_raw") &&
                             startElement
@@ -347,7 +376,7 @@ public class ResultsReaderXml
                     break;
                 case XMLStreamConstants.CHARACTERS:
                     if (level > 1) {
-                        values.add(xmlEvent.asCharacters().getData());
+                        values.add(internValue(key, xmlEvent.asCharacters().getData()));
                     }
                     break;
                 default:
@@ -358,6 +387,21 @@ public class ResultsReaderXml
         throw new RuntimeException("End tag of 'result' not found.");
     }
 
+    // Moves past the end of the element whose start was just read, without
+    // collecting its content.
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (xmlReader.hasNext()) {
+            int eType = xmlReader.nextEvent().getEventType();
+            if (eType == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (eType == XMLStreamConstants.END_ELEMENT && --depth == 0) {
+                return;
+            }
+        }
+        throw new RuntimeException("Invalid XML format.");
+    }
+
     @Override boolean advanceStreamToNextSet() throws IOException {
         // Handle empty stream or other cases where xmlReader is
         // not constructed.
@@ -398,7 +442,7 @@ public class ResultsReaderXml
             StringBuilder asString,
             StringWriter asXml)
             throws IOException, XMLStreamException {
-        XMLEventWriter xmlWriter = XMLOutputFactory.newInstance().
+        XMLEventWriter xmlWriter = Xml.getOutputFactory().
                 createXMLEventWriter(asXml);
         XMLEvent xmlEvent = startElement;
         int level = 0;
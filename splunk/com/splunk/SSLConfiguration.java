@@ -0,0 +1,337 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code SSLConfiguration} class holds the SSL settings of a single
+ * {@link HttpService}, as opposed to the SSL security protocol and socket
+ * factory that {@code HttpService} shares among all services.
+ * <p>
+ * Each configuration has its own SSL context, so the services that use it
+ * share a client session cache. A new connection to a host and port that the
+ * cache holds a session for resumes that session with an abbreviated
+ * handshake instead of doing a full one. With TLS 1.3, sessions are resumed
+ * from the tickets that the server issues; with TLS 1.2, from session IDs, or,
+ * on Java 13 and later, from session tickets as well, unless the
+ * {@code jdk.tls.client.enableSessionTicketExtension} system property is set
+ * to {@code false}.
+ * <p>
+ * For example:
+ * <pre>
+ * SSLConfiguration ssl = new SSLConfiguration();
+ * ssl.setSessionCacheSize(64);
+ * ssl.setSessionTimeout(600);
+ * ServiceArgs args = new ServiceArgs();
+ * args.setHost("splunk.example.com");
+ * args.setSSLConfiguration(ssl);
+ * Service service = Service.connect(args);
+ * ...
+ * System.out.println(ssl.getResumedHandshakeCount() + " of "
+ *         + (ssl.getFullHandshakeCount() + ssl.getResumedHandshakeCount())
+ *         + " handshakes were resumed");
+ * </pre>
+ * Changing a setting creates a new SSL context, with an empty session cache,
+ * the next time a connection is opened.
+ * <p>
+ * By default, as with the socket factory that {@code HttpService} shares,
+ * every certificate is trusted and its host name is not checked. Once trust
+ * managers are set with {@link #setTrustManagers}, connections also check
+ * that the server's certificate names the host they were opened to.
+ */
+public class SSLConfiguration {
+    private static final TrustManager[] TRUST_ALL = new TrustManager[]{
+            new X509TrustManager() {
+                public X509Certificate[] getAcceptedIssuers() {
+                    return null;
+                }
+
+                public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                }
+
+                public void checkServerTrusted(X509Certificate[] certs, String authType) {
+                }
+            }
+    };
+
+    private SSLSecurityProtocol[] protocols = {SSLSecurityProtocol.TLSv1_3, SSLSecurityProtocol.TLSv1_2};
+    private TrustManager[] trustManagers = TRUST_ALL;
+    private int sessionCacheSize = 256;
+    private int sessionTimeout = 3600;
+    private SSLSocketFactory socketFactory = null; // Guarded by this
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    /**
+     * Returns the protocols that connections may use.
+     *
+     * @return The protocols, in order of preference.
+     */
+    public synchronized SSLSecurityProtocol[] getProtocols() {
+        return protocols.clone();
+    }
+
+    /**
+     * Sets the protocols that connections may use. Protocols that the Java
+     * runtime does not support are left out, so TLS 1.3 is only used on
+     * runtimes that have it. The default is TLS 1.3 and TLS 1.2.
+     *
+     * @param protocols The protocols.
+     */
+    public synchronized void setProtocols(SSLSecurityProtocol... protocols) {
+        if (protocols == null || protocols.length == 0) {
+            throw new IllegalArgumentException("At least one protocol is required.");
+        }
+        this.protocols = protocols.clone();
+        socketFactory = null;
+    }
+
+    /**
+     * Sets the trust managers that check the certificates of the servers
+     * that connections are made to. By default, every certificate is
+     * trusted, as with the socket factory that {@code HttpService} shares.
+     * With any other trust managers, the certificate must also name the host
+     * that a connection is opened to, as HTTPS requires.
+     *
+     * @param trustManagers The trust managers, or {@code null} to use the
+     * Java runtime's default trust store.
+     */
+    public synchronized void setTrustManagers(TrustManager[] trustManagers) {
+        this.trustManagers = trustManagers == null ? null : trustManagers.clone();
+        socketFactory = null;
+    }
+
+    /**
+     * Returns the maximum number of sessions that are cached.
+     *
+     * @return The session cache size.
+     */
+    public synchronized int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of sessions that are cached, one for each
+     * host and port that connections are made to. The default is 256. A
+     * value of 0 means no limit.
+     *
+     * @param size The session cache size.
+     */
+    public synchronized void setSessionCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The session cache size must not be negative.");
+        }
+        this.sessionCacheSize = size;
+        socketFactory = null;
+    }
+
+    /**
+     * Returns how long a cached session may be resumed for.
+     *
+     * @return The session timeout, in seconds.
+     */
+    public synchronized int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Sets how long after it was created a cached session may be resumed.
+     * The server may expire sessions sooner. The default is 1 hour. A value
+     * of 0 means no limit.
+     *
+     * @param seconds The session timeout, in seconds.
+     */
+    public synchronized void setSessionTimeout(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("The session timeout must not be negative.");
+        }
+        this.sessionTimeout = seconds;
+        socketFactory = null;
+    }
+
+    /**
+     * Returns whether connections check that the server's certificate names
+     * the host they were opened to, which they do unless every certificate
+     * is trusted.
+     *
+     * @return {@code true} if host names are verified.
+     */
+    public synchronized boolean isHostnameVerified() {
+        return trustManagers != TRUST_ALL;
+    }
+
+    /**
+     * Returns the number of connections that did a full handshake. Each
+     * handshake is counted shortly after it completes.
+     *
+     * @return The number of full handshakes.
+     */
+    public long getFullHandshakeCount() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * Returns the number of connections that resumed a cached session. Each
+     * handshake is counted shortly after it completes.
+     *
+     * @return The number of resumed handshakes.
+     */
+    public long getResumedHandshakeCount() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Returns the socket factory for this configuration, creating its SSL
+     * context if a setting changed since the last call.
+     *
+     * @return The socket factory.
+     */
+    public synchronized SSLSocketFactory getSocketFactory() {
+        if (socketFactory == null) {
+            socketFactory = createSocketFactory();
+        }
+        return socketFactory;
+    }
+
+    private SSLSocketFactory createSocketFactory() {
+        SSLContext context;
+        try {
+            context = SSLContext.getInstance("TLS");
+            context.init(null, trustManagers, new SecureRandom());
+        } catch (Exception e) {
+            throw new RuntimeException("Error setting up SSL context: " + e, e);
+        }
+        SSLSessionContext sessions = context.getClientSessionContext();
+        sessions.setSessionCacheSize(sessionCacheSize);
+        sessions.setSessionTimeout(sessionTimeout);
+
+        List<String> supported = Arrays.asList(context.getSupportedSSLParameters().getProtocols());
+        List<String> enabled = new ArrayList<String>();
+        for (SSLSecurityProtocol protocol : protocols) {
+            if (supported.contains(protocol.toString())) {
+                enabled.add(protocol.toString());
+            }
+        }
+        if (enabled.isEmpty()) {
+            throw new IllegalStateException("None of the protocols " + Arrays.toString(protocols)
+                    + " is supported by this Java runtime.");
+        }
+        return new CountingSocketFactory(context.getSocketFactory(), enabled.toArray(new String[enabled.size()]),
+                trustManagers != TRUST_ALL);
+    }
+
+    /**
+     * Enables the configured protocols, and host name verification if asked
+     * for, on each socket and counts its handshake as full or resumed. A
+     * resumed session was created before the socket was.
+     */
+    private final class CountingSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+        private final String[] protocols;
+        private final boolean verifyHostname;
+
+        private CountingSocketFactory(SSLSocketFactory delegate, String[] protocols, boolean verifyHostname) {
+            this.delegate = delegate;
+            this.protocols = protocols;
+            this.verifyHostname = verifyHostname;
+        }
+
+        private Socket configure(Socket socket) {
+            if (socket instanceof SSLSocket) {
+                final long created = System.currentTimeMillis();
+                SSLSocket sslSocket = (SSLSocket)socket;
+                sslSocket.setEnabledProtocols(protocols);
+                if (verifyHostname) {
+                    // Checked during the handshake, for sockets that
+                    // HttpsURLConnection opens and for Service.open alike.
+                    SSLParameters parameters = sslSocket.getSSLParameters();
+                    parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                    sslSocket.setSSLParameters(parameters);
+                }
+                sslSocket.addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                    public void handshakeCompleted(HandshakeCompletedEvent event) {
+                        if (event.getSession().getCreationTime() < created) {
+                            resumedHandshakes.incrementAndGet();
+                        } else {
+                            fullHandshakes.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            return configure(delegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return configure(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return configure(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return configure(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return configure(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return configure(delegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.splunk;
 
 public enum SSLSecurityProtocol {
+    TLSv1_3 {
+        public String toString() { return "TLSv1.3"; }
+    },
     TLSv1_2 {
         public String toString() { return "TLSv1.2"; }
     },
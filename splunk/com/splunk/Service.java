@@ -22,7 +22,13 @@ import java.io.UnsupportedEncodingException;
 import java.net.Socket;
 import java.net.URLEncoder;
 import java.net.URLStreamHandler;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The {@code Service} class represents a Splunk service instance at a given
@@ -66,6 +72,34 @@ public class Service extends BaseService {
     /** The version of this Splunk instance, once logged in. */
     public String version = null;
 
+    /** The number of requests that {@code InputCollection.refresh} may have
+     * in flight at once. */
+    private int inputRefreshConcurrency = 1;
+
+    /** How long, in milliseconds, discovered input kinds are reused. */
+    private long inputKindCacheTtl = 0;
+
+    /** The cache for oneshot and export searches over fixed time ranges. */
+    private ResultsCache resultsCache = null;
+    private PivotCache pivotCache = null;
+    private int pivotConcurrency = 8;
+
+    // The input kinds last discovered by an InputCollection, and when they expire.
+    private Set<InputKind> inputKinds = null;
+    private long inputKindsExpiry = 0;
+
+    // Whether to log in to each member of the cluster balancer on first use,
+    // and the session tokens of the members logged in to so far.
+    private volatile boolean memberLogin = false;
+    private final Map<ClusterBalancer.Member, String> memberTokens =
+            new ConcurrentHashMap<ClusterBalancer.Member, String>();
+
+    // The "/servicesNS/{owner}/{app}/" prefixes built by fullpath, keyed by
+    // the owner, app, and sharing they were built from.
+    private static final int MAX_NAMESPACE_PREFIXES = 1024;
+    private final ConcurrentHashMap<String, String> namespacePrefixes =
+            new ConcurrentHashMap<String, String>();
+
     /** The default host name, which is used when a host name is not provided.*/
     public static String DEFAULT_HOST = "localhost";
 
@@ -150,6 +184,7 @@ public class Service extends BaseService {
         this.password = (String)args.get("password");
         this.httpsHandler = Args.<URLStreamHandler>get(args, "httpsHandler", null);
         this.setSslSecurityProtocol(Args.get(args, "SSLSecurityProtocol", Service.getSslSecurityProtocol()));
+        this.setSSLConfiguration(Args.<SSLConfiguration>get(args, "SSLConfiguration", null));
     }
 
     /**
@@ -169,6 +204,7 @@ public class Service extends BaseService {
         this.password = (String)args.get("password");
         this.httpsHandler = Args.<URLStreamHandler>get(args, "httpsHandler", null);
         this.setSslSecurityProtocol(Args.get(args, "SSLSecurityProtocol", Service.getSslSecurityProtocol()));
+        this.setSSLConfiguration(Args.<SSLConfiguration>get(args, "SSLConfiguration", null));
     }
 
     /**
@@ -217,8 +253,22 @@ public class Service extends BaseService {
         if (!args.containsKey("segmentation")) {
             args.put("segmentation", "none");
         }
-        ResponseMessage response = get(JobCollection.REST_PATH + "/export", args);
-        return new ExportResultsStream(response.getContent());
+        String path = JobCollection.REST_PATH + "/export";
+        ResultsCache cache = resultsCache;
+        String cacheKey = cache == null ? null : cache.keyFor(this, path, args);
+        if (cacheKey != null) {
+            InputStream cached = cache.get(cacheKey);
+            if (cached != null) {
+                return new ExportResultsStream(cached);
+            }
+        }
+
+        ResponseMessage response = get(path, args);
+        InputStream content = response.getContent();
+        if (cacheKey != null) {
+            content = cache.put(cacheKey, content);
+        }
+        return new ExportResultsStream(content);
     }
     
     /**
@@ -235,6 +285,36 @@ public class Service extends BaseService {
         return export(search, (Map<String, Object>) args);
     }
 
+    /**
+     * Runs a search on the export endpoint and delivers its rows to a listener
+     * as they arrive. For a real-time search, new rows are streamed by the
+     * server rather than polled for. See {@link RealtimeSubscription}.
+     *
+     * @param search The search query to run.
+     * @param args Additional search arguments (see {@link JobExportArgs}). If
+     * neither {@code earliest_time} nor {@code latest_time} is set, the search
+     * runs in real time over "rt" to "rt".
+     * @param listener The listener to deliver rows to.
+     * @return The started subscription. Close it to stop the search.
+     */
+    public RealtimeSubscription subscribe(String search, Map<String, Object> args,
+            RealtimeSubscription.Listener listener) {
+        return new RealtimeSubscription(this, search, args, listener).start();
+    }
+
+    /**
+     * Returns a publisher of the results of an export search, which reads
+     * them only as subscribers request them. See {@link ResultsPublisher}.
+     *
+     * @param search The search query to run.
+     * @param args Additional search arguments (see {@link JobExportArgs}).
+     * The {@code output_mode} argument may be "json" (the default) or "xml".
+     * @return The publisher. Each subscriber runs the search separately.
+     */
+    public ResultsPublisher getExportPublisher(String search, Map args) {
+        return ResultsPublisher.forExport(this, search, args);
+    }
+
     /**
      * Ensures that the given path is fully qualified, prepending a path
      * prefix if necessary. The path prefix is constructed using the current 
@@ -269,6 +349,53 @@ public class Service extends BaseService {
             return "/services/" + path;
         }
 
+        return namespacePrefix(namespace) + path;
+    }
+
+    /**
+     * Returns the {@code /servicesNS/{owner}/{app}/} prefix of the paths in a
+     * namespace, building it only the first time the namespace is used.
+     *
+     * @param namespace The namespace dictionary, or {@code null} for the
+     * owner and app context of this service.
+     * @return The path prefix.
+     */
+    String namespacePrefix(Args namespace) {
+        // The owner and app of the namespace override those of the service,
+        // and are URL encoded, so the key tells the two apart.
+        String key;
+        if (namespace == null) {
+            key = namespaceKey('s', owner, 's', app, "");
+        } else {
+            boolean hasOwner = namespace.containsKey("owner");
+            boolean hasApp = namespace.containsKey("app");
+            String sharing = (String)namespace.get("sharing");
+            key = namespaceKey(
+                    hasOwner ? 'n' : 's', hasOwner ? (String)namespace.get("owner") : owner,
+                    hasApp ? 'n' : 's', hasApp ? (String)namespace.get("app") : app,
+                    sharing == null ? "" : sharing);
+        }
+
+        String prefix = namespacePrefixes.get(key);
+        if (prefix == null) {
+            prefix = buildNamespacePrefix(namespace);
+            if (namespacePrefixes.size() >= MAX_NAMESPACE_PREFIXES) {
+                namespacePrefixes.clear();
+            }
+            namespacePrefixes.put(key, prefix);
+        }
+        return prefix;
+    }
+
+    private static String namespaceKey(char ownerSource, String owner, char appSource, String app, String sharing) {
+        StringBuilder key = new StringBuilder();
+        key.append(ownerSource).append(owner == null ? "\0" : owner).append('\n');
+        key.append(appSource).append(app == null ? "\0" : app).append('\n');
+        key.append(sharing);
+        return key.toString();
+    }
+
+    private String buildNamespacePrefix(Args namespace) {
         // base namespace values
         String localApp = app;
         String localOwner = owner;
@@ -310,10 +437,9 @@ public class Service extends BaseService {
             localOwner = "nobody";
         }
 
-        return String.format("/servicesNS/%s/%s/%s",
-                localOwner == null ? "-" : localOwner,
-                localApp   == null ? "-" : localApp,
-                path);
+        return "/servicesNS/"
+                + (localOwner == null ? "-" : localOwner) + "/"
+                + (localApp   == null ? "-" : localApp) + "/";
     }
 
     /**
@@ -1096,6 +1222,9 @@ public class Service extends BaseService {
      * Authenticates the {@code Service} instance with a specified username and 
      * password. Note that these values override any previously-set values for 
      * username and password.
+     * <p>
+     * If a {@link ClusterBalancer} is set, the instance logs in to each member
+     * of the cluster the first time it sends the member a request.
      *
      * @param username The Splunk account username.
      * @param password The password for the username.
@@ -1105,15 +1234,17 @@ public class Service extends BaseService {
         this.username = username;
         this.password = password;
 
-        Args args = new Args();
-        args.put("username", username);
-        args.put("password", password);
-        ResponseMessage response = post("/services/auth/login", args);
-        String sessionKey = Xml.parse(response.getContent())
-            .getElementsByTagName("sessionKey")
-            .item(0)
-            .getTextContent();
-        this.token = "Splunk " + sessionKey;
+        memberTokens.clear();
+        if (getClusterBalancer() != null) {
+            this.token = null;
+            this.memberLogin = true;
+        } else {
+            this.memberLogin = false;
+            Args args = new Args();
+            args.put("username", username);
+            args.put("password", password);
+            this.token = "Splunk " + sessionKey(post("/services/auth/login", args));
+        }
         this.version = this.getInfo().getVersion();
         if (versionCompare("4.3") >= 0)
             this.passwordEndPoint = "storage/passwords";
@@ -1128,6 +1259,8 @@ public class Service extends BaseService {
      */
     public Service logout() {
         this.token = null;
+        this.memberLogin = false;
+        memberTokens.clear();
         return this;
     }
 
@@ -1167,8 +1300,21 @@ public class Service extends BaseService {
             args.put("segmentation", "none");
         }
 
+        ResultsCache cache = resultsCache;
+        String cacheKey = cache == null ? null : cache.keyFor(this, JobCollection.REST_PATH, args);
+        if (cacheKey != null) {
+            InputStream cached = cache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
         ResponseMessage response = post(JobCollection.REST_PATH, args);
-        return response.getContent();
+        InputStream content = response.getContent();
+        if (cacheKey != null) {
+            content = cache.put(cacheKey, content);
+        }
+        return content;
     }
 
     /**
@@ -1234,6 +1380,10 @@ public class Service extends BaseService {
      * @return The restart response message.
      */
     public ResponseMessage restart() {
+        // Restarting is how newly installed modular input kinds take effect.
+        synchronized (this) {
+            inputKinds = null;
+        }
         return post("server/control/restart");
     }
 
@@ -1262,6 +1412,32 @@ public class Service extends BaseService {
         return this.getJobs().create(query, args);
     }
 
+    private static String sessionKey(ResponseMessage response) {
+        return Xml.parse(response.getContent())
+            .getElementsByTagName("sessionKey")
+            .item(0)
+            .getTextContent();
+    }
+
+    // Logs in to a cluster member the first time a request is sent to it.
+    @Override void authorize(ClusterBalancer.Member member, RequestMessage request) {
+        if (!memberLogin) {
+            return;
+        }
+        String memberToken = memberTokens.get(member);
+        if (memberToken == null) {
+            Args args = new Args();
+            args.put("username", username);
+            args.put("password", password);
+            RequestMessage login = new RequestMessage("POST");
+            login.getHeader().put("Content-Type", "application/x-www-form-urlencoded");
+            login.setContent(Args.encode(args));
+            memberToken = "Splunk " + sessionKey(sendTo(member, "/services/auth/login", login));
+            memberTokens.put(member, memberToken);
+        }
+        request.getHeader().put("Authorization", memberToken);
+    }
+
     /**
      * Issues an HTTP request against the service using a request path and 
      * message. 
@@ -1292,6 +1468,153 @@ public class Service extends BaseService {
         this.token = value;
     }
 
+    /**
+     * Returns the number of requests that {@code InputCollection.refresh} may
+     * issue at once while it discovers input kinds and loads their inputs.
+     *
+     * @return The maximum number of concurrent requests.
+     */
+    public int getInputRefreshConcurrency() {
+        return this.inputRefreshConcurrency;
+    }
+
+    /**
+     * Sets the number of requests that {@code InputCollection.refresh} may
+     * issue at once. A value of 1, the default, issues the requests one after
+     * another on the calling thread.
+     *
+     * @param concurrency The maximum number of concurrent requests.
+     */
+    public void setInputRefreshConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.inputRefreshConcurrency = concurrency;
+    }
+
+    /**
+     * Returns how long the input kinds discovered by an
+     * {@code InputCollection} are reused by later refreshes.
+     *
+     * @return The time to live, in milliseconds.
+     */
+    public long getInputKindCacheTtl() {
+        return this.inputKindCacheTtl;
+    }
+
+    /**
+     * Sets how long the input kinds discovered by an {@code InputCollection}
+     * are reused by later refreshes. The set of input kinds only changes when
+     * an app that defines a modular input is installed or removed, so
+     * rediscovering it on every refresh is rarely necessary. The default, 0,
+     * disables the cache.
+     *
+     * @param ttl The time to live, in milliseconds.
+     */
+    public synchronized void setInputKindCacheTtl(long ttl) {
+        this.inputKindCacheTtl = ttl;
+        this.inputKinds = null;
+    }
+
+    /**
+     * Returns the cache used by {@code oneshotSearch} and {@code export}.
+     *
+     * @return The results cache, or {@code null} if results are not cached.
+     */
+    public ResultsCache getResultsCache() {
+        return this.resultsCache;
+    }
+
+    /**
+     * Sets a cache for the results of {@code oneshotSearch} and {@code export}
+     * searches over fixed time ranges. See {@link ResultsCache} for which
+     * searches are cached. The same cache may be shared by several
+     * {@code Service} instances.
+     *
+     * @param cache The results cache, or {@code null} to stop caching.
+     */
+    public void setResultsCache(ResultsCache cache) {
+        this.resultsCache = cache;
+    }
+
+    /**
+     * Returns the cache used by {@code PivotSpecification.pivot} and
+     * {@code pivotAll}.
+     *
+     * @return The pivot cache, or {@code null} if pivots are not cached.
+     */
+    public PivotCache getPivotCache() {
+        return this.pivotCache;
+    }
+
+    /**
+     * Sets a cache for the queries compiled by
+     * {@code PivotSpecification.pivot} and {@code pivotAll}. See
+     * {@link PivotCache} for how pivots are identified.
+     *
+     * @param cache The pivot cache, or {@code null} to stop caching.
+     */
+    public void setPivotCache(PivotCache cache) {
+        this.pivotCache = cache;
+    }
+
+    /**
+     * Returns the number of pivots that {@code pivotAll} may compile at once.
+     *
+     * @return The maximum number of concurrent requests.
+     */
+    public int getPivotConcurrency() {
+        return this.pivotConcurrency;
+    }
+
+    /**
+     * Sets the number of pivots that {@code pivotAll} may compile at once. A
+     * value of 1 compiles them one after another on the calling thread.
+     *
+     * @param concurrency The maximum number of concurrent requests.
+     */
+    public void setPivotConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.pivotConcurrency = concurrency;
+    }
+
+    /**
+     * Compiles several pivots, as {@code PivotSpecification.pivot} does for
+     * one. Pivots in the {@link PivotCache} are not requested again, and the
+     * others are requested concurrently, up to
+     * {@link #getPivotConcurrency} at once.
+     *
+     * @param specifications The pivots to compile.
+     * @return The pivots, in the order of the specifications.
+     */
+    public List<Pivot> pivotAll(Collection<PivotSpecification> specifications) {
+        return PivotSpecification.pivotAll(this, specifications, this.pivotConcurrency);
+    }
+
+    /**
+     * Returns the cached set of input kinds, or {@code null} if none has been
+     * discovered or the cached set has expired.
+     */
+    synchronized Set<InputKind> getCachedInputKinds() {
+        if (inputKinds != null && System.currentTimeMillis() < inputKindsExpiry) {
+            return inputKinds;
+        }
+        inputKinds = null;
+        return null;
+    }
+
+    /**
+     * Caches a newly discovered set of input kinds.
+     */
+    synchronized void cacheInputKinds(Set<InputKind> kinds) {
+        if (inputKindCacheTtl > 0) {
+            inputKinds = Collections.unmodifiableSet(new LinkedHashSet<InputKind>(kinds));
+            inputKindsExpiry = System.currentTimeMillis() + inputKindCacheTtl;
+        }
+    }
+
     /**
      * Returns true if this Splunk instance's version is no earlier than
      * the version specified in {@code version}.
@@ -139,6 +139,15 @@ public class ServiceArgs extends Args {
     public void setSSLSecurityProtocol(SSLSecurityProtocol securityProtocol) {
         this.put("SSLSecurityProtocol", securityProtocol);
     }
+
+    /**
+     * @param sslConfiguration
+     *      The SSL configuration for the service, which takes precedence
+     *      over the SSL security protocol.
+     */
+    public void setSSLConfiguration(SSLConfiguration sslConfiguration) {
+        this.put("SSLConfiguration", sslConfiguration);
+    }
     
     /**
      * @param token
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+/**
+ * Maps strings to {@code int} values with open addressing, without boxing or
+ * an entry object per key.
+ */
+class StringIntMap {
+    private String[] keys;
+    private int[] values;
+    private int size = 0;
+
+    StringIntMap() {
+        this(16);
+    }
+
+    StringIntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new String[capacity];
+        values = new int[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of the key, or -1 if the key is not present.
+     */
+    int get(String key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            String current = keys[slot];
+            if (current == null) {
+                return -1;
+            }
+            if (current.equals(key)) {
+                return values[slot];
+            }
+        }
+    }
+
+    /**
+     * Returns the value of the key if present. Otherwise, adds the key with
+     * the given value and returns -1.
+     */
+    int putIfAbsent(String key, int value) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            String current = keys[slot];
+            if (current == null) {
+                break;
+            }
+            if (current.equals(key)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return -1;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            String key = oldKeys[i];
+            if (key != null) {
+                int slot = hash(key) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(String key) {
+        // Spreads the bits of String.hashCode, which is cached per string,
+        // so that similar keys do not cluster in neighboring slots.
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
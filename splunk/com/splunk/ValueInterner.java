@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares equal field values between the events of one results reader, so
+ * that fields such as {@code host} or {@code sourcetype}, which repeat a few
+ * values across many events, keep one {@code String} per distinct value.
+ * <p>
+ * Each field has its own dictionary of at most {@code maxValuesPerField}
+ * values. When a field has more distinct values than that, it is considered
+ * high-cardinality: its dictionary is dropped and its values are no longer
+ * interned. At most {@code MAX_FIELDS} fields are interned.
+ */
+class ValueInterner {
+    static final int MAX_FIELDS = 256;
+
+    // Marks a field whose values are no longer interned.
+    private static final Map<String, String> HIGH_CARDINALITY = new HashMap<String, String>(0);
+
+    private final int maxValuesPerField;
+    private final Map<String, Map<String, String>> fields = new HashMap<String, Map<String, String>>();
+
+    ValueInterner(int maxValuesPerField) {
+        if (maxValuesPerField < 1) {
+            throw new IllegalArgumentException("maxValuesPerField must be at least 1.");
+        }
+        this.maxValuesPerField = maxValuesPerField;
+    }
+
+    /**
+     * Returns a previously seen value of the field equal to {@code value}, or
+     * {@code value} itself.
+     */
+    String intern(String field, String value) {
+        if (field == null || value == null) {
+            return value;
+        }
+        Map<String, String> values = fields.get(field);
+        if (values == null) {
+            if (fields.size() >= MAX_FIELDS) {
+                return value;
+            }
+            values = new HashMap<String, String>();
+            fields.put(field, values);
+        } else if (values == HIGH_CARDINALITY) {
+            return value;
+        }
+
+        String shared = values.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (values.size() >= maxValuesPerField) {
+            fields.put(field, HIGH_CARDINALITY);
+        } else {
+            values.put(value, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns whether values of the field are still being interned.
+     */
+    boolean isInterning(String field) {
+        Map<String, String> values = fields.get(field);
+        return values == null ? fields.size() < MAX_FIELDS : values != HIGH_CARDINALITY;
+    }
+}
@@ -19,12 +19,91 @@ package com.splunk;
 import java.io.InputStream;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
 import org.w3c.dom.Document;
 
 /**
  * The {@code Xml} class represents a collection of XML utilities.
+ *
+ * It also caches the XML parser factories used throughout the SDK. Looking up
+ * a factory implementation scans the classpath, which costs more than parsing
+ * a typical REST response, so each thread looks up its factories once and
+ * reuses them, along with a {@code DocumentBuilder}.
  */
 public class Xml {
+    // Factories and builders are not guaranteed to be thread safe, so each
+    // thread gets its own.
+    private static final ThreadLocal<XMLInputFactory> inputFactory =
+        new ThreadLocal<XMLInputFactory>() {
+            @Override protected XMLInputFactory initialValue() {
+                XMLInputFactory factory = XMLInputFactory.newInstance();
+                // The Atom and results parsers assume that all adjacent text
+                // nodes are coalesced.
+                factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+                factory.setProperty(
+                    XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+                return factory;
+            }
+        };
+
+    private static final ThreadLocal<XMLOutputFactory> outputFactory =
+        new ThreadLocal<XMLOutputFactory>() {
+            @Override protected XMLOutputFactory initialValue() {
+                return XMLOutputFactory.newInstance();
+            }
+        };
+
+    private static final ThreadLocal<DocumentBuilder> documentBuilder =
+        new ThreadLocal<DocumentBuilder>() {
+            @Override protected DocumentBuilder initialValue() {
+                DocumentBuilderFactory factory =
+                    DocumentBuilderFactory.newInstance();
+                factory.setNamespaceAware(false);
+                factory.setIgnoringElementContentWhitespace(true);
+                try {
+                    return factory.newDocumentBuilder();
+                }
+                catch (ParserConfigurationException e) {
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            }
+        };
+
+    /**
+     * Returns this thread's StAX input factory, configured to coalesce
+     * adjacent text and replace entity references. Do not change its
+     * properties.
+     *
+     * @return An {@code XMLInputFactory}.
+     */
+    public static XMLInputFactory getInputFactory() {
+        return inputFactory.get();
+    }
+
+    /**
+     * Returns this thread's StAX output factory. Do not change its
+     * properties.
+     *
+     * @return An {@code XMLOutputFactory}.
+     */
+    public static XMLOutputFactory getOutputFactory() {
+        return outputFactory.get();
+    }
+
+    /**
+     * Returns this thread's DOM builder, reset to its initial state. The
+     * builder is not namespace aware. It must not be used after it has
+     * been handed to another thread.
+     *
+     * @return A {@code DocumentBuilder}.
+     */
+    public static DocumentBuilder getDocumentBuilder() {
+        DocumentBuilder builder = documentBuilder.get();
+        builder.reset();
+        return builder;
+    }
 
     /**
      * Parses the given input stream and returns it as an XML document object
@@ -35,15 +114,10 @@ public class Xml {
      */
     public static Document parse(InputStream input) {
         try {
-            DocumentBuilderFactory factory =
-                DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(false);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            return builder.parse(input);
+            return getDocumentBuilder().parse(input);
         }
         catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 }
-
@@ -20,7 +20,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 
 /**
  * The {@code Argument} class represents an argument to a modular input kind.
@@ -29,8 +28,6 @@ import javax.xml.parsers.DocumentBuilderFactory;
  * kind that Splunk understands.
  */
 public class Argument {
-    private static DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-
     public enum DataType { BOOLEAN, NUMBER, STRING };
 
     // Name used to identify this argument in Splunk.
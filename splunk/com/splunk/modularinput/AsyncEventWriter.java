@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk.modularinput;
+
+import com.splunk.BackgroundThreads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The {@code AsyncEventWriter} class is an {@code EventWriter} that can be shared by many threads. Events are
+ * put on a bounded queue and written to the underlying {@code EventWriter} by a single background thread, so
+ * threads producing events never contend on the output stream. When the queue is full, {@code writeEvent}
+ * blocks until there is room. Events are written some time after {@code writeEvent} returns, so an {@code Event}
+ * must not be modified once it has been passed to {@code writeEvent}.
+ *
+ * Call {@code shutdown} to write out all queued events and stop the background thread, or {@code close} to do
+ * that and then close the underlying {@code EventWriter}.
+ */
+public class AsyncEventWriter extends EventWriter {
+    // Marks the end of the queue for the background thread.
+    private static final Event STOP = new Event();
+    // How long a blocked writeEvent or shutdown waits before checking again whether it should give up.
+    private static final long RETRY_MILLIS = 100;
+
+    private final EventWriter delegate;
+    private final BlockingQueue<Event> queue;
+    private final Thread writerThread;
+    private volatile boolean shutdown = false;
+
+    // writeEvent holds the read lock from checking shutdown until its event is queued, and shutdown takes the
+    // write lock before queueing STOP, so no event can be queued behind STOP.
+    private final ReadWriteLock shutdownLock = new ReentrantReadWriteLock();
+    // Guarded by the write lock.
+    private boolean stopQueued = false;
+
+    /**
+     * Creates an {@code AsyncEventWriter} forwarding to {@code delegate} and starts its background thread.
+     *
+     * @param delegate The {@code EventWriter} to write events to.
+     * @param capacity The maximum number of events waiting to be written.
+     */
+    public AsyncEventWriter(EventWriter delegate, int capacity) {
+        super(delegate);
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<Event>(capacity);
+        this.writerThread = BackgroundThreads.newThread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "modularinput-event-writer");
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues an {@code Event} object to be written to Splunk. This method is thread safe.
+     *
+     * If you try to write an {@code Event} with null data, throws {@code MalformedDataException}. If the queue is
+     * full, blocks until there is room, unless {@code shutdown} is called in the meantime, in which case the event
+     * is rejected. The {@code Event} must not be modified after this call.
+     *
+     * @param event The {@code Event} object to write.
+     * @throws MalformedDataException
+     * @throws IllegalStateException If this writer has been shut down.
+     */
+    @Override
+    public void writeEvent(Event event) throws MalformedDataException {
+        if (event.getData() == null) {
+            MalformedDataException e = new MalformedDataException(
+                    "Events must have at least the data field set to be written to XML.");
+            log(WARN, e.toString());
+            throw e;
+        }
+        try {
+            // Check before taking the lock too: a shutdown waiting for the write lock keeps new readers out.
+            while (!shutdown) {
+                shutdownLock.readLock().lock();
+                try {
+                    if (shutdown) {
+                        break;
+                    }
+                    // Give up the lock now and then, so a shutdown waiting for it is not held up by a full queue.
+                    if (queue.offer(event, RETRY_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } finally {
+                    shutdownLock.readLock().unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            setError();
+            return;
+        }
+        throw new IllegalStateException("Cannot write events after AsyncEventWriter has been shut down.");
+    }
+
+    /**
+     * Same as {@code writeEvent}, which is already thread safe.
+     * @see #writeEvent
+     */
+    @Override
+    public void synchronizedWriteEvent(Event event) throws MalformedDataException {
+        writeEvent(event);
+    }
+
+    /**
+     * Logs messages about the state of this modular input to Splunk. Log messages are not queued. This method
+     * is thread safe.
+     *
+     * @param severity The severity (e.g., {@code EventWriter.WARN}, {@code EventWriter.FATAL}) of this message.
+     * @param errorMessage The message that should appear in the logs.
+     */
+    @Override
+    public void log(String severity, String errorMessage) {
+        delegate.synchronizedLog(severity, errorMessage);
+    }
+
+    /**
+     * Same as {@code log}, which is already thread safe.
+     * @see #log
+     */
+    @Override
+    public void synchronizedLog(String severity, String errorMessage) {
+        log(severity, errorMessage);
+    }
+
+    @Override
+    public boolean checkError() {
+        return super.checkError() || delegate.checkError();
+    }
+
+    /**
+     * Writes all queued events, then stops the background thread. The underlying {@code EventWriter} is
+     * left open. Events written after this call, or still waiting for room in the queue, are rejected.
+     */
+    public void shutdown() {
+        // Set before taking the lock, so writers blocked on a full queue give up instead of holding it.
+        shutdown = true;
+        shutdownLock.writeLock().lock();
+        try {
+            // The background thread is only gone if it was interrupted, and then nothing would take STOP.
+            while (!stopQueued && writerThread.isAlive()) {
+                stopQueued = queue.offer(STOP, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            setError();
+            return;
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            setError();
+        }
+    }
+
+    /**
+     * Writes all queued events, stops the background thread, and writes the closing {@code </stream>} tag
+     * through the underlying {@code EventWriter}.
+     */
+    @Override
+    public void close() {
+        shutdown();
+        delegate.close();
+    }
+
+    private void drain() {
+        List<Event> batch = new ArrayList<Event>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            for (Event event : batch) {
+                if (event == STOP) {
+                    stopping = true;
+                } else {
+                    write(event);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(Event event) {
+        try {
+            delegate.synchronizedWriteEvent(event);
+        } catch (MalformedDataException e) {
+            // Already logged by the underlying EventWriter.
+        }
+    }
+}
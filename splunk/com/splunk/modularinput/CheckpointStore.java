@@ -0,0 +1,634 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk.modularinput;
+
+import java.io.*;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code CheckpointStore} class is a persistent map from keys to values for a single
+ * modular input stanza.
+ *
+ * Entries are kept in memory and appended to a memory-mapped log file in the input's checkpoint
+ * directory, so that a {@code put} costs a few memory writes rather than rewriting a checkpoint
+ * file. Superseded records are dropped by compaction once the log grows well beyond the size of
+ * the live data. Every record carries a checksum, and a torn record at the end of the log (from a
+ * crash in the middle of a write) is discarded when the store is reopened.
+ *
+ * How often the log is forced to disk is controlled by a {@code SyncPolicy}. Since the log is
+ * memory mapped, records written before the process dies survive regardless of the policy; the
+ * policy only matters if the whole host goes down.
+ *
+ * You would usually get a {@code CheckpointStore} from
+ * {@code InputDefinition.getCheckpointStore} inside {@code Script.streamEvents}.
+ */
+public class CheckpointStore implements Closeable {
+    /**
+     * When to force written records to disk.
+     */
+    public enum SyncPolicy {
+        /** Force the log to disk after every {@code put} and {@code remove}. */
+        ALWAYS,
+        /** Force the log to disk at most once per sync interval, and on {@code flush} and {@code close}. */
+        PERIODIC,
+        /** Only force the log to disk on {@code flush} and {@code close}. */
+        NEVER
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Each record is laid out as: key length, value length (-1 for a removed key), CRC32 of the
+    // lengths and payload, key bytes, value bytes.
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int TOMBSTONE = -1;
+
+    private static final int MINIMUM_CAPACITY = 64 * 1024;
+    private static final String LOG_SUFFIX = ".ckpt";
+    private static final String COMPACTION_SUFFIX = ".compacting";
+    private static final String BACKUP_SUFFIX = ".replaced";
+
+    private final File file;
+    private final SyncPolicy syncPolicy;
+    private long syncInterval = 1000;
+    private int compactionThreshold = 1024 * 1024;
+    // After a failed compaction, the log position below which compaction is not retried.
+    private int compactionRetryPosition = 0;
+
+    // Each value is paired with the size of the record that wrote it, so we
+    // know how many bytes of the log are live without re-encoding anything.
+    private final Map<String, LiveEntry> entries = new HashMap<String, LiveEntry>();
+    private long liveBytes = 0;
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+
+    private boolean dirty = false;
+    private long lastSync;
+    private boolean closed = false;
+
+    // Guards all of the state above. A lock rather than a monitor, so that a
+    // virtual thread forcing the log to disk does not pin its carrier thread.
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private static class LiveEntry {
+        final String value;
+        final int recordSize;
+
+        LiveEntry(String value, int recordSize) {
+            this.value = value;
+            this.recordSize = recordSize;
+        }
+    }
+
+    /**
+     * Opens the checkpoint store for a stanza, creating it if it does not exist yet.
+     *
+     * @param checkpointDir The checkpoint directory handed to the modular input by splunkd.
+     * @param stanzaName The name of the stanza (e.g., foobar://this-input-name).
+     * @param syncPolicy When to force written records to disk.
+     * @return An open {@code CheckpointStore}.
+     * @throws IOException If the log cannot be created or read.
+     */
+    public static CheckpointStore open(File checkpointDir, String stanzaName, SyncPolicy syncPolicy)
+            throws IOException {
+        if (!checkpointDir.isDirectory() && !checkpointDir.mkdirs()) {
+            throw new IOException("Could not create checkpoint directory " + checkpointDir);
+        }
+        String fileName = URLEncoder.encode(stanzaName, "UTF-8") + LOG_SUFFIX;
+        return new CheckpointStore(new File(checkpointDir, fileName), syncPolicy);
+    }
+
+    /**
+     * Opens a checkpoint store backed by the given log file, creating it if it does not exist yet.
+     *
+     * @param file The log file.
+     * @param syncPolicy When to force written records to disk.
+     * @throws IOException If the log cannot be created or read.
+     */
+    public CheckpointStore(File file, SyncPolicy syncPolicy) throws IOException {
+        this.file = file;
+        this.syncPolicy = syncPolicy;
+
+        // A compaction that was interrupted after moving the log aside, on a
+        // platform that cannot rename over it, leaves the log in its backup.
+        File backup = backupFile();
+        if (backup.exists()) {
+            if (!file.exists()) {
+                if (!backup.renameTo(file)) {
+                    throw new IOException("Could not restore " + file + " from " + backup);
+                }
+            } else if (!backup.delete()) {
+                throw new IOException("Could not remove replaced log " + backup);
+            }
+        }
+
+        // A compaction that was interrupted before its rename never took
+        // effect, so the original log is still authoritative.
+        File leftover = compactionFile();
+        if (leftover.exists() && !leftover.delete()) {
+            throw new IOException("Could not remove interrupted compaction " + leftover);
+        }
+
+        mapLog(Math.max(MINIMUM_CAPACITY, (int)Math.min(file.length(), Integer.MAX_VALUE)));
+        replay();
+        this.lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the file backing this store.
+     *
+     * @return The log file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the policy used to decide when to force the log to disk.
+     *
+     * @return The sync policy.
+     */
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Sets the minimum interval between forced writes under {@code SyncPolicy.PERIODIC}.
+     *
+     * @param millis The interval, in milliseconds.
+     */
+    public void setSyncInterval(long millis) {
+        lock.lock();
+        try {
+            this.syncInterval = millis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the log size, in bytes, below which the log is never compacted. Above it, the log is
+     * compacted whenever less than half of it is live data. If a compaction fails, the next one
+     * is not attempted until the log has grown by another {@code bytes}.
+     *
+     * @param bytes The minimum size of the log before compaction is considered.
+     */
+    public void setCompactionThreshold(int bytes) {
+        lock.lock();
+        try {
+            this.compactionThreshold = bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the value stored for a key.
+     *
+     * @param key The key to look up.
+     * @return The value, or {@code null} if the key has no value.
+     */
+    public String get(String key) {
+        lock.lock();
+        try {
+            LiveEntry entry = entries.get(key);
+            return entry == null ? null : entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the value stored for a key, or a default if there is none.
+     *
+     * @param key The key to look up.
+     * @param defaultValue The value to return if the key has no value.
+     * @return The value stored for the key, or {@code defaultValue}.
+     */
+    public String get(String key, String defaultValue) {
+        lock.lock();
+        try {
+            String value = get(key);
+            return value == null ? defaultValue : value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns whether the store holds a value for a key.
+     *
+     * @param key The key to look up.
+     * @return {@code true} if there is a value for the key.
+     */
+    public boolean containsKey(String key) {
+        lock.lock();
+        try {
+            return entries.containsKey(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the keys in this store.
+     *
+     * @return The set of keys with values.
+     */
+    public Set<String> keySet() {
+        lock.lock();
+        try {
+            return new HashSet<String>(entries.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of keys in this store.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a value for a key by appending a record to the log.
+     *
+     * @param key The key. Must be non-empty.
+     * @param value The value. Must not be {@code null}; use {@code remove} to clear a key.
+     * @throws IOException If the record cannot be written.
+     */
+    public void put(String key, String value) throws IOException {
+        lock.lock();
+        try {
+            if (value == null) {
+                throw new IllegalArgumentException("Checkpoint values may not be null; use remove instead.");
+            }
+            LiveEntry previous = entries.get(key);
+            if (previous != null && previous.value.equals(value)) {
+                return;
+            }
+
+            int recordSize = append(key, value);
+            if (previous != null) {
+                liveBytes -= previous.recordSize;
+            }
+            entries.put(key, new LiveEntry(value, recordSize));
+            liveBytes += recordSize;
+            afterWrite();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the value stored for a key.
+     *
+     * @param key The key to remove.
+     * @throws IOException If the removal cannot be written.
+     */
+    public void remove(String key) throws IOException {
+        lock.lock();
+        try {
+            LiveEntry previous = entries.get(key);
+            if (previous == null) {
+                return;
+            }
+            append(key, null);
+            entries.remove(key);
+            liveBytes -= previous.recordSize;
+            afterWrite();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces all records written so far to disk, regardless of the sync policy.
+     *
+     * @throws IOException If the store has been closed.
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            sync();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log so that it holds only the current value of each key.
+     *
+     * The live entries are written to a side file, which is forced to disk and then renamed
+     * over the log, so a crash at any point leaves either the old or the new log intact. If
+     * the compacted log cannot be written or put in place, the store keeps using the old one.
+     *
+     * @throws IOException If the compacted log cannot be written or put in place.
+     */
+    public void compact() throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            File compacted = compactionFile();
+            FileOutputStream fileStream = new FileOutputStream(compacted);
+            boolean written = false;
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+                for (Map.Entry<String, LiveEntry> entry : entries.entrySet()) {
+                    byte[] keyBytes = entry.getKey().getBytes(UTF8);
+                    byte[] valueBytes = entry.getValue().value.getBytes(UTF8);
+                    out.writeInt(keyBytes.length);
+                    out.writeInt(valueBytes.length);
+                    out.writeInt(checksum(keyBytes, valueBytes, valueBytes.length));
+                    out.write(keyBytes);
+                    out.write(valueBytes);
+                }
+                out.flush();
+                fileStream.getFD().sync();
+                written = true;
+            } finally {
+                fileStream.close();
+                if (!written) {
+                    compacted.delete();
+                }
+            }
+
+            int capacity = buffer.capacity();
+            unmapLog();
+            boolean replaced = false;
+            try {
+                replaceLog(compacted);
+                replaced = true;
+            } finally {
+                if (!replaced) {
+                    compacted.delete();
+                    if (file.exists()) {
+                        mapLog(capacity);
+                    } else {
+                        // The log is left in its backup, which the next open restores.
+                        closed = true;
+                    }
+                }
+            }
+
+            mapLog(capacityFor(liveBytes));
+            position = (int)liveBytes;
+            compactionRetryPosition = 0;
+            dirty = false;
+            lastSync = System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces the log to disk and releases it. The store cannot be used afterwards.
+     *
+     * @throws IOException If the log cannot be closed.
+     */
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            sync();
+            closed = true;
+            unmapLog();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int append(String key, String value) throws IOException {
+        ensureOpen();
+        if (key == null || key.length() == 0) {
+            throw new IllegalArgumentException("Checkpoint keys must be non-empty.");
+        }
+        byte[] keyBytes = key.getBytes(UTF8);
+        byte[] valueBytes = value == null ? new byte[0] : value.getBytes(UTF8);
+        int valueLength = value == null ? TOMBSTONE : valueBytes.length;
+        int recordSize = RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length;
+
+        ensureCapacity(recordSize);
+
+        // Write the payload before the header, so a record is never visible with a
+        // valid header and a partially written body.
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.put(keyBytes);
+        buffer.put(valueBytes);
+        buffer.putInt(position + 8, checksum(keyBytes, valueBytes, valueLength));
+        buffer.putInt(position + 4, valueLength);
+        buffer.putInt(position, keyBytes.length);
+
+        position += recordSize;
+        dirty = true;
+        return recordSize;
+    }
+
+    private void afterWrite() throws IOException {
+        if (position > compactionThreshold && position > compactionRetryPosition &&
+                liveBytes * 2 < position) {
+            try {
+                compact();
+                return;
+            } catch (IOException e) {
+                // The record is already in the log, so the write itself succeeded. Keep
+                // using the uncompacted log and don't try again until it has grown by
+                // another compaction threshold.
+                compactionRetryPosition = position + compactionThreshold;
+                if (closed) {
+                    return;
+                }
+            }
+        }
+        if (syncPolicy == SyncPolicy.ALWAYS) {
+            sync();
+        } else if (syncPolicy == SyncPolicy.PERIODIC &&
+                System.currentTimeMillis() - lastSync >= syncInterval) {
+            sync();
+        }
+    }
+
+    private void sync() {
+        if (dirty && buffer != null) {
+            buffer.force();
+            dirty = false;
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Puts a compacted log in place of the current one. The current log is not removed
+     * until the compacted one has taken its place.
+     */
+    private void replaceLog(File compacted) throws IOException {
+        if (compacted.renameTo(file)) {
+            return;
+        }
+        // Some platforms will not rename over an existing file, so the log is moved
+        // aside first, and moved back if the compacted log cannot take its place.
+        File backup = backupFile();
+        if (!file.renameTo(backup)) {
+            throw new IOException("Could not replace " + file + " with its compacted log");
+        }
+        if (!compacted.renameTo(file)) {
+            if (!backup.renameTo(file)) {
+                throw new IOException("Could not restore " + file + " from " + backup);
+            }
+            throw new IOException("Could not replace " + file + " with its compacted log");
+        }
+        backup.delete();
+    }
+
+    private void ensureCapacity(int recordSize) throws IOException {
+        long required = (long)position + recordSize;
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        if (required > Integer.MAX_VALUE) {
+            throw new IOException("Checkpoint log " + file + " cannot grow beyond 2GB");
+        }
+        sync();
+        unmapLog();
+        mapLog(capacityFor(required));
+    }
+
+    private static int capacityFor(long bytes) {
+        long capacity = MINIMUM_CAPACITY;
+        while (capacity < bytes * 2 && capacity < Integer.MAX_VALUE) {
+            capacity *= 2;
+        }
+        return (int)Math.min(capacity, Integer.MAX_VALUE);
+    }
+
+    private void mapLog(int capacity) throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void unmapLog() throws IOException {
+        // There is no portable way to unmap a MappedByteBuffer; dropping the
+        // reference lets the mapping go when it is collected.
+        buffer = null;
+        channel = null;
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+            randomAccessFile = null;
+        }
+    }
+
+    /**
+     * Rebuilds the in-memory map from the log, stopping at the first record that is
+     * empty, truncated, or fails its checksum.
+     */
+    private void replay() {
+        ByteBuffer log = buffer.duplicate();
+        int offset = 0;
+        int limit = log.capacity();
+        while (offset + RECORD_HEADER_SIZE <= limit) {
+            int keyLength = log.getInt(offset);
+            int valueLength = log.getInt(offset + 4);
+            int storedChecksum = log.getInt(offset + 8);
+            int valueBytesLength = valueLength == TOMBSTONE ? 0 : valueLength;
+            if (keyLength <= 0 || valueLength < TOMBSTONE ||
+                    (long)offset + RECORD_HEADER_SIZE + keyLength + valueBytesLength > limit) {
+                break;
+            }
+
+            byte[] keyBytes = new byte[keyLength];
+            byte[] valueBytes = new byte[valueBytesLength];
+            log.position(offset + RECORD_HEADER_SIZE);
+            log.get(keyBytes);
+            log.get(valueBytes);
+            if (checksum(keyBytes, valueBytes, valueLength) != storedChecksum) {
+                break;
+            }
+
+            String key = new String(keyBytes, UTF8);
+            int recordSize = RECORD_HEADER_SIZE + keyLength + valueBytesLength;
+            LiveEntry previous = valueLength == TOMBSTONE ?
+                    entries.remove(key) :
+                    entries.put(key, new LiveEntry(new String(valueBytes, UTF8), recordSize));
+            if (previous != null) {
+                liveBytes -= previous.recordSize;
+            }
+            if (valueLength != TOMBSTONE) {
+                liveBytes += recordSize;
+            }
+            offset += recordSize;
+        }
+        position = offset;
+
+        // Clear whatever torn record follows the valid prefix, so that it cannot
+        // be mistaken for data once new records are appended in front of it.
+        boolean cleared = false;
+        for (int i = position; i < limit; i++) {
+            if (log.get(i) != 0) {
+                log.put(i, (byte)0);
+                cleared = true;
+            }
+        }
+        if (cleared) {
+            buffer.force();
+        }
+    }
+
+    private static int checksum(byte[] keyBytes, byte[] valueBytes, int valueLength) {
+        CRC32 crc = new CRC32();
+        ByteBuffer lengths = ByteBuffer.allocate(8);
+        lengths.putInt(keyBytes.length);
+        lengths.putInt(valueLength);
+        crc.update(lengths.array());
+        crc.update(keyBytes);
+        crc.update(valueBytes);
+        return (int)crc.getValue();
+    }
+
+    private File compactionFile() {
+        return new File(file.getPath() + COMPACTION_SUFFIX);
+    }
+
+    private File backupFile() {
+        return new File(file.getPath() + BACKUP_SUFFIX);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Checkpoint store " + file + " is closed");
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk.modularinput;
+
+import com.splunk.BackgroundThreads;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code ConcurrentScript} class is an optional base class for modular inputs that handle several
+ * stanzas in one process. Instead of overriding {@code streamEvents}, subclasses override
+ * {@code streamEventsForInput}, which is called for one stanza at a time on a bounded thread pool, so a
+ * slow stanza does not hold up the others.
+ *
+ * A stanza with an {@code interval} parameter (in seconds) is run repeatedly with that delay between the
+ * end of one run and the start of the next; a stanza without one is run once. An exception thrown for one
+ * stanza is logged to Splunk and does not affect the other stanzas, or later runs of the same stanza.
+ *
+ * All stanzas share one {@code AsyncEventWriter}, so {@code writeEvent} can be called from any of them
+ * without further synchronization.
+ *
+ * {@code streamEvents} returns once every run-once stanza has finished and there are no repeating stanzas,
+ * or once {@code stop} is called. {@code stop} is also called when splunkd closes stdin, unless
+ * {@code isStoppedByEndOfInput} is overridden to return {@code false}, and when the JVM is shut down (for
+ * instance, when splunkd terminates the script). Either way, running stanzas are given
+ * {@code getShutdownTimeout} milliseconds to finish and queued events are written out before
+ * {@code streamEvents} returns.
+ */
+public abstract class ConcurrentScript extends Script {
+    /**
+     * The name of the stanza parameter giving the number of seconds between runs.
+     */
+    public static final String INTERVAL_PARAMETER = "interval";
+
+    private final CountDownLatch stopRequested = new CountDownLatch(1);
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Streams events for a single stanza. It is called once for run-once stanzas and once per interval for
+     * repeating stanzas, possibly concurrently with calls for other stanzas, but never concurrently with
+     * another call for the same stanza.
+     *
+     * Implementations that loop should check {@code isStopping} and return promptly when it is {@code true}.
+     *
+     * @param inputName The name of the stanza (e.g., foobar://this-input-name).
+     * @param parameters The parameters of the stanza.
+     * @param inputs The full input definition, for server metadata and checkpoint stores.
+     * @param ew A thread safe {@code EventWriter} shared by all stanzas.
+     * @throws Exception Any exception is logged to Splunk and the stanza is scheduled again as usual.
+     */
+    public abstract void streamEventsForInput(String inputName, Map<String, Parameter> parameters,
+                                              InputDefinition inputs, EventWriter ew) throws Exception;
+
+    /**
+     * Gets the maximum number of stanzas run at the same time. The default is 8.
+     *
+     * @return The size of the thread pool.
+     */
+    protected int getMaximumThreads() {
+        return 8;
+    }
+
+    /**
+     * Gets the maximum number of events waiting to be written before {@code writeEvent} blocks. The default is
+     * 10000.
+     *
+     * @return The capacity of the shared event queue.
+     */
+    protected int getEventQueueCapacity() {
+        return 10000;
+    }
+
+    /**
+     * Gets how long running stanzas are given to finish when shutting down. The default is 30 seconds.
+     *
+     * @return The timeout, in milliseconds.
+     */
+    protected long getShutdownTimeout() {
+        return 30000;
+    }
+
+    /**
+     * Gets whether the stanzas are stopped when splunkd closes stdin, after writing the input definition. The
+     * default is {@code true}.
+     *
+     * @return {@code true} to call {@code stop} at the end of stdin.
+     */
+    protected boolean isStoppedByEndOfInput() {
+        return true;
+    }
+
+    /**
+     * Gets the delay between runs of a stanza. The default implementation reads the {@code interval}
+     * parameter of the stanza as a number of seconds.
+     *
+     * @param inputName The name of the stanza.
+     * @param parameters The parameters of the stanza.
+     * @return The delay in milliseconds, or 0 if the stanza should be run only once.
+     * @throws MalformedDataException If the interval is not a number.
+     */
+    protected long getInterval(String inputName, Map<String, Parameter> parameters) throws MalformedDataException {
+        Parameter interval = parameters.get(INTERVAL_PARAMETER);
+        if (!(interval instanceof SingleValueParameter)) {
+            return 0;
+        }
+        String value = ((SingleValueParameter)interval).getValue().trim();
+        try {
+            return Math.max(0, (long)(Double.parseDouble(value) * 1000));
+        } catch (NumberFormatException e) {
+            throw new MalformedDataException("Expected a number of seconds for interval of " + inputName +
+                    "; found " + value);
+        }
+    }
+
+    /**
+     * Asks all stanzas to stop. Repeating stanzas are not run again, and {@code streamEvents} returns once the
+     * running ones have finished.
+     */
+    public void stop() {
+        stopRequested.countDown();
+    }
+
+    /**
+     * Returns whether {@code stop} has been called or the JVM is shutting down.
+     *
+     * @return {@code true} if stanzas should finish up and return.
+     */
+    public boolean isStopping() {
+        return stopRequested.getCount() == 0;
+    }
+
+    @Override
+    public final void streamEvents(final InputDefinition inputs, EventWriter ew)
+            throws MalformedDataException, XMLStreamException, IOException {
+        final Map<String, Map<String, Parameter>> stanzas = inputs.getInputs();
+        if (stanzas.isEmpty()) {
+            return;
+        }
+
+        final AsyncEventWriter writer = new AsyncEventWriter(ew, getEventQueueCapacity());
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                Math.max(1, Math.min(getMaximumThreads(), stanzas.size())), new StanzaThreadFactory());
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        Thread shutdownHook = new Thread(new Runnable() {
+            public void run() {
+                stop();
+                try {
+                    stopped.await(getShutdownTimeout(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // Exiting anyway.
+                }
+            }
+        }, "modularinput-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        final XmlDocumentReader input = getInputReader();
+        Thread inputWatcher = null;
+        if (input != null && isStoppedByEndOfInput()) {
+            inputWatcher = BackgroundThreads.newThread(new Runnable() {
+                public void run() {
+                    try {
+                        if (input.awaitEndOfInput(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                            stop();
+                        }
+                    } catch (InterruptedException e) {
+                        // streamEvents has returned.
+                    }
+                }
+            }, "modularinput-stdin-watcher");
+            inputWatcher.start();
+        }
+
+        try {
+            // Starts at one so that the count cannot reach zero while stanzas are still being
+            // scheduled. The extra count is released only if no stanza repeats.
+            final AtomicInteger runOncePending = new AtomicInteger(1);
+            boolean anyRepeating = false;
+
+            for (Map.Entry<String, Map<String, Parameter>> stanza : stanzas.entrySet()) {
+                final String inputName = stanza.getKey();
+                final Map<String, Parameter> parameters = stanza.getValue();
+
+                long interval;
+                try {
+                    interval = getInterval(inputName, parameters);
+                } catch (MalformedDataException e) {
+                    writer.log(EventWriter.ERROR, "Not running input " + inputName + ": " + e.getMessage());
+                    continue;
+                }
+
+                if (interval > 0) {
+                    anyRepeating = true;
+                    executor.scheduleWithFixedDelay(new Runnable() {
+                        public void run() {
+                            runStanza(inputName, parameters, inputs, writer);
+                        }
+                    }, 0, interval, TimeUnit.MILLISECONDS);
+                } else {
+                    runOncePending.incrementAndGet();
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                runStanza(inputName, parameters, inputs, writer);
+                            } finally {
+                                if (runOncePending.decrementAndGet() == 0) {
+                                    stop();
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+
+            if (!anyRepeating && runOncePending.decrementAndGet() == 0) {
+                stop();
+            }
+
+            try {
+                stopRequested.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop();
+            }
+        } finally {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(getShutdownTimeout(), TimeUnit.MILLISECONDS)) {
+                    writer.log(EventWriter.WARN, "Inputs did not finish within " + getShutdownTimeout() +
+                            "ms of shutdown; interrupting them.");
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            writer.shutdown();
+            if (inputWatcher != null) {
+                inputWatcher.interrupt();
+            }
+            stopped.countDown();
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down, and the hook is what is waiting on us.
+            }
+        }
+    }
+
+    private void runStanza(String inputName, Map<String, Parameter> parameters, InputDefinition inputs,
+                           EventWriter ew) {
+        if (isStopping()) {
+            return;
+        }
+        try {
+            streamEventsForInput(inputName, parameters, inputs, ew);
+        } catch (Exception e) {
+            ew.log(EventWriter.ERROR, "Input " + inputName + " failed: " + e.toString() + " " +
+                    stackTraceToLogEntry(e));
+        }
+    }
+
+    private static class StanzaThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        public Thread newThread(Runnable runnable) {
+            return BackgroundThreads.newThread(runnable, "modularinput-stanza-" + count.incrementAndGet());
+        }
+    }
+}
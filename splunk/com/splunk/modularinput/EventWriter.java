@@ -16,15 +16,16 @@
 
 package com.splunk.modularinput;
 
+import com.splunk.Xml;
 import org.w3c.dom.Document;
 
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.*;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
 /**
@@ -42,6 +43,10 @@ public class EventWriter {
 
     private boolean hadIOException = false;
 
+    // Guards the synchronized methods. A lock rather than a monitor, so that
+    // a virtual thread blocked on the output does not pin its carrier thread.
+    private final ReentrantLock lock = new ReentrantLock();
+
     // The severities that Splunk understands for log messages from modular inputs.
     public static String DEBUG = "DEBUG";
     public static String INFO = "INFO";
@@ -70,10 +75,22 @@ public class EventWriter {
 
     public EventWriter(Writer outputWriter, Writer errorWriter) throws XMLStreamException {
         this.rawOutputStreamWriter = outputWriter;
-        this.outputStreamWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(outputWriter);
+        this.outputStreamWriter = Xml.getOutputFactory().createXMLStreamWriter(outputWriter);
         this.errorStreamWriter = errorWriter;
     }
 
+    /**
+     * Creates an {@code EventWriter} sharing the output and error streams of another one. This is meant for
+     * subclasses, such as {@code AsyncEventWriter}, that forward events to an existing {@code EventWriter}.
+     *
+     * @param other The {@code EventWriter} whose streams to share.
+     */
+    protected EventWriter(EventWriter other) {
+        this.rawOutputStreamWriter = other.rawOutputStreamWriter;
+        this.outputStreamWriter = other.outputStreamWriter;
+        this.errorStreamWriter = other.errorStreamWriter;
+    }
+
     /**
      * Clears the error state on this {@code EventWriter}.
      *
@@ -111,8 +128,13 @@ public class EventWriter {
      * Thread safe version of {@code writeEvent}.
      * @see #writeEvent
      */
-    public synchronized void synchronizedWriteEvent(Event event) throws MalformedDataException {
-        writeEvent(event);
+    public void synchronizedWriteEvent(Event event) throws MalformedDataException {
+        lock.lock();
+        try {
+            writeEvent(event);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -145,8 +167,13 @@ public class EventWriter {
      * Thread safe version of {@code log}.
      * @see #log
      */
-    public synchronized void synchronizedLog(String severity, String errorMessage) {
-        log(severity, errorMessage);
+    public void synchronizedLog(String severity, String errorMessage) {
+        lock.lock();
+        try {
+            log(severity, errorMessage);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -16,14 +16,15 @@
 
 package com.splunk.modularinput;
 
+import com.splunk.Xml;
 import com.splunk.modularinput.Parameter;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
@@ -43,6 +44,8 @@ public class InputDefinition {
 
     private Map<String, Map<String, Parameter>> inputs;
 
+    private final Map<String, CheckpointStore> checkpointStores = new HashMap<String, CheckpointStore>();
+
     private final String serverHostField = "server_host";
     private final String serverUriField = "server_uri";
     private final String checkpointDirField = "checkpoint_dir";
@@ -119,6 +122,69 @@ public class InputDefinition {
         return this.metadata.get(checkpointDirField);
     }
 
+    /**
+     * Gets the checkpoint store for one of the inputs in this {@code InputDefinition}, opening it in the
+     * checkpoint directory on first use. The store uses {@code CheckpointStore.SyncPolicy.PERIODIC}.
+     *
+     * Stores opened this way are closed by {@code Script.run} after {@code streamEvents} returns.
+     *
+     * @param inputName The name of the input (e.g., foobar://this-input-name).
+     * @return The {@code CheckpointStore} for that input.
+     * @throws IOException If the store cannot be opened.
+     */
+    public CheckpointStore getCheckpointStore(String inputName) throws IOException {
+        return getCheckpointStore(inputName, CheckpointStore.SyncPolicy.PERIODIC);
+    }
+
+    /**
+     * Gets the checkpoint store for one of the inputs in this {@code InputDefinition}, opening it in the
+     * checkpoint directory on first use. If the store is already open, it is returned with its original
+     * sync policy.
+     *
+     * Stores opened this way are closed by {@code Script.run} after {@code streamEvents} returns.
+     *
+     * @param inputName The name of the input (e.g., foobar://this-input-name).
+     * @param syncPolicy When the store should force written checkpoints to disk.
+     * @return The {@code CheckpointStore} for that input.
+     * @throws IOException If the store cannot be opened.
+     */
+    public CheckpointStore getCheckpointStore(String inputName, CheckpointStore.SyncPolicy syncPolicy)
+            throws IOException {
+        if (getCheckpointDir() == null) {
+            throw new IllegalStateException("No checkpoint directory was specified for this input definition.");
+        }
+        synchronized (checkpointStores) {
+            CheckpointStore store = checkpointStores.get(inputName);
+            if (store == null) {
+                store = CheckpointStore.open(new File(getCheckpointDir()), inputName, syncPolicy);
+                checkpointStores.put(inputName, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Closes every checkpoint store opened through {@code getCheckpointStore}.
+     *
+     * @throws IOException If any of the stores could not be closed.
+     */
+    void closeCheckpointStores() throws IOException {
+        IOException failure = null;
+        synchronized (checkpointStores) {
+            for (CheckpointStore store : checkpointStores.values()) {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            checkpointStores.clear();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
     /**
      * Sets a session key that can be used to access splunkd's REST API.
      *
@@ -173,9 +239,7 @@ public class InputDefinition {
      */
     public static InputDefinition parseDefinition(InputStream stream) throws ParserConfigurationException,
             IOException, SAXException, MalformedDataException {
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        documentBuilderFactory.setIgnoringElementContentWhitespace(true);
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        DocumentBuilder documentBuilder = Xml.getDocumentBuilder();
         Document doc = documentBuilder.parse(stream);
 
         InputDefinition definition = new InputDefinition();
@@ -22,6 +22,9 @@ import java.io.InputStream;
 /**
  * The {@code NonblockingInputStream} class is a stream wrapper that acts as though
  * the underlying stream has terminated every time it blocks.
+ *
+ * This truncates anything the writer has not finished sending yet. To wait for complete
+ * XML documents on a stream without polling it, use {@code XmlDocumentReader}.
  */
 public class NonblockingInputStream extends InputStream {
     private final InputStream stream;
@@ -38,4 +41,29 @@ public class NonblockingInputStream extends InputStream {
             return -1;
         }
     }
+
+    /**
+     * Reads as many bytes as are available without blocking, up to {@code len}. Returns -1 if none are.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int available = stream.available();
+        if (available == 0) {
+            return -1;
+        }
+        return stream.read(b, off, Math.min(len, available));
+    }
+
+    @Override
+    public int available() throws IOException {
+        return stream.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
 }
@@ -16,11 +16,11 @@
 
 package com.splunk.modularinput;
 
+import com.splunk.Xml;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.util.ArrayList;
 import java.util.List;
@@ -35,7 +35,6 @@ import java.util.List;
  * The primary use of {@code Scheme} is to abstract away the construction of XML to feed to Splunk.
  */
 public class Scheme {
-    private static DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
 
     public enum StreamingMode { SIMPLE, XML };
 
@@ -201,7 +200,7 @@ public class Scheme {
      * @throws ParserConfigurationException If there was a problem configuring the XML libraries.
      */
     Document toXml() throws ParserConfigurationException {
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        DocumentBuilder documentBuilder = Xml.getDocumentBuilder();
         Document doc = documentBuilder.newDocument();
 
         Element root = doc.createElement("scheme");
@@ -16,11 +16,11 @@
 
 package com.splunk.modularinput;
 
+import com.splunk.Xml;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.stream.XMLStreamException;
 import java.io.*;
 
@@ -30,6 +30,9 @@ import java.io.*;
  * input is using external validation.
  */
 public abstract class Script {
+    // Reads stdin while this script runs as an input, so that subclasses can tell when splunkd closes it.
+    private volatile XmlDocumentReader inputReader = null;
+
     /**
      * Encodes all the common behavior of modular inputs. You should have no reason
      * to override this method in most cases.
@@ -62,8 +65,19 @@ public abstract class Script {
             if (args.length == 0) {
                 // This script is running as an input. Input definitions will be passed on stdin as XML, and
                 // the script will write events on stdout and log entries on stderr.
-                InputDefinition inputDefinition = InputDefinition.parseDefinition(in);
-                streamEvents(inputDefinition, eventWriter);
+                XmlDocumentReader reader = new XmlDocumentReader(in);
+                try {
+                    InputDefinition inputDefinition = InputDefinition.parseDefinition(readDocument(reader));
+                    inputReader = reader;
+                    try {
+                        streamEvents(inputDefinition, eventWriter);
+                    } finally {
+                        inputReader = null;
+                        inputDefinition.closeCheckpointStores();
+                    }
+                } finally {
+                    closeQuietly(reader);
+                }
                 eventWriter.close();
                 return 0;
             } else if (args[0].toLowerCase().equals("--scheme")) {
@@ -77,17 +91,19 @@ public abstract class Script {
                     return 0;
                 }
             } else if (args[0].toLowerCase().equals("--validate-arguments")) {
-                NonblockingInputStream stream = new NonblockingInputStream(in);
-                ValidationDefinition validationDefinition = ValidationDefinition.parseDefinition(stream);
+                XmlDocumentReader reader = new XmlDocumentReader(in);
+                ValidationDefinition validationDefinition;
+                try {
+                    validationDefinition = ValidationDefinition.parseDefinition(readDocument(reader));
+                } finally {
+                    closeQuietly(reader);
+                }
 
                 try {
                     validateInput(validationDefinition);
                     return 0;
                 } catch (Exception e) {
-                    DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-                    documentBuilderFactory.setIgnoringElementContentWhitespace(true);
-                    DocumentBuilder documentBuilder;
-                    documentBuilder = documentBuilderFactory.newDocumentBuilder();
+                    DocumentBuilder documentBuilder = Xml.getDocumentBuilder();
 
                     Document document = documentBuilder.newDocument();
 
@@ -120,6 +136,41 @@ public abstract class Script {
         }
     }
 
+    /**
+     * Waits for splunkd to finish writing an XML document on stdin, without waiting for it to close the
+     * stream.
+     *
+     * @param reader The reader of the stream splunkd writes to.
+     * @return An {@code InputStream} containing just the document.
+     * @throws MalformedDataException If the stream ends before any document is written.
+     */
+    private InputStream readDocument(XmlDocumentReader reader) throws MalformedDataException, IOException,
+            InterruptedException {
+        InputStream document = reader.nextDocument();
+        if (document == null) {
+            throw new MalformedDataException("Expected an XML document on stdin; found end of input.");
+        }
+        return document;
+    }
+
+    private static void closeQuietly(XmlDocumentReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // Nothing more will be read from it either way.
+        }
+    }
+
+    /**
+     * Returns the reader of stdin while {@code streamEvents} runs, so that it can tell when splunkd closes
+     * stdin.
+     *
+     * @return The reader, or {@code null} if {@code streamEvents} was not called by {@code run}.
+     */
+    XmlDocumentReader getInputReader() {
+        return inputReader;
+    }
+
     protected String stackTraceToLogEntry(Exception e) {
         // Concatenate all the lines of the exception's stack trace with \\ between them.
         StringBuilder sb = new StringBuilder();
@@ -156,6 +207,9 @@ public abstract class Script {
      * Streams events into Splunk. It should do all of its output via
      * {@code EventWriter} rather than assuming that there is a console attached.
      *
+     * Checkpoints for each input can be kept in the store returned by
+     * {@code inputs.getCheckpointStore(inputName)}, which is closed when this method returns.
+     *
      * @param ew An object with methods to write events and log messages to Splunk.
      */
     public abstract void streamEvents(InputDefinition inputs, EventWriter ew)
@@ -16,12 +16,12 @@
 
 package com.splunk.modularinput;
 
+import com.splunk.Xml;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -192,9 +192,7 @@ public class ValidationDefinition {
      */
     public static ValidationDefinition parseDefinition(InputStream stream) throws ParserConfigurationException,
             IOException, SAXException, MalformedDataException {
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        documentBuilderFactory.setIgnoringElementContentWhitespace(true);
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        DocumentBuilder documentBuilder = Xml.getDocumentBuilder();
         Document doc = documentBuilder.parse(stream);
 
         ValidationDefinition definition = new ValidationDefinition();
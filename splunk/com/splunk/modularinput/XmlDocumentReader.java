@@ -0,0 +1,394 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk.modularinput;
+
+import com.splunk.BackgroundThreads;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code XmlDocumentReader} class reads a stream, such as stdin, on a background thread and hands off each
+ * complete XML document in it as soon as its root element is closed.
+ *
+ * This lets a modular input parse the XML that splunkd writes on stdin without waiting for splunkd to close the
+ * stream, and without polling it. Callers block in {@code nextDocument}, optionally with a timeout, and are
+ * woken as soon as a document or the end of the stream arrives.
+ *
+ * Documents may be encoded in UTF-8, UTF-16 (with a byte order mark or starting with {@code <}), or any
+ * other encoding in which markup characters are single ASCII bytes. The bytes of each document are passed on
+ * unchanged, so the XML parser still sees the original encoding declaration.
+ */
+public class XmlDocumentReader implements Closeable {
+    // Put on the queue after the last document; never handed to callers.
+    private static final byte[] END_OF_INPUT = new byte[0];
+
+    private final InputStream stream;
+    private final BlockingQueue<byte[]> documents = new LinkedBlockingQueue<byte[]>();
+    private final CountDownLatch endOfInput = new CountDownLatch(1);
+    private final Thread readerThread;
+    private volatile IOException failure = null;
+
+    /**
+     * Creates an {@code XmlDocumentReader} and starts reading {@code stream} on a background thread.
+     *
+     * @param stream The stream to read XML documents from.
+     */
+    public XmlDocumentReader(InputStream stream) {
+        this.stream = stream;
+        this.readerThread = BackgroundThreads.newThread(new Runnable() {
+            public void run() {
+                readDocuments();
+            }
+        }, "modularinput-stdin-reader");
+        this.readerThread.start();
+    }
+
+    /**
+     * Waits for the next complete document.
+     *
+     * @return An {@code InputStream} over the bytes of the document, or {@code null} if the stream ended first.
+     * @throws IOException If reading the stream failed.
+     * @throws InterruptedException If the calling thread was interrupted while waiting.
+     */
+    public InputStream nextDocument() throws IOException, InterruptedException {
+        return toStream(documents.take());
+    }
+
+    /**
+     * Waits up to {@code timeout} for the next complete document.
+     *
+     * @param timeout How long to wait.
+     * @param unit The unit of {@code timeout}.
+     * @return An {@code InputStream} over the bytes of the document, or {@code null} if the stream ended first or
+     *         the timeout expired. Use {@code isEndOfInput} to tell the two apart.
+     * @throws IOException If reading the stream failed.
+     * @throws InterruptedException If the calling thread was interrupted while waiting.
+     */
+    public InputStream nextDocument(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        byte[] document = documents.poll(timeout, unit);
+        return document == null ? null : toStream(document);
+    }
+
+    /**
+     * Returns whether the underlying stream has ended and every document in it has been returned.
+     *
+     * @return {@code true} if {@code nextDocument} will not return any more documents.
+     */
+    public boolean isEndOfInput() {
+        return endOfInput.getCount() == 0 && documents.peek() == END_OF_INPUT;
+    }
+
+    /**
+     * Waits up to {@code timeout} for the underlying stream to end.
+     *
+     * @param timeout How long to wait.
+     * @param unit The unit of {@code timeout}.
+     * @return {@code true} if the stream ended, {@code false} if the timeout expired.
+     * @throws InterruptedException If the calling thread was interrupted while waiting.
+     */
+    public boolean awaitEndOfInput(long timeout, TimeUnit unit) throws InterruptedException {
+        return endOfInput.await(timeout, unit);
+    }
+
+    /**
+     * Stops the background thread and closes the underlying stream.
+     *
+     * @throws IOException If the stream could not be closed.
+     */
+    public void close() throws IOException {
+        readerThread.interrupt();
+        stream.close();
+    }
+
+    private InputStream toStream(byte[] document) throws IOException {
+        if (document == END_OF_INPUT) {
+            // Leave the marker for the next caller.
+            documents.offer(END_OF_INPUT);
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        return new ByteArrayInputStream(document);
+    }
+
+    private void readDocuments() {
+        DocumentSplitter splitter = new DocumentSplitter();
+        byte[] buffer = new byte[8192];
+        try {
+            int n;
+            while ((n = stream.read(buffer, 0, buffer.length)) != -1) {
+                int start = 0;
+                while (start < n) {
+                    int end = splitter.feed(buffer, start, n);
+                    if (end < 0) {
+                        break;
+                    }
+                    documents.offer(splitter.takeDocument());
+                    start = end;
+                }
+            }
+            // Hand off a truncated document too, so the parser can report what is wrong with it.
+            if (splitter.hasPartialDocument()) {
+                documents.offer(splitter.takeDocument());
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            documents.offer(END_OF_INPUT);
+            endOfInput.countDown();
+        }
+    }
+
+    /**
+     * Tracks just enough XML syntax to find where each document's root element ends: tags, quoted attribute
+     * values, comments, CDATA sections, processing instructions, and declarations.
+     */
+    static class DocumentSplitter {
+        private static final int BETWEEN_DOCUMENTS = 0;
+        private static final int TEXT = 1;
+        private static final int MARKUP_START = 2;
+        private static final int START_TAG = 3;
+        private static final int END_TAG = 4;
+        private static final int BANG = 5;
+        private static final int COMMENT = 6;
+        private static final int CDATA = 7;
+        private static final int DECLARATION = 8;
+        private static final int PROCESSING_INSTRUCTION = 9;
+        private static final int DETECTING_ENCODING = 10;
+
+        private final ByteArrayOutputStream document = new ByteArrayOutputStream();
+        private int state = BETWEEN_DOCUMENTS;
+
+        // Code unit assembly: 1 byte for ASCII compatible encodings, 2 for UTF-16.
+        private int unitSize;
+        private boolean bigEndian;
+        private int pendingByte = -1;
+        private int firstByte;
+        private boolean skippedZero;
+
+        private int depth;
+        private boolean rootSeen;
+        private char quote;
+        private int previous;
+        private int beforePrevious;
+        private int declarationBrackets;
+        private final StringBuilder bang = new StringBuilder();
+
+        /**
+         * Consumes bytes from {@code buffer[start]} up to {@code buffer[end]}, stopping after the byte that
+         * completes a document.
+         *
+         * @return The index just past the last byte of a completed document, or -1 if all bytes were
+         *         consumed without completing one.
+         */
+        int feed(byte[] buffer, int start, int end) {
+            for (int i = start; i < end; i++) {
+                int b = buffer[i] & 0xff;
+                if (state == BETWEEN_DOCUMENTS) {
+                    if (b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == 0) {
+                        skippedZero = b == 0;
+                        continue;
+                    }
+                    if (b == '<' && skippedZero) {
+                        // UTF-16 big endian without a byte order mark; the zero was the high byte of '<'.
+                        document.write(0);
+                        document.write(b);
+                        beginDocument(0, b);
+                        continue;
+                    }
+                    document.write(b);
+                    firstByte = b;
+                    state = DETECTING_ENCODING;
+                    continue;
+                }
+                document.write(b);
+
+                if (state == DETECTING_ENCODING) {
+                    if (beginDocument(firstByte, b)) {
+                        return i + 1;
+                    }
+                } else if (unitSize == 1) {
+                    if (consume(b)) {
+                        return i + 1;
+                    }
+                } else if (pendingByte < 0) {
+                    pendingByte = b;
+                } else {
+                    int c = bigEndian ? (pendingByte << 8) | b : (b << 8) | pendingByte;
+                    pendingByte = -1;
+                    if (consume(c)) {
+                        return i + 1;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Picks the code unit size from the first two bytes of a document, then feeds the state machine
+         * whatever characters those bytes hold.
+         *
+         * @return {@code true} if the two bytes completed the document.
+         */
+        private boolean beginDocument(int first, int second) {
+            state = TEXT;
+            pendingByte = -1;
+            depth = 0;
+            rootSeen = false;
+            previous = 0;
+            beforePrevious = 0;
+
+            if (first == 0xfe && second == 0xff) {
+                unitSize = 2;
+                bigEndian = true;
+                return false;
+            } else if (first == 0xff && second == 0xfe) {
+                unitSize = 2;
+                bigEndian = false;
+                return false;
+            } else if (first == '<' && second == 0) {
+                unitSize = 2;
+                bigEndian = false;
+                return consume('<');
+            } else if (first == 0 && second == '<') {
+                unitSize = 2;
+                bigEndian = true;
+                return consume('<');
+            } else {
+                unitSize = 1;
+                return consume(first) || consume(second);
+            }
+        }
+
+        /**
+         * Advances the state machine by one character.
+         *
+         * @return {@code true} if the character closed the root element.
+         */
+        private boolean consume(int c) {
+            boolean complete = false;
+            switch (state) {
+                case TEXT:
+                    if (c == '<') {
+                        state = MARKUP_START;
+                    }
+                    break;
+                case MARKUP_START:
+                    if (c == '?') {
+                        state = PROCESSING_INSTRUCTION;
+                    } else if (c == '!') {
+                        state = BANG;
+                        bang.setLength(0);
+                    } else if (c == '/') {
+                        state = END_TAG;
+                    } else {
+                        state = START_TAG;
+                        quote = 0;
+                    }
+                    break;
+                case START_TAG:
+                    if (quote != 0) {
+                        if (c == quote) {
+                            quote = 0;
+                        }
+                    } else if (c == '"' || c == '\'') {
+                        quote = (char)c;
+                    } else if (c == '>') {
+                        state = TEXT;
+                        if (previous != '/') {
+                            depth++;
+                            rootSeen = true;
+                        } else if (depth == 0) {
+                            // A self-closing root element is a complete document.
+                            complete = true;
+                        }
+                    }
+                    break;
+                case END_TAG:
+                    if (c == '>') {
+                        state = TEXT;
+                        depth--;
+                        complete = rootSeen && depth == 0;
+                    }
+                    break;
+                case BANG:
+                    bang.append((char)c);
+                    if (bang.toString().equals("--")) {
+                        state = COMMENT;
+                        c = 0;
+                    } else if (bang.toString().equals("[CDATA[")) {
+                        state = CDATA;
+                        c = 0;
+                    } else if (!"--".startsWith(bang.toString()) && !"[CDATA[".startsWith(bang.toString())) {
+                        state = DECLARATION;
+                        declarationBrackets = 0;
+                        consume(c);
+                        return false;
+                    }
+                    break;
+                case COMMENT:
+                    if (c == '>' && previous == '-' && beforePrevious == '-') {
+                        state = TEXT;
+                    }
+                    break;
+                case CDATA:
+                    if (c == '>' && previous == ']' && beforePrevious == ']') {
+                        state = TEXT;
+                    }
+                    break;
+                case DECLARATION:
+                    if (c == '[') {
+                        declarationBrackets++;
+                    } else if (c == ']') {
+                        declarationBrackets--;
+                    } else if (c == '>' && declarationBrackets <= 0) {
+                        state = TEXT;
+                    }
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    if (c == '>' && previous == '?') {
+                        state = TEXT;
+                    }
+                    break;
+            }
+            beforePrevious = previous;
+            previous = c;
+            return complete;
+        }
+
+        boolean hasPartialDocument() {
+            return state != BETWEEN_DOCUMENTS;
+        }
+
+        byte[] takeDocument() {
+            byte[] bytes = document.toByteArray();
+            document.reset();
+            state = BETWEEN_DOCUMENTS;
+            skippedZero = false;
+            return bytes;
+        }
+    }
+}
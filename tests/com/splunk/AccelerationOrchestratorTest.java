@@ -0,0 +1,275 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AccelerationOrchestratorTest {
+    private static final String PATH = "/servicesNS/nobody/search/datamodel/model/test";
+
+    /*
+     * A job that finishes on its third poll, having summarized 1000 events
+     * per poll, or fails on its second.
+     */
+    private class FakeJob extends Job {
+        final String query;
+        final String earliestTime;
+        final boolean fails;
+        int polls = 0;
+        boolean finished = false;
+        boolean cancelled = false;
+
+        FakeJob(Service service, String query, String earliestTime, boolean fails) {
+            super(service, "search/jobs/fake");
+            this.query = query;
+            this.earliestTime = earliestTime;
+            this.fails = fails;
+        }
+
+        @Override public Job refresh() {
+            synchronized (AccelerationOrchestratorTest.this) {
+                Integer errors = pollErrorsLeft.get(query.split(" ")[3]);
+                if (errors != null && errors > 0) {
+                    pollErrorsLeft.put(query.split(" ")[3], errors - 1);
+                    throw new HttpException(503, "Service unavailable", "");
+                }
+            }
+            polls++;
+            if (!finished && (isFailed() || isDone())) {
+                markFinished();
+            }
+            return this;
+        }
+
+        @Override public boolean isReady() { return true; }
+        @Override public boolean isDone() { return polls >= 3 || isFailed(); }
+        @Override public boolean isFailed() { return fails && polls >= 2; }
+        @Override public float getDoneProgress() { return Math.min(polls / 3f, 1f); }
+        @Override public int getEventCount() { return polls * 1000; }
+        @Override public float getRunDuration() { return polls * 0.5f; }
+        @Override public String getSid() { return "fake_" + query.hashCode(); }
+
+        @Override public Job cancel() {
+            cancelled = true;
+            markFinished();
+            return this;
+        }
+
+        private void markFinished() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            synchronized (AccelerationOrchestratorTest.this) {
+                running--;
+            }
+        }
+    }
+
+    private final List<FakeJob> jobs = Collections.synchronizedList(new ArrayList<FakeJob>());
+    private final Map<String, Integer> failuresLeft = new HashMap<String, Integer>();
+    private final Map<String, Integer> pollErrorsLeft = new HashMap<String, Integer>();
+    private int running = 0;
+    private int maxRunning = 0;
+    private DataModel model;
+
+    @Before
+    public void setUp() {
+        final String description = SDKTestCase.streamToString(
+                SDKTestCase.openResource("data/datamodels/model_with_multiple_types.json"));
+        Service service = new Service("localhost", 8089) {
+            @Override
+            public ResponseMessage send(String path, RequestMessage request) {
+                String xml = "<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:s=\"http://dev.splunk.com/ns/rest\">" +
+                        "<entry><title>test</title><link href=\"" + PATH + "\" rel=\"alternate\"/>" +
+                        "<content type=\"text/xml\"><s:dict><s:key name=\"description\">" +
+                        description.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;") +
+                        "</s:key><s:key name=\"acceleration\">{\"enabled\": false}</s:key>" +
+                        "</s:dict></content></entry></feed>";
+                try {
+                    return new ResponseMessage(200, new ByteArrayInputStream(xml.getBytes("UTF-8")));
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError(e);
+                }
+            }
+
+            @Override
+            public Job search(String query, Map<String, Object> args) {
+                String object = query.split(" ")[3];
+                synchronized (AccelerationOrchestratorTest.this) {
+                    Integer failures = failuresLeft.get(object);
+                    if (failures != null && failures < 0) {
+                        failuresLeft.put(object, failures + 1);
+                        throw new HttpException(503, "Too many searches", "");
+                    }
+                    boolean fails = failures != null && failures > 0;
+                    if (fails) {
+                        failuresLeft.put(object, failures - 1);
+                    }
+                    running++;
+                    maxRunning = Math.max(maxRunning, running);
+                    FakeJob job = new FakeJob(this, query, (String)args.get("earliest_time"), fails);
+                    jobs.add(job);
+                    return job;
+                }
+            }
+        };
+        model = new DataModel(service, PATH);
+    }
+
+    private AccelerationOrchestrator orchestrator() {
+        AccelerationOrchestrator orchestrator = new AccelerationOrchestrator(model.getObjects());
+        orchestrator.setPollInterval(1);
+        return orchestrator;
+    }
+
+    @Test
+    public void testConcurrencyIsCapped() throws InterruptedException {
+        AccelerationOrchestrator orchestrator = orchestrator();
+        orchestrator.setConcurrency(2);
+        List<AccelerationOrchestrator.Task> tasks = orchestrator.run();
+
+        Assert.assertEquals(model.getObjects().size(), tasks.size());
+        Assert.assertTrue(tasks.size() > 2);
+        Assert.assertEquals(2, maxRunning);
+        for (AccelerationOrchestrator.Task task : tasks) {
+            Assert.assertEquals(AccelerationOrchestrator.State.DONE, task.getState());
+            Assert.assertEquals(1, task.getAttempts());
+            Assert.assertEquals(3000, task.getEventCount());
+            Assert.assertEquals(2000.0, task.getEventsPerSecond(), 1e-9);
+            Assert.assertTrue(((FakeJob)task.getJob()).query.endsWith("| tscollect"));
+        }
+        Assert.assertEquals(3000L * tasks.size(), orchestrator.getEventCount());
+        Assert.assertTrue(orchestrator.getEventsPerSecond() > 0);
+    }
+
+    @Test
+    public void testEarliestTimePerObject() throws InterruptedException {
+        String special = model.getObjects().iterator().next().getName();
+        AccelerationOrchestrator orchestrator = orchestrator();
+        orchestrator.setEarliestTime("-7d");
+        orchestrator.setEarliestTime(special, "-1h");
+        orchestrator.run();
+
+        Assert.assertEquals(model.getObjects().size(), jobs.size());
+        for (FakeJob job : jobs) {
+            boolean isSpecial = job.query.contains(" " + special + " ");
+            Assert.assertEquals(isSpecial ? "-1h" : "-7d", job.earliestTime);
+        }
+    }
+
+    @Test
+    public void testFailuresAreRetried() throws InterruptedException {
+        List<DataModelObject> objects = new ArrayList<DataModelObject>(model.getObjects());
+        final String flaky = objects.get(0).getName();
+        String broken = objects.get(1).getName();
+        String unschedulable = objects.get(2).getName();
+        failuresLeft.put(flaky, 1);
+        failuresLeft.put(broken, 5);
+        failuresLeft.put(unschedulable, -2);
+
+        final List<AccelerationOrchestrator.State> flakyStates = new ArrayList<AccelerationOrchestrator.State>();
+        AccelerationOrchestrator orchestrator = orchestrator();
+        orchestrator.setMaxAttempts(3);
+        orchestrator.setListener(new AccelerationOrchestrator.Listener() {
+            public void onProgress(AccelerationOrchestrator.Task task) {
+                if (task.getObject().getName().equals(flaky)) {
+                    flakyStates.add(task.getState());
+                }
+            }
+        });
+        List<AccelerationOrchestrator.Task> tasks = orchestrator.run();
+
+        Map<String, AccelerationOrchestrator.Task> byName = new HashMap<String, AccelerationOrchestrator.Task>();
+        for (AccelerationOrchestrator.Task task : tasks) {
+            byName.put(task.getObject().getName(), task);
+        }
+        Assert.assertEquals(AccelerationOrchestrator.State.DONE, byName.get(flaky).getState());
+        Assert.assertEquals(2, byName.get(flaky).getAttempts());
+        Assert.assertEquals(AccelerationOrchestrator.State.FAILED, byName.get(broken).getState());
+        Assert.assertEquals(3, byName.get(broken).getAttempts());
+        Assert.assertNotNull(byName.get(broken).getLastError());
+        Assert.assertEquals(AccelerationOrchestrator.State.DONE, byName.get(unschedulable).getState());
+        Assert.assertEquals(3, byName.get(unschedulable).getAttempts());
+        Assert.assertTrue(flakyStates.contains(AccelerationOrchestrator.State.PENDING));
+        Assert.assertEquals(AccelerationOrchestrator.State.DONE, flakyStates.get(flakyStates.size() - 1));
+    }
+
+    @Test
+    public void testPollErrorsDoNotStartDuplicateJobs() throws InterruptedException {
+        List<DataModelObject> objects = new ArrayList<DataModelObject>(model.getObjects());
+        String flaky = objects.get(0).getName();
+        String unreachable = objects.get(1).getName();
+        pollErrorsLeft.put(flaky, 2);
+        pollErrorsLeft.put(unreachable, 3);
+
+        AccelerationOrchestrator orchestrator = orchestrator();
+        orchestrator.setConcurrency(2);
+        orchestrator.setMaxPollErrors(3);
+        List<AccelerationOrchestrator.Task> tasks = orchestrator.run();
+
+        Map<String, AccelerationOrchestrator.Task> byName = new HashMap<String, AccelerationOrchestrator.Task>();
+        for (AccelerationOrchestrator.Task task : tasks) {
+            byName.put(task.getObject().getName(), task);
+        }
+        // A few failed polls leave the job running.
+        Assert.assertEquals(AccelerationOrchestrator.State.DONE, byName.get(flaky).getState());
+        Assert.assertEquals(1, byName.get(flaky).getAttempts());
+        // Too many cancel the job before another is started.
+        Assert.assertEquals(AccelerationOrchestrator.State.DONE, byName.get(unreachable).getState());
+        Assert.assertEquals(2, byName.get(unreachable).getAttempts());
+        Assert.assertEquals(model.getObjects().size() + 1, jobs.size());
+        int cancelled = 0;
+        for (FakeJob job : jobs) {
+            if (job.cancelled) {
+                cancelled++;
+            }
+        }
+        Assert.assertEquals(1, cancelled);
+        Assert.assertEquals(2, maxRunning);
+    }
+
+    @Test
+    public void testCancelStopsRunningJobs() throws InterruptedException {
+        final AccelerationOrchestrator orchestrator = orchestrator();
+        orchestrator.setConcurrency(1);
+        orchestrator.setListener(new AccelerationOrchestrator.Listener() {
+            public void onProgress(AccelerationOrchestrator.Task task) {
+                if (task.getState() == AccelerationOrchestrator.State.RUNNING) {
+                    orchestrator.cancel();
+                }
+            }
+        });
+        List<AccelerationOrchestrator.Task> tasks = orchestrator.run();
+
+        Assert.assertEquals(1, jobs.size());
+        Assert.assertTrue(jobs.get(0).cancelled);
+        for (AccelerationOrchestrator.Task task : tasks) {
+            Assert.assertEquals(AccelerationOrchestrator.State.CANCELLED, task.getState());
+        }
+    }
+}
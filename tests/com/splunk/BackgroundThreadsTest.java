@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import com.splunk.modularinput.AsyncEventWriter;
+import com.splunk.modularinput.EventWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+public class BackgroundThreadsTest {
+    private final List<Thread> created = Collections.synchronizedList(new ArrayList<Thread>());
+
+    @After
+    public void tearDown() {
+        BackgroundThreads.setThreadFactory(null);
+    }
+
+    @Test
+    public void testDefaultThreadsAreNamedDaemons() {
+        Thread thread = BackgroundThreads.named("splunk-test").newThread(new Runnable() {
+            public void run() {}
+        });
+        Assert.assertEquals("splunk-test", thread.getName());
+        Assert.assertTrue(thread.isDaemon());
+        Assert.assertNull(BackgroundThreads.getThreadFactory());
+    }
+
+    @Test
+    public void testThreadFactoryIsUsed() throws Exception {
+        BackgroundThreads.setThreadFactory(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                created.add(thread);
+                return thread;
+            }
+        });
+
+        StringWriter output = new StringWriter();
+        AsyncEventWriter writer = new AsyncEventWriter(new EventWriter(output, new StringWriter()), 10);
+        writer.close();
+
+        Assert.assertEquals(1, created.size());
+        Assert.assertEquals("modularinput-event-writer", created.get(0).getName());
+        Assert.assertFalse(created.get(0).isAlive());
+    }
+}
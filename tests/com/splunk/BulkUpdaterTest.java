@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BulkUpdaterTest {
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private Service service;
+
+    @Before
+    public void setUp() {
+        // Records each request, fails edits of "bad" indexes, and answers
+        // refreshes with an index whose maxTotalDataSizeMB is 42.
+        service = new Service("localhost", 8089) {
+            @Override
+            public ResponseMessage send(String path, RequestMessage request) {
+                int count = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), count));
+                }
+                try {
+                    Thread.sleep(20);
+                    requests.add(request.getMethod() + " " + path + " "
+                            + (request.getContent() == null ? "" : request.getContent()));
+                    if (path.endsWith("/bad")) {
+                        throw new HttpException(400, "HTTP 400 -- Bad request", "Bad request");
+                    }
+                    String xml = "<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:s=\"http://dev.splunk.com/ns/rest\">" +
+                            "<entry><title>index</title><content type=\"text/xml\"><s:dict>" +
+                            "<s:key name=\"maxTotalDataSizeMB\">42</s:key></s:dict></content></entry></feed>";
+                    return new ResponseMessage(200, new ByteArrayInputStream(xml.getBytes("UTF-8")));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError(e);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    private List<String> requests(String method) {
+        List<String> matching = new ArrayList<String>();
+        synchronized (requests) {
+            for (String request : requests) {
+                if (request.startsWith(method + " ")) {
+                    matching.add(request);
+                }
+            }
+        }
+        return matching;
+    }
+
+    @Test
+    public void testRepeatedUpdatesAreMerged() {
+        Index index = new Index(service, "/services/data/indexes/main");
+        BulkUpdater updater = new BulkUpdater();
+        index.setMaxTotalDataSizeMB(1);
+        updater.update(index);
+        index.setFrozenTimePeriodInSecs(2);
+        updater.update(index, new Args("maxTotalDataSizeMB", 3));
+
+        Index same = new Index(service, "/services/data/indexes/main");
+        same.setMaxHotBuckets(4);
+        updater.update(same);
+        Assert.assertEquals(1, updater.getPendingCount());
+
+        BulkUpdater.Summary summary = updater.flush();
+        Assert.assertEquals(0, updater.getPendingCount());
+        Assert.assertEquals(1, summary.getResults().size());
+        Assert.assertEquals(3, summary.getUpdateCount());
+        Assert.assertSame(index, summary.getResults().get(0).getEntity());
+
+        List<String> posts = requests("POST");
+        Assert.assertEquals(1, posts.size());
+        Assert.assertTrue(posts.get(0).contains("maxTotalDataSizeMB=3"));
+        Assert.assertTrue(posts.get(0).contains("frozenTimePeriodInSecs=2"));
+        Assert.assertTrue(posts.get(0).contains("maxHotBuckets=4"));
+        Assert.assertTrue(requests("GET").isEmpty());
+    }
+
+    @Test
+    public void testLaterValuesWinAcrossInstances() {
+        BulkUpdater updater = new BulkUpdater();
+        Index first = new Index(service, "/services/data/indexes/main");
+        first.setMaxTotalDataSizeMB(1);
+        updater.update(first);
+
+        Index second = new Index(service, "/services/data/indexes/main");
+        second.setMaxTotalDataSizeMB(2);
+        updater.update(second, new Args("maxHotBuckets", 5));
+
+        first.setMaxTotalDataSizeMB(3);
+        first.setMaxHotBuckets(6);
+        updater.update(first);
+
+        Assert.assertEquals(1, updater.flush().getSucceededCount());
+        List<String> posts = requests("POST");
+        Assert.assertEquals(1, posts.size());
+        Assert.assertTrue(posts.get(0).contains("maxTotalDataSizeMB=3"));
+        Assert.assertTrue(posts.get(0).contains("maxHotBuckets=6"));
+        Assert.assertFalse(posts.get(0).contains("maxTotalDataSizeMB=2"));
+        Assert.assertFalse(posts.get(0).contains("maxHotBuckets=5"));
+    }
+
+    @Test
+    public void testConcurrencyIsBounded() {
+        BulkUpdater updater = new BulkUpdater();
+        updater.setConcurrency(3);
+        for (int i = 0; i < 20; i++) {
+            Index index = new Index(service, "/services/data/indexes/index" + i);
+            index.setMaxTotalDataSizeMB(i);
+            updater.update(index);
+        }
+
+        BulkUpdater.Summary summary = updater.flush();
+        Assert.assertEquals(20, summary.getSucceededCount());
+        Assert.assertEquals(20, requests("POST").size());
+        Assert.assertTrue(maxInFlight.get() <= 3);
+        Assert.assertTrue(maxInFlight.get() > 1);
+        Assert.assertEquals("/services/data/indexes/index7", summary.getResults().get(7).getPath());
+    }
+
+    @Test
+    public void testFailuresAreSummarized() {
+        BulkUpdater updater = new BulkUpdater();
+        for (String name : new String[] {"a", "bad", "b"}) {
+            Index index = new Index(service, "/services/data/indexes/" + name);
+            index.setMaxTotalDataSizeMB(10);
+            updater.update(index);
+        }
+
+        BulkUpdater.Summary summary = updater.flush();
+        Assert.assertEquals(2, summary.getSucceededCount());
+        Assert.assertEquals(1, summary.getFailedCount());
+        BulkUpdater.Result failure = summary.getFailures().get(0);
+        Assert.assertEquals("/services/data/indexes/bad", failure.getPath());
+        Assert.assertEquals(400, ((HttpException)failure.getError()).getStatus());
+        Assert.assertTrue(summary.getMaxLatency() >= 20);
+        Assert.assertTrue(summary.getLatencyPercentile(50) <= summary.getMaxLatency());
+        Assert.assertTrue(summary.getMeanLatency() <= summary.getMaxLatency());
+        Assert.assertEquals(summary.getMaxLatency(), summary.getLatencyPercentile(100));
+    }
+
+    @Test
+    public void testRefreshIsOnlyDoneWhenAsked() {
+        BulkUpdater updater = new BulkUpdater();
+        updater.setRefresh(true);
+        Index index = new Index(service, "/services/data/indexes/main");
+        index.setMaxTotalDataSizeMB(42);
+        updater.update(index);
+
+        Assert.assertTrue(updater.flush().getResults().get(0).isSucceeded());
+        Assert.assertEquals(1, requests("GET").size());
+        Assert.assertEquals(42, index.getMaxTotalDataSizeMB());
+        Assert.assertEquals(1, requests("GET").size());
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ClusterBalancerTest {
+    /*
+     * A cluster member that issues session keys and creates jobs named after
+     * its port, answers job requests, and fails its health check while it is
+     * down.
+     */
+    private static class FakeMember implements HttpHandler {
+        final HttpServer server;
+        final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> authorizations = Collections.synchronizedList(new ArrayList<String>());
+        volatile boolean down = false;
+        int jobs = 0;
+
+        FakeMember() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/", this);
+            server.start();
+        }
+
+        int getPort() {
+            return server.getAddress().getPort();
+        }
+
+        public synchronized void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            requests.add(method + " " + path);
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            int status = 200;
+            String body = "<response/>";
+            if (path.equals("/services/server/info")) {
+                status = down ? 500 : 200;
+                body = "<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:s=\"http://dev.splunk.com/ns/rest\">" +
+                        "<entry><title>server-info</title><link href=\"" + path + "\" rel=\"alternate\"/>" +
+                        "<content type=\"text/xml\"><s:dict><s:key name=\"version\">6.2.0</s:key></s:dict>" +
+                        "</content></entry></feed>";
+            } else if (path.equals("/services/auth/login")) {
+                body = "<response><sessionKey>key" + getPort() + "</sessionKey></response>";
+            } else if (method.equals("POST") && path.equals("/services/search/jobs")) {
+                status = 201;
+                body = "<response><sid>" + getPort() + "_" + (jobs++) + "</sid></response>";
+            } else if (path.startsWith("/services/search/jobs/")) {
+                String sid = path.substring("/services/search/jobs/".length());
+                body = "<entry xmlns=\"http://www.w3.org/2005/Atom\" xmlns:s=\"http://dev.splunk.com/ns/rest\">" +
+                        "<title>search *</title><link href=\"" + path + "\" rel=\"alternate\"/>" +
+                        "<content type=\"text/xml\"><s:dict><s:key name=\"sid\">" + sid + "</s:key>" +
+                        "<s:key name=\"dispatchState\">DONE</s:key></s:dict></content></entry>";
+            }
+            byte[] bytes = body.getBytes("UTF-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(bytes);
+            output.close();
+        }
+    }
+
+    private final List<FakeMember> members = new ArrayList<FakeMember>();
+    private ClusterBalancer balancer;
+
+    private ClusterBalancer balancer(int count) throws IOException {
+        balancer = new ClusterBalancer();
+        balancer.setHealthCheckInterval(0);
+        for (int i = 0; i < count; i++) {
+            FakeMember member = new FakeMember();
+            members.add(member);
+            balancer.addMember("localhost", member.getPort());
+        }
+        return balancer;
+    }
+
+    @After
+    public void tearDown() {
+        for (FakeMember member : members) {
+            member.server.stop(0);
+        }
+        if (balancer != null) {
+            balancer.close();
+        }
+    }
+
+    @Test
+    public void testSidOf() {
+        Assert.assertEquals("1234.5", ClusterBalancer.sidOf("/services/search/jobs/1234.5"));
+        Assert.assertEquals("1234.5", ClusterBalancer.sidOf("/servicesNS/a/b/search/jobs/1234.5/results?count=0"));
+        Assert.assertEquals("rt_1", ClusterBalancer.sidOf("/services/search/jobs/rt_1?output_mode=json"));
+        Assert.assertNull(ClusterBalancer.sidOf("/services/search/jobs"));
+        Assert.assertNull(ClusterBalancer.sidOf("/services/search/jobs/"));
+        Assert.assertNull(ClusterBalancer.sidOf("/services/search/jobs/export?search=x"));
+        Assert.assertNull(ClusterBalancer.sidOf("/services/saved/searches"));
+    }
+
+    @Test
+    public void testSelectPrefersLessBusyHealthyMembers() {
+        ClusterBalancer balancer = new ClusterBalancer();
+        ClusterBalancer.Member busy = balancer.addMember("sh1", 8089);
+        ClusterBalancer.Member ejected = balancer.addMember("sh2", 8089);
+        balancer.addMember("sh3", 8089);
+        balancer.addMember("sh4", 8089);
+        for (int i = 0; i < 10; i++) {
+            busy.started();
+        }
+        ejected.checked(false);
+
+        for (int i = 0; i < 200; i++) {
+            ClusterBalancer.Member member = balancer.select("/services/apps/local", null);
+            Assert.assertNotSame(ejected, member);
+            // The busiest member is always compared with another one.
+            Assert.assertNotSame(busy, member);
+        }
+
+        // With every member ejected, all of them are used.
+        for (ClusterBalancer.Member member : balancer.getMembers()) {
+            member.checked(false);
+        }
+        Assert.assertNotNull(balancer.select("/services/apps/local", null));
+
+        // Jobs stay on their member while it is healthy.
+        ejected.checked(true);
+        ejected.bind("1234.5");
+        Assert.assertSame(ejected, balancer.select("/services/search/jobs/1234.5/results", null));
+        ejected.checked(false);
+        Assert.assertNotNull(balancer.select("/services/search/jobs/1234.5/results", null));
+    }
+
+    @Test
+    public void testJobsAreStickyToTheirMember() throws IOException {
+        Service service = new Service("localhost", 1, "http");
+        service.setClusterBalancer(balancer(3));
+
+        List<Job> jobs = new ArrayList<Job>();
+        for (int i = 0; i < 12; i++) {
+            jobs.add(service.getJobs().create("search *"));
+        }
+        for (Job job : jobs) {
+            job.refresh();
+            job.refresh();
+        }
+
+        for (Job job : jobs) {
+            String sid = job.getSid();
+            int owner = Integer.parseInt(sid.substring(0, sid.indexOf('_')));
+            Assert.assertEquals(owner, balancer.getJobMember(sid).getPort());
+            for (FakeMember member : members) {
+                int polls = Collections.frequency(member.requests, "GET /services/search/jobs/" + sid);
+                Assert.assertEquals(member.getPort() == owner ? 3 : 0, polls);
+            }
+        }
+    }
+
+    @Test
+    public void testLoginToEachMember() throws IOException {
+        Service service = new Service("localhost", 1, "http");
+        service.setClusterBalancer(balancer(3));
+        service.login("admin", "changeme");
+        for (int i = 0; i < 30; i++) {
+            service.get("apps/local");
+        }
+
+        for (FakeMember member : members) {
+            Assert.assertTrue(Collections.frequency(member.requests, "POST /services/auth/login") <= 1);
+            for (int i = 0; i < member.requests.size(); i++) {
+                if (!member.requests.get(i).equals("POST /services/auth/login")) {
+                    Assert.assertEquals("Splunk key" + member.getPort(), member.authorizations.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnreachableMembersAreEjected() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        int deadPort = socket.getLocalPort();
+        socket.close();
+
+        balancer(1);
+        balancer.setEjectAfter(1);
+        ClusterBalancer.Member dead = balancer.addMember("localhost", deadPort);
+        ClusterBalancer.Member live = balancer.getMembers().get(0);
+        HttpService service = new HttpService("localhost", deadPort, "http");
+        service.setClusterBalancer(balancer);
+
+        // Requests that cannot connect are sent to the other member.
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(200, service.get("/services/apps/local").getStatus());
+        }
+        Assert.assertFalse(dead.isHealthy());
+        Assert.assertTrue(live.isHealthy());
+        Assert.assertEquals(10, members.get(0).requests.size());
+        Assert.assertEquals(0, live.getOutstanding());
+
+        members.get(0).down = true;
+        balancer.checkHealth("http");
+        Assert.assertFalse(live.isHealthy());
+        Assert.assertFalse(dead.isHealthy());
+
+        members.get(0).down = false;
+        balancer.checkHealth("http");
+        Assert.assertTrue(live.isHealthy());
+        Assert.assertFalse(dead.isHealthy());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks the data models parsed from the JSON descriptions in
+ * {@code data/datamodels} without a server.
+ */
+public class DataModelParsingTest {
+    private static final String PATH = "/servicesNS/nobody/search/datamodel/model/test";
+
+    private static DataModel load(final String description) {
+        Service service = new Service("localhost", 8089) {
+            @Override
+            public ResponseMessage send(String path, RequestMessage request) {
+                String xml = "<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:s=\"http://dev.splunk.com/ns/rest\">" +
+                        "<entry><title>test</title><link href=\"" + PATH + "\" rel=\"alternate\"/>" +
+                        "<content type=\"text/xml\"><s:dict>" +
+                        "<s:key name=\"description\">" +
+                        description.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;") +
+                        "</s:key><s:key name=\"acceleration\">{\"enabled\": 1, \"earliest_time\": \"-1mon\"}</s:key>" +
+                        "</s:dict></content></entry></feed>";
+                try {
+                    return new ResponseMessage(200, new ByteArrayInputStream(xml.getBytes("UTF-8")));
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        return new DataModel(service, PATH);
+    }
+
+    private static String read(String name) {
+        return SDKTestCase.streamToString(SDKTestCase.openResource("data/datamodels/" + name));
+    }
+
+    private static void assertSameObject(DataModelObject expected, DataModelObject actual) {
+        Assert.assertEquals(expected.getClass(), actual.getClass());
+        Assert.assertEquals(expected.getName(), actual.getName());
+        Assert.assertEquals(expected.getDisplayName(), actual.getDisplayName());
+        Assert.assertEquals(expected.getParentName(), actual.getParentName());
+        Assert.assertArrayEquals(expected.getLineage(), actual.getLineage());
+        Assert.assertEquals(expected.getFields().size(), actual.getFields().size());
+        for (DataModelField field : expected.getFields()) {
+            Assert.assertEquals(field.getType(), actual.getField(field.getName()).getType());
+        }
+        Assert.assertEquals(expected.getCalculations().keySet(), actual.getCalculations().keySet());
+        Assert.assertEquals(expected.getConstraints().size(), actual.getConstraints().size());
+    }
+
+    @Test
+    public void testObjectsMatchTreeParse() {
+        for (String name : Arrays.asList("data_model_for_pivot.json", "data_model_with_test_objects.json",
+                "inheritance_test_data.json", "model_with_multiple_types.json",
+                "object_with_one_search.json", "object_with_two_searches.json")) {
+            String description = read(name);
+            DataModel model = load(description);
+
+            Map<String, DataModelObject> expected = new HashMap<String, DataModelObject>();
+            JsonElement root = new JsonParser().parse(description);
+            for (JsonElement object : root.getAsJsonObject().get("objects").getAsJsonArray()) {
+                DataModelObject dmo = DataModelObject.parse(model, object);
+                expected.put(dmo.getName(), dmo);
+            }
+
+            Assert.assertEquals(name, expected.size(), model.getObjects().size());
+            for (DataModelObject object : expected.values()) {
+                Assert.assertTrue(model.containsObject(object.getName()));
+                assertSameObject(object, model.getObject(object.getName()));
+            }
+            Assert.assertFalse(model.containsObject("no_such_object"));
+            Assert.assertNull(model.getObject("no_such_object"));
+        }
+    }
+
+    @Test
+    public void testModelProperties() {
+        DataModel model = load(read("data_model_with_test_objects.json"));
+        Assert.assertEquals("test", model.getName());
+        Assert.assertEquals("\u0bf5\u0bf1\u0bf0\u0bef - search 1", model.getDisplayName());
+        Assert.assertTrue(model.isAccelerated());
+        Assert.assertEquals("-1mon", model.getEarliestAcceleratedTime());
+
+        DataModel unicode = load(read("model_with_unicode_headers.json"));
+        Assert.assertEquals("\u1029\u1699\u0bf5", unicode.getDisplayName());
+        Assert.assertEquals("\u0bf5\u0bf1\u0bf0\u0bef", unicode.getDescription());
+        Assert.assertTrue(unicode.getObjects().isEmpty());
+    }
+
+    @Test
+    public void testEscapesAndNestedBrackets() {
+        DataModel model = load("{\"modelName\": \"m\", \"displayName\": \"a \\\"quoted\\\" \\u00e9 \\\\ name\", " +
+                "\"description\": \"x\", \"objects\": [" +
+                "{\"comment\": \"} ] {\", \"objectName\": \"first\", \"displayName\": \"First\", " +
+                "\"lineage\": \"first\", \"parentName\": \"BaseEvent\", \"fields\": [], \"calculations\": [], " +
+                "\"constraints\": [{\"search\": \"a=\\\"]\\\"\"}], \"extra\": {\"nested\": [1, 2.5e3, true, null]}}, " +
+                "{\"objectName\": \"second\", \"lineage\": \"first.second\", \"parentName\": \"first\", " +
+                "\"fields\": [], \"calculations\": [], \"constraints\": []}]}");
+
+        Assert.assertEquals("a \"quoted\" \u00e9 \\ name", model.getDisplayName());
+        Assert.assertEquals("x", model.getDescription());
+        Assert.assertEquals(2, model.getObjects().size());
+        Assert.assertEquals("First", model.getObject("first").getDisplayName());
+        Assert.assertEquals("a=\"]\"", model.getObject("first").getConstraints().iterator().next().getQuery());
+        Assert.assertSame(model.getObject("first"), model.getObject("second").getParent());
+    }
+
+    @Test
+    public void testConcurrentGetObjectReturnsOneInstance() throws Exception {
+        DataModel model = load(read("model_with_multiple_types.json"));
+        final String name = model.getObjects().iterator().next().getName();
+        final DataModel fresh = load(read("model_with_multiple_types.json"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<DataModelObject>> futures = new ArrayList<Future<DataModelObject>>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(new Callable<DataModelObject>() {
+                    public DataModelObject call() {
+                        return fresh.getObject(name);
+                    }
+                }));
+            }
+            DataModelObject first = futures.get(0).get();
+            Assert.assertNotNull(first);
+            for (Future<DataModelObject> future : futures) {
+                Assert.assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class EventStreamTest {
+    /*
+     * host: web-0..web-2; bytes: i, or "-" every 10th event; status: 200 or
+     * 404; clientip: 5 distinct values; every 50th event has no host.
+     */
+    private static List<Event> events(int count) throws IOException {
+        StringBuilder csv = new StringBuilder("_time,host,bytes,status,clientip\n");
+        for (int i = 0; i < count; i++) {
+            csv.append("2014-03-13T0").append(i % 3).append(':').append(10 + i % 50)
+               .append(":00.000-07:00,");
+            if (i % 50 != 49) csv.append("web-").append(i % 3);
+            csv.append(',').append(i % 10 == 9 ? "-" : Integer.toString(i))
+               .append(',').append(i % 4 == 0 ? "404" : "200")
+               .append(",10.0.0.").append(i % 5).append('\n');
+        }
+        ResultsReaderCsv reader = new ResultsReaderCsv(
+                new ByteArrayInputStream(csv.toString().getBytes("UTF-8")));
+        List<Event> events = new ArrayList<Event>();
+        for (Event event : reader) {
+            events.add(event);
+        }
+        return events;
+    }
+
+    @Test
+    public void testGroupBy() throws IOException {
+        List<Event> events = events(1000);
+        List<Event> rows = EventStream.of(events).groupBy("host")
+                .count().sum("bytes").avg("bytes").min("bytes").max("bytes").dc("clientip")
+                .run();
+
+        Assert.assertEquals(3, rows.size());
+        for (int h = 0; h < 3; h++) {
+            long count = 0, sum = 0, numbers = 0, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+            for (int i = 0; i < 1000; i++) {
+                if (i % 3 != h || i % 50 == 49) continue;
+                count++;
+                if (i % 10 == 9) continue;
+                sum += i;
+                numbers++;
+                min = Math.min(min, i);
+                max = Math.max(max, i);
+            }
+            Event row = rows.get(h);
+            Assert.assertEquals("web-" + h, row.get("host"));
+            Assert.assertEquals(Long.toString(count), row.get("count"));
+            Assert.assertEquals(Long.toString(sum), row.get("sum(bytes)"));
+            Assert.assertEquals(sum / (double)numbers, Double.parseDouble(row.get("avg(bytes)")), 1e-9);
+            Assert.assertEquals(Long.toString(min), row.get("min(bytes)"));
+            Assert.assertEquals(Long.toString(max), row.get("max(bytes)"));
+            Assert.assertEquals("5", row.get("dc(clientip)"));
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws IOException {
+        List<Event> events = events(20000);
+        EventStream stream = EventStream.of(events)
+                .filter(EventStream.fieldEquals("status", "200"))
+                .bin("_time", 1, TimeUnit.HOURS);
+        List<Event> sequential = stream.groupBy("_time", "host")
+                .count().sum("bytes").max("bytes").dc("clientip").run();
+        List<Event> parallel = stream.parallel(4).groupBy("_time", "host")
+                .count().sum("bytes").max("bytes").dc("clientip").run();
+
+        // The hour and the host both follow i % 3.
+        Assert.assertEquals(3, sequential.size());
+        Assert.assertEquals(sequential, parallel);
+        Assert.assertEquals("2014-03-13T00:00:00.000-07:00", sequential.get(0).get("_time"));
+        Assert.assertEquals("web-0", sequential.get(0).get("host"));
+    }
+
+    @Test
+    public void testFilterAndProject() throws IOException {
+        int count = 0;
+        for (Event event : EventStream.of(events(100))
+                .filter(EventStream.fieldEquals("status", "404"))
+                .project("host", "bytes")) {
+            Assert.assertTrue(event.keySet().size() <= 2);
+            Assert.assertFalse(event.containsKey("status"));
+            count++;
+        }
+        Assert.assertEquals(25, count);
+    }
+
+    @Test
+    public void testTop() throws IOException {
+        List<Event> top = EventStream.of(events(1000)).top(2, "status");
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals("200", top.get(0).get("status"));
+        Assert.assertEquals("750", top.get(0).get("count"));
+        Assert.assertEquals("75.000000", top.get(0).get("percent"));
+        Assert.assertEquals("404", top.get(1).get("status"));
+
+        top = EventStream.of(events(1000)).parallel(3).top(1, "host");
+        Assert.assertEquals(1, top.size());
+        Assert.assertEquals("web-0", top.get(0).get("host"));
+    }
+
+    @Test
+    public void testBins() {
+        long hour = TimeUnit.HOURS.toMillis(1);
+        long day = TimeUnit.DAYS.toMillis(1);
+        Assert.assertEquals("2012-11-27T16:00:00.000-08:00",
+                EventStream.TimeBins.bin("2012-11-27T16:44:05.208-08:00", hour));
+        Assert.assertEquals("2012-11-27T00:00:00.000-08:00",
+                EventStream.TimeBins.bin("2012-11-27T16:44:05.208-08:00", day));
+        Assert.assertEquals("2012-03-01T00:00:00Z",
+                EventStream.TimeBins.bin("2012-03-01T00:04:59Z", 5 * 60000));
+        Assert.assertEquals("2000-02-29T23:55:00+05:30",
+                EventStream.TimeBins.bin("2000-02-29T23:59:59+05:30", 5 * 60000));
+        Assert.assertEquals("1354060800", EventStream.TimeBins.bin("1354063445.208", hour));
+        Assert.assertNull(EventStream.TimeBins.bin("yesterday", hour));
+    }
+}
@@ -68,6 +68,23 @@ public class InputTest extends SDKTestCase {
         });
     }
 
+    @Test
+    public void testConcurrentRefreshMatchesSequential() {
+        service.setInputRefreshConcurrency(1);
+        service.setInputKindCacheTtl(0);
+        InputCollection sequential = service.getInputs().refresh();
+
+        service.setInputRefreshConcurrency(8);
+        service.setInputKindCacheTtl(60 * 1000);
+        InputCollection concurrent = service.getInputs().refresh();
+        Assert.assertEquals(sequential.getInputKinds(), concurrent.getInputKinds());
+        Assert.assertEquals(sequential.keySet(), concurrent.keySet());
+
+        // The second refresh reuses the cached input kinds.
+        Assert.assertSame(service.getCachedInputKinds(), service.getCachedInputKinds());
+        Assert.assertEquals(sequential.keySet(), service.getInputs().refresh().keySet());
+    }
+
     private void removeTestInputs() {
         for (Input input : inputs.refresh().values()) {
             final String inputName = input.getName();
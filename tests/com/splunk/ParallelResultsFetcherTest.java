@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelResultsFetcherTest {
+    /**
+     * A finished job whose results are generated locally, slowest first.
+     */
+    private static class FakeJob extends Job {
+        final int resultCount;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger requests = new AtomicInteger();
+        int failAtOffset = -1;
+
+        FakeJob(int resultCount) {
+            super(new Service("localhost"), "search/jobs/fake");
+            this.resultCount = resultCount;
+        }
+
+        @Override public boolean isDone() { return true; }
+
+        @Override public int getResultCount() { return resultCount; }
+
+        @Override public InputStream getResults(Map args) {
+            int offset = (Integer)args.get("offset");
+            int count = (Integer)args.get("count");
+            requests.incrementAndGet();
+            int now = inFlight.incrementAndGet();
+            synchronized (maxInFlight) {
+                maxInFlight.set(Math.max(maxInFlight.get(), now));
+            }
+            try {
+                // Earlier pages take longer, so pages finish out of order.
+                Thread.sleep(Math.max(0, 40 - offset / count * 10));
+                if (offset == failAtOffset) {
+                    throw new HttpException(500, "Internal error", "");
+                }
+                StringBuilder json = new StringBuilder("{\"preview\":false,\"init_offset\":" + offset + ",\"results\":[");
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) json.append(",");
+                    json.append("{\"n\":\"").append(offset + i).append("\"}");
+                }
+                json.append("]}");
+                return new ByteArrayInputStream(json.toString().getBytes("UTF-8"));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void testOrdered() throws Exception {
+        FakeJob job = new FakeJob(103);
+        ParallelResultsFetcher fetcher = new ParallelResultsFetcher(job, 10);
+        fetcher.setConcurrency(3);
+
+        int expected = 0;
+        for (Event event : fetcher) {
+            Assert.assertEquals(Integer.toString(expected++), event.get("n"));
+        }
+        Assert.assertEquals(103, expected);
+        Assert.assertEquals(11, job.requests.get());
+        Assert.assertTrue(job.maxInFlight.get() <= 3);
+    }
+
+    @Test
+    public void testUnordered() throws Exception {
+        FakeJob job = new FakeJob(95);
+        ParallelResultsFetcher fetcher = new ParallelResultsFetcher(job, 10);
+        fetcher.setOrdered(false);
+
+        Set<String> seen = new HashSet<String>();
+        boolean inOrder = true;
+        int previous = -1;
+        Event event;
+        while ((event = fetcher.getNextEvent()) != null) {
+            int n = Integer.parseInt(event.get("n"));
+            inOrder &= n == previous + 1;
+            previous = n;
+            Assert.assertTrue(seen.add(event.get("n")));
+        }
+        Assert.assertEquals(95, seen.size());
+        Assert.assertFalse(inOrder);
+    }
+
+    @Test
+    public void testWindowBoundsPagesAhead() throws Exception {
+        FakeJob job = new FakeJob(100);
+        ParallelResultsFetcher fetcher = new ParallelResultsFetcher(job, 10);
+        fetcher.setConcurrency(4);
+        fetcher.setWindow(2);
+
+        Assert.assertNotNull(fetcher.getNextEvent());
+        Thread.sleep(200);
+        // The first page, plus at most two pages ahead of it.
+        Assert.assertTrue(job.requests.get() <= 3);
+        fetcher.close();
+        Assert.assertNull(fetcher.getNextEvent());
+    }
+
+    private static int fetcherThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().equals("splunk-results-fetcher")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testThreadsExitOnceEveryPageIsFetched() throws Exception {
+        FakeJob job = new FakeJob(30);
+        ParallelResultsFetcher fetcher = new ParallelResultsFetcher(job, 10);
+
+        // Every page fits in the window, so all are requested at once, and
+        // the threads exit without the fetcher being read to the end or closed.
+        Assert.assertEquals("0", fetcher.getNextEvent().get("n"));
+        for (int i = 0; i < 100 && fetcherThreads() > 0; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(0, fetcherThreads());
+
+        int count = 1;
+        while (fetcher.getNextEvent() != null) {
+            count++;
+        }
+        Assert.assertEquals(30, count);
+    }
+
+    @Test
+    public void testEmptyJob() throws Exception {
+        FakeJob job = new FakeJob(0);
+        ParallelResultsFetcher fetcher = new ParallelResultsFetcher(job, 10);
+        Assert.assertNull(fetcher.getNextEvent());
+        Assert.assertEquals(0, job.requests.get());
+    }
+
+    @Test
+    public void testPageFailureIsReported() throws Exception {
+        FakeJob job = new FakeJob(50);
+        job.failAtOffset = 20;
+        ParallelResultsFetcher fetcher = new ParallelResultsFetcher(job, 10);
+        int read = 0;
+        try {
+            while (fetcher.getNextEvent() != null) {
+                read++;
+            }
+            Assert.fail("Expected the failed page to be reported.");
+        } catch (HttpException e) {
+            Assert.assertEquals(500, e.getStatus());
+        }
+        Assert.assertEquals(20, read);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCannotConfigureAfterStart() throws Exception {
+        ParallelResultsFetcher fetcher = new ParallelResultsFetcher(new FakeJob(5), 10);
+        fetcher.getNextEvent();
+        fetcher.setConcurrency(2);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PivotCacheTest {
+    private static final String MODEL_PATH = "/servicesNS/nobody/search/datamodel/model/pivot_test_data";
+
+    /*
+     * Serves one data model and compiles pivots into queries numbered in the
+     * order they were requested.
+     */
+    private static class FakeService extends Service {
+        final String description;
+        volatile String updated = "2014-03-13T10:00:00-07:00";
+        final AtomicInteger pivotRequests = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        FakeService(String description) {
+            super("localhost", 8089);
+            this.description = description;
+        }
+
+        @Override
+        public ResponseMessage send(String path, RequestMessage request) {
+            if (path.contains("datamodel/pivot/")) {
+                int n = pivotRequests.incrementAndGet();
+                int current = inFlight.incrementAndGet();
+                while (true) {
+                    int max = maxInFlight.get();
+                    if (current <= max || maxInFlight.compareAndSet(max, current)) break;
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return feed(null, "<s:key name=\"pivot_search\">| pivot " + n + "</s:key>" +
+                        "<s:key name=\"search\">search " + n + "</s:key>" +
+                        "<s:key name=\"open_in_search\">| pivot " + n + "</s:key>" +
+                        "<s:key name=\"drilldown_search\">search " + n + "</s:key>");
+            }
+            return feed(updated, "<s:key name=\"description\">" + escape(description) + "</s:key>" +
+                    "<s:key name=\"acceleration\">{\"enabled\": false}</s:key>" +
+                    "<s:key name=\"displayName\">pivot_test_data</s:key>");
+        }
+
+        private static ResponseMessage feed(String updated, String keys) {
+            String xml = "<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:s=\"http://dev.splunk.com/ns/rest\">" +
+                    "<entry><title>pivot_test_data</title>" +
+                    "<link href=\"" + MODEL_PATH + "\" rel=\"alternate\"/>" +
+                    (updated == null ? "" : "<updated>" + updated + "</updated>") +
+                    "<content type=\"text/xml\"><s:dict>" + keys + "</s:dict></content></entry></feed>";
+            try {
+                return new ResponseMessage(200, new ByteArrayInputStream(xml.getBytes("UTF-8")));
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        private static String escape(String text) {
+            return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        }
+    }
+
+    private FakeService service;
+    private DataModel model;
+
+    @Before
+    public void setUp() throws IOException {
+        service = new FakeService(SDKTestCase.streamToString(
+                SDKTestCase.openResource("data/datamodels/data_model_for_pivot.json")));
+        model = new DataModel(service, MODEL_PATH);
+    }
+
+    private PivotSpecification byHost() {
+        return model.getObject("test_data").createPivotSpecification()
+                .addRowSplit("host", "Host")
+                .addCellValue("test_data", "Count", StatsFunction.COUNT);
+    }
+
+    private PivotSpecification bySource() {
+        return model.getObject("test_data").createPivotSpecification()
+                .addRowSplit("source", "Source")
+                .addCellValue("test_data", "Count", StatsFunction.COUNT);
+    }
+
+    @Test
+    public void testPivotWithoutCacheAlwaysRequests() {
+        byHost().pivot();
+        byHost().pivot();
+        Assert.assertEquals(2, service.pivotRequests.get());
+    }
+
+    @Test
+    public void testEquivalentSpecificationsHit() {
+        service.setPivotCache(new PivotCache(10));
+
+        Pivot first = byHost().pivot();
+        Pivot second = byHost().pivot();
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, service.pivotRequests.get());
+
+        Assert.assertNotSame(first, bySource().pivot());
+        Assert.assertNotSame(first, byHost().setAccelerationNamespace("sid=1234").pivot());
+        Assert.assertEquals(3, service.pivotRequests.get());
+        Assert.assertEquals(3, service.getPivotCache().getCount());
+    }
+
+    @Test
+    public void testKeyDependsOnSpecification() {
+        Assert.assertEquals(PivotCache.keyFor(byHost()), PivotCache.keyFor(byHost()));
+        Assert.assertFalse(PivotCache.keyFor(byHost()).equals(PivotCache.keyFor(bySource())));
+        Assert.assertFalse(PivotCache.keyFor(byHost()).equals(
+                PivotCache.keyFor(byHost().addCellValue("host", "Hosts", StatsFunction.DISTINCT_COUNT))));
+    }
+
+    @Test
+    public void testUpdatedDataModelMisses() {
+        service.setPivotCache(new PivotCache(10));
+        Pivot before = byHost().pivot();
+
+        service.updated = "2014-03-14T10:00:00-07:00";
+        model.refresh();
+        Pivot after = byHost().pivot();
+
+        Assert.assertNotSame(before, after);
+        Assert.assertEquals(2, service.pivotRequests.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        service.setPivotCache(new PivotCache(1));
+        byHost().pivot();
+        bySource().pivot();
+        byHost().pivot();
+        Assert.assertEquals(3, service.pivotRequests.get());
+        Assert.assertEquals(1, service.getPivotCache().getCount());
+    }
+
+    @Test
+    public void testPivotAll() {
+        service.setPivotCache(new PivotCache(10));
+        Pivot cached = byHost().pivot();
+
+        List<PivotSpecification> specifications = new ArrayList<PivotSpecification>();
+        specifications.add(byHost());
+        specifications.add(bySource());
+        for (String field : Arrays.asList("host", "source", "sourcetype")) {
+            specifications.add(byHost().addCellValue(field, "dc", StatsFunction.DISTINCT_COUNT));
+        }
+        specifications.add(bySource());
+
+        List<Pivot> pivots = service.pivotAll(specifications);
+
+        Assert.assertEquals(6, pivots.size());
+        Assert.assertSame(cached, pivots.get(0));
+        Assert.assertSame(pivots.get(1), pivots.get(5));
+        Assert.assertEquals(5, service.pivotRequests.get());
+        Assert.assertTrue(service.maxInFlight.get() > 1);
+
+        Assert.assertEquals(pivots, service.pivotAll(specifications));
+        Assert.assertEquals(5, service.pivotRequests.get());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RealtimeSubscriptionTest {
+    /**
+     * A job whose successive previews are given up front. The last one is
+     * repeated until the subscription stops.
+     */
+    private static class FakeJob extends Job {
+        private final String[] previews;
+        private int polls = 0;
+
+        FakeJob(String... previews) {
+            super(new Service("localhost"), "search/jobs/fake");
+            this.previews = previews;
+        }
+
+        @Override public synchronized InputStream getResultsPreview(Map args) {
+            Assert.assertEquals("json", args.get("output_mode"));
+            String preview = previews[Math.min(polls++, previews.length - 1)];
+            try {
+                return new ByteArrayInputStream(preview.getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class RecordingListener implements RealtimeSubscription.Listener {
+        final List<List<String>> deliveries = Collections.synchronizedList(new ArrayList<List<String>>());
+        volatile boolean finished = false;
+        volatile Exception error = null;
+
+        public void onEvents(List<Event> events) {
+            List<String> hosts = new ArrayList<String>();
+            for (Event event : events) {
+                hosts.add(event.get("host") + "=" + event.get("count"));
+            }
+            deliveries.add(hosts);
+        }
+
+        public void onFinished() {
+            finished = true;
+        }
+
+        public void onError(Exception e) {
+            error = e;
+        }
+    }
+
+    private static String preview(boolean isPreview, String... rows) {
+        StringBuilder json = new StringBuilder("{\"preview\":" + isPreview + ",\"init_offset\":0,\"results\":[");
+        for (int i = 0; i < rows.length; i++) {
+            String[] hostAndCount = rows[i].split("=");
+            if (i > 0) json.append(",");
+            json.append("{\"host\":\"").append(hostAndCount[0])
+                .append("\",\"count\":\"").append(hostAndCount[1])
+                .append("\",\"_serial\":\"").append(i).append("\"}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    @Test
+    public void testDeliversOnlyNewAndChangedRows() throws Exception {
+        FakeJob job = new FakeJob(
+                "",
+                preview(true, "a=1", "b=1"),
+                preview(true, "a=1", "b=1"),
+                preview(true, "c=1", "a=1", "b=2"),
+                preview(false, "c=1", "a=1", "b=2", "d=1"));
+        RecordingListener listener = new RecordingListener();
+        RealtimeSubscription subscription = new RealtimeSubscription(job, null, listener);
+        subscription.setMinimumInterval(1);
+        subscription.setMaximumInterval(5);
+        subscription.start().join(5000);
+
+        Assert.assertNull(listener.error);
+        Assert.assertTrue(listener.finished);
+        Assert.assertEquals(3, listener.deliveries.size());
+        Assert.assertEquals(Arrays.asList("a=1", "b=1"), listener.deliveries.get(0));
+        Assert.assertEquals(Arrays.asList("c=1", "b=2"), listener.deliveries.get(1));
+        Assert.assertEquals(Arrays.asList("d=1"), listener.deliveries.get(2));
+    }
+
+    @Test
+    public void testRepeatedRowsAreCounted() throws Exception {
+        FakeJob job = new FakeJob(
+                preview(true, "a=1", "a=1"),
+                preview(true, "a=1", "b=1", "a=1", "a=1"),
+                preview(false, "a=1", "b=1", "a=1", "a=1"));
+        RecordingListener listener = new RecordingListener();
+        RealtimeSubscription subscription = new RealtimeSubscription(job, null, listener);
+        subscription.setMinimumInterval(1);
+        subscription.setMaximumInterval(5);
+        subscription.start().join(5000);
+
+        Assert.assertNull(listener.error);
+        Assert.assertTrue(listener.finished);
+        Assert.assertEquals(2, listener.deliveries.size());
+        Assert.assertEquals(Arrays.asList("a=1", "a=1"), listener.deliveries.get(0));
+        Assert.assertEquals(Arrays.asList("b=1", "a=1"), listener.deliveries.get(1));
+    }
+
+    @Test
+    public void testStreamedEventsAreNotTracked() throws Exception {
+        final StringBuilder export = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            export.append("{\"preview\":false,\"offset\":").append(i)
+                  .append(i == 19999 ? ",\"lastrow\":true" : "")
+                  .append(",\"result\":{\"host\":\"h").append(i % 3)
+                  .append("\",\"count\":\"").append(i).append("\"}}\n");
+        }
+        Service service = new Service("localhost") {
+            @Override public InputStream export(String search, Map args) {
+                try {
+                    return new ByteArrayInputStream(export.toString().getBytes("UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        final RealtimeSubscription[] subscription = new RealtimeSubscription[1];
+        final int[] delivered = new int[1];
+        final int[] maxTracked = new int[1];
+        RecordingListener listener = new RecordingListener() {
+            @Override public void onEvents(List<Event> events) {
+                delivered[0] += events.size();
+                maxTracked[0] = Math.max(maxTracked[0], subscription[0].getTrackedRowCount());
+            }
+        };
+        subscription[0] = new RealtimeSubscription(service, "search index=main", null, listener);
+        subscription[0].start().join(10000);
+
+        Assert.assertNull(listener.error);
+        Assert.assertTrue(listener.finished);
+        Assert.assertEquals(20000, delivered[0]);
+        Assert.assertEquals(0, maxTracked[0]);
+    }
+
+    @Test
+    public void testCloseStopsPolling() throws Exception {
+        FakeJob job = new FakeJob(preview(true, "a=1"));
+        RecordingListener listener = new RecordingListener();
+        RealtimeSubscription subscription = new RealtimeSubscription(job, null, listener);
+        subscription.setMinimumInterval(1);
+        subscription.setMaximumInterval(1);
+        subscription.start();
+        Thread.sleep(50);
+        subscription.close();
+        subscription.join(5000);
+
+        Assert.assertFalse(listener.finished);
+        Assert.assertNull(listener.error);
+        Assert.assertEquals(1, listener.deliveries.size());
+    }
+
+    @Test
+    public void testFingerprintIgnoresSerialAndFieldOrder() {
+        Map<String, String> first = new HashMap<String, String>();
+        first.put("host", "a");
+        first.put("count", "1");
+        first.put("_serial", "0");
+        Map<String, String> second = new HashMap<String, String>();
+        second.put("_serial", "7");
+        second.put("count", "1");
+        second.put("host", "a");
+        Assert.assertEquals(RealtimeSubscription.fingerprint(first), RealtimeSubscription.fingerprint(second));
+
+        second.put("count", "2");
+        Assert.assertTrue(RealtimeSubscription.fingerprint(first) != RealtimeSubscription.fingerprint(second));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+
+public class RecordTest {
+    @Test
+    public void testTypedValuesFollowModifications() {
+        Record record = new Record();
+        record.put("count", "5");
+        record.put("size", "10MB");
+        record.put("enabled", "1");
+
+        Assert.assertEquals(5, record.getInteger("count"));
+        Assert.assertEquals(5L, record.getLong("count"));
+        Assert.assertEquals(10 * 1024 * 1024, record.getByteCount("size"));
+        Assert.assertTrue(record.getBoolean("enabled"));
+
+        record.put("count", "6");
+        record.put("enabled", "false");
+        Assert.assertEquals(6, record.getInteger("count"));
+        Assert.assertFalse(record.getBoolean("enabled"));
+
+        record.remove("count");
+        Assert.assertEquals(7, record.getInteger("count", 7));
+    }
+
+    @Test
+    public void testDatesAreCopies() {
+        Record record = new Record();
+        record.put("updated", "1394676787");
+
+        Date first = record.getDate("updated");
+        first.setTime(0);
+        Assert.assertEquals(1394676787000L, record.getDate("updated").getTime());
+    }
+
+    @Test
+    public void testCloneDoesNotShareParsedValues() {
+        Record record = new Record();
+        record.put("count", "5");
+        Assert.assertEquals(5, record.getInteger("count"));
+
+        Record copy = (Record)record.clone();
+        copy.put("count", "8");
+        Assert.assertEquals(8, copy.getInteger("count"));
+        Assert.assertEquals(5, record.getInteger("count"));
+    }
+
+    @Test
+    public void testAtomKeysAreShared() {
+        String key = AtomEntry.internKey(new String("maxTotalDataSizeMB"));
+        Assert.assertSame(key, AtomEntry.internKey(new String("maxTotalDataSizeMB")));
+    }
+}
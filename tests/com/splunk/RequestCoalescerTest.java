@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestCoalescerTest {
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private ExecutorService clients;
+    private final AtomicInteger hits = new AtomicInteger();
+    private HttpService service;
+
+    @Before
+    public void setUp() throws IOException {
+        // Answers slowly enough for concurrent requests to overlap.
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                int hit = hits.incrementAndGet();
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                boolean missing = exchange.getRequestURI().getPath().equals("/services/missing");
+                byte[] body = (missing ? "<response><messages><msg>Not found</msg></messages></response>"
+                        : "response " + hit).getBytes("UTF-8");
+                exchange.sendResponseHeaders(missing ? 404 : 200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        clients = Executors.newFixedThreadPool(8);
+
+        service = new HttpService("localhost", server.getAddress().getPort(), "http");
+        service.setRequestCoalescing(true);
+    }
+
+    @After
+    public void tearDown() {
+        clients.shutdownNow();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private List<Future<String>> getConcurrently(final String path, int count) {
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < count; i++) {
+            futures.add(clients.submit(new Callable<String>() {
+                public String call() {
+                    return SDKTestCase.streamToString(service.get(path).getContent());
+                }
+            }));
+        }
+        return futures;
+    }
+
+    @Test
+    public void testAccepts() {
+        Assert.assertTrue(RequestCoalescer.accepts("/services/server/info", new RequestMessage("GET")));
+        Assert.assertTrue(RequestCoalescer.accepts("/services/search/jobs/1234.5", new RequestMessage("GET")));
+        Assert.assertFalse(RequestCoalescer.accepts("/services/search/jobs/1234.5/results", new RequestMessage("GET")));
+        Assert.assertFalse(RequestCoalescer.accepts("/services/search/jobs/export", new RequestMessage("GET")));
+        Assert.assertFalse(RequestCoalescer.accepts("/services/saved/searches", new RequestMessage("POST")));
+    }
+
+    @Test
+    public void testConcurrentGetsShareOneRequest() throws Exception {
+        List<Future<String>> futures = getConcurrently("/services/server/info", 8);
+        for (Future<String> future : futures) {
+            Assert.assertEquals("response 1", future.get());
+        }
+        Assert.assertEquals(1, hits.get());
+
+        // Once it is done, the next request is sent again.
+        Assert.assertEquals("response 2", SDKTestCase.streamToString(service.get("/services/server/info").getContent()));
+        Assert.assertEquals(2, hits.get());
+    }
+
+    @Test
+    public void testErrorsAreShared() throws Exception {
+        List<Future<String>> futures = getConcurrently("/services/missing", 4);
+        for (Future<String> future : futures) {
+            try {
+                future.get();
+                Assert.fail("Expected an HttpException.");
+            } catch (ExecutionException e) {
+                Assert.assertEquals(404, ((HttpException)e.getCause()).getStatus());
+            }
+        }
+        Assert.assertEquals(1, hits.get());
+    }
+
+    @Test
+    public void testDifferentRequestsAreNotShared() throws Exception {
+        List<Future<String>> futures = getConcurrently("/services/server/info", 2);
+        futures.addAll(getConcurrently("/services/server/info?count=1", 2));
+        futures.addAll(getConcurrently("/services/search/jobs/1234.5/results", 2));
+        for (Future<String> future : futures) {
+            future.get();
+        }
+        Assert.assertEquals(4, hits.get());
+
+        service.setRequestCoalescing(false);
+        for (Future<String> future : getConcurrently("/services/server/info", 3)) {
+            future.get();
+        }
+        Assert.assertEquals(7, hits.get());
+    }
+}
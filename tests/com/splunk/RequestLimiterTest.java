@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestLimiterTest {
+    private static final String JOBS = "/servicesNS/admin/search/search/jobs";
+
+    @Test
+    public void testClassify() {
+        Assert.assertEquals(RequestLimiter.Pool.SEARCH, RequestLimiter.classify(JOBS, "POST"));
+        Assert.assertEquals(RequestLimiter.Pool.SEARCH, RequestLimiter.classify(JOBS + "/", "POST"));
+        Assert.assertEquals(RequestLimiter.Pool.MANAGEMENT, RequestLimiter.classify(JOBS, "GET"));
+        Assert.assertEquals(RequestLimiter.Pool.RESULTS,
+                RequestLimiter.classify(JOBS + "/export?search=search+*", "GET"));
+        Assert.assertEquals(RequestLimiter.Pool.RESULTS,
+                RequestLimiter.classify(JOBS + "/1234.5/results?count=0", "GET"));
+        Assert.assertEquals(RequestLimiter.Pool.RESULTS,
+                RequestLimiter.classify(JOBS + "/1234.5/results_preview", "GET"));
+        Assert.assertEquals(RequestLimiter.Pool.RESULTS, RequestLimiter.classify(JOBS + "/1234.5/events", "GET"));
+        Assert.assertEquals(RequestLimiter.Pool.MANAGEMENT,
+                RequestLimiter.classify(JOBS + "/1234.5/control", "POST"));
+        Assert.assertEquals(RequestLimiter.Pool.MANAGEMENT,
+                RequestLimiter.classify("/services/saved/searches", "GET"));
+    }
+
+    @Test
+    public void testQueueTimeoutAndLength() {
+        RequestLimiter limiter = new RequestLimiter();
+        limiter.setLimits(RequestLimiter.Pool.MANAGEMENT, 1, 1, 1);
+        limiter.setQueueTimeout(10);
+        RequestLimiter.Permit permit = limiter.acquire("/services/apps/local", "GET");
+        Assert.assertEquals(1, limiter.getInFlight(RequestLimiter.Pool.MANAGEMENT));
+
+        try {
+            limiter.acquire("/services/apps/local", "GET");
+            Assert.fail("Expected the request to time out.");
+        } catch (HttpException e) {
+            Assert.assertEquals(503, e.getStatus());
+        }
+        Assert.assertEquals(0, limiter.getQueueLength(RequestLimiter.Pool.MANAGEMENT));
+
+        // Other pools are not affected.
+        limiter.release(limiter.acquire(JOBS, "POST"), false);
+
+        limiter.setMaxQueueLength(0);
+        limiter.setQueueTimeout(60000);
+        try {
+            limiter.acquire("/services/apps/local", "GET");
+            Assert.fail("Expected the request to be refused.");
+        } catch (HttpException e) {
+            Assert.assertEquals(503, e.getStatus());
+        }
+
+        limiter.release(permit, false);
+        limiter.release(limiter.acquire("/services/apps/local", "GET"), false);
+        Assert.assertEquals(0, limiter.getInFlight(RequestLimiter.Pool.MANAGEMENT));
+    }
+
+    @Test
+    public void testIncreaseAndDecrease() throws InterruptedException {
+        RequestLimiter limiter = new RequestLimiter();
+        RequestLimiter.Pool pool = RequestLimiter.Pool.MANAGEMENT;
+        limiter.setLimits(pool, 10, 2, 12);
+
+        // Overloads at once back off once.
+        RequestLimiter.Permit first = limiter.acquire("/services/apps/local", "GET");
+        RequestLimiter.Permit second = limiter.acquire("/services/apps/local", "GET");
+        limiter.release(first, true);
+        limiter.release(second, true);
+        Assert.assertEquals(9, limiter.getLimit(pool));
+
+        // Successes at low use do not grow the limit.
+        limiter.setLatencyTolerance(1e9);
+        for (int i = 0; i < 100; i++) {
+            limiter.release(limiter.acquire("/services/apps/local", "GET"), false);
+        }
+        Assert.assertEquals(9, limiter.getLimit(pool));
+
+        // Successes at full use grow it up to its maximum.
+        for (int round = 0; round < 100; round++) {
+            List<RequestLimiter.Permit> permits = new ArrayList<RequestLimiter.Permit>();
+            for (int i = 0; i < limiter.getLimit(pool); i++) {
+                permits.add(limiter.acquire("/services/apps/local", "GET"));
+            }
+            for (RequestLimiter.Permit permit : permits) {
+                limiter.release(permit, false);
+            }
+        }
+        Assert.assertEquals(12, limiter.getLimit(pool));
+
+        // Rising round trip times back off.
+        limiter.setLatencyTolerance(2);
+        RequestLimiter.Permit slow = limiter.acquire("/services/apps/local", "GET");
+        Thread.sleep(50);
+        limiter.release(slow, false);
+        Assert.assertEquals(10, limiter.getLimit(pool));
+    }
+
+    @Test
+    public void testSendIsLimited() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                int current = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), current));
+                }
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.decrementAndGet();
+                byte[] body = "ok".getBytes("UTF-8");
+                int status = exchange.getRequestURI().getPath().equals("/busy") ? 503 : 200;
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        ExecutorService serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            final HttpService service = new HttpService("localhost", server.getAddress().getPort(), "http");
+            RequestLimiter limiter = new RequestLimiter();
+            limiter.setLimits(RequestLimiter.Pool.MANAGEMENT, 2, 1, 2);
+            service.setRequestLimiter(limiter);
+
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 40; i++) {
+                futures.add(clients.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        return service.get("/services/apps/local").getStatus();
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                Assert.assertEquals(200, (int)future.get());
+            }
+            Assert.assertEquals(2, maxInFlight.get());
+            Assert.assertEquals(0, limiter.getInFlight(RequestLimiter.Pool.MANAGEMENT));
+
+            try {
+                service.get("/busy");
+                Assert.fail("Expected an HttpException.");
+            } catch (HttpException e) {
+                Assert.assertEquals(503, e.getStatus());
+            }
+            Assert.assertEquals(1, limiter.getLimit(RequestLimiter.Pool.MANAGEMENT));
+        } finally {
+            clients.shutdownNow();
+            server.stop(0);
+            serverThreads.shutdownNow();
+        }
+    }
+}
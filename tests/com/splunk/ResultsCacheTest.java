@@ -0,0 +1,243 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class ResultsCacheTest {
+    private File directory;
+    private Service service;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("results-cache", "");
+        directory.delete();
+        service = new Service("localhost", 8089);
+        service.setToken("Splunk 0123456789abcdef");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static Args searchArgs(String query, String earliest, String latest) {
+        Args args = new Args();
+        args.put("search", query);
+        args.put("exec_mode", "oneshot");
+        if (earliest != null) args.put("earliest_time", earliest);
+        if (latest != null) args.put("latest_time", latest);
+        return args;
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        stream.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testKeyIdentifiesTheCredentials() throws IOException {
+        ResultsCache cache = new ResultsCache(directory, 1 << 20);
+        String path = JobCollection.REST_PATH;
+        String key = cache.keyFor(service, path, searchArgs("search *", "1", "2"));
+        Assert.assertFalse(key.contains("0123456789abcdef"));
+
+        Service other = new Service("localhost", 8089);
+        other.setToken("Splunk fedcba9876543210");
+        Assert.assertFalse(key.equals(cache.keyFor(other, path, searchArgs("search *", "1", "2"))));
+
+        Service anonymous = new Service("localhost", 8089);
+        Assert.assertNull(cache.keyFor(anonymous, path, searchArgs("search *", "1", "2")));
+    }
+
+    @Test
+    public void testUsernameWithoutTokenIsNotCached() throws IOException {
+        ResultsCache cache = new ResultsCache(directory, 1 << 20);
+        String path = JobCollection.REST_PATH;
+
+        ServiceArgs serviceArgs = new ServiceArgs();
+        serviceArgs.setHost("localhost");
+        serviceArgs.setUsername("admin");
+        Service unauthenticated = new Service(serviceArgs);
+        Assert.assertNull(cache.keyFor(unauthenticated, path, searchArgs("search *", "1", "2")));
+
+        Service loggedIn = new Service(serviceArgs);
+        loggedIn.setToken("Splunk 0123456789abcdef");
+        String key = cache.keyFor(loggedIn, path, searchArgs("search *", "1", "2"));
+        Assert.assertNotNull(key);
+        Assert.assertFalse(key.equals(cache.keyFor(service, path, searchArgs("search *", "1", "2"))));
+
+        loggedIn.logout();
+        Assert.assertNull(cache.keyFor(loggedIn, path, searchArgs("search *", "1", "2")));
+    }
+
+    @Test
+    public void testOnlyFixedTimeRangesAreCached() throws IOException {
+        ResultsCache cache = new ResultsCache(directory, 1 << 20);
+        String path = JobCollection.REST_PATH;
+
+        Assert.assertNotNull(cache.keyFor(service, path, searchArgs("search *", "1394668800", "1394755200")));
+        Assert.assertNotNull(cache.keyFor(service, path,
+                searchArgs("search *", "2014-03-13T00:00:00.000-07:00", "03/14/2014:00:00:00")));
+        Assert.assertNull(cache.keyFor(service, path, searchArgs("search *", null, null)));
+        Assert.assertNull(cache.keyFor(service, path, searchArgs("search *", "-24h", "now")));
+        Assert.assertNull(cache.keyFor(service, path, searchArgs("search *", "1394668800", "now")));
+        Assert.assertNull(cache.keyFor(service, path, searchArgs("search *", "rt-5m", "rt")));
+        Assert.assertNull(cache.keyFor(service, path, searchArgs("search *", "@d", "1394755200")));
+        Assert.assertNull(cache.keyFor(service, path,
+                searchArgs("search * earliest=-1h", "1394668800", "1394755200")));
+    }
+
+    @Test
+    public void testKeysIgnoreWhitespaceOutsideQuotes() throws IOException {
+        ResultsCache cache = new ResultsCache(directory, 1 << 20);
+        String path = JobCollection.REST_PATH;
+        String key = cache.keyFor(service, path, searchArgs("search  index=main \"a  b\"", "1", "2"));
+        Service otherHost = new Service("otherhost", 8089);
+        otherHost.setToken(service.getToken());
+
+        Assert.assertEquals(key, cache.keyFor(service, path, searchArgs(" search index=main\n\"a  b\" ", "1", "2")));
+        Assert.assertFalse(key.equals(cache.keyFor(service, path, searchArgs("search index=main \"a b\"", "1", "2"))));
+        Assert.assertFalse(key.equals(cache.keyFor(otherHost, path,
+                searchArgs("search index=main \"a  b\"", "1", "2"))));
+    }
+
+    @Test
+    public void testStoredResponseReplaysThroughReader() throws IOException {
+        ResultsCache cache = new ResultsCache(directory, 1 << 20);
+        String key = cache.keyFor(service, JobCollection.REST_PATH, searchArgs("search *", "1", "2"));
+        byte[] response = readAll(SDKTestCase.openResource("results.xml"));
+
+        Assert.assertNull(cache.get(key));
+        byte[] passedThrough = readAll(cache.put(key, new ByteArrayInputStream(response)));
+        Assert.assertArrayEquals(response, passedThrough);
+        Assert.assertEquals(1, cache.getCount());
+
+        ResultsReaderXml live = new ResultsReaderXml(new ByteArrayInputStream(response));
+        ResultsReaderXml cached = new ResultsReaderXml(cache.get(key));
+        Event event;
+        int count = 0;
+        while ((event = live.getNextEvent()) != null) {
+            Assert.assertEquals(event, cached.getNextEvent());
+            count++;
+        }
+        Assert.assertNull(cached.getNextEvent());
+        Assert.assertTrue(count > 0);
+
+        // Entries survive reopening the cache.
+        Assert.assertArrayEquals(response, readAll(new ResultsCache(directory, 1 << 20).get(key)));
+    }
+
+    @Test
+    public void testClosingReadsTheRestOfTheResponse() throws IOException {
+        ResultsCache cache = new ResultsCache(directory, 1 << 20);
+        String key = cache.keyFor(service, JobCollection.REST_PATH, searchArgs("search *", "1", "2"));
+
+        InputStream stream = cache.put(key, new ByteArrayInputStream(new byte[5000]));
+        stream.read(new byte[100]);
+        stream.close();
+
+        Assert.assertEquals(5000, readAll(cache.get(key)).length);
+        Assert.assertEquals(1, cache.getCount());
+    }
+
+    @Test
+    public void testResponsesClosedByReadersAreStored() throws IOException {
+        ResultsCache cache = new ResultsCache(directory, 1 << 20);
+        String[] fixtures = {"results5.json", "resultsPreview.xml", "resultsExport.xml",
+                "data/results/4.3.5/results-preview.xml", "results.xml"};
+        for (int i = 0; i < fixtures.length; i++) {
+            String key = cache.keyFor(service, JobCollection.REST_PATH, searchArgs("search " + i, "1", "2"));
+            byte[] response = readAll(SDKTestCase.openResource(fixtures[i]));
+            InputStream stream = cache.put(key, new ByteArrayInputStream(response));
+            ResultsReader reader = fixtures[i].endsWith(".json")
+                    ? new ResultsReaderJson(stream)
+                    : new ResultsReaderXml(stream);
+            while (reader.getNextEvent() != null) {
+                // Read every result.
+            }
+            reader.close();
+
+            InputStream cached = cache.get(key);
+            Assert.assertNotNull(fixtures[i], cached);
+            Assert.assertArrayEquals(fixtures[i], response, readAll(cached));
+        }
+    }
+
+    @Test
+    public void testClosedResponseLargerThanTheCacheIsNotStored() throws IOException {
+        ResultsCache cache = new ResultsCache(directory, 3000);
+        String key = cache.keyFor(service, JobCollection.REST_PATH, searchArgs("search *", "1", "2"));
+
+        InputStream stream = cache.put(key, new ByteArrayInputStream(new byte[5000]));
+        stream.read(new byte[100]);
+        stream.close();
+
+        Assert.assertNull(cache.get(key));
+        Assert.assertEquals(0, cache.getCount());
+        Assert.assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResponsesAreEvicted() throws IOException {
+        ResultsCache cache = new ResultsCache(directory, 3800);
+        String[] keys = new String[4];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = cache.keyFor(service, JobCollection.REST_PATH, searchArgs("search " + i, "1", "2"));
+        }
+
+        readAll(cache.put(keys[0], new ByteArrayInputStream(new byte[1000])));
+        readAll(cache.put(keys[1], new ByteArrayInputStream(new byte[1000])));
+        readAll(cache.put(keys[2], new ByteArrayInputStream(new byte[1000])));
+        Assert.assertNotNull(cache.get(keys[0]));
+        readAll(cache.put(keys[3], new ByteArrayInputStream(new byte[1000])));
+
+        Assert.assertEquals(3, cache.getCount());
+        Assert.assertTrue(cache.getSize() <= 3800);
+        Assert.assertNotNull(cache.get(keys[0]));
+        Assert.assertNull(cache.get(keys[1]));
+        Assert.assertNotNull(cache.get(keys[2]));
+        Assert.assertNotNull(cache.get(keys[3]));
+
+        // A response larger than the whole cache is passed through but not stored.
+        String big = cache.keyFor(service, JobCollection.REST_PATH, searchArgs("search big", "1", "2"));
+        Assert.assertEquals(5000, readAll(cache.put(big, new ByteArrayInputStream(new byte[5000]))).length);
+        Assert.assertNull(cache.get(big));
+        Assert.assertEquals(3, cache.getCount());
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResultsPublisherTest {
+    private static final Executor INLINE = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * A stream that counts the bytes read from it and whether it was closed.
+     */
+    private static class TrackingStream extends ByteArrayInputStream {
+        final int length;
+        int bytesRead = 0;
+        volatile boolean closed = false;
+
+        TrackingStream(byte[] bytes) {
+            super(bytes);
+            this.length = bytes.length;
+        }
+
+        @Override public synchronized int read(byte[] b, int off, int len) {
+            int n = super.read(b, off, len);
+            if (n > 0) bytesRead += n;
+            return n;
+        }
+
+        @Override public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    /**
+     * A finished job whose results are generated locally.
+     */
+    private static class FakeJob extends Job {
+        final int resultCount;
+        final List<TrackingStream> streams = new ArrayList<TrackingStream>();
+
+        FakeJob(int resultCount) {
+            super(new Service("localhost"), "search/jobs/fake");
+            this.resultCount = resultCount;
+        }
+
+        @Override public synchronized InputStream getResults(Map args) {
+            Assert.assertEquals("json", args.get("output_mode"));
+            StringBuilder json = new StringBuilder("{\"preview\":false,\"init_offset\":0,\"results\":[");
+            for (int i = 0; i < resultCount; i++) {
+                if (i > 0) json.append(",");
+                json.append("{\"n\":\"").append(i).append("\",\"padding\":\"")
+                    .append("0123456789012345678901234567890123456789").append("\"}");
+            }
+            json.append("]}");
+            try {
+                TrackingStream stream = new TrackingStream(json.toString().getBytes("UTF-8"));
+                streams.add(stream);
+                return stream;
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Records the signals it receives, and checks that they never overlap.
+     */
+    private static class RecordingSubscriber implements ResultsPublisher.Subscriber<Event> {
+        final long initialRequest;
+        final List<Event> events = new ArrayList<Event>();
+        final AtomicBoolean inSignal = new AtomicBoolean();
+        final CountDownLatch finished = new CountDownLatch(1);
+        ResultsPublisher.Subscription subscription;
+        volatile boolean completed = false;
+        volatile Throwable error = null;
+        volatile boolean overlapped = false;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        private void enter() {
+            if (!inSignal.compareAndSet(false, true)) overlapped = true;
+        }
+
+        private void exit() {
+            inSignal.set(false);
+        }
+
+        public void onSubscribe(ResultsPublisher.Subscription subscription) {
+            enter();
+            this.subscription = subscription;
+            if (initialRequest > 0) subscription.request(initialRequest);
+            exit();
+        }
+
+        public void onNext(Event event) {
+            enter();
+            events.add(event);
+            handle(event);
+            exit();
+        }
+
+        void handle(Event event) { }
+
+        public void onError(Throwable error) {
+            this.error = error;
+            finished.countDown();
+        }
+
+        public void onComplete() {
+            completed = true;
+            finished.countDown();
+        }
+    }
+
+    private static ResultsPublisher publisher(FakeJob job, Executor executor) {
+        ResultsPublisher publisher = job.getResultsPublisher(null);
+        publisher.setExecutor(executor);
+        return publisher;
+    }
+
+    @Test
+    public void testReadsOnlyWhatIsRequested() {
+        FakeJob job = new FakeJob(10000);
+        RecordingSubscriber subscriber = new RecordingSubscriber(3);
+        publisher(job, INLINE).subscribe(subscriber);
+
+        Assert.assertEquals(3, subscriber.events.size());
+        Assert.assertEquals("2", subscriber.events.get(2).get("n"));
+        TrackingStream stream = job.streams.get(0);
+        Assert.assertTrue(stream.bytesRead < stream.length / 10);
+        Assert.assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(2);
+        Assert.assertEquals(5, subscriber.events.size());
+        Assert.assertEquals("4", subscriber.events.get(4).get("n"));
+    }
+
+    @Test
+    public void testNothingIsOpenedWithoutDemand() {
+        FakeJob job = new FakeJob(10);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher(job, INLINE).subscribe(subscriber);
+        Assert.assertTrue(job.streams.isEmpty());
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Assert.assertEquals(10, subscriber.events.size());
+        Assert.assertTrue(subscriber.completed);
+        Assert.assertTrue(job.streams.get(0).closed);
+    }
+
+    @Test
+    public void testRequestFromOnNextDoesNotRecurse() {
+        FakeJob job = new FakeJob(2000);
+        final AtomicInteger minDepth = new AtomicInteger(Integer.MAX_VALUE);
+        final AtomicInteger maxDepth = new AtomicInteger(0);
+        RecordingSubscriber subscriber = new RecordingSubscriber(1) {
+            @Override void handle(Event event) {
+                int depth = new Throwable().getStackTrace().length;
+                minDepth.set(Math.min(minDepth.get(), depth));
+                maxDepth.set(Math.max(maxDepth.get(), depth));
+                subscription.request(1);
+            }
+        };
+        publisher(job, INLINE).subscribe(subscriber);
+
+        Assert.assertEquals(2000, subscriber.events.size());
+        Assert.assertTrue(subscriber.completed);
+        Assert.assertEquals(minDepth.get(), maxDepth.get());
+    }
+
+    @Test
+    public void testCancelClosesStream() {
+        FakeJob job = new FakeJob(100);
+        RecordingSubscriber subscriber = new RecordingSubscriber(50) {
+            @Override void handle(Event event) {
+                if (events.size() == 10) subscription.cancel();
+            }
+        };
+        publisher(job, INLINE).subscribe(subscriber);
+
+        Assert.assertEquals(10, subscriber.events.size());
+        Assert.assertTrue(job.streams.get(0).closed);
+        Assert.assertFalse(subscriber.completed);
+        Assert.assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testInvalidRequestFails() {
+        FakeJob job = new FakeJob(100);
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        publisher(job, INLINE).subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        Assert.assertTrue(subscriber.error instanceof IllegalArgumentException);
+        Assert.assertTrue(job.streams.get(0).closed);
+        subscriber.subscription.request(5);
+        Assert.assertEquals(1, subscriber.events.size());
+    }
+
+    @Test
+    public void testErrorOpeningStreamIsSignalled() {
+        Job job = new FakeJob(1) {
+            @Override public synchronized InputStream getResults(Map args) {
+                throw new HttpException(500, "Internal error", "");
+            }
+        };
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        job.getResultsPublisher(null).subscribe(subscriber);
+        try {
+            Assert.assertTrue(subscriber.finished.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        Assert.assertTrue(subscriber.error instanceof HttpException);
+    }
+
+    @Test
+    public void testManySubscriptionsShareFewThreads() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            FakeJob job = new FakeJob(1000);
+            ResultsPublisher publisher = publisher(job, pool);
+            List<RecordingSubscriber> subscribers = new ArrayList<RecordingSubscriber>();
+            for (int i = 0; i < 50; i++) {
+                RecordingSubscriber subscriber = new RecordingSubscriber(i % 2 == 0 ? Long.MAX_VALUE : 7) {
+                    @Override void handle(Event event) {
+                        if (initialRequest != Long.MAX_VALUE && events.size() % 7 == 0) {
+                            subscription.request(7);
+                        }
+                    }
+                };
+                subscribers.add(subscriber);
+                publisher.subscribe(subscriber);
+            }
+            for (RecordingSubscriber subscriber : subscribers) {
+                Assert.assertTrue(subscriber.finished.await(30, TimeUnit.SECONDS));
+                Assert.assertTrue(subscriber.completed);
+                Assert.assertFalse(subscriber.overlapped);
+                Assert.assertEquals(1000, subscriber.events.size());
+                for (int i = 0; i < 1000; i++) {
+                    Assert.assertEquals(Integer.toString(i), subscriber.events.get(i).get("n"));
+                }
+            }
+            Assert.assertEquals(50, job.streams.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Tests the CSV dialect read by {@link ResultsReaderCsv}.
+ */
+public class ResultsReaderCsvTest {
+    private static InputStream stream(String csv) throws IOException {
+        return new ByteArrayInputStream(csv.getBytes("UTF-8"));
+    }
+
+    private static String[][] tokenize(String csv, int bufferSize) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(stream(csv), bufferSize);
+        String[][] records = new String[10][];
+        int count = 0;
+        String[] record;
+        while ((record = tokenizer.readRecord()) != null) {
+            records[count++] = record;
+        }
+        return Arrays.copyOf(records, count);
+    }
+
+    @Test
+    public void testTokenizer() throws IOException {
+        String csv = "a,\"b,\"\"c\"\"\",\r\n\n\"multi\nline\",é中\"x\ny\"";
+        String[][] expected = {
+                {"a", "b,\"c\"", ""},
+                {},
+                {"multi\nline", "é中\"x"},
+                {"y\""}
+        };
+        // Every buffer size splits the fields at a different place.
+        for (int bufferSize = 1; bufferSize < csv.length() + 2; bufferSize++) {
+            String[][] records = tokenize(csv, bufferSize);
+            Assert.assertEquals(expected.length, records.length);
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertArrayEquals("Buffer size " + bufferSize, expected[i], records[i]);
+            }
+        }
+        Assert.assertArrayEquals(new String[] {"a", "b\\"},
+                tokenize("a,\"b\\\"\n", 4)[0]);
+    }
+
+    @Test
+    public void testSkippedFieldsAreNotDecoded() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(stream("a,b,c,d\n1,2,3,4\n"), 2);
+        String[] values = new String[3];
+        boolean[] wanted = {true, false, true};
+        Assert.assertEquals(4, tokenizer.readRecord(values, wanted));
+        Assert.assertArrayEquals(new String[] {"a", null, "c"}, values);
+        Assert.assertEquals(4, tokenizer.readRecord(values, wanted));
+        Assert.assertArrayEquals(new String[] {"1", null, "3"}, values);
+        Assert.assertEquals(-1, tokenizer.readRecord(values, wanted));
+    }
+
+    @Test
+    public void testReadsResultsFiles() throws IOException {
+        ResultsReaderCsv reader = new ResultsReaderCsv(SDKTestCase.openResource("results.csv"));
+        Assert.assertEquals(Arrays.asList("sum(kb)", "series"), reader.getFields());
+        Event event = reader.getNextEvent();
+        Assert.assertEquals("14372242.758775", event.get("sum(kb)"));
+        Assert.assertEquals("twitter", event.get("series"));
+        Assert.assertNotNull(reader.getNextEvent());
+        Assert.assertEquals("splunkd_access", reader.getNextEvent().get("series"));
+        Assert.assertNull(reader.getNextEvent());
+        reader.close();
+
+        for (String file : new String[] {"resultsMV.csv", "resultsMVOneshot.csv"}) {
+            reader = new ResultsReaderCsv(SDKTestCase.openResource(file));
+            event = reader.getNextEvent();
+            String[] si = event.getArray("_si", "\n");
+            Assert.assertEquals(2, si.length);
+            Assert.assertEquals("_internal", si[1]);
+            Assert.assertEquals("_internal", event.get("index"));
+            Assert.assertNull(reader.getNextEvent());
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testMultivalueColumns() throws IOException {
+        String csv = "host,\"__mv_host\",count,\"__mv_other\"\n" +
+                "\"a\nb$\",\"$a$;$b$$$\",3,x\n" +
+                "c,,4,y\n";
+        ResultsReaderCsv reader = new ResultsReaderCsv(stream(csv));
+        Assert.assertEquals(Arrays.asList("host", "__mv_host", "count", "__mv_other"), reader.getFields());
+
+        Event event = reader.getNextEvent();
+        Assert.assertArrayEquals(new String[] {"a", "b$"}, event.getArray("host", ","));
+        Assert.assertEquals("a\nb$", event.get("host"));
+        Assert.assertEquals("3", event.get("count"));
+        Assert.assertEquals("x", event.get("__mv_other"));
+        Assert.assertEquals("$a$;$b$$$", event.get("__mv_host"));
+
+        event = reader.getNextEvent();
+        Assert.assertArrayEquals(new String[] {"c"}, event.getArray("host", ","));
+        Assert.assertNull(reader.getNextEvent());
+    }
+
+    @Test
+    public void testReuseEvents() throws IOException {
+        ResultsReaderCsv reader = new ResultsReaderCsv(stream("a,b\n1,2\n3,\"4\n5\"\n"));
+        reader.setReuseEvents(true);
+        Event first = reader.getNextEvent();
+        Assert.assertEquals("1", first.get("a"));
+        Event second = reader.getNextEvent();
+        Assert.assertSame(first, second);
+        Assert.assertEquals("3", second.get("a"));
+        Assert.assertArrayEquals(new String[] {"4", "5"}, second.getArray("b", "\n"));
+        Assert.assertNull(reader.getNextEvent());
+    }
+}
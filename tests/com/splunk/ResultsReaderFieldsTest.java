@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests reading a subset of the fields of each result.
+ */
+public class ResultsReaderFieldsTest {
+    private static final List<String> FIELDS = Arrays.asList("_time", "host", "_si", "not_a_field");
+
+    private static void assertProjected(ResultsReader all, ResultsReader projected) throws IOException {
+        int count = 0;
+        Event full;
+        while ((full = all.getNextEvent()) != null) {
+            Event event = projected.getNextEvent();
+            Assert.assertNotNull(event);
+            List<String> expectedKeys = new ArrayList<String>(FIELDS);
+            expectedKeys.retainAll(full.keySet());
+            Assert.assertEquals(expectedKeys.size(), event.size());
+            for (String key : expectedKeys) {
+                Assert.assertArrayEquals(full.getArray(key), event.getArray(key));
+            }
+            Assert.assertFalse(event.containsKey("_raw"));
+            count++;
+        }
+        Assert.assertNull(projected.getNextEvent());
+        Assert.assertTrue(count > 0);
+        all.close();
+        projected.close();
+    }
+
+    @Test
+    public void testXml() throws IOException {
+        assertProjected(
+                new ResultsReaderXml(SDKTestCase.openResource("resultsMV.xml")),
+                new ResultsReaderXml(SDKTestCase.openResource("resultsMV.xml"), FIELDS));
+
+        ResultsReaderXml reader = new ResultsReaderXml(SDKTestCase.openResource("resultsMV.xml"), FIELDS);
+        try {
+            reader.getNextEvent().getSegmentedRaw();
+            Assert.fail("Expected no segmented _raw when _raw is not read.");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        assertProjected(
+                new ResultsReaderJson(SDKTestCase.openResource("resultsMV5.json")),
+                new ResultsReaderJson(SDKTestCase.openResource("resultsMV5.json"), FIELDS));
+        assertProjected(
+                new ResultsReaderJson(SDKTestCase.openResource("resultsMV4.json")),
+                new ResultsReaderJson(SDKTestCase.openResource("resultsMV4.json"), FIELDS));
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        assertProjected(
+                new ResultsReaderCsv(SDKTestCase.openResource("resultsMV.csv")),
+                new ResultsReaderCsv(SDKTestCase.openResource("resultsMV.csv"), FIELDS));
+    }
+
+    @Test
+    public void testNullReadsAllFields() throws IOException {
+        ResultsReaderJson all = new ResultsReaderJson(SDKTestCase.openResource("resultsMV5.json"));
+        ResultsReaderJson unfiltered = new ResultsReaderJson(SDKTestCase.openResource("resultsMV5.json"), null);
+        Assert.assertEquals(all.getNextEvent(), unfiltered.getNextEvent());
+    }
+}
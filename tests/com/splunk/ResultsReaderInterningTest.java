@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests sharing repeated field values between the events of a reader.
+ */
+public class ResultsReaderInterningTest {
+    private static final int EVENTS = 20;
+
+    private static String host(int i) {
+        return "host" + (i % 2);
+    }
+
+    private static String time(int i) {
+        return "2014-03-13T00:00:" + (10 + i) + ".000-07:00";
+    }
+
+    private static InputStream xml() throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<results preview='0'>\n");
+        xml.append("<meta><fieldOrder><field>_time</field><field>host</field></fieldOrder></meta>\n");
+        for (int i = 0; i < EVENTS; i++) {
+            xml.append("<result offset='").append(i).append("'>")
+               .append("<field k='_time'><value><text>").append(time(i)).append("</text></value></field>")
+               .append("<field k='host'><value><text>").append(host(i)).append("</text></value></field>")
+               .append("</result>\n");
+        }
+        return new ByteArrayInputStream(xml.append("</results>\n").toString().getBytes("UTF-8"));
+    }
+
+    private static InputStream json() throws IOException {
+        StringBuilder json = new StringBuilder("{\"preview\":false,\"init_offset\":0,\"results\":[");
+        for (int i = 0; i < EVENTS; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"_time\":\"").append(time(i)).append("\",\"host\":\"").append(host(i)).append("\"}");
+        }
+        return new ByteArrayInputStream(json.append("]}").toString().getBytes("UTF-8"));
+    }
+
+    private static InputStream csv() throws IOException {
+        StringBuilder csv = new StringBuilder("\"_time\",\"host\"\n");
+        for (int i = 0; i < EVENTS; i++) {
+            csv.append('"').append(time(i)).append("\",\"").append(host(i)).append("\"\n");
+        }
+        return new ByteArrayInputStream(csv.toString().getBytes("UTF-8"));
+    }
+
+    private static List<Event> readAll(ResultsReader reader) throws IOException {
+        List<Event> events = new ArrayList<Event>();
+        for (Event event : reader) {
+            events.add(event);
+        }
+        reader.close();
+        return events;
+    }
+
+    private static void assertInterned(ResultsReader plain, ResultsReader interning) throws IOException {
+        interning.setValueInterning(4);
+        List<Event> expected = readAll(plain);
+        List<Event> events = readAll(interning);
+
+        Assert.assertEquals(EVENTS, events.size());
+        Assert.assertEquals(expected, events);
+        for (int i = 2; i < EVENTS; i++) {
+            Assert.assertSame(events.get(i % 2).get("host"), events.get(i).get("host"));
+            Assert.assertSame(events.get(i % 2).getArray("host")[0], events.get(i).getArray("host")[0]);
+            Assert.assertNotSame(expected.get(i % 2).get("host"), expected.get(i).get("host"));
+        }
+    }
+
+    @Test
+    public void testXml() throws IOException {
+        assertInterned(new ResultsReaderXml(xml()), new ResultsReaderXml(xml()));
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        assertInterned(new ResultsReaderJson(json()), new ResultsReaderJson(json()));
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        assertInterned(new ResultsReaderCsv(csv()), new ResultsReaderCsv(csv()));
+    }
+
+    @Test
+    public void testHighCardinalityFieldsStopBeingInterned() {
+        ValueInterner interner = new ValueInterner(4);
+        for (int i = 0; i < EVENTS; i++) {
+            interner.intern("_time", time(i));
+            interner.intern("host", host(i));
+        }
+        Assert.assertFalse(interner.isInterning("_time"));
+        Assert.assertTrue(interner.isInterning("host"));
+
+        String value = new String(time(0));
+        Assert.assertSame(value, interner.intern("_time", value));
+        Assert.assertNotSame(value, interner.intern("host", new String(host(0))));
+    }
+
+    @Test
+    public void testFieldCountIsBounded() {
+        ValueInterner interner = new ValueInterner(4);
+        for (int i = 0; i < ValueInterner.MAX_FIELDS; i++) {
+            interner.intern("field" + i, "value");
+        }
+        Assert.assertTrue(interner.isInterning("field0"));
+        Assert.assertFalse(interner.isInterning("one_too_many"));
+        String value = new String("value");
+        Assert.assertSame(value, interner.intern("one_too_many", value));
+    }
+}
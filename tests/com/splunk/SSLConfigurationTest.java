@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class SSLConfigurationTest {
+    private static final char[] PASSWORD = "changeme".toCharArray();
+
+    private KeyStore keyStore;
+    private HttpsServer server;
+    private ExecutorService serverThreads;
+    private SSLConfiguration ssl;
+    private HttpService service;
+
+    @Before
+    public void setUp() throws Exception {
+        keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(SDKTestCase.openResource("data/tls/localhost.p12"), PASSWORD);
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+
+        // Closes every connection, so that each request does a handshake.
+        server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(context));
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "ok".getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Connection", "close");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+
+        ssl = new SSLConfiguration();
+        service = new HttpService("localhost", server.getAddress().getPort(), "https");
+        service.setSSLConfiguration(ssl);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private void get(int count) {
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals("ok", SDKTestCase.streamToString(service.get("/services/server/info").getContent()));
+        }
+    }
+
+    // Handshakes are counted on another thread once they complete.
+    private void awaitHandshakes(long count) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (ssl.getFullHandshakeCount() + ssl.getResumedHandshakeCount() >= count) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        Assert.fail("Expected " + count + " handshakes.");
+    }
+
+    @Test
+    public void testReconnectsResumeTheSession() throws Exception {
+        get(5);
+        awaitHandshakes(5);
+        Assert.assertEquals(1, ssl.getFullHandshakeCount());
+        Assert.assertEquals(4, ssl.getResumedHandshakeCount());
+    }
+
+    @Test
+    public void testTls12SessionsAreResumed() throws Exception {
+        ssl.setProtocols(SSLSecurityProtocol.TLSv1_2);
+        get(3);
+        awaitHandshakes(3);
+        Assert.assertEquals(1, ssl.getFullHandshakeCount());
+        Assert.assertEquals(2, ssl.getResumedHandshakeCount());
+    }
+
+    @Test
+    public void testChangingASettingEmptiesTheCache() throws Exception {
+        get(2);
+        awaitHandshakes(2);
+        ssl.setSessionTimeout(600);
+        Assert.assertEquals(600, ssl.getSessionTimeout());
+        get(2);
+        awaitHandshakes(4);
+        Assert.assertEquals(2, ssl.getFullHandshakeCount());
+        Assert.assertEquals(2, ssl.getResumedHandshakeCount());
+    }
+
+    // Trusts the server's certificate, which is issued to CN=localhost.
+    private void trustServerCertificate() throws Exception {
+        KeyStore trusted = KeyStore.getInstance(KeyStore.getDefaultType());
+        trusted.load(null, null);
+        trusted.setCertificateEntry("localhost", keyStore.getCertificate("stub"));
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(trusted);
+        ssl.setTrustManagers(trustManagers.getTrustManagers());
+    }
+
+    @Test
+    public void testTrustedCertificateForTheHostIsAccepted() throws Exception {
+        trustServerCertificate();
+        Assert.assertTrue(ssl.isHostnameVerified());
+        get(1);
+    }
+
+    @Test
+    public void testTrustedCertificateForAnotherHostIsRejected() throws Exception {
+        trustServerCertificate();
+        // The certificate names localhost, not 127.0.0.1.
+        service = new HttpService("127.0.0.1", server.getAddress().getPort(), "https");
+        service.setSSLConfiguration(ssl);
+        try {
+            get(1);
+            Assert.fail("Expected the certificate to be rejected for 127.0.0.1.");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof SSLException);
+        }
+
+        SSLSocket socket = (SSLSocket)service.open();
+        try {
+            socket.startHandshake();
+            Assert.fail("Expected the certificate to be rejected for 127.0.0.1.");
+        } catch (SSLException e) {
+            // Expected.
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testTrustAllAcceptsAnyHost() {
+        Assert.assertFalse(ssl.isHostnameVerified());
+        service = new HttpService("127.0.0.1", server.getAddress().getPort(), "https");
+        service.setSSLConfiguration(ssl);
+        get(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCacheSizeIsRejected() {
+        ssl.setSessionCacheSize(-1);
+    }
+}
@@ -26,7 +26,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class SearchJobTest extends SDKTestCase {
     private static final String QUERY = "search index=_internal | head 10";
@@ -71,6 +73,34 @@ public class SearchJobTest extends SDKTestCase {
         job.cancel();
     }
     
+    @Test
+    public void testParallelResultsFetcher() throws IOException {
+        Job job = jobs.create("search index=_internal | head 205 | streamstats count as n");
+        waitUntilDone(job);
+
+        ParallelResultsFetcher fetcher = new ParallelResultsFetcher(job, 20);
+        fetcher.setConcurrency(3);
+        fetcher.setWindow(4);
+        int expected = 1;
+        for (Event event : fetcher) {
+            Assert.assertEquals(expected++, Integer.parseInt(event.get("n")));
+        }
+        Assert.assertEquals(206, expected);
+
+        ParallelResultsFetcher unordered = new ParallelResultsFetcher(job, 20);
+        unordered.setOrdered(false);
+        JobResultsArgs args = new JobResultsArgs();
+        args.setOutputMode(JobResultsArgs.OutputMode.XML);
+        unordered.setArgs(args);
+        Set<String> seen = new HashSet<String>();
+        for (Event event : unordered) {
+            seen.add(event.get("n"));
+        }
+        Assert.assertEquals(205, seen.size());
+
+        job.cancel();
+    }
+
     @Test
     public void testGetJobBySid() {
 
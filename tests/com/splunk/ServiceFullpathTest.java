@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ServiceFullpathTest {
+    private static Args namespace(String... keysAndValues) {
+        Args namespace = new Args();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            namespace.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return namespace;
+    }
+
+    private static Service service(String owner, String app) {
+        ServiceArgs args = new ServiceArgs();
+        if (owner != null) {
+            args.setOwner(owner);
+        }
+        if (app != null) {
+            args.setApp(app);
+        }
+        return new Service(args);
+    }
+
+    @Test
+    public void testPrefixesAreReusedForEqualNamespaces() {
+        Service service = service(null, null);
+        Assert.assertEquals("/services/saved/searches", service.fullpath("saved/searches", null));
+        Assert.assertEquals("/services/data/indexes", service.fullpath("/services/data/indexes", null));
+
+        String first = service.namespacePrefix(namespace("owner", "bill@some domain", "app", "my app"));
+        String second = service.namespacePrefix(namespace("owner", "bill@some domain", "app", "my app"));
+        Assert.assertEquals("/servicesNS/bill%40some+domain/my+app/", first);
+        Assert.assertSame(first, second);
+        Assert.assertEquals("/servicesNS/bill%40some+domain/my+app/saved/searches",
+                service.fullpath("saved/searches", namespace("owner", "bill@some domain", "app", "my app")));
+    }
+
+    @Test
+    public void testSharingIsPartOfTheNamespace() {
+        Service service = service(null, null);
+        Assert.assertEquals("/servicesNS/Bob/search/",
+                service.fullpath("", namespace("owner", "Bob", "app", "search")));
+        Assert.assertEquals("/servicesNS/nobody/search/",
+                service.fullpath("", namespace("owner", "Bob", "app", "search", "sharing", "app")));
+        Assert.assertEquals("/servicesNS/nobody/system/",
+                service.fullpath("", namespace("owner", "Bob", "app", "search", "sharing", "system")));
+        Assert.assertEquals("/servicesNS/Bob/search/",
+                service.fullpath("", namespace("owner", "Bob", "app", "search", "sharing", "user")));
+    }
+
+    @Test
+    public void testServiceContextIsNotEncoded() {
+        // As before, only the owner and app of a namespace are URL encoded.
+        Service service = service("admin user", "my app");
+        Assert.assertEquals("/servicesNS/admin user/my app/saved/searches", service.fullpath("saved/searches"));
+        Assert.assertEquals("/servicesNS/admin+user/my+app/",
+                service.fullpath("", namespace("owner", "admin user", "app", "my app")));
+        Assert.assertEquals("/servicesNS/admin user/search/",
+                service.fullpath("", namespace("app", "search")));
+        Assert.assertEquals("/servicesNS/admin user/my app/", service.fullpath("", null));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Splunk, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"): you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.splunk.modularinput;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test that AsyncEventWriter writes every event it accepts, even when writers race with shutdown.
+ */
+public class AsyncEventWriterTest extends ModularInputTestCase {
+    private static Event event(String data) {
+        Event event = new Event();
+        event.setStanza("foobar://aaa");
+        event.setData(data);
+        return event;
+    }
+
+    private static int count(String text, String of) {
+        int count = 0;
+        for (int i = text.indexOf(of); i >= 0; i = text.indexOf(of, i + of.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testEventsRacingShutdownAreWrittenOrRejected() throws Exception {
+        StringWriter output = new StringWriter();
+        final AsyncEventWriter writer = new AsyncEventWriter(new EventWriter(output, new StringWriter()), 4);
+        final AtomicInteger accepted = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(8);
+
+        Thread[] producers = new Thread[8];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread(new Runnable() {
+                public void run() {
+                    started.countDown();
+                    try {
+                        while (true) {
+                            writer.writeEvent(event("hello"));
+                            accepted.incrementAndGet();
+                        }
+                    } catch (IllegalStateException e) {
+                        // Shut down.
+                    } catch (MalformedDataException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            producers[i].start();
+        }
+
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        writer.shutdown();
+        for (Thread producer : producers) {
+            producer.join(10000);
+            Assert.assertFalse(producer.isAlive());
+        }
+
+        Assert.assertTrue(accepted.get() > 0);
+        Assert.assertEquals(accepted.get(), count(output.toString(), "<data>hello</data>"));
+    }
+
+    @Test
+    public void testShutdownRejectsWritersWaitingForRoom() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // Blocks the background thread so the queue stays full.
+        EventWriter slow = new EventWriter(new StringWriter(), new StringWriter()) {
+            @Override
+            public void synchronizedWriteEvent(Event event) throws MalformedDataException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.synchronizedWriteEvent(event);
+            }
+        };
+        final AsyncEventWriter writer = new AsyncEventWriter(slow, 1);
+        writer.writeEvent(event("taken"));
+        Assert.assertTrue(writing.await(10, TimeUnit.SECONDS));
+        writer.writeEvent(event("queued"));
+
+        final AtomicInteger rejected = new AtomicInteger();
+        Thread blocked = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    writer.writeEvent(event("waiting"));
+                } catch (IllegalStateException e) {
+                    rejected.incrementAndGet();
+                } catch (MalformedDataException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        blocked.start();
+        Thread.sleep(50);
+
+        Thread stopper = new Thread(new Runnable() {
+            public void run() {
+                writer.shutdown();
+            }
+        });
+        stopper.start();
+        blocked.join(10000);
+        Assert.assertFalse(blocked.isAlive());
+        Assert.assertEquals(1, rejected.get());
+
+        release.countDown();
+        stopper.join(10000);
+        Assert.assertFalse(stopper.isAlive());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWritesAfterShutdownAreRejected() throws XMLStreamException, MalformedDataException {
+        AsyncEventWriter writer = new AsyncEventWriter(new EventWriter(new StringWriter(), new StringWriter()), 4);
+        writer.shutdown();
+        writer.shutdown();
+        writer.writeEvent(event("late"));
+    }
+}
@@ -0,0 +1,201 @@
+package com.splunk.modularinput;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Test the append-only checkpoint store used by modular inputs.
+ */
+public class CheckpointStoreTest {
+    File checkpointDir;
+
+    @Before
+    public void setUp() throws IOException {
+        checkpointDir = File.createTempFile("checkpoints", "");
+        Assert.assertTrue(checkpointDir.delete());
+        Assert.assertTrue(checkpointDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = checkpointDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        checkpointDir.delete();
+    }
+
+    @Test
+    public void testValuesSurviveReopen() throws IOException {
+        CheckpointStore store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.NEVER);
+        store.put("offset", "10");
+        store.put("offset", "20");
+        store.put("cursor", "abc\u00FC");
+        store.put("gone", "x");
+        store.remove("gone");
+        store.close();
+
+        store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.NEVER);
+        Assert.assertEquals("20", store.get("offset"));
+        Assert.assertEquals("abc\u00FC", store.get("cursor"));
+        Assert.assertNull(store.get("gone"));
+        Assert.assertEquals("default", store.get("gone", "default"));
+        Assert.assertEquals(2, store.size());
+        store.close();
+    }
+
+    @Test
+    public void testStanzasAreIsolated() throws IOException {
+        CheckpointStore a = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.ALWAYS);
+        CheckpointStore b = CheckpointStore.open(checkpointDir, "foobar://bbb", CheckpointStore.SyncPolicy.ALWAYS);
+        a.put("offset", "1");
+        b.put("offset", "2");
+        Assert.assertEquals("1", a.get("offset"));
+        Assert.assertEquals("2", b.get("offset"));
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void testCompactionKeepsLatestValues() throws IOException {
+        CheckpointStore store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.PERIODIC);
+        store.setCompactionThreshold(4096);
+        for (int i = 0; i < 10000; i++) {
+            store.put("offset", Integer.toString(i));
+            store.put("key" + (i % 7), Integer.toString(i));
+        }
+        store.close();
+
+        // Without compaction the log would hold 20000 records.
+        Assert.assertTrue(store.getFile().length() < 128 * 1024);
+
+        store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.PERIODIC);
+        Assert.assertEquals("9999", store.get("offset"));
+        Assert.assertEquals("9999", store.get("key" + (9999 % 7)));
+        Assert.assertEquals(8, store.size());
+        store.close();
+    }
+
+    @Test
+    public void testFailedCompactionKeepsTheLog() throws IOException {
+        CheckpointStore store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.ALWAYS);
+        store.put("offset", "10");
+        store.put("offset", "11");
+
+        // A directory where the compacted log would be written.
+        File blocked = new File(store.getFile().getPath() + ".compacting");
+        Assert.assertTrue(blocked.mkdir());
+        try {
+            store.compact();
+            Assert.fail("Expected the compaction to fail.");
+        } catch (IOException e) {
+            // Expected.
+        }
+        Assert.assertTrue(blocked.delete());
+
+        store.put("offset", "12");
+        Assert.assertEquals("12", store.get("offset"));
+        store.compact();
+        store.put("cursor", "abc");
+        store.close();
+
+        store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.ALWAYS);
+        Assert.assertEquals("12", store.get("offset"));
+        Assert.assertEquals("abc", store.get("cursor"));
+        store.close();
+    }
+
+    @Test
+    public void testPutsSucceedWhileCompactionKeepsFailing() throws IOException {
+        CheckpointStore store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.NEVER);
+        store.setCompactionThreshold(4096);
+
+        // A directory where the compacted log would be written, so every compaction fails.
+        File blocked = new File(store.getFile().getPath() + ".compacting");
+        Assert.assertTrue(blocked.mkdir());
+        for (int i = 0; i < 5000; i++) {
+            store.put("offset", Integer.toString(i));
+        }
+        Assert.assertEquals("4999", store.get("offset"));
+        store.close();
+        Assert.assertTrue(blocked.delete());
+
+        store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.NEVER);
+        Assert.assertEquals("4999", store.get("offset"));
+        Assert.assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test
+    public void testInterruptedReplacementIsRecovered() throws IOException {
+        CheckpointStore store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.ALWAYS);
+        store.put("offset", "10");
+        store.close();
+
+        // A crash after the log was moved aside, before the compacted log took its place.
+        File backup = new File(store.getFile().getPath() + ".replaced");
+        Assert.assertTrue(store.getFile().renameTo(backup));
+        Assert.assertTrue(new File(store.getFile().getPath() + ".compacting").createNewFile());
+
+        store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.ALWAYS);
+        Assert.assertEquals("10", store.get("offset"));
+        store.close();
+        Assert.assertFalse(backup.exists());
+    }
+
+    @Test
+    public void testTornRecordIsDiscarded() throws IOException {
+        CheckpointStore store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.ALWAYS);
+        store.put("offset", "10");
+        store.close();
+
+        // Simulate a crash midway through writing a second record: a header whose
+        // checksum does not match its payload.
+        RandomAccessFile file = new RandomAccessFile(store.getFile(), "rw");
+        long end = 12 + "offset".length() + "10".length();
+        file.seek(end);
+        file.writeInt(6);
+        file.writeInt(2);
+        file.writeInt(12345);
+        file.write("offset99".getBytes("UTF-8"));
+        file.close();
+
+        store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.ALWAYS);
+        Assert.assertEquals("10", store.get("offset"));
+        store.put("offset", "11");
+        store.close();
+
+        store = CheckpointStore.open(checkpointDir, "foobar://aaa", CheckpointStore.SyncPolicy.ALWAYS);
+        Assert.assertEquals("11", store.get("offset"));
+        store.close();
+    }
+
+    @Test
+    public void testInputDefinitionClosesStores() throws IOException {
+        InputDefinition definition = new InputDefinition();
+        definition.setCheckpointDir(checkpointDir.getPath());
+
+        CheckpointStore store = definition.getCheckpointStore("foobar://aaa");
+        Assert.assertSame(store, definition.getCheckpointStore("foobar://aaa"));
+        store.put("offset", "5");
+        definition.closeCheckpointStores();
+
+        try {
+            store.put("offset", "6");
+            Assert.fail("Expected a closed store to reject writes.");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        Assert.assertEquals("5", definition.getCheckpointStore("foobar://aaa").get("offset"));
+        definition.closeCheckpointStores();
+    }
+}
@@ -0,0 +1,206 @@
+package com.splunk.modularinput;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.splunk.SDKTestCase;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test that ConcurrentScript runs stanzas independently of each other.
+ */
+public class ConcurrentScriptTest extends ModularInputTestCase {
+    EventWriter eventWriter;
+    StringWriter out, err;
+
+    @Before
+    public void setUp() throws XMLStreamException {
+        out = new StringWriter();
+        err = new StringWriter();
+        eventWriter = new EventWriter(out, err);
+    }
+
+    private static InputDefinition definition(String[] names, String interval) {
+        InputDefinition definition = new InputDefinition();
+        for (String name : names) {
+            List<Parameter> parameters = new ArrayList<Parameter>();
+            if (interval != null) {
+                parameters.add(new SingleValueParameter("interval", interval));
+            }
+            definition.addInput(name, parameters);
+        }
+        return definition;
+    }
+
+    private static Event event(String stanza, String data) {
+        Event event = new Event();
+        event.setStanza(stanza);
+        event.setData(data);
+        return event;
+    }
+
+    @Test
+    public void testFailingStanzaDoesNotAffectOthers() throws Exception {
+        ConcurrentScript script = new ConcurrentScript() {
+            @Override
+            public Scheme getScheme() {
+                return null;
+            }
+
+            @Override
+            public void streamEventsForInput(String inputName, Map<String, Parameter> parameters,
+                                             InputDefinition inputs, EventWriter ew) throws Exception {
+                if (inputName.equals("foobar://bad")) {
+                    throw new IllegalStateException("endpoint unreachable");
+                }
+                ew.writeEvent(event(inputName, "hello"));
+            }
+        };
+
+        script.streamEvents(definition(new String[] {"foobar://good", "foobar://bad"}, null), eventWriter);
+
+        Assert.assertTrue(out.toString().contains("<data>hello</data>"));
+        Assert.assertTrue(err.toString().contains("Input foobar://bad failed"));
+        Assert.assertTrue(err.toString().contains("endpoint unreachable"));
+    }
+
+    @Test
+    public void testSlowStanzaDoesNotBlockOthers() throws Exception {
+        final CountDownLatch fastRan = new CountDownLatch(1);
+        final AtomicInteger slowSawFast = new AtomicInteger(0);
+
+        ConcurrentScript script = new ConcurrentScript() {
+            @Override
+            public Scheme getScheme() {
+                return null;
+            }
+
+            @Override
+            public void streamEventsForInput(String inputName, Map<String, Parameter> parameters,
+                                             InputDefinition inputs, EventWriter ew) throws Exception {
+                if (inputName.equals("foobar://slow")) {
+                    if (fastRan.await(10, TimeUnit.SECONDS)) {
+                        slowSawFast.incrementAndGet();
+                    }
+                } else {
+                    fastRan.countDown();
+                }
+            }
+        };
+
+        script.streamEvents(definition(new String[] {"foobar://slow", "foobar://fast"}, null), eventWriter);
+        Assert.assertEquals(1, slowSawFast.get());
+    }
+
+    @Test
+    public void testRepeatingStanzaRunsUntilStopped() throws Exception {
+        final AtomicInteger runs = new AtomicInteger(0);
+
+        ConcurrentScript script = new ConcurrentScript() {
+            @Override
+            public Scheme getScheme() {
+                return null;
+            }
+
+            @Override
+            public void streamEventsForInput(String inputName, Map<String, Parameter> parameters,
+                                             InputDefinition inputs, EventWriter ew) throws Exception {
+                ew.writeEvent(event(inputName, "run" + runs.get()));
+                if (runs.incrementAndGet() == 3) {
+                    stop();
+                }
+            }
+        };
+
+        script.streamEvents(definition(new String[] {"foobar://aaa"}, "0.01"), eventWriter);
+
+        Assert.assertEquals(3, runs.get());
+        String output = out.toString();
+        Assert.assertTrue(output.contains("<data>run0</data>"));
+        Assert.assertTrue(output.contains("<data>run2</data>"));
+    }
+
+    @Test
+    public void testInvalidIntervalIsLogged() throws Exception {
+        ConcurrentScript script = new ConcurrentScript() {
+            @Override
+            public Scheme getScheme() {
+                return null;
+            }
+
+            @Override
+            public void streamEventsForInput(String inputName, Map<String, Parameter> parameters,
+                                             InputDefinition inputs, EventWriter ew) throws Exception {
+                Assert.fail("Input with an invalid interval should not run.");
+            }
+        };
+
+        script.streamEvents(definition(new String[] {"foobar://aaa"}, "often"), eventWriter);
+        Assert.assertTrue(err.toString().contains("Not running input foobar://aaa"));
+    }
+
+    @Test
+    public void testClosingStdinStopsStanzas() throws Exception {
+        final CountDownLatch running = new CountDownLatch(4);
+        final ConcurrentScript script = new ConcurrentScript() {
+            @Override
+            public Scheme getScheme() {
+                return null;
+            }
+
+            @Override
+            protected long getInterval(String inputName, Map<String, Parameter> parameters) {
+                return 10;
+            }
+
+            @Override
+            public void streamEventsForInput(String inputName, Map<String, Parameter> parameters,
+                                             InputDefinition inputs, EventWriter ew) throws Exception {
+                ew.writeEvent(event(inputName, "polled"));
+                running.countDown();
+            }
+        };
+
+        // splunkd writes the definition and keeps stdin open until it wants the input to stop.
+        final PipedOutputStream stdin = new PipedOutputStream();
+        final InputStream stdinReader = new PipedInputStream(stdin);
+        final AtomicInteger exitCode = new AtomicInteger(-1);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                exitCode.set(script.run(new String[0], eventWriter, stdinReader));
+            }
+        });
+        thread.start();
+
+        InputStream definition = SDKTestCase.openResource("modularinput/data/conf_with_2_inputs.xml");
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = definition.read(buffer)) != -1) {
+            stdin.write(buffer, 0, n);
+        }
+        stdin.flush();
+        Assert.assertTrue(running.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(script.isStopping());
+
+        stdin.close();
+        thread.join(10000);
+        Assert.assertFalse(thread.isAlive());
+        Assert.assertTrue(script.isStopping());
+        Assert.assertEquals(0, exitCode.get());
+        Assert.assertTrue(out.toString().contains("<data>polled</data>"));
+        Assert.assertTrue(out.toString().endsWith("</stream>"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.splunk.modularinput;
+
+import com.splunk.SDKTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test splitting a stream into XML documents as they arrive.
+ */
+public class XmlDocumentReaderTest extends ModularInputTestCase {
+    private static String readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testDocumentAvailableBeforeStreamCloses() throws Exception {
+        PipedOutputStream writer = new PipedOutputStream();
+        XmlDocumentReader reader = new XmlDocumentReader(new PipedInputStream(writer));
+
+        writer.write("<?xml version=\"1.0\"?>\n<input><a>1</a>".getBytes("UTF-8"));
+        writer.flush();
+        Assert.assertNull(reader.nextDocument(100, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(reader.isEndOfInput());
+
+        writer.write("<b/></input>".getBytes("UTF-8"));
+        writer.flush();
+        InputStream document = reader.nextDocument(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(document);
+        Assert.assertEquals("<?xml version=\"1.0\"?>\n<input><a>1</a><b/></input>", readAll(document));
+
+        writer.close();
+        Assert.assertNull(reader.nextDocument(5, TimeUnit.SECONDS));
+        Assert.assertTrue(reader.isEndOfInput());
+    }
+
+    @Test
+    public void testMarkupInsideCommentsAttributesAndCdata() throws Exception {
+        String first = "<!DOCTYPE input [<!ELEMENT input ANY>]><input a=\"</input>\">" +
+                "<!-- </input> --><![CDATA[</input>]]><?pi </input> ?></input>";
+        String second = "<empty/>";
+        XmlDocumentReader reader = new XmlDocumentReader(
+                new ByteArrayInputStream((first + "\n  " + second).getBytes("UTF-8")));
+
+        Assert.assertEquals(first, readAll(reader.nextDocument()));
+        Assert.assertEquals(second, readAll(reader.nextDocument()));
+        Assert.assertNull(reader.nextDocument());
+    }
+
+    @Test
+    public void testUtf16InputDefinition() throws Exception {
+        XmlDocumentReader reader = new XmlDocumentReader(
+                SDKTestCase.openResource("modularinput/data/conf_with_2_inputs.xml"));
+        InputDefinition definition = InputDefinition.parseDefinition(reader.nextDocument());
+
+        Assert.assertEquals("tiny", definition.getServerHost());
+        Assert.assertEquals(2, definition.getInputs().size());
+        Assert.assertNull(reader.nextDocument());
+    }
+
+    @Test
+    public void testNonblockingBulkRead() throws Exception {
+        NonblockingInputStream stream = new NonblockingInputStream(
+                new ByteArrayInputStream("abcdef".getBytes("UTF-8")));
+        byte[] buffer = new byte[4];
+        Assert.assertEquals(4, stream.read(buffer, 0, 4));
+        Assert.assertEquals(2, stream.read(buffer, 0, 4));
+        Assert.assertEquals(-1, stream.read(buffer, 0, 4));
+    }
+}